@@ -0,0 +1,279 @@
+package com.example.smartrouter.benchmark;
+
+import model.RouteQuery;
+import org.HdrHistogram.Histogram;
+import service.impl.DefaultHeuristicCalculator;
+import service.impl.RoutePlanCache;
+import service.impl.TransportGraphRouter;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * planRoute 的闭环压测驱动（本地运行，不依赖外部服务）
+ * N 个线程共享同一个 TransportGraphRouter，每个线程发出一个查询、等到返回后立即发出下一个；
+ * 起讫点对按 Zipf 分布抽取（少数热门线路占大部分流量），同城提车/送车按给定比例随机。
+ * 预热阶段的结果丢弃，测量阶段的延迟记入 HDR 直方图（每线程一个，结束后合并，记录时没有线程间竞争），
+ * 输出 p50/p90/p99/p999/最大延迟与持续吞吐量；可保存为基线，之后的运行与基线逐项对比，超出容差时以退出码1结束。
+ * 运行：mvn -P benchmark test-compile exec:exec -Dbenchmark.main=com.example.smartrouter.benchmark.LoadTestDriver
+ *      -Dbenchmark.args="--threads=8 --duration=60 --save-baseline=target/load-baseline.properties"
+ * 参数（--名称=值）：
+ * <ul>
+ *     <li>topology / cities / seed：合成网络（见 SyntheticGraphGenerator），默认 HUB_AND_SPOKE / 3000 / 20240601</li>
+ *     <li>threads：并发线程数，默认为CPU核数</li>
+ *     <li>warmup / duration：预热、测量时长（秒），默认 10 / 30</li>
+ *     <li>od-pairs / zipf：起讫点对数与 Zipf 指数，默认 1000 / 1.1（0 为均匀分布）</li>
+ *     <li>pick-ratio / deliver-ratio：需要同城提车/送车的查询比例，默认 0.8 / 0.8</li>
+ *     <li>cache：路由结果缓存容量，默认0（不启用）</li>
+ *     <li>baseline / save-baseline：对比的基线文件 / 保存本次结果的文件</li>
+ *     <li>tolerance：与基线对比的容差（比例），默认 0.10</li>
+ * </ul>
+ */
+public final class LoadTestDriver {
+
+    // 直方图可记录的最大延迟（纳秒）与有效位数
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    // 对比基线的指标：延迟类越小越好，吞吐量越大越好
+    private static final String[] LATENCY_METRICS = {"p50Micros", "p90Micros", "p99Micros", "p999Micros"};
+    private static final String THROUGHPUT_METRIC = "throughputPerSecond";
+    // 基线与本次必须一致的运行配置
+    private static final String[] CONFIG_KEYS = {"topology", "cities", "seed", "threads", "od-pairs", "zipf",
+            "pick-ratio", "deliver-ratio", "cache"};
+
+    private LoadTestDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        SyntheticGraphGenerator.Topology topology = SyntheticGraphGenerator.Topology.valueOf(
+                options.getOrDefault("topology", "HUB_AND_SPOKE"));
+        int cityCount = Integer.parseInt(options.getOrDefault("cities", "3000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "20240601"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int odPairs = Integer.parseInt(options.getOrDefault("od-pairs", "1000"));
+        double zipfExponent = Double.parseDouble(options.getOrDefault("zipf", "1.1"));
+        double pickRatio = Double.parseDouble(options.getOrDefault("pick-ratio", "0.8"));
+        double deliverRatio = Double.parseDouble(options.getOrDefault("deliver-ratio", "0.8"));
+        int cacheEntries = Integer.parseInt(options.getOrDefault("cache", "0"));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.10"));
+
+        SyntheticGraphGenerator network = SyntheticGraphGenerator.generate(topology, cityCount, seed);
+        TransportGraphRouter router = new TransportGraphRouter(network.getTransportGraph(),
+                network.getCityBaseDataMap(), new DefaultHeuristicCalculator(network.getCityBaseDataMap()));
+        if (cacheEntries > 0) {
+            router.setRoutePlanCache(new RoutePlanCache(cacheEntries));
+        }
+        QueryMix mix = new QueryMix(network.randomQueries(odPairs, seed + 1), zipfExponent);
+        System.out.printf("网络 %s：%d 个城市、%d 条线路；%d 个线程，预热 %d 秒，测量 %d 秒，%d 个起讫点对（Zipf %.2f），提车 %.0f%%，送车 %.0f%%%n",
+                topology, cityCount, network.getEdgeCount(), threads, warmupSeconds, durationSeconds, odPairs,
+                zipfExponent, pickRatio * 100, deliverRatio * 100);
+
+        // 闭环压测：measuring 置位之后的请求才计入直方图与吞吐量
+        Histogram[] histograms = new Histogram[threads];
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        RunState state = new RunState();
+        for (int t = 0; t < threads; t++) {
+            Histogram histogram = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+            histograms[t] = histogram;
+            Random random = new Random(seed * 31 + t);
+            Thread worker = new Thread(() -> {
+                try {
+                    while (!state.stopped) {
+                        RouteQuery query = mix.next(random, pickRatio, deliverRatio);
+                        long start = System.nanoTime();
+                        try {
+                            router.planRoute(query);
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        long latency = System.nanoTime() - start;
+                        if (state.measuring) {
+                            histogram.recordValue(Math.min(latency, HIGHEST_TRACKABLE_NANOS));
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        state.measuring = true;
+        long measureStart = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        state.measuring = false;
+        long measureNanos = System.nanoTime() - measureStart;
+        state.stopped = true;
+        done.await();
+
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        for (Histogram histogram : histograms) {
+            total.add(histogram);
+        }
+        Properties result = summarize(total, measureNanos);
+        result.setProperty("topology", topology.name());
+        result.setProperty("cities", String.valueOf(cityCount));
+        result.setProperty("seed", String.valueOf(seed));
+        result.setProperty("threads", String.valueOf(threads));
+        result.setProperty("od-pairs", String.valueOf(odPairs));
+        result.setProperty("zipf", String.valueOf(zipfExponent));
+        result.setProperty("pick-ratio", String.valueOf(pickRatio));
+        result.setProperty("deliver-ratio", String.valueOf(deliverRatio));
+        result.setProperty("cache", String.valueOf(cacheEntries));
+        result.setProperty("errors", String.valueOf(errors.get()));
+        print(result);
+        System.out.println("延迟分布（微秒）：");
+        total.outputPercentileDistribution(System.out, 1000.0);
+
+        if (options.containsKey("save-baseline")) {
+            Path path = Paths.get(options.get("save-baseline"));
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                result.store(writer, "planRoute load test baseline");
+            }
+            System.out.println("基线已保存到 " + path);
+        }
+        if (options.containsKey("baseline")) {
+            Properties baseline = new Properties();
+            try (Reader reader = Files.newBufferedReader(Paths.get(options.get("baseline")))) {
+                baseline.load(reader);
+            }
+            if (!compare(baseline, result, tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * 汇总直方图与吞吐量
+     */
+    static Properties summarize(Histogram histogram, long measureNanos) {
+        Properties result = new Properties();
+        result.setProperty("operations", String.valueOf(histogram.getTotalCount()));
+        result.setProperty(THROUGHPUT_METRIC, format(histogram.getTotalCount() / (measureNanos / 1e9)));
+        result.setProperty("meanMicros", format(histogram.getMean() / 1000));
+        result.setProperty("p50Micros", format(histogram.getValueAtPercentile(50) / 1000.0));
+        result.setProperty("p90Micros", format(histogram.getValueAtPercentile(90) / 1000.0));
+        result.setProperty("p99Micros", format(histogram.getValueAtPercentile(99) / 1000.0));
+        result.setProperty("p999Micros", format(histogram.getValueAtPercentile(99.9) / 1000.0));
+        result.setProperty("maxMicros", format(histogram.getMaxValue() / 1000.0));
+        return result;
+    }
+
+    /**
+     * 与基线逐项对比：延迟超过基线 (1 + tolerance) 倍、吞吐量低于基线 (1 - tolerance) 倍视为退化
+     * 基线与本次的运行配置（网络、线程数、查询分布、缓存）不同时只提示，不做对比。
+     * @return 没有退化时返回true
+     */
+    static boolean compare(Properties baseline, Properties current, double tolerance) {
+        for (String key : CONFIG_KEYS) {
+            if (!Objects.equals(baseline.getProperty(key), current.getProperty(key))) {
+                System.out.printf("基线的 %s 为 %s，本次为 %s，不做对比%n", key, baseline.getProperty(key), current.getProperty(key));
+                return true;
+            }
+        }
+        boolean passed = true;
+        System.out.println("与基线对比：");
+        for (String metric : LATENCY_METRICS) {
+            passed &= compareMetric(metric, baseline, current, tolerance, false);
+        }
+        passed &= compareMetric(THROUGHPUT_METRIC, baseline, current, tolerance, true);
+        System.out.println(passed ? "未发现退化" : "存在超出容差的退化");
+        return passed;
+    }
+
+    private static boolean compareMetric(String metric, Properties baseline, Properties current, double tolerance,
+                                         boolean higherIsBetter) {
+        double before = Double.parseDouble(baseline.getProperty(metric, "0"));
+        double after = Double.parseDouble(current.getProperty(metric, "0"));
+        double change = before == 0 ? 0 : (after - before) / before;
+        boolean regressed = higherIsBetter ? change < -tolerance : change > tolerance;
+        System.out.printf("  %-20s %12s → %12s  %+7.1f%%%s%n", metric, format(before), format(after), change * 100,
+                regressed ? "  退化" : "");
+        return !regressed;
+    }
+
+    private static void print(Properties result) {
+        System.out.printf("请求数 %s，错误 %s，吞吐量 %s 次/秒%n", result.getProperty("operations"),
+                result.getProperty("errors"), result.getProperty(THROUGHPUT_METRIC));
+        System.out.printf("延迟（微秒）：平均 %s，p50 %s，p90 %s，p99 %s，p999 %s，最大 %s%n",
+                result.getProperty("meanMicros"), result.getProperty("p50Micros"), result.getProperty("p90Micros"),
+                result.getProperty("p99Micros"), result.getProperty("p999Micros"), result.getProperty("maxMicros"));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --名称=值: " + arg);
+            }
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+
+    private static final class RunState {
+        private volatile boolean measuring;
+        private volatile boolean stopped;
+    }
+
+    /**
+     * 按 Zipf 分布抽取起讫点对：第 i 个（从1起）起讫点对的概率与 1 / i^exponent 成正比
+     * 每个起讫点对预先建好提车/送车标志的四种组合，抽样时不分配对象。
+     */
+    static final class QueryMix {
+        private final RouteQuery[][] variants;
+        private final double[] cumulative;
+
+        QueryMix(List<RouteQuery> pairs, double exponent) {
+            variants = new RouteQuery[pairs.size()][4];
+            cumulative = new double[pairs.size()];
+            double sum = 0;
+            for (int i = 0; i < pairs.size(); i++) {
+                for (int flags = 0; flags < 4; flags++) {
+                    RouteQuery query = new RouteQuery();
+                    query.setFromCity(pairs.get(i).getFromCity());
+                    query.setToCity(pairs.get(i).getToCity());
+                    query.setNeedSameCityPick((flags & 1) != 0);
+                    query.setNeedSameCityDeliver((flags & 2) != 0);
+                    variants[i][flags] = query;
+                }
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < cumulative.length; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        RouteQuery next(Random random, double pickRatio, double deliverRatio) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            if (index < 0) {
+                index = Math.min(-index - 1, cumulative.length - 1);
+            }
+            int flags = (random.nextDouble() < pickRatio ? 1 : 0) | (random.nextDouble() < deliverRatio ? 2 : 0);
+            return variants[index][flags];
+        }
+    }
+}
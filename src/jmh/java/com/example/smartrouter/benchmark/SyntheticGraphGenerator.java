@@ -0,0 +1,279 @@
+package com.example.smartrouter.benchmark;
+
+import enumObject.TransportModeEnum;
+import model.CityBaseData;
+import model.CityPair;
+import model.RouteQuery;
+import model.TransportEdge;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 基准测试用的合成运输网络（固定随机种子，同样的参数每次生成完全相同的图）
+ * 城市随机分布在全国范围的经纬度框内，线路里程 = 直线距离 × 道路系数，时效/价格按各运输方式的速度、单价加随机浮动，
+ * 速度不超过、单价不低于 DefaultHeuristicCalculator 的假设，启发值保持可采纳。
+ * <ul>
+ *     <li>HUB_AND_SPOKE：约2%的城市为枢纽，枢纽之间按最近邻连大板车干线，另有少量跨区域长途干线，部分枢纽之间有铁路/海运；
+ *     普通城市连到最近的两个枢纽（大板车，近距离另有代驾），与全国干线网络的形态接近，随机起讫点基本都在分段上限内可达</li>
+ *     <li>GRID：城市按网格排列，相邻城市之间双向连大板车，部分连代驾/小板车；网格直径远超分段上限，
+ *     起讫点取相距不超过两格的区域内查询，图的规模只影响与城市数成正比的开销（预估值数组、状态数组等）</li>
+ * </ul>
+ */
+public final class SyntheticGraphGenerator {
+
+    public enum Topology { HUB_AND_SPOKE, GRID }
+
+    // 城市分布范围（大致为国内主要城市所在区域）
+    private static final double MIN_LAT = 21.0;
+    private static final double MAX_LAT = 46.0;
+    private static final double MIN_LNG = 98.0;
+    private static final double MAX_LNG = 124.0;
+    private static final double EARTH_RADIUS_KM = 6371;
+    // 道路里程相对直线距离的系数
+    private static final double ROAD_FACTOR = 1.25;
+    // 代驾只在该里程内提供
+    private static final int DRIVER_MAX_MILEAGE = 600;
+    // 每个枢纽连接的最近枢纽数、随机长途干线数
+    private static final int HUB_NEIGHBORS = 6;
+    private static final int HUB_LONG_HAUL_LINKS = 2;
+    // GRID 查询起讫点在两个方向上的最大间隔（格）
+    private static final int GRID_QUERY_RADIUS = 2;
+
+    private final Map<String, CityBaseData> cityBaseDataMap = new LinkedHashMap<>();
+    private final Map<CityPair, List<TransportEdge>> transportGraph = new LinkedHashMap<>();
+    private final List<String> cities = new ArrayList<>();
+    private final Random random;
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    // GRID 的列数，HUB_AND_SPOKE 为0
+    private int gridColumns;
+    private int edgeCount;
+
+    private SyntheticGraphGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 生成合成网络
+     * @param topology 网络形态
+     * @param cityCount 城市数
+     * @param seed 随机种子
+     */
+    public static SyntheticGraphGenerator generate(Topology topology, int cityCount, long seed) {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(seed);
+        if (topology == Topology.HUB_AND_SPOKE) {
+            generator.hubAndSpoke(cityCount);
+        } else {
+            generator.grid(cityCount);
+        }
+        return generator;
+    }
+
+    /**
+     * 随机起讫点对（起讫点不同，固定随机种子）；GRID 的终点取起点周围两格之内
+     */
+    public List<RouteQuery> randomQueries(int count, long seed) {
+        Random queryRandom = new Random(seed);
+        List<RouteQuery> queries = new ArrayList<>(count);
+        while (queries.size() < count) {
+            int fromIndex = queryRandom.nextInt(cities.size());
+            int toIndex;
+            if (gridColumns > 0) {
+                int span = 2 * GRID_QUERY_RADIUS + 1;
+                int row = fromIndex / gridColumns + queryRandom.nextInt(span) - GRID_QUERY_RADIUS;
+                int column = fromIndex % gridColumns + queryRandom.nextInt(span) - GRID_QUERY_RADIUS;
+                toIndex = row * gridColumns + column;
+                if (row < 0 || column < 0 || column >= gridColumns || toIndex >= cities.size()) {
+                    continue;
+                }
+            } else {
+                toIndex = queryRandom.nextInt(cities.size());
+            }
+            String from = cities.get(fromIndex);
+            String to = cities.get(toIndex);
+            if (!from.equals(to)) {
+                RouteQuery query = new RouteQuery();
+                query.setFromCity(from);
+                query.setToCity(to);
+                query.setNeedSameCityPick(queryRandom.nextBoolean());
+                query.setNeedSameCityDeliver(queryRandom.nextBoolean());
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
+
+    private void hubAndSpoke(int cityCount) {
+        int hubCount = Math.max(8, cityCount / 50);
+        for (int i = 0; i < cityCount; i++) {
+            addCity(String.format("%s%05d", i < hubCount ? "H" : "C", i),
+                    MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                    MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG));
+        }
+        // 枢纽之间：最近的若干个枢纽双向大板车，约1/4的枢纽对另有铁路，东部沿海枢纽之间有海运；另有随机的跨区域长途干线
+        for (int hub = 0; hub < hubCount; hub++) {
+            for (int link = 0; link < HUB_LONG_HAUL_LINKS; link++) {
+                int other = random.nextInt(hubCount);
+                if (other != hub) {
+                    addBothWays(hub, other, TransportModeEnum.BIG_TRUCK);
+                }
+            }
+            for (int neighbor : nearest(hub, 0, hubCount, HUB_NEIGHBORS)) {
+                addBothWays(hub, neighbor, TransportModeEnum.BIG_TRUCK);
+                if (random.nextInt(4) == 0) {
+                    addBothWays(hub, neighbor, TransportModeEnum.RAIL);
+                }
+                if (longitude(hub) > 117 && longitude(neighbor) > 117 && random.nextInt(3) == 0) {
+                    addBothWays(hub, neighbor, TransportModeEnum.SHIP);
+                }
+            }
+        }
+        // 普通城市：连到最近的两个枢纽
+        for (int city = hubCount; city < cityCount; city++) {
+            for (int hub : nearest(city, 0, hubCount, 2)) {
+                addBothWays(city, hub, TransportModeEnum.BIG_TRUCK);
+                addBothWays(city, hub, TransportModeEnum.DRIVER);
+            }
+        }
+    }
+
+    private void grid(int cityCount) {
+        int columns = (int) Math.ceil(Math.sqrt(cityCount));
+        gridColumns = columns;
+        int rows = (cityCount + columns - 1) / columns;
+        double latStep = (MAX_LAT - MIN_LAT) / Math.max(1, rows - 1);
+        double lngStep = (MAX_LNG - MIN_LNG) / Math.max(1, columns - 1);
+        for (int i = 0; i < cityCount; i++) {
+            // 网格点加少量抖动，避免大量等长路径
+            addCity(String.format("G%05d", i),
+                    MIN_LAT + (i / columns + (random.nextDouble() - 0.5) * 0.3) * latStep,
+                    MIN_LNG + (i % columns + (random.nextDouble() - 0.5) * 0.3) * lngStep);
+        }
+        for (int i = 0; i < cityCount; i++) {
+            int column = i % columns;
+            int right = i + 1;
+            int down = i + columns;
+            if (column + 1 < columns && right < cityCount) {
+                addBothWays(i, right, TransportModeEnum.BIG_TRUCK);
+                if (random.nextInt(5) == 0) {
+                    addBothWays(i, right, TransportModeEnum.DRIVER);
+                }
+            }
+            if (down < cityCount) {
+                addBothWays(i, down, TransportModeEnum.BIG_TRUCK);
+                if (random.nextInt(5) == 0) {
+                    addBothWays(i, down, TransportModeEnum.DRIVER);
+                }
+            }
+            // 对角线小板车（只用于直达方案，干线搜索不走小板车）
+            if (column + 1 < columns && down + 1 < cityCount && random.nextInt(10) == 0) {
+                addBothWays(i, down + 1, TransportModeEnum.SMALL_TRUCK);
+            }
+        }
+    }
+
+    /**
+     * [from, to) 范围内离 city 最近的 k 个城市（不含 city 本身）
+     */
+    private int[] nearest(int city, int from, int to, int k) {
+        double[] distances = new double[to - from];
+        for (int i = from; i < to; i++) {
+            distances[i - from] = i == city ? Double.POSITIVE_INFINITY : distanceKm(city, i);
+        }
+        // k 很小，逐个选出最近者即可
+        int[] result = new int[Math.min(k, to - from)];
+        int count = 0;
+        while (count < result.length) {
+            int best = -1;
+            for (int i = 0; i < distances.length; i++) {
+                if (distances[i] != Double.POSITIVE_INFINITY && (best < 0 || distances[i] < distances[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            distances[best] = Double.POSITIVE_INFINITY;
+            result[count++] = from + best;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void addCity(String name, double lat, double lng) {
+        int index = cities.size();
+        if (index == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, Math.max(16, index * 2));
+            longitudes = Arrays.copyOf(longitudes, latitudes.length);
+        }
+        latitudes[index] = lat;
+        longitudes[index] = lng;
+        cities.add(name);
+        cityBaseDataMap.put(name, new CityBaseData(name, name, lat, lng, lat, lng, 0));
+    }
+
+    private void addBothWays(int a, int b, TransportModeEnum mode) {
+        int mileage = Math.max(1, (int) Math.round(distanceKm(a, b) * ROAD_FACTOR));
+        if (mode == TransportModeEnum.DRIVER && mileage > DRIVER_MAX_MILEAGE) {
+            return;
+        }
+        addEdge(cities.get(a), cities.get(b), mode, mileage);
+        addEdge(cities.get(b), cities.get(a), mode, mileage);
+    }
+
+    private void addEdge(String from, String to, TransportModeEnum mode, int mileage) {
+        double speedKmH;
+        double pricePerKm;
+        switch (mode) {
+            case DRIVER:
+                speedKmH = 50;
+                pricePerKm = 7.0;
+                break;
+            case RAIL:
+                speedKmH = 70;
+                pricePerKm = 1.6;
+                break;
+            case SHIP:
+                speedKmH = 25;
+                pricePerKm = 1.1;
+                break;
+            default:
+                speedKmH = 60;
+                pricePerKm = 4.5;
+                break;
+        }
+        // 时效浮动 0~30%，价格浮动 0~20%（都只向上浮动，保持启发值可采纳）
+        int timeHours = (int) Math.ceil(mileage / speedKmH * (1 + random.nextDouble() * 0.3));
+        BigDecimal price = BigDecimal.valueOf(Math.round(mileage * pricePerKm * (1 + random.nextDouble() * 0.2)));
+
+        TransportEdge edge = new TransportEdge();
+        edge.setFromCity(from);
+        edge.setToCity(to);
+        edge.setMode(mode);
+        edge.setMileage(mileage);
+        edge.setTimeHours(Math.max(1, timeHours));
+        edge.setPrice(price);
+        edge.setTimeWeight(edge.getTimeHours());
+        edge.setPriceWeight(price.doubleValue());
+        transportGraph.computeIfAbsent(new CityPair(from, to), key -> new ArrayList<>()).add(edge);
+        edgeCount++;
+    }
+
+    private double longitude(int city) {
+        return longitudes[city];
+    }
+
+    private double distanceKm(int a, int b) {
+        double latDistance = Math.toRadians(latitudes[b] - latitudes[a]);
+        double lonDistance = Math.toRadians(longitudes[b] - longitudes[a]);
+        double h = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(latitudes[a])) * Math.cos(Math.toRadians(latitudes[b]))
+                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+
+    public Map<String, CityBaseData> getCityBaseDataMap() { return cityBaseDataMap; }
+    public Map<CityPair, List<TransportEdge>> getTransportGraph() { return transportGraph; }
+    public List<String> getCities() { return cities; }
+    public int getEdgeCount() { return edgeCount; }
+}
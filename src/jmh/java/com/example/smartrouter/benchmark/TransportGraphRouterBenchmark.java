@@ -0,0 +1,134 @@
+package com.example.smartrouter.benchmark;
+
+import enumObject.OptimizeTargetEnum;
+import model.CompactTransportGraph;
+import model.GraphSnapshot;
+import model.RoutePlan;
+import model.RouteQuery;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import service.impl.DefaultHeuristicCalculator;
+import service.impl.TransportGraphRouter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由引擎的JMH基准测试
+ * 运行：mvn -P benchmark test-compile exec:exec，默认附带GC分析器（-prof gc），
+ * 结果中的 gc.alloc.rate.norm 为每次操作分配的字节数；只跑部分基准时用 -Djmh.args="-prof gc planRoute -p cityCount=3000"。
+ * 每组参数（网络形态 × 城市数）生成一张固定随机种子的合成网络与256个固定的起讫点对，各线程按顺序循环使用这些查询，
+ * 不同版本之间的结果可以直接对比。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class TransportGraphRouterBenchmark {
+
+    private static final long GRAPH_SEED = 20240601L;
+    private static final long QUERY_SEED = 42L;
+    private static final int QUERY_COUNT = 256;
+
+    @Param({"HUB_AND_SPOKE", "GRID"})
+    public SyntheticGraphGenerator.Topology topology;
+
+    @Param({"500", "3000", "10000"})
+    public int cityCount;
+
+    private SyntheticGraphGenerator network;
+    private TransportGraphRouter router;
+    private CompactTransportGraph graph;
+    private DefaultHeuristicCalculator heuristicCalculator;
+    // 不缓存目的地的启发式计算器，用于测量每次重新计算预估值数组的开销
+    private DefaultHeuristicCalculator uncachedHeuristicCalculator;
+    private RouteQuery[] queries;
+    private int[] queryFromIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = SyntheticGraphGenerator.generate(topology, cityCount, GRAPH_SEED);
+        heuristicCalculator = new DefaultHeuristicCalculator(network.getCityBaseDataMap());
+        uncachedHeuristicCalculator = new DefaultHeuristicCalculator(network.getCityBaseDataMap(), 0);
+        router = new TransportGraphRouter(network.getTransportGraph(), network.getCityBaseDataMap(), heuristicCalculator);
+        graph = router.getGraph();
+        List<RouteQuery> queryList = network.randomQueries(QUERY_COUNT, QUERY_SEED);
+        queries = queryList.toArray(new RouteQuery[0]);
+        queryFromIds = new int[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            queryFromIds[i] = graph.getCityId(queries[i].getFromCity());
+        }
+    }
+
+    /**
+     * 每个线程独立的查询游标
+     */
+    @State(Scope.Thread)
+    public static class QueryCursor {
+        private int next;
+
+        int nextIndex(int count) {
+            int index = next;
+            next = (next + 1) % count;
+            return index;
+        }
+    }
+
+    /**
+     * 完整规划：时效、价格最优与帕累托前沿、直达方案、同城服务段
+     */
+    @Benchmark
+    public List<RoutePlan> planRoute(QueryCursor cursor) {
+        return router.planRoute(queries[cursor.nextIndex(queries.length)]);
+    }
+
+    @Benchmark
+    public RoutePlan findBestRouteTime(QueryCursor cursor) {
+        return router.findBestRoute(queries[cursor.nextIndex(queries.length)], OptimizeTargetEnum.TIME);
+    }
+
+    @Benchmark
+    public RoutePlan findBestRoutePrice(QueryCursor cursor) {
+        return router.findBestRoute(queries[cursor.nextIndex(queries.length)], OptimizeTargetEnum.PRICE);
+    }
+
+    /**
+     * 逐个城市计算启发值（不支持批量预估的计算器走的路径）：每次操作为查询起点到终点的一次估算
+     */
+    @Benchmark
+    public double heuristicPointwise(QueryCursor cursor) {
+        int index = cursor.nextIndex(queries.length);
+        return heuristicCalculator.calculate(graph, queryFromIds[index], queries[index].getToCity(), OptimizeTargetEnum.TIME);
+    }
+
+    /**
+     * 为新的目的地计算整张预估值数组（时效、价格两份），即缓存未命中时每次查询开始的开销
+     */
+    @Benchmark
+    public double[] heuristicTableUncached(QueryCursor cursor) {
+        return uncachedHeuristicCalculator.heuristicTable(graph, queries[cursor.nextIndex(queries.length)].getToCity(),
+                OptimizeTargetEnum.PRICE);
+    }
+
+    /**
+     * 从原始 Map 构建CSR图
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CompactTransportGraph buildCompactGraph() {
+        return CompactTransportGraph.build(network.getTransportGraph(), network.getCityBaseDataMap());
+    }
+
+    /**
+     * 构建完整快照（CSR图 + 干线价格下界等派生数据）并为其准备干线邻接表
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void buildSnapshotAndPrepare(Blackhole blackhole) {
+        GraphSnapshot snapshot = GraphSnapshot.build(network.getTransportGraph(), network.getCityBaseDataMap());
+        TransportGraphRouter fresh = new TransportGraphRouter(snapshot, heuristicCalculator);
+        blackhole.consume(fresh.prepareTrunkGraph());
+    }
+}
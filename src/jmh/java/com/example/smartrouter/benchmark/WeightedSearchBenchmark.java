@@ -0,0 +1,156 @@
+package com.example.smartrouter.benchmark;
+
+import enumObject.OptimizeTargetEnum;
+import model.RoutePlan;
+import model.RouteQuery;
+import model.SearchStatistics;
+import org.openjdk.jmh.annotations.*;
+import service.SearchMetrics;
+import service.impl.DefaultHeuristicCalculator;
+import service.impl.TransportGraphRouter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 次优加权A*（RouteQuery.suboptimality = ε）的基准测试：不同ε下单目标查询的耗时与扩展状态数
+ * 运行：mvn -P benchmark test-compile exec:exec -Djmh.args="WeightedSearchBenchmark"
+ * 辅助计数器 expandedStates / pushedStates / queries 为每轮迭代的合计值，expandedStates / queries 即每次查询的平均扩展状态数；
+ * ε=0 为精确搜索（与生产路径一致，长途查询走双向A*），可直接作为节省比例的基准。
+ * 每组参数在准备阶段把全部查询与精确结果对比一次，打印实际的平均/最大次优比，便于与保证的 1+ε 对照。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class WeightedSearchBenchmark {
+
+    private static final long GRAPH_SEED = 20240601L;
+    private static final long QUERY_SEED = 42L;
+    private static final int QUERY_COUNT = 256;
+
+    // 查询线程上累加的搜索统计（路由器在查询线程上同步回调）
+    private static final ThreadLocal<SearchStatistics> SEARCHES = ThreadLocal.withInitial(SearchStatistics::new);
+
+    @Param({"HUB_AND_SPOKE", "GRID"})
+    public SyntheticGraphGenerator.Topology topology;
+
+    @Param({"3000", "10000"})
+    public int cityCount;
+
+    @Param({"TIME", "PRICE"})
+    public OptimizeTargetEnum target;
+
+    @Param({"0", "0.05", "0.1", "0.25"})
+    public double epsilon;
+
+    private TransportGraphRouter router;
+    private RouteQuery[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticGraphGenerator network = SyntheticGraphGenerator.generate(topology, cityCount, GRAPH_SEED);
+        router = new TransportGraphRouter(network.getTransportGraph(), network.getCityBaseDataMap(),
+                new DefaultHeuristicCalculator(network.getCityBaseDataMap()));
+        router.setSearchMetrics(new SearchMetrics() {
+            @Override
+            public void recordSearch(OptimizeTargetEnum target, SearchStatistics statistics) {
+                SEARCHES.get().add(statistics);
+            }
+
+            @Override
+            public void recordBestRoute(OptimizeTargetEnum target, long elapsedNanos, boolean found) {
+            }
+
+            @Override
+            public void recordHierarchyFallback(OptimizeTargetEnum target) {
+            }
+
+            @Override
+            public void recordPlanRoute(long elapsedNanos, int planCount) {
+            }
+        });
+        List<RouteQuery> queryList = network.randomQueries(QUERY_COUNT, QUERY_SEED);
+        for (RouteQuery query : queryList) {
+            query.setSuboptimality(epsilon);
+        }
+        queries = queryList.toArray(new RouteQuery[0]);
+        reportRealizedSuboptimality(queryList);
+    }
+
+    /**
+     * 每个线程独立的查询游标
+     */
+    @State(Scope.Thread)
+    public static class QueryCursor {
+        private int next;
+
+        int nextIndex(int count) {
+            int index = next;
+            next = (next + 1) % count;
+            return index;
+        }
+    }
+
+    /**
+     * 每轮迭代的搜索工作量合计（JMH辅助计数器）
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class SearchEffort {
+        public long expandedStates;
+        public long pushedStates;
+        public long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expandedStates = 0;
+            pushedStates = 0;
+            queries = 0;
+        }
+    }
+
+    @Benchmark
+    public RoutePlan findBestRoute(QueryCursor cursor, SearchEffort effort) {
+        SearchStatistics statistics = SEARCHES.get();
+        long expandedBefore = statistics.getExpandedStates();
+        long pushedBefore = statistics.getPushedStates();
+        RoutePlan plan = router.findBestRoute(queries[cursor.nextIndex(queries.length)], target);
+        effort.expandedStates += statistics.getExpandedStates() - expandedBefore;
+        effort.pushedStates += statistics.getPushedStates() - pushedBefore;
+        effort.queries++;
+        return plan;
+    }
+
+    /**
+     * 与精确搜索逐个对比，打印实际次优比（成本 / 最优成本）的平均值与最大值
+     */
+    private void reportRealizedSuboptimality(List<RouteQuery> queryList) {
+        double sumRatio = 0;
+        double maxRatio = 1;
+        int compared = 0;
+        for (RouteQuery query : queryList) {
+            RouteQuery exactQuery = new RouteQuery(query.getFromCity(), query.getToCity(), query.isNeedSameCityPick(),
+                    query.isNeedSameCityDeliver(), query.getOptimizeTarget(), 0);
+            RoutePlan exact = router.findBestRoute(exactQuery, target);
+            RoutePlan weighted = router.findBestRoute(query, target);
+            if (exact == null || weighted == null) {
+                continue;
+            }
+            double exactCost = cost(exact);
+            double ratio = exactCost > 0 ? cost(weighted) / exactCost : 1;
+            sumRatio += ratio;
+            maxRatio = Math.max(maxRatio, ratio);
+            compared++;
+        }
+        SEARCHES.remove();
+        System.out.printf("%n[%s, %d, %s, ε=%s] 可达查询 %d 个，实际次优比 平均 %.4f，最大 %.4f（保证 ≤ %.4f）%n",
+                topology, cityCount, target, epsilon, compared, compared == 0 ? 1 : sumRatio / compared, maxRatio, 1 + epsilon);
+    }
+
+    private double cost(RoutePlan plan) {
+        return target == OptimizeTargetEnum.TIME ? plan.getTotalTime() : plan.getTotalPrice().doubleValue();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.smartrouter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import service.impl.MicrometerSearchMetrics;
+import service.impl.TransportGraphRouter;
+
+/**
+ * 路由搜索指标：把搜索工作量与延迟注册到 Actuator 的 MeterRegistry，并提供 routersearch 运维端点
+ * 容器中的 TransportGraphRouter 在启动完成后自动接入（已显式设置了指标接收方的除外）。
+ * smartrouter.metrics.enabled=false 时整体不装配，路由器不上报任何指标。
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "smartrouter.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RouterMetricsConfiguration {
+
+    @Bean
+    public MicrometerSearchMetrics routerSearchMetrics(MeterRegistry meterRegistry) {
+        return new MicrometerSearchMetrics(meterRegistry);
+    }
+
+    @Bean
+    public RouterSearchEndpoint routerSearchEndpoint(MicrometerSearchMetrics routerSearchMetrics) {
+        return new RouterSearchEndpoint(routerSearchMetrics);
+    }
+
+    @Bean
+    public SmartInitializingSingleton routerSearchMetricsBinder(ObjectProvider<TransportGraphRouter> routers,
+                                                                MicrometerSearchMetrics routerSearchMetrics) {
+        return () -> routers.orderedStream()
+                .filter(router -> router.getSearchMetrics() == null)
+                .forEach(router -> router.setSearchMetrics(routerSearchMetrics));
+    }
+}
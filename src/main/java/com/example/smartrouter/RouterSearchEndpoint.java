@@ -0,0 +1,27 @@
+package com.example.smartrouter;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import service.impl.MicrometerSearchMetrics;
+
+import java.util.Map;
+
+/**
+ * 路由搜索运维端点（id = routersearch）：按优化目标汇总扩展状态数、open set 峰值、启发值调用次数、
+ * 收缩层次回退次数以及 findBestRoute / planRoute 的耗时，便于定位慢查询是 open set 膨胀还是启发值过弱
+ * 细粒度的百分位与标签维度请查询 metrics 端点中 router.* 开头的计量器。
+ */
+@Endpoint(id = "routersearch")
+public class RouterSearchEndpoint {
+
+    private final MicrometerSearchMetrics metrics;
+
+    public RouterSearchEndpoint(MicrometerSearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> summary() {
+        return metrics.summary();
+    }
+}
@@ -0,0 +1,20 @@
+package enumObject;
+
+/**
+ * 运输网络增量变更类型枚举
+ */
+public enum GraphChangeTypeEnum {
+    ADD("新增线路"),
+    UPDATE("修改线路"),
+    REMOVE("删除线路");
+
+    private final String desc;
+
+    GraphChangeTypeEnum(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
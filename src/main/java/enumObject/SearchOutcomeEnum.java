@@ -0,0 +1,21 @@
+package enumObject;
+
+/**
+ * 限时/限量搜索的结束状态
+ */
+public enum SearchOutcomeEnum {
+    OPTIMAL("已证明最优"),
+    BOUNDED("预算耗尽，返回当前最优方案及最优性差距上界"),
+    BUDGET_EXHAUSTED("预算耗尽，尚未找到可行方案"),
+    UNREACHABLE("已证明在分段数上限内不可达");
+
+    private final String desc;
+
+    SearchOutcomeEnum(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+}
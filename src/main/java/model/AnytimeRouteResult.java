@@ -0,0 +1,25 @@
+package model;
+
+import enumObject.SearchOutcomeEnum;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 限时/限量搜索的结果：当前最优方案（可能为null）及其最优性保证
+ * 成本口径与单目标搜索的 gScore 一致：时效目标为干线总时效（小时），价格目标为含同城费的总价格（元）。
+ * lowerBound 是最优方案成本的可证下界，方案成本不超过 suboptimalityBound × 最优成本。
+ */
+@Data
+@NoArgsConstructor
+public class AnytimeRouteResult {
+    private RoutePlan plan;              // 预算内找到的最优方案，未找到或不可达时为null
+    private SearchOutcomeEnum outcome;
+    private double planCost;             // 方案成本，无方案时为正无穷
+    private double lowerBound;           // 最优成本的下界
+    private double optimalityGap;        // planCost - lowerBound，已证明最优时为0，无方案时为正无穷
+    private double suboptimalityBound;   // planCost / lowerBound，已证明最优时为1，下界为0时为正无穷
+    private double finalInflation;       // 结束时所在轮次的膨胀系数
+    private int iterations;              // 执行的搜索轮数（含被预算打断的一轮）
+    private long expandedStates;         // 所有轮次合计扩展的状态数
+    private long elapsedNanos;
+}
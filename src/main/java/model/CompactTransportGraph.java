@@ -0,0 +1,680 @@
+package model;
+
+import enumObject.TransportModeEnum;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 紧凑型运输网络图（CSR：压缩稀疏行存储）
+ * 构建时为每个城市分配连续的int ID，所有出边按出发城市连续存放在原始类型数组中，
+ * A*扩展时只做下标访问，不再对城市名做哈希，也不再遍历装箱的 TransportEdge 对象。
+ * 图本身不可变。新增/修改/删除单条边时（withEdgeAdded 等）返回一张新图：
+ * 只把出发城市的出边区间复制到边数组尾部的空闲槽位并修改，按城市索引的区间起止数组分页写时复制（只复制被改到的页），
+ * 已构建的反向索引同样只修补受影响的到达城市，其余数据与旧图共享，旧图上进行中的查询不受影响；尾部空间用尽时整体压实一次。
+ * 边属性以 NIO Buffer 存放：构建得到的图包装堆内数组，从二进制快照文件映射得到的图直接读取映射内存（堆外，不参与GC扫描）；
+ * 映射的图只读，首次增量修改时压实到堆内数组。
+ * 价格以分为单位的 long 定点数存放，搜索中的价格累加、比较都是精确的整数运算，只在构建 RoutePlan/RouteSegment 时还原为 BigDecimal。
+ */
+public class CompactTransportGraph {
+
+    // 1元 = 100分；启发值等以元为单位的估算值乘以该系数换算为分
+    public static final int FEN_PER_YUAN = 100;
+    // 运输方式枚举缓存，按 ordinal 还原
+    private static final TransportModeEnum[] MODES = TransportModeEnum.values();
+    // 图版本号生成器，每构建一张新图分配一个递增的版本号
+    private static final AtomicLong VERSION_SEQUENCE = new AtomicLong();
+    // 压实后边数组的最小容量
+    private static final int MIN_EDGE_CAPACITY = 16;
+    // 每张图最多保留的派生数据所有者数（规则表替换后，旧规则表的数据随之淘汰）
+    private static final int MAX_ATTACHMENTS = 4;
+    private static final Object[] NO_ATTACHMENTS = new Object[0];
+
+    // 图版本号：边发生变化即产生新版本，依赖图数据的缓存以此判断是否过期
+    private final long version;
+
+    // 城市ID → 城市名（增量修改未新增城市时与旧图共享）
+    private final String[] cityNames;
+    // 城市名 → 城市ID（仅在查询入口做一次转换；构建后不再修改，可在多张图之间共享）
+    private final Map<String, Integer> cityIdMap;
+
+    // 城市 i 的出边下标区间为 [edgeStarts[i], edgeEnds[i])
+    private final PagedIntArray edgeStarts;
+    private final PagedIntArray edgeEnds;
+    // 以下按边下标存储边属性；区间之外的槽位为空闲或已废弃，不会被访问
+    private final IntBuffer edgeTargets;    // 到达城市ID
+    private final ByteBuffer edgeModes;     // 运输方式 ordinal
+    private final IntBuffer edgeMileages;   // 里程（公里）
+    private final IntBuffer edgeTimeHours;  // 时效（小时）
+    private final LongBuffer edgePrices;    // 价格（分）
+    private final IntBuffer edgeSources;    // 出发城市ID
+    // 边数组尾部空闲槽位的分配器，共享同一组边数组的图共用一个
+    private final SlotAllocator slotAllocator;
+    // 有效边数与已废弃的槽位数
+    private final int edgeCount;
+    private final int deadSlotCount;
+    // 由哪个版本的图只修改一个城市的出边得到，以及被修改的城市（整体构建、压实得到的图为 0 / -1）
+    private final long parentVersion;
+    private final int patchedCity;
+
+    // 反向邻接索引，首次使用时构建；已构建时增量修改产生的新图沿用并修补它
+    private volatile ReverseIndex reverseIndex;
+    // 依附于本图的派生数据（所有者、数据交替存放，例如各规则表的干线邻接表），随图一起回收；写时复制
+    private volatile Object[] attachments = NO_ATTACHMENTS;
+
+    private CompactTransportGraph(String[] cityNames, Map<String, Integer> cityIdMap,
+                                  PagedIntArray edgeStarts, PagedIntArray edgeEnds,
+                                  IntBuffer edgeTargets, ByteBuffer edgeModes, IntBuffer edgeMileages, IntBuffer edgeTimeHours,
+                                  LongBuffer edgePrices, IntBuffer edgeSources, SlotAllocator slotAllocator,
+                                  int edgeCount, int deadSlotCount, long parentVersion, int patchedCity) {
+        this.version = VERSION_SEQUENCE.incrementAndGet();
+        this.cityNames = cityNames;
+        this.cityIdMap = cityIdMap;
+        this.edgeStarts = edgeStarts;
+        this.edgeEnds = edgeEnds;
+        this.edgeTargets = edgeTargets;
+        this.edgeModes = edgeModes;
+        this.edgeMileages = edgeMileages;
+        this.edgeTimeHours = edgeTimeHours;
+        this.edgePrices = edgePrices;
+        this.edgeSources = edgeSources;
+        this.slotAllocator = slotAllocator;
+        this.edgeCount = edgeCount;
+        this.deadSlotCount = deadSlotCount;
+        this.parentVersion = parentVersion;
+        this.patchedCity = patchedCity;
+    }
+
+    /**
+     * 从原始的 transportGraph 构建CSR图。
+     * 城市ID先按 cityBaseDataMap 的遍历顺序分配，再补充只出现在边上的城市；
+     * 同一出发城市的边保持原始 Map/List 的遍历顺序，保证直达路线选取与原实现一致。
+     */
+    public static CompactTransportGraph build(Map<CityPair, List<TransportEdge>> transportGraph,
+                                              Map<String, CityBaseData> cityBaseDataMap) {
+        // 1. 分配城市ID
+        Map<String, Integer> cityIdMap = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        if (cityBaseDataMap != null) {
+            for (String city : cityBaseDataMap.keySet()) {
+                assignCityId(city, cityIdMap, names);
+            }
+        }
+        int edgeCount = 0;
+        for (Map.Entry<CityPair, List<TransportEdge>> entry : transportGraph.entrySet()) {
+            assignCityId(entry.getKey().getFromCity(), cityIdMap, names);
+            for (TransportEdge edge : entry.getValue()) {
+                assignCityId(edge.getToCity(), cityIdMap, names);
+                edgeCount++;
+            }
+        }
+        int cityCount = names.size();
+
+        // 2. 统计每个城市的出度，得到行偏移
+        int[] edgeOffsets = new int[cityCount + 1];
+        for (Map.Entry<CityPair, List<TransportEdge>> entry : transportGraph.entrySet()) {
+            int from = cityIdMap.get(entry.getKey().getFromCity());
+            edgeOffsets[from + 1] += entry.getValue().size();
+        }
+        for (int i = 0; i < cityCount; i++) {
+            edgeOffsets[i + 1] += edgeOffsets[i];
+        }
+
+        // 3. 按出发城市填充边属性
+        int[] edgeTargets = new int[edgeCount];
+        byte[] edgeModes = new byte[edgeCount];
+        int[] edgeMileages = new int[edgeCount];
+        int[] edgeTimeHours = new int[edgeCount];
+        long[] edgePrices = new long[edgeCount];
+        int[] edgeSources = new int[edgeCount];
+        int[] cursor = Arrays.copyOf(edgeOffsets, cityCount);
+        for (Map.Entry<CityPair, List<TransportEdge>> entry : transportGraph.entrySet()) {
+            int from = cityIdMap.get(entry.getKey().getFromCity());
+            for (TransportEdge edge : entry.getValue()) {
+                int e = cursor[from]++;
+                edgeTargets[e] = cityIdMap.get(edge.getToCity());
+                edgeModes[e] = (byte) edge.getMode().ordinal();
+                edgeMileages[e] = edge.getMileage();
+                edgeTimeHours[e] = edge.getTimeHours();
+                edgePrices[e] = toFen(edge.getPrice());
+                edgeSources[e] = from;
+            }
+        }
+
+        return fromArrays(names.toArray(new String[0]), cityIdMap, edgeOffsets,
+                edgeTargets, edgeModes, edgeMileages, edgeTimeHours, edgePrices, edgeSources);
+    }
+
+    /**
+     * 由已分配好城市ID的边列表（列式数组）直接构建CSR图，供批量加载使用，不经过 TransportEdge 对象。
+     * 按出发城市做一次稳定的计数排序，同一出发城市的边保持在数组中的原有顺序。
+     * @param cityNames 城市ID → 城市名
+     * @param cityIdMap 城市名 → 城市ID，与 cityNames 一致
+     * @param edgeCount 有效边数，各数组只读取前 edgeCount 个元素
+     * @param prices 价格（分）
+     */
+    public static CompactTransportGraph fromEdgeArrays(String[] cityNames, Map<String, Integer> cityIdMap, int edgeCount,
+                                                       int[] sources, int[] targets, byte[] modes,
+                                                       int[] mileages, int[] timeHours, long[] prices) {
+        int cityCount = cityNames.length;
+        int[] edgeOffsets = new int[cityCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            edgeOffsets[sources[i] + 1]++;
+        }
+        for (int i = 0; i < cityCount; i++) {
+            edgeOffsets[i + 1] += edgeOffsets[i];
+        }
+
+        int[] edgeTargets = new int[edgeCount];
+        byte[] edgeModes = new byte[edgeCount];
+        int[] edgeMileages = new int[edgeCount];
+        int[] edgeTimeHours = new int[edgeCount];
+        long[] edgePrices = new long[edgeCount];
+        int[] edgeSources = new int[edgeCount];
+        int[] cursor = Arrays.copyOf(edgeOffsets, cityCount);
+        for (int i = 0; i < edgeCount; i++) {
+            int e = cursor[sources[i]]++;
+            edgeTargets[e] = targets[i];
+            edgeModes[e] = modes[i];
+            edgeMileages[e] = mileages[i];
+            edgeTimeHours[e] = timeHours[i];
+            edgePrices[e] = prices[i];
+            edgeSources[e] = sources[i];
+        }
+
+        return fromArrays(cityNames, cityIdMap, edgeOffsets,
+                edgeTargets, edgeModes, edgeMileages, edgeTimeHours, edgePrices, edgeSources);
+    }
+
+    private static CompactTransportGraph fromArrays(String[] cityNames, Map<String, Integer> cityIdMap, int[] edgeOffsets,
+                                                    int[] edgeTargets, byte[] edgeModes, int[] edgeMileages,
+                                                    int[] edgeTimeHours, long[] edgePrices, int[] edgeSources) {
+        int cityCount = cityNames.length;
+        int edgeCount = edgeTargets.length;
+        return new CompactTransportGraph(cityNames, cityIdMap,
+                PagedIntArray.copyOf(edgeOffsets, 0, cityCount), PagedIntArray.copyOf(edgeOffsets, 1, cityCount),
+                IntBuffer.wrap(edgeTargets), ByteBuffer.wrap(edgeModes), IntBuffer.wrap(edgeMileages),
+                IntBuffer.wrap(edgeTimeHours), LongBuffer.wrap(edgePrices), IntBuffer.wrap(edgeSources),
+                new SlotAllocator(edgeCount, edgeCount), edgeCount, 0, 0, -1);
+    }
+
+    /**
+     * 由按城市连续存放的边属性缓冲区直接构造图（供二进制快照文件映射加载使用，不复制边数据）
+     * 城市 i 的出边为 [edgeStarts[i], edgeEnds[i])，各区间之间没有空闲槽位；缓冲区只读时首次增量修改会压实到堆内数组。
+     * @param reverseOffsets 反向索引的区间偏移（长度为城市数+1），与 reverseEdges 同时为null时首次使用再构建
+     * @param reverseEdges 反向索引中的边下标
+     */
+    public static CompactTransportGraph fromBuffers(String[] cityNames, Map<String, Integer> cityIdMap,
+                                                    int[] edgeStarts, int[] edgeEnds,
+                                                    IntBuffer edgeTargets, ByteBuffer edgeModes, IntBuffer edgeMileages,
+                                                    IntBuffer edgeTimeHours, LongBuffer edgePrices, IntBuffer edgeSources,
+                                                    IntBuffer reverseOffsets, IntBuffer reverseEdges) {
+        int edgeCount = edgeTargets.limit();
+        CompactTransportGraph graph = new CompactTransportGraph(cityNames, cityIdMap,
+                PagedIntArray.copyOf(edgeStarts, 0, cityNames.length), PagedIntArray.copyOf(edgeEnds, 0, cityNames.length),
+                edgeTargets, edgeModes, edgeMileages, edgeTimeHours, edgePrices, edgeSources,
+                new SlotAllocator(edgeCount, edgeCount), edgeCount, 0, 0, -1);
+        if (reverseOffsets != null && reverseEdges != null) {
+            graph.reverseIndex = new ReverseIndex(reverseOffsets, reverseEdges, cityNames.length);
+        }
+        return graph;
+    }
+
+    // --- 增量修改 ---
+
+    /**
+     * 新增一条边，返回新图（出发/到达城市不存在时分配新的城市ID）
+     * @param priceFen 价格（分）
+     */
+    public CompactTransportGraph withEdgeAdded(String fromCity, String toCity, TransportModeEnum mode,
+                                               int mileage, int timeHours, long priceFen) {
+        String[] names = cityNames;
+        Map<String, Integer> idMap = cityIdMap;
+        if (!cityIdMap.containsKey(fromCity) || !cityIdMap.containsKey(toCity)) {
+            // 新城市：复制城市表（城市数远小于边数）
+            List<String> nameList = new ArrayList<>(Arrays.asList(cityNames));
+            idMap = new HashMap<>(cityIdMap);
+            assignCityId(fromCity, idMap, nameList);
+            assignCityId(toCity, idMap, nameList);
+            names = nameList.toArray(new String[0]);
+        }
+        int from = idMap.get(fromCity);
+        int start = from < cityNames.length ? edgeStarts.get(from) : 0;
+        int end = from < cityNames.length ? edgeEnds.get(from) : 0;
+        return patchCity(names, idMap, from, start, end, -1, end - start + 1,
+                idMap.get(toCity), mode, mileage, timeHours, priceFen);
+    }
+
+    /**
+     * 修改一条边的里程、时效、价格，返回新图
+     * @param edge 当前图中的边下标
+     * @param priceFen 价格（分）
+     */
+    public CompactTransportGraph withEdgeUpdated(int edge, int mileage, int timeHours, long priceFen) {
+        int from = edgeSources.get(edge);
+        return patchCity(cityNames, cityIdMap, from, edgeStarts.get(from), edgeEnds.get(from), edge,
+                edgeEnds.get(from) - edgeStarts.get(from), edgeTargets.get(edge), edgeMode(edge), mileage, timeHours, priceFen);
+    }
+
+    /**
+     * 删除一条边，返回新图
+     * @param edge 当前图中的边下标
+     */
+    public CompactTransportGraph withEdgeRemoved(int edge) {
+        int from = edgeSources.get(edge);
+        return patchCity(cityNames, cityIdMap, from, edgeStarts.get(from), edgeEnds.get(from), edge,
+                edgeEnds.get(from) - edgeStarts.get(from) - 1, -1, null, 0, 0, 0);
+    }
+
+    /**
+     * 把城市 from 的出边区间 [start, end) 复制到新分配的槽位并打补丁：
+     * replacedEdge >= 0 时该边被替换为给定属性（target < 0 表示删除），否则在区间末尾追加一条新边
+     */
+    private CompactTransportGraph patchCity(String[] names, Map<String, Integer> idMap, int from, int start, int end,
+                                            int replacedEdge, int newDegree, int target, TransportModeEnum mode,
+                                            int mileage, int timeHours, long price) {
+        int base = newDegree == 0 ? 0 : slotAllocator.allocate(newDegree);
+        if (base < 0) {
+            // 尾部空间不足：压实后在新数组上重新打补丁（压实后边下标变化，按区间内偏移换算）
+            CompactTransportGraph compacted = compact(newDegree);
+            int compactedStart = from < cityNames.length ? compacted.edgeStarts.get(from) : 0;
+            return compacted.patchCity(names, idMap, from, compactedStart, compactedStart + (end - start),
+                    replacedEdge < 0 ? -1 : compactedStart + (replacedEdge - start), newDegree,
+                    target, mode, mileage, timeHours, price);
+        }
+        int slot = base;
+        for (int e = start; e < end; e++) {
+            if (e == replacedEdge) {
+                if (target >= 0) {
+                    writeEdge(slot++, from, target, mode, mileage, timeHours, price);
+                }
+                continue;
+            }
+            edgeTargets.put(slot, edgeTargets.get(e));
+            edgeModes.put(slot, edgeModes.get(e));
+            edgeMileages.put(slot, edgeMileages.get(e));
+            edgeTimeHours.put(slot, edgeTimeHours.get(e));
+            edgePrices.put(slot, edgePrices.get(e));
+            edgeSources.put(slot, from);
+            slot++;
+        }
+        if (replacedEdge < 0) {
+            writeEdge(slot++, from, target, mode, mileage, timeHours, price);
+        }
+
+        PagedIntArray.Editor starts = edgeStarts.edit(names.length);
+        PagedIntArray.Editor ends = edgeEnds.edit(names.length);
+        starts.set(from, base);
+        ends.set(from, slot);
+        CompactTransportGraph next = new CompactTransportGraph(names, idMap, starts.build(), ends.build(),
+                edgeTargets, edgeModes, edgeMileages, edgeTimeHours, edgePrices, edgeSources, slotAllocator,
+                edgeCount + newDegree - (end - start), deadSlotCount + (end - start), version, from);
+        ReverseIndex index = reverseIndex;
+        if (index != null) {
+            next.reverseIndex = index.patched(this, next, from, start, end, base, slot);
+        }
+        return next;
+    }
+
+    private void writeEdge(int slot, int from, int target, TransportModeEnum mode, int mileage, int timeHours, long price) {
+        edgeTargets.put(slot, target);
+        edgeModes.put(slot, (byte) mode.ordinal());
+        edgeMileages.put(slot, mileage);
+        edgeTimeHours.put(slot, timeHours);
+        edgePrices.put(slot, price);
+        edgeSources.put(slot, from);
+    }
+
+    /**
+     * 把所有有效边按城市顺序复制到新的边数组，预留至少 reserve 个空闲槽位（容量翻倍，摊还后每次修改为常数次复制）
+     * 城市ID、边的相对顺序不变，但边下标会变化，因此压实得到的是一张新版本的图
+     */
+    private CompactTransportGraph compact(int reserve) {
+        int cityCount = cityNames.length;
+        int capacity = Math.max(MIN_EDGE_CAPACITY, (edgeCount + reserve) * 2);
+        int[] targets = new int[capacity];
+        byte[] modes = new byte[capacity];
+        int[] mileages = new int[capacity];
+        int[] times = new int[capacity];
+        long[] prices = new long[capacity];
+        int[] sources = new int[capacity];
+        int[] starts = new int[cityCount];
+        int[] ends = new int[cityCount];
+        int slot = 0;
+        for (int city = 0; city < cityCount; city++) {
+            int start = edgeStarts.get(city);
+            int length = edgeEnds.get(city) - start;
+            starts[city] = slot;
+            edgeTargets.get(start, targets, slot, length);
+            edgeModes.get(start, modes, slot, length);
+            edgeMileages.get(start, mileages, slot, length);
+            edgeTimeHours.get(start, times, slot, length);
+            edgePrices.get(start, prices, slot, length);
+            Arrays.fill(sources, slot, slot + length, city);
+            slot += length;
+            ends[city] = slot;
+        }
+        CompactTransportGraph compacted = new CompactTransportGraph(cityNames, cityIdMap,
+                PagedIntArray.copyOf(starts, 0, cityCount), PagedIntArray.copyOf(ends, 0, cityCount),
+                IntBuffer.wrap(targets), ByteBuffer.wrap(modes),
+                IntBuffer.wrap(mileages), IntBuffer.wrap(times), LongBuffer.wrap(prices), IntBuffer.wrap(sources),
+                new SlotAllocator(slot, capacity), slot, 0, 0, -1);
+        if (reverseIndex != null) {
+            // 边下标整体变化，反向索引随压实一起重建（同样预留空间），之后的修改继续修补它
+            compacted.reverseIndex = ReverseIndex.build(compacted, capacity);
+        }
+        return compacted;
+    }
+
+    private static void assignCityId(String city, Map<String, Integer> cityIdMap, List<String> names) {
+        if (!cityIdMap.containsKey(city)) {
+            cityIdMap.put(city, names.size());
+            names.add(city);
+        }
+    }
+
+    /**
+     * 城市名转换为城市ID
+     * @return 城市ID，不存在时返回-1
+     */
+    public int getCityId(String city) {
+        Integer id = cityIdMap.get(city);
+        return id == null ? -1 : id;
+    }
+
+    public long getVersion() { return version; }
+    public String getCityName(int cityId) { return cityNames[cityId]; }
+    public int getCityCount() { return cityNames.length; }
+    /**
+     * 有效边数（不含已废弃的槽位）
+     */
+    public int getEdgeCount() { return edgeCount; }
+    /**
+     * 边下标的上界（边数组容量），按边下标建立的辅助数组以此为长度
+     */
+    public int edgeIndexLimit() { return edgeTargets.limit(); }
+    /**
+     * 已废弃的槽位数（增量修改后等待压实）
+     */
+    public int getDeadSlotCount() { return deadSlotCount; }
+
+    /**
+     * 边属性是否存放在堆外（从二进制快照文件映射得到的图），依赖图的派生数据据此决定分配堆内还是堆外的空间
+     */
+    public boolean isDirect() { return edgeTargets.isDirect(); }
+
+    /**
+     * 本图是否由 previous 只修改一个城市的出边得到（与 previous 共用边数组，previous 的边下标在本图中仍然有效）
+     * 依赖图的派生数据（如干线邻接表）据此只修补该城市涉及的部分
+     * @return 被修改的城市ID，不是时返回-1
+     */
+    public int patchedCityOf(CompactTransportGraph previous) {
+        return previous != null && parentVersion == previous.version && slotAllocator == previous.slotAllocator
+                ? patchedCity : -1;
+    }
+
+    /**
+     * 所有者 owner 依附在本图上的派生数据，没有时返回null
+     */
+    public Object getAttachment(Object owner) {
+        Object[] entries = attachments;
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] == owner) {
+                return entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把派生数据依附在本图上，同一所有者覆盖原有数据；只保留最近写入的 MAX_ATTACHMENTS 个所有者
+     * 新旧快照的图各自持有自己的派生数据，交替查询新旧快照时不会互相淘汰
+     */
+    public synchronized void putAttachment(Object owner, Object data) {
+        Object[] entries = attachments;
+        Object[] updated = new Object[Math.min(entries.length + 2, MAX_ATTACHMENTS * 2)];
+        updated[0] = owner;
+        updated[1] = data;
+        int size = 2;
+        for (int i = 0; i < entries.length && size < updated.length; i += 2) {
+            if (entries[i] != owner) {
+                updated[size++] = entries[i];
+                updated[size++] = entries[i + 1];
+            }
+        }
+        attachments = size == updated.length ? updated : Arrays.copyOf(updated, size);
+    }
+
+    /**
+     * 两张图的城市ID分配是否完全相同（增量修改未新增城市时共享同一城市表）
+     */
+    public boolean hasSameCityIds(CompactTransportGraph other) {
+        return other != null && cityNames == other.cityNames;
+    }
+
+    // --- 邻接访问（热路径，均为数组下标访问） ---
+    public int edgeStart(int cityId) { return edgeStarts.get(cityId); }
+    public int edgeEnd(int cityId) { return edgeEnds.get(cityId); }
+    public int edgeTarget(int edge) { return edgeTargets.get(edge); }
+    public int edgeSource(int edge) { return edgeSources.get(edge); }
+    /**
+     * 城市的入边在反向索引中的区间 [inEdgeStart, inEdgeEnd)，用 inEdge 取边下标；
+     * 区间内按出发城市ID升序排列，不同城市的区间不一定相邻（增量修改后）
+     */
+    public int inEdgeStart(int cityId) { return reverseIndex().starts.get(cityId); }
+    public int inEdgeEnd(int cityId) { return reverseIndex().ends.get(cityId); }
+    public int inEdge(int index) { return reverseIndex().edges.get(index); }
+    public int edgeModeOrdinal(int edge) { return edgeModes.get(edge); }
+    public TransportModeEnum edgeMode(int edge) { return MODES[edgeModes.get(edge)]; }
+    public int edgeMileage(int edge) { return edgeMileages.get(edge); }
+    public int edgeTimeHours(int edge) { return edgeTimeHours.get(edge); }
+    /**
+     * 边价格（分）
+     */
+    public long edgePriceFen(int edge) { return edgePrices.get(edge); }
+
+    /**
+     * 将边价格还原为 BigDecimal（仅在构建 RoutePlan/RouteSegment 时调用）
+     */
+    public BigDecimal edgePriceDecimal(int edge) {
+        return toPriceDecimal(edgePrices.get(edge));
+    }
+
+    /**
+     * 元转换为分（超过两位的小数四舍五入）
+     * @throws ArithmeticException 金额超出 long 范围
+     */
+    public static long toFen(BigDecimal price) {
+        return price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * 分转换为元，去掉多余的小数位（1200000 → 12000，1250 → 12.5）
+     */
+    public static BigDecimal toPriceDecimal(long fen) {
+        BigDecimal value = BigDecimal.valueOf(fen, 2).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    /**
+     * 查找 from → to 指定运输方式的第一条边
+     * @return 边下标，不存在时返回-1
+     */
+    public int findEdge(int fromCityId, int toCityId, TransportModeEnum mode) {
+        int modeOrdinal = mode.ordinal();
+        int end = edgeEnds.get(fromCityId);
+        for (int e = edgeStarts.get(fromCityId); e < end; e++) {
+            if (edgeTargets.get(e) == toCityId && edgeModes.get(e) == modeOrdinal) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    private ReverseIndex reverseIndex() {
+        ReverseIndex index = reverseIndex;
+        if (index == null) {
+            // 并发下可能重复构建一次，结果相同
+            index = ReverseIndex.build(this, edgeCount);
+            reverseIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * 反向邻接索引：城市 i 的入边为 edges[starts[i] .. ends[i])，元素为边下标；
+     * 同一城市的入边按出发城市ID升序排列（同一出发城市内保持其出边区间内的顺序），与整体构建得到的顺序一致。
+     * 增量修改时只把受影响的到达城市的入边区间复制到 edges 尾部的空闲槽位并修改，其余区间与旧图共享；尾部空间用尽时整体压实一次。
+     */
+    private static final class ReverseIndex {
+        private final PagedIntArray starts;
+        private final PagedIntArray ends;
+        private final IntBuffer edges;
+        // edges 尾部空闲槽位的分配器，共享同一 edges 的索引共用一个
+        private final SlotAllocator slotAllocator;
+
+        private ReverseIndex(PagedIntArray starts, PagedIntArray ends, IntBuffer edges, SlotAllocator slotAllocator) {
+            this.starts = starts;
+            this.ends = ends;
+            this.edges = edges;
+            this.slotAllocator = slotAllocator;
+        }
+
+        /**
+         * 由快照文件中的区间偏移（长度为城市数+1，各区间相邻）和边下标构造，edges 只读时首次修补会先压实到堆内数组
+         */
+        private ReverseIndex(IntBuffer offsets, IntBuffer edges, int cityCount) {
+            int[] values = new int[cityCount + 1];
+            offsets.get(0, values);
+            this.starts = PagedIntArray.copyOf(values, 0, cityCount);
+            this.ends = PagedIntArray.copyOf(values, 1, cityCount);
+            this.edges = edges;
+            this.slotAllocator = new SlotAllocator(edges.limit(), edges.limit());
+        }
+
+        /**
+         * 按到达城市对全部有效边做一次计数排序
+         * @param capacity 边下标数组的容量（不小于有效边数），多出的部分留给之后的修补
+         */
+        private static ReverseIndex build(CompactTransportGraph graph, int capacity) {
+            int cityCount = graph.getCityCount();
+            int[] offsets = new int[cityCount + 1];
+            int[] edges = new int[capacity];
+            for (int city = 0; city < cityCount; city++) {
+                int end = graph.edgeEnd(city);
+                for (int e = graph.edgeStart(city); e < end; e++) {
+                    offsets[graph.edgeTargets.get(e) + 1]++;
+                }
+            }
+            for (int i = 0; i < cityCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] cursor = Arrays.copyOf(offsets, cityCount);
+            for (int city = 0; city < cityCount; city++) {
+                int end = graph.edgeEnd(city);
+                for (int e = graph.edgeStart(city); e < end; e++) {
+                    edges[cursor[graph.edgeTargets.get(e)]++] = e;
+                }
+            }
+            return new ReverseIndex(PagedIntArray.copyOf(offsets, 0, cityCount), PagedIntArray.copyOf(offsets, 1, cityCount),
+                    IntBuffer.wrap(edges), new SlotAllocator(offsets[cityCount], capacity));
+        }
+
+        /**
+         * 城市 from 的出边由旧图的 [start, end) 移到新图的 [base, slot) 之后修补索引：
+         * 只重写旧、新出边涉及的到达城市的入边区间（去掉 from 的旧出边，在原位置按顺序换成 from 的新出边），
+         * 代价与这些城市的入度之和成正比，与图的规模无关（压实时除外）
+         */
+        private ReverseIndex patched(CompactTransportGraph previous, CompactTransportGraph next, int from,
+                                     int start, int end, int base, int slot) {
+            int[] targets = new int[(end - start) + (slot - base)];
+            int targetCount = 0;
+            for (int e = start; e < end; e++) {
+                targets[targetCount++] = previous.edgeTargets.get(e);
+            }
+            for (int e = base; e < slot; e++) {
+                targets[targetCount++] = next.edgeTargets.get(e);
+            }
+            Arrays.sort(targets);
+            int distinct = 0;
+            int required = (slot - base) - (end - start);
+            for (int i = 0; i < targetCount; i++) {
+                int target = targets[i];
+                if (i > 0 && target == targets[i - 1]) {
+                    continue;
+                }
+                targets[distinct++] = target;
+                if (target < starts.length()) {
+                    required += ends.get(target) - starts.get(target);
+                }
+            }
+            int cursor = required == 0 ? 0 : slotAllocator.allocate(required);
+            if (cursor < 0) {
+                return compact(previous, required).patched(previous, next, from, start, end, base, slot);
+            }
+
+            PagedIntArray.Editor newStarts = starts.edit(next.getCityCount());
+            PagedIntArray.Editor newEnds = ends.edit(next.getCityCount());
+            for (int k = 0; k < distinct; k++) {
+                int target = targets[k];
+                newStarts.set(target, cursor);
+                boolean inserted = false;
+                if (target < starts.length()) {
+                    int listEnd = ends.get(target);
+                    for (int i = starts.get(target); i < listEnd; i++) {
+                        int edge = edges.get(i);
+                        int source = previous.edgeSources.get(edge);
+                        if (source == from) {
+                            continue;
+                        }
+                        if (!inserted && source > from) {
+                            cursor = putEdgesTo(next, target, base, slot, cursor);
+                            inserted = true;
+                        }
+                        edges.put(cursor++, edge);
+                    }
+                }
+                if (!inserted) {
+                    cursor = putEdgesTo(next, target, base, slot, cursor);
+                }
+                newEnds.set(target, cursor);
+            }
+            return new ReverseIndex(newStarts.build(), newEnds.build(), edges, slotAllocator);
+        }
+
+        /**
+         * 把 [base, slot) 中到达 target 的边按顺序写到 cursor 处，返回写完后的位置
+         */
+        private int putEdgesTo(CompactTransportGraph graph, int target, int base, int slot, int cursor) {
+            for (int e = base; e < slot; e++) {
+                if (graph.edgeTargets.get(e) == target) {
+                    edges.put(cursor++, e);
+                }
+            }
+            return cursor;
+        }
+
+        /**
+         * 把各城市的入边区间按城市顺序复制到新的数组，预留至少 reserve 个空闲槽位（容量翻倍，与边数组的压实相同）
+         */
+        private ReverseIndex compact(CompactTransportGraph graph, int reserve) {
+            int cityCount = starts.length();
+            int capacity = Math.max(MIN_EDGE_CAPACITY, (graph.edgeCount + reserve) * 2);
+            int[] compacted = new int[capacity];
+            int[] offsets = new int[cityCount + 1];
+            for (int city = 0; city < cityCount; city++) {
+                int start = starts.get(city);
+                int length = ends.get(city) - start;
+                edges.get(start, compacted, offsets[city], length);
+                offsets[city + 1] = offsets[city] + length;
+            }
+            return new ReverseIndex(PagedIntArray.copyOf(offsets, 0, cityCount), PagedIntArray.copyOf(offsets, 1, cityCount),
+                    IntBuffer.wrap(compacted), new SlotAllocator(offsets[cityCount], capacity));
+        }
+    }
+}
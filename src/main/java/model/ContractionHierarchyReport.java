@@ -0,0 +1,39 @@
+package model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 干线收缩层次的预处理报告：预处理耗时、捷径数，以及抽样查询上相对A*的加速比
+ */
+@Data
+@NoArgsConstructor
+public class ContractionHierarchyReport {
+
+    private int trunkEdgeCount;            // 层次中的原始大板车边数（平行边合并后）
+    private int timeShortcutCount;         // 时效层次的捷径数
+    private int priceShortcutCount;        // 价格层次的捷径数
+    private long timePreprocessingMillis;  // 时效层次预处理耗时（毫秒）
+    private long pricePreprocessingMillis; // 价格层次预处理耗时（毫秒）
+    private int sampledQueries;            // 测量加速比的查询数（时效、价格各算一次）
+    private double searchMicros;           // A*平均单次查询耗时（微秒）
+    private double hierarchyMicros;        // 使用层次后平均单次查询耗时（微秒，含回退到A*的查询）
+
+    /**
+     * 查询加速比（A*耗时 / 层次耗时），未测量时为0
+     */
+    public double getSpeedup() {
+        return hierarchyMicros > 0 ? searchMicros / hierarchyMicros : 0;
+    }
+
+    /**
+     * 一行文字的摘要，便于打印日志
+     */
+    public String summary() {
+        return "干线边数=" + trunkEdgeCount
+                + "，捷径数(时效/价格)=" + timeShortcutCount + "/" + priceShortcutCount
+                + "，预处理耗时(ms，时效/价格)=" + timePreprocessingMillis + "/" + pricePreprocessingMillis
+                + "，抽样查询=" + sampledQueries
+                + String.format("，平均耗时(us，A*/层次)=%.1f/%.1f，加速比=%.1f", searchMicros, hierarchyMicros, getSpeedup());
+    }
+}
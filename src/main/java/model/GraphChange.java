@@ -0,0 +1,53 @@
+package model;
+
+import enumObject.GraphChangeTypeEnum;
+import enumObject.TransportModeEnum;
+
+/**
+ * 一次单条线路的增量变更（随新快照一起发布）
+ * 依赖图数据的组件据此只让受影响的部分失效：
+ * 变更只会让路径变差时（删除线路、涨价、延长时效），未经过该线路的已有结果和已算好的下界仍然有效；
+ * 可能让路径变好时（新增线路、降价、缩短时效、缩短里程——可能回到单段里程上限之内），任何结果都可能被新路径超过。
+ */
+public final class GraphChange {
+
+    private final GraphChangeTypeEnum type;
+    private final String fromCity;
+    private final String toCity;
+    private final TransportModeEnum mode;
+    private final boolean improving;
+
+    public GraphChange(GraphChangeTypeEnum type, String fromCity, String toCity, TransportModeEnum mode, boolean improving) {
+        this.type = type;
+        this.fromCity = fromCity;
+        this.toCity = toCity;
+        this.mode = mode;
+        this.improving = improving;
+    }
+
+    public GraphChangeTypeEnum getType() { return type; }
+    public String getFromCity() { return fromCity; }
+    public String getToCity() { return toCity; }
+    public TransportModeEnum getMode() { return mode; }
+
+    /**
+     * 变更是否可能让某些路径的时效或价格变得更优
+     */
+    public boolean isImproving() { return improving; }
+
+    /**
+     * 方案是否经过被变更的线路
+     */
+    public boolean touches(RoutePlan plan) {
+        if (plan.getSegments() == null) {
+            return false;
+        }
+        for (RouteSegment segment : plan.getSegments()) {
+            if (!segment.isLastMile() && segment.getMode() == mode
+                    && fromCity.equals(segment.getFromCity()) && toCity.equals(segment.getToCity())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
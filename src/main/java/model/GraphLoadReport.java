@@ -0,0 +1,85 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量加载报告：各阶段耗时、读取/接受/拒绝的行数，以及部分被拒绝行的明细
+ */
+@Data
+@NoArgsConstructor
+public class GraphLoadReport {
+
+    // 最多保留的被拒绝行明细条数，超出部分只计数
+    public static final int MAX_REJECTED_SAMPLES = 100;
+
+    private long totalRows;     // 读取的数据行数（不含表头、空行、注释行）
+    private long acceptedRows;  // 成功加载的行数
+    private long rejectedRows;  // 格式错误被跳过的行数
+    private int cityCount;      // 图中城市数
+    private int edgeCount;      // 图中边数
+    private Map<String, Long> phaseMillis = new LinkedHashMap<>(); // 阶段名 → 耗时（毫秒），按执行顺序
+    private List<RejectedRow> rejectedSamples = new ArrayList<>();
+
+    /**
+     * 记录一个阶段的耗时
+     * @param startNanos 阶段开始时的 System.nanoTime()
+     * @return 当前 System.nanoTime()，可作为下一阶段的开始时间
+     */
+    public long recordPhase(String phase, long startNanos) {
+        long now = System.nanoTime();
+        phaseMillis.merge(phase, (now - startNanos) / 1_000_000, Long::sum);
+        return now;
+    }
+
+    /**
+     * 记录一行被拒绝的数据（明细超出上限时只计数）
+     */
+    public void reject(RejectedRow row) {
+        rejectedRows++;
+        if (rejectedSamples.size() < MAX_REJECTED_SAMPLES) {
+            rejectedSamples.add(row);
+        }
+    }
+
+    /**
+     * 一行文字的摘要，便于打印日志
+     */
+    public String summary() {
+        StringBuilder builder = new StringBuilder()
+                .append("城市数=").append(cityCount)
+                .append("，边数=").append(edgeCount)
+                .append("，数据行=").append(totalRows)
+                .append("，接受=").append(acceptedRows)
+                .append("，拒绝=").append(rejectedRows)
+                .append("，耗时(ms)：");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+            if (!first) {
+                builder.append('，');
+            }
+            builder.append(phase.getKey()).append('=').append(phase.getValue());
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 被拒绝的一行
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class RejectedRow {
+        private String file;     // 文件名
+        private long lineNumber; // 行号（从1开始）
+        private String reason;   // 拒绝原因
+        private String content;  // 原始内容（过长时截断）
+    }
+}
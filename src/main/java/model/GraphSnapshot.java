@@ -0,0 +1,233 @@
+package model;
+
+import enumObject.GraphChangeTypeEnum;
+import enumObject.TransportModeEnum;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运输网络的不可变快照：CSR图（含反向索引）、城市基础数据以及由它们派生的索引
+ * 构建时对调用方传入的Map做防御性拷贝，之后调用方再修改原Map不会影响快照。
+ * 路由器通过一个原子引用发布当前快照，每次查询开始时读取一次并在整个查询中使用它；
+ * 更新线路价格时构建新快照并整体替换，进行中的查询继续使用旧快照，新查询使用新快照，读取方无需加锁。
+ * 单条线路的增量修改（withEdgeAdded 等）只修补CSR图中受影响的区间，并在新快照上记录这次变更，
+ * 监听器据此只让依赖该线路的缓存结果、预处理数据失效。
+ */
+public final class GraphSnapshot {
+
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    private final CompactTransportGraph graph;
+    private final Map<String, CityBaseData> cityBaseDataMap;
+    // 干线边（大板车、代驾）最低价格（分）的下界，没有干线边时为 Long.MAX_VALUE
+    private final long minTrunkEdgePrice;
+    // 相对上一快照的增量变更，整体构建的快照为null
+    private final GraphChange change;
+
+    /**
+     * 由原始运输网络和城市数据构建快照
+     */
+    public static GraphSnapshot build(Map<CityPair, List<TransportEdge>> transportGraph,
+                                      Map<String, CityBaseData> cityBaseDataMap) {
+        return new GraphSnapshot(CompactTransportGraph.build(transportGraph, cityBaseDataMap), cityBaseDataMap);
+    }
+
+    /**
+     * @param graph 已构建好的CSR图（本身不可变）
+     * @param cityBaseDataMap 城市基础数据，构造时拷贝
+     */
+    public GraphSnapshot(CompactTransportGraph graph, Map<String, CityBaseData> cityBaseDataMap) {
+        this(graph, cityBaseDataMap, computeMinTrunkEdgePrice(graph));
+    }
+
+    /**
+     * 使用预先算好的干线最低价格构造快照（例如从二进制快照文件加载时，避免扫描全部边）
+     * @param minTrunkEdgePrice 干线边最低价格（分，或其下界），没有干线边时为 Long.MAX_VALUE
+     */
+    public GraphSnapshot(CompactTransportGraph graph, Map<String, CityBaseData> cityBaseDataMap, long minTrunkEdgePrice) {
+        this.graph = graph;
+        Map<String, CityBaseData> cities = new LinkedHashMap<>();
+        for (Map.Entry<String, CityBaseData> entry : cityBaseDataMap.entrySet()) {
+            CityBaseData city = entry.getValue();
+            cities.put(entry.getKey(), new CityBaseData(city.getFromCity(), city.getToCity(), city.getFromLat(),
+                    city.getFromLng(), city.getToLat(), city.getToLng(), city.getMileage()));
+        }
+        this.cityBaseDataMap = Collections.unmodifiableMap(cities);
+        this.minTrunkEdgePrice = minTrunkEdgePrice;
+        this.change = null;
+    }
+
+    private static long computeMinTrunkEdgePrice(CompactTransportGraph graph) {
+        long minPrice = Long.MAX_VALUE;
+        for (int city = 0; city < graph.getCityCount(); city++) {
+            for (int edge = graph.edgeStart(city); edge < graph.edgeEnd(city); edge++) {
+                if (isTrunkMode(graph.edgeMode(edge))) {
+                    minPrice = Math.min(minPrice, graph.edgePriceFen(edge));
+                }
+            }
+        }
+        return minPrice;
+    }
+
+    private GraphSnapshot(GraphSnapshot previous, CompactTransportGraph graph, long minTrunkEdgePrice, GraphChange change) {
+        this.graph = graph;
+        this.cityBaseDataMap = previous.cityBaseDataMap;
+        this.minTrunkEdgePrice = minTrunkEdgePrice;
+        this.change = change;
+    }
+
+    /**
+     * 新增一条线路，返回新快照
+     */
+    public GraphSnapshot withEdgeAdded(TransportEdge edge) {
+        long price = CompactTransportGraph.toFen(edge.getPrice());
+        CompactTransportGraph next = graph.withEdgeAdded(edge.getFromCity(), edge.getToCity(), edge.getMode(),
+                edge.getMileage(), edge.getTimeHours(), price);
+        return new GraphSnapshot(this, next, lowerMinTrunkEdgePrice(edge.getMode(), price),
+                new GraphChange(GraphChangeTypeEnum.ADD, edge.getFromCity(), edge.getToCity(), edge.getMode(), true));
+    }
+
+    /**
+     * 修改一条线路的里程、时效、价格（按 出发城市、到达城市、运输方式 定位），返回新快照
+     * @throws IllegalArgumentException 线路不存在，或同一线路有多条平行边（此时用 withEdgeUpdated(current, updated) 指明修改哪一条）
+     */
+    public GraphSnapshot withEdgeUpdated(TransportEdge edge) {
+        return withEdgeUpdated(requireEdge(edge.getFromCity(), edge.getToCity(), edge.getMode(), null), edge);
+    }
+
+    /**
+     * 修改同一线路上的指定一条边（多家承运商的平行边按当前的里程、时效、价格区分），返回新快照
+     * @param current 要修改的边的当前数据
+     * @param updated 修改后的数据，出发城市、到达城市、运输方式须与 current 相同
+     * @throws IllegalArgumentException 线路不同，或没有与 current 完全匹配的边
+     */
+    public GraphSnapshot withEdgeUpdated(TransportEdge current, TransportEdge updated) {
+        if (!current.getFromCity().equals(updated.getFromCity()) || !current.getToCity().equals(updated.getToCity())
+                || current.getMode() != updated.getMode()) {
+            throw new IllegalArgumentException("updated edge must stay on the same lane: " + current.getFromCity() + " -> "
+                    + current.getToCity() + " " + current.getMode());
+        }
+        return withEdgeUpdated(requireEdge(current.getFromCity(), current.getToCity(), current.getMode(), current), updated);
+    }
+
+    private GraphSnapshot withEdgeUpdated(int edgeIndex, TransportEdge edge) {
+        long price = CompactTransportGraph.toFen(edge.getPrice());
+        // 里程缩短可能让原先超过单段里程上限（代驾距离、板车单段里程）的边变为可用，同样视为改善
+        boolean improving = edge.getTimeHours() < graph.edgeTimeHours(edgeIndex) || price < graph.edgePriceFen(edgeIndex)
+                || edge.getMileage() < graph.edgeMileage(edgeIndex);
+        CompactTransportGraph next = graph.withEdgeUpdated(edgeIndex, edge.getMileage(), edge.getTimeHours(), price);
+        return new GraphSnapshot(this, next, lowerMinTrunkEdgePrice(edge.getMode(), price),
+                new GraphChange(GraphChangeTypeEnum.UPDATE, edge.getFromCity(), edge.getToCity(), edge.getMode(), improving));
+    }
+
+    /**
+     * 删除一条线路，返回新快照
+     * @throws IllegalArgumentException 线路不存在，或同一线路有多条平行边（此时用 withEdgeRemoved(edge) 指明删除哪一条）
+     */
+    public GraphSnapshot withEdgeRemoved(String fromCity, String toCity, TransportModeEnum mode) {
+        return withEdgeRemoved(requireEdge(fromCity, toCity, mode, null), fromCity, toCity, mode);
+    }
+
+    /**
+     * 删除与 edge 的里程、时效、价格完全匹配的一条边（用于区分同一线路上多家承运商的平行边），返回新快照
+     * @throws IllegalArgumentException 没有完全匹配的边
+     */
+    public GraphSnapshot withEdgeRemoved(TransportEdge edge) {
+        return withEdgeRemoved(requireEdge(edge.getFromCity(), edge.getToCity(), edge.getMode(), edge),
+                edge.getFromCity(), edge.getToCity(), edge.getMode());
+    }
+
+    private GraphSnapshot withEdgeRemoved(int edgeIndex, String fromCity, String toCity, TransportModeEnum mode) {
+        CompactTransportGraph next = graph.withEdgeRemoved(edgeIndex);
+        // 删除只会让路径变差，原最低价格仍是下界
+        return new GraphSnapshot(this, next, minTrunkEdgePrice,
+                new GraphChange(GraphChangeTypeEnum.REMOVE, fromCity, toCity, mode, false));
+    }
+
+    /**
+     * 定位一条边：attributes 为null时要求该线路只有一条边，否则按里程、时效、价格匹配
+     * （数据完全相同的平行边可以互换，取第一条）
+     */
+    private int requireEdge(String fromCity, String toCity, TransportModeEnum mode, TransportEdge attributes) {
+        int fromCityId = graph.getCityId(fromCity);
+        int toCityId = graph.getCityId(toCity);
+        int found = -1;
+        int parallelCount = 0;
+        if (fromCityId >= 0 && toCityId >= 0) {
+            long price = attributes == null ? 0 : CompactTransportGraph.toFen(attributes.getPrice());
+            for (int edge = graph.edgeStart(fromCityId); edge < graph.edgeEnd(fromCityId); edge++) {
+                if (graph.edgeTarget(edge) != toCityId || graph.edgeMode(edge) != mode) {
+                    continue;
+                }
+                parallelCount++;
+                if (found < 0 && (attributes == null || (graph.edgeMileage(edge) == attributes.getMileage()
+                        && graph.edgeTimeHours(edge) == attributes.getTimeHours() && graph.edgePriceFen(edge) == price))) {
+                    found = edge;
+                }
+            }
+        }
+        if (found < 0) {
+            throw new IllegalArgumentException("no such edge: " + fromCity + " -> " + toCity + " " + mode
+                    + (attributes == null ? "" : " matching " + attributes.getMileage() + "km, "
+                    + attributes.getTimeHours() + "h, " + attributes.getPrice()));
+        }
+        if (attributes == null && parallelCount > 1) {
+            throw new IllegalArgumentException("ambiguous edge: " + fromCity + " -> " + toCity + " " + mode + " has "
+                    + parallelCount + " parallel edges, identify one by its current mileage, time and price");
+        }
+        return found;
+    }
+
+    /**
+     * 增量修改后的最低干线价格下界：新价格更低时取新价格，否则保留原值（涨价、删除后原值仍是下界，无需全量扫描）
+     */
+    private long lowerMinTrunkEdgePrice(TransportModeEnum mode, long price) {
+        return isTrunkMode(mode) ? Math.min(minTrunkEdgePrice, price) : minTrunkEdgePrice;
+    }
+
+    private static boolean isTrunkMode(TransportModeEnum mode) {
+        return mode == TransportModeEnum.BIG_TRUCK || mode == TransportModeEnum.DRIVER;
+    }
+
+    public CompactTransportGraph getGraph() { return graph; }
+
+    /**
+     * 快照版本号（即CSR图的版本号）
+     */
+    public long getVersion() { return graph.getVersion(); }
+
+    /**
+     * 城市基础数据（只读视图，元素为快照私有的拷贝，调用方不应修改）
+     */
+    public Map<String, CityBaseData> getCityBaseDataMap() { return cityBaseDataMap; }
+
+    /**
+     * 干线边（大板车、代驾）最低价格（分）的下界：整体构建时为精确值，增量修改后只会偏低
+     */
+    public long getMinTrunkEdgePrice() { return minTrunkEdgePrice; }
+
+    /**
+     * 两个城市之间的地球表面直线距离（公里，Haversine公式），任一城市缺少基础数据时返回-1
+     */
+    public double straightLineDistanceKm(String cityA, String cityB) {
+        CityBaseData a = cityBaseDataMap.get(cityA);
+        CityBaseData b = cityBaseDataMap.get(cityB);
+        if (a == null || b == null) {
+            return -1.0;
+        }
+        double latDistance = Math.toRadians(b.getFromLat() - a.getFromLat());
+        double lonDistance = Math.toRadians(b.getFromLng() - a.getFromLng());
+        double h = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(a.getFromLat())) * Math.cos(Math.toRadians(b.getFromLat()))
+                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+
+    /**
+     * 相对上一快照的增量变更，整体构建的快照返回null
+     */
+    public GraphChange getChange() { return change; }
+}
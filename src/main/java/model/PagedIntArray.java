@@ -0,0 +1,103 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * 分页存放的不可变 int 数组（写时复制）
+ * 元素按固定大小分页，读取为两次数组下标访问；修改时只复制页表和被写到的页，其余页与旧数组共享。
+ * 用于按城市索引、随增量修改逐版本变化的区间起止数组：单条边的修改只改动少数城市，
+ * 派生新数组的代价为 O(城市数 / 页大小 + 页大小)，而不是复制整个数组。
+ */
+public final class PagedIntArray {
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int[][] pages;
+    private final int length;
+
+    private PagedIntArray(int[][] pages, int length) {
+        this.pages = pages;
+        this.length = length;
+    }
+
+    /**
+     * 复制 values[offset, offset + length) 得到分页数组
+     */
+    public static PagedIntArray copyOf(int[] values, int offset, int length) {
+        int[][] pages = new int[pageCount(length)][];
+        for (int page = 0; page < pages.length; page++) {
+            int from = offset + (page << PAGE_SHIFT);
+            pages[page] = Arrays.copyOfRange(values, from, from + PAGE_SIZE);
+            if (page == pages.length - 1) {
+                // 最后一页超出 length 的部分保持为0（copyOfRange 可能读到 values 中其后的元素）
+                Arrays.fill(pages[page], length - (page << PAGE_SHIFT), PAGE_SIZE, 0);
+            }
+        }
+        return new PagedIntArray(pages, length);
+    }
+
+    public int get(int index) {
+        return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 基于本数组开始一次修改，新增的元素为0
+     * @param newLength 修改后的长度，不小于当前长度
+     */
+    public Editor edit(int newLength) {
+        return new Editor(this, newLength);
+    }
+
+    private static int pageCount(int length) {
+        return (length + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * 一次修改：第一次写某一页时复制该页，build 之后不应再使用
+     */
+    public static final class Editor {
+        private final int[][] pages;
+        // 本次修改中已复制（私有）的页
+        private final boolean[] owned;
+        private final int length;
+
+        private Editor(PagedIntArray source, int length) {
+            if (length < source.length) {
+                throw new IllegalArgumentException("length " + length + " < " + source.length);
+            }
+            this.pages = Arrays.copyOf(source.pages, pageCount(length));
+            this.owned = new boolean[pages.length];
+            for (int page = source.pages.length; page < pages.length; page++) {
+                pages[page] = new int[PAGE_SIZE];
+                owned[page] = true;
+            }
+            this.length = length;
+        }
+
+        public int get(int index) {
+            return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+        }
+
+        public void set(int index, int value) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            int page = index >>> PAGE_SHIFT;
+            if (!owned[page]) {
+                pages[page] = pages[page].clone();
+                owned[page] = true;
+            }
+            pages[page][index & PAGE_MASK] = value;
+        }
+
+        public PagedIntArray build() {
+            return new PagedIntArray(pages, length);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 起讫点（OD）时效/价格矩阵
+ * 矩阵按行优先存放在一维原始类型数组中：下标 = 起点序号 * 城市数 + 终点序号，
+ * 3000 个城市的矩阵约占 9M 个 int + 9M 个 long；价格以分为单位，与搜索中的精确整数价格一致。
+ */
+public class RouteMatrix {
+
+    // 不可达时的时效
+    public static final int UNREACHABLE_TIME = -1;
+    // 不可达时的价格
+    public static final long UNREACHABLE_PRICE = Long.MAX_VALUE;
+
+    private final List<String> cities;
+    private final boolean needSameCityPick;
+    private final boolean needSameCityDeliver;
+    private final int[] times;      // 最短总时效（小时），不可达为 UNREACHABLE_TIME
+    private final long[] prices;    // 最低总价格（分），不可达为 UNREACHABLE_PRICE
+
+    public RouteMatrix(List<String> cities, boolean needSameCityPick, boolean needSameCityDeliver) {
+        this(cities, needSameCityPick, needSameCityDeliver,
+                new int[cities.size() * cities.size()], new long[cities.size() * cities.size()]);
+        Arrays.fill(times, UNREACHABLE_TIME);
+        Arrays.fill(prices, UNREACHABLE_PRICE);
+    }
+
+    public RouteMatrix(List<String> cities, boolean needSameCityPick, boolean needSameCityDeliver,
+                       int[] times, long[] prices) {
+        if (times.length != cities.size() * cities.size() || prices.length != times.length) {
+            throw new IllegalArgumentException("matrix size does not match city count " + cities.size());
+        }
+        this.cities = Collections.unmodifiableList(cities);
+        this.needSameCityPick = needSameCityPick;
+        this.needSameCityDeliver = needSameCityDeliver;
+        this.times = times;
+        this.prices = prices;
+    }
+
+    public int size() { return cities.size(); }
+    public List<String> getCities() { return cities; }
+    public String getCity(int index) { return cities.get(index); }
+    public boolean isNeedSameCityPick() { return needSameCityPick; }
+    public boolean isNeedSameCityDeliver() { return needSameCityDeliver; }
+
+    public int getTime(int from, int to) { return times[from * cities.size() + to]; }
+    /**
+     * 最低总价格（分）
+     */
+    public long getPrice(int from, int to) { return prices[from * cities.size() + to]; }
+    public boolean isReachable(int from, int to) { return times[from * cities.size() + to] != UNREACHABLE_TIME; }
+
+    /**
+     * 写入一整行（起点序号为 from 的所有终点）
+     */
+    public void setRow(int from, int[] rowTimes, long[] rowPrices) {
+        System.arraycopy(rowTimes, 0, times, from * cities.size(), cities.size());
+        System.arraycopy(rowPrices, 0, prices, from * cities.size(), cities.size());
+    }
+
+    /**
+     * 底层时效数组（行优先），供导出使用
+     */
+    public int[] rawTimes() { return times; }
+
+    /**
+     * 底层价格数组（行优先），供导出使用
+     */
+    public long[] rawPrices() { return prices; }
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Data
@@ -26,4 +27,9 @@ public class RoutePlan {
 
     private TransportModeEnum firstMainMode;
     private TransportModeEnum lastMainMode;
+
+    private LocalDateTime departureTime; // 按时刻表规划时的出发时刻，其他方案为null
+    private LocalDateTime arrivalTime;   // 按时刻表规划时的最早到达时刻（总时效含候船/候车时间），其他方案为null
+
+    private double suboptimalityBound = 1; // 保证的次优上界：方案成本不超过该倍数 × 最优成本（帕累托方案按各自的优化目标），精确搜索为1
 }
\ No newline at end of file
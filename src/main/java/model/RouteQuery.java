@@ -14,4 +14,7 @@ public class RouteQuery {
     private boolean needSameCityPick;
     private boolean needSameCityDeliver;
     private OptimizeTargetEnum optimizeTarget;
+    // 允许的次优程度ε（用于批量/参考报价），以少扩展状态：单目标搜索（findBestRoute）保证方案成本不超过 (1+ε) × 最优成本，
+    // 双目标帕累托搜索（planRoute、planRoutes）按 ε-支配剪枝，时效最优、价格最优方案各自不超过 (1+ε) × 最优值；0为精确搜索
+    private double suboptimality;
 }
\ No newline at end of file
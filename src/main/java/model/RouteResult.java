@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -14,4 +16,8 @@ public class RouteResult {
     private RoutePlan shipPlan ;
     private RoutePlan railPlan ;
     private RoutePlan smallTruckPlan ;
+    private RoutePlan driverPlan; // 代驾直达
+
+    // 时效-价格帕累托前沿（按时效升序），首尾分别为时效最优与价格最优方案
+    private List<RoutePlan> paretoPlans;
 }
\ No newline at end of file
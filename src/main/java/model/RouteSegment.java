@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Data
 @AllArgsConstructor
@@ -19,5 +20,7 @@ public class RouteSegment {
     private int timeHours;
     private BigDecimal price;
     private boolean isLastMile; // 新增：是否为末端服务（同城提车/送车）
+    private LocalDateTime departureTime; // 按时刻表规划时的出发时刻，其他方案为null
+    private LocalDateTime arrivalTime;   // 按时刻表规划时的到达时刻，其他方案为null
 
 }
\ No newline at end of file
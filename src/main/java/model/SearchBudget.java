@@ -0,0 +1,22 @@
+package model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * 单次查询的搜索预算与任意时间（anytime）搜索参数
+ * 膨胀系数大于1时先用加权A*（估值 = g + 系数 × h）快速找到一个可行方案，之后每轮按步长降低系数重新搜索，
+ * 只保留比当前方案更优的路径，直到系数降到1（即普通A*）证明最优或预算耗尽。
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchBudget {
+    private Duration timeLimit;            // 墙钟时限，为null表示不限时
+    private long maxExpansions;            // 最多扩展的状态数（所有轮次合计），0表示不限
+    private double initialInflation = 2.5; // 首轮启发值膨胀系数（不小于1，为1时不做加权，即带预算的普通A*）
+    private double inflationStep = 0.5;    // 每轮降低的膨胀系数，最后一轮固定为1
+}
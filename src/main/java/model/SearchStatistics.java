@@ -0,0 +1,36 @@
+package model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一次路由搜索的工作量统计，用于定位慢查询的原因（open set 膨胀、启发值过弱、稠密枢纽等）
+ * A*的 open set 为支持 decrease-key 的索引堆，堆中不存在陈旧元素，staleSkipped 恒为0，对应的是 updatedStates；
+ * 双目标标签搜索的陈旧元素是入堆后被同桶新标签支配的标签，出堆时跳过。
+ * 双向搜索为两个方向之和（峰值也相加，即两个 open set 同时占用的上界）。
+ */
+@Data
+@NoArgsConstructor
+public class SearchStatistics {
+
+    private long expandedStates;         // 出堆（扩展）的状态/标签数
+    private long pushedStates;           // 新入堆的状态/标签数（含重新打开的已关闭状态）
+    private long updatedStates;          // 已在堆中、找到更优路径后前移（decrease-key）的次数
+    private long staleSkipped;           // 出堆后发现已失效而跳过的标签数
+    private int peakOpenSetSize;         // open set 的峰值大小
+    private long heuristicEvaluations;   // 启发值读取次数（预估值数组或缓存）
+    private long heuristicCalculations;  // 调用启发式计算器逐个计算的次数（计算器不支持批量预估时）
+
+    /**
+     * 累加另一份统计
+     */
+    public void add(SearchStatistics other) {
+        expandedStates += other.expandedStates;
+        pushedStates += other.pushedStates;
+        updatedStates += other.updatedStates;
+        staleSkipped += other.staleSkipped;
+        peakOpenSetSize += other.peakOpenSetSize;
+        heuristicEvaluations += other.heuristicEvaluations;
+        heuristicCalculations += other.heuristicCalculations;
+    }
+}
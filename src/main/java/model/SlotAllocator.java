@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * 数组尾部空闲位置的分配器
+ * 增量修改时把改动的区间复制到共享数组尾部新分配的位置，旧版本仍在读取的位置不被覆盖；
+ * 同一组数组上可能派生出多个版本（例如基于同一旧图的两次修改），分配加锁保证它们写入的位置互不重叠。
+ */
+public final class SlotAllocator {
+    private final int capacity;
+    private int used;
+
+    /**
+     * @param used 已使用的位置数
+     * @param capacity 数组容量
+     */
+    public SlotAllocator(int used, int capacity) {
+        this.used = used;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return 分配到的起始位置，空间不足时返回-1
+     */
+    public synchronized int allocate(int count) {
+        if (capacity - used < count) {
+            return -1;
+        }
+        int base = used;
+        used += count;
+        return base;
+    }
+}
@@ -0,0 +1,27 @@
+package model;
+
+import enumObject.TransportModeEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 时刻表中的一个区间班次（海运船期、铁路车次相邻两站之间的一段）
+ * 同一航次/车次的各区间使用相同的 tripId，乘客留在同一班次上换站不需要换乘时间。
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimetableConnection {
+    private String tripId;               // 航次/车次编号
+    private String fromCity;
+    private String toCity;
+    private TransportModeEnum mode;      // SHIP / RAIL
+    private LocalDateTime departureTime; // 出发时刻
+    private LocalDateTime arrivalTime;   // 到达时刻
+    private int mileage;
+    private BigDecimal price;
+}
@@ -0,0 +1,17 @@
+package service;
+
+import model.GraphSnapshot;
+
+/**
+ * 运输网络变更监听器
+ * 路由器发布新的快照之后回调，依赖图数据的组件（地标启发式、结果缓存等）据此重建或失效。
+ * 回调在发布快照的线程上执行，不阻塞查询线程；回调完成前到达的查询可能已经在使用新快照。
+ */
+public interface GraphChangeListener {
+
+    /**
+     * @param previous 被替换的快照
+     * @param current 新发布的快照
+     */
+    void onGraphChanged(GraphSnapshot previous, GraphSnapshot current);
+}
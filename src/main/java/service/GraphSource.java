@@ -0,0 +1,20 @@
+package service;
+
+import model.GraphLoadReport;
+import model.GraphSnapshot;
+
+import java.io.IOException;
+
+/**
+ * 运输网络批量数据源
+ * 与按城市对逐条查询的 DataLoader 不同，一次性读取全部城市与线路并直接构建运输网络快照，用于启动和全量刷新。
+ */
+public interface GraphSource {
+
+    /**
+     * 加载全部城市与线路
+     * @param report 加载报告，由实现填写各阶段耗时、行数和被拒绝的行；可为null
+     * @return 新构建的快照
+     */
+    GraphSnapshot loadAll(GraphLoadReport report) throws IOException;
+}
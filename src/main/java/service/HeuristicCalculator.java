@@ -3,6 +3,7 @@ package service;
 
 import config.TransportRuleConfig;
 import enumObject.OptimizeTargetEnum;
+import model.CompactTransportGraph;
 
 /**
  * 启发函数接口（A*算法核心：预估剩余成本）
@@ -17,4 +18,32 @@ public interface HeuristicCalculator {
      * @return 预估成本（时效→小时，价格→元）
      */
     double calculate(String currentCity, String targetCity, OptimizeTargetEnum target);
-}
\ No newline at end of file
+
+    /**
+     * 计算预估剩余成本（当前城市以图中的城市ID给出）
+     * 依赖图数据的实现应在 graph 不是自己预处理时所用的图时返回可采纳的值（例如0），
+     * 以保证图被替换前后进行中的查询仍然得到最优解。
+     * @param graph 调用方正在搜索的CSR运输网络图
+     * @param cityId 当前城市在 graph 中的ID
+     * @param targetCity 目标城市
+     * @param target 优化目标（时效/价格）
+     *
+     * @return 预估成本（时效→小时，价格→元）
+     */
+    default double calculate(CompactTransportGraph graph, int cityId, String targetCity, OptimizeTargetEnum target) {
+        return calculate(graph.getCityName(cityId), targetCity, target);
+    }
+
+    /**
+     * 批量获取图中所有城市到目标城市的预估成本（可选能力）
+     * 返回的数组按 graph 的城市ID索引，搜索时每次入堆只需一次数组读取；调用方不得修改该数组。
+     * @param graph CSR运输网络图
+     * @param targetCity 目标城市
+     * @param target 优化目标（时效/价格）
+     *
+     * @return 预估成本数组；返回null表示不支持，调用方将逐个调用 calculate
+     */
+    default double[] heuristicTable(CompactTransportGraph graph, String targetCity, OptimizeTargetEnum target) {
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package service;
+
+import enumObject.OptimizeTargetEnum;
+import model.SearchStatistics;
+
+/**
+ * 路由搜索指标的接收方（可选）
+ * 路由器未设置接收方时，搜索只在工作区中累加几个整数计数，不计时、不创建统计对象，开销可以忽略；
+ * 设置后每次搜索结束回调一次。回调在查询线程上同步执行，实现必须线程安全且足够轻量。
+ */
+public interface SearchMetrics {
+
+    /**
+     * 一次干线搜索结束（单目标A*、双向A*，或 planRoute 使用的双目标标签搜索）
+     * @param target 优化目标，双目标搜索为null
+     * @param statistics 本次搜索的工作量统计
+     */
+    void recordSearch(OptimizeTargetEnum target, SearchStatistics statistics);
+
+    /**
+     * 一次 findBestRoute 的耗时（含收缩层次查询、回退到A*）
+     * @param found 是否找到方案
+     */
+    void recordBestRoute(OptimizeTargetEnum target, long elapsedNanos, boolean found);
+
+    /**
+     * 收缩层次得到的路径不满足分段/运输方式规则而被拒绝，回退到A*
+     */
+    void recordHierarchyFallback(OptimizeTargetEnum target);
+
+    /**
+     * 一次 planRoute 的耗时（含缓存命中）
+     * @param planCount 返回的方案数
+     */
+    void recordPlanRoute(long elapsedNanos, int planCount);
+}
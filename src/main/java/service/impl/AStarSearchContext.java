@@ -0,0 +1,245 @@
+package service.impl;
+
+import model.SearchStatistics;
+
+import java.util.Arrays;
+
+/**
+ * A*搜索的可复用工作区
+ * 搜索状态 (城市, 已走分段数, 上一运输方式, 当前运输方式) 被编码为一个int下标，
+ * gScore、前驱指针等全部存放在按状态下标访问的原始类型数组中；gScore 为整数成本（时效→小时，价格→分）。
+ * 通过"代数戳"区分本次查询写入的数据，查询之间无需清空数组，稳态下不产生对象分配（未注册搜索指标时）。
+ * 工作区放在共享池（SearchContextPool，借用/归还不分配对象）中按查询借用/归还，而不是绑定到线程：
+ * 虚拟线程每个任务一个线程，绑定到线程会让每次查询都重新分配整套数组。
+ */
+public class AStarSearchContext {
+
+    // 空闲工作区池，容量等于曾经同时进行的最大查询数
+    private static final SearchContextPool<AStarSearchContext> POOL = new SearchContextPool<>();
+
+    // 状态已关闭（已扩展）的标记，存放在 stateFlags 中
+    private static final byte CLOSED = 1;
+
+    // 当前查询的代数，stateStamp/heuristicStamp 等于该值时数据才有效
+    private int generation;
+
+    // --- 按状态下标索引 ---
+    private int[] stateStamp = new int[0];
+    private long[] gScores = new long[0];
+    private int[] parentStates = new int[0];
+    private int[] parentEdges = new int[0];
+    private byte[] stateFlags = new byte[0];
+
+    // --- 按城市ID索引：启发值在单次查询内只与城市有关，缓存后每次入堆只需一次数组读取 ---
+    private int[] heuristicStamp = new int[0];
+    private double[] heuristicValues = new double[0];
+    // 本次查询中该城市是否有状态被访问过（双向搜索只在对方也到过的城市上做相遇检查）
+    private int[] cityStamp = new int[0];
+
+    // open set：以状态下标为元素的索引堆，支持 decrease-key
+    private final IndexedMinHeap openSet = new IndexedMinHeap(0);
+
+    // 回溯路径用的边下标缓冲区
+    private int[] pathBuffer = new int[16];
+    // 按城市ID索引的分段下界（到终点至少还需几段）及其广度优先遍历队列，由路由器按需填充
+    private int[] segmentBounds = new int[0];
+    private int[] cityQueue = new int[0];
+
+    // --- 本次查询的工作量计数（只做整数自增，是否上报由路由器决定） ---
+    private long expandedCount;
+    private long pushedCount;
+    private long updatedCount;
+    private int peakOpenSize;
+    private long heuristicEvaluationCount;
+    private long heuristicCalculationCount;
+
+    /**
+     * 从池中借用一个工作区，并为一次新的查询做好准备；查询结束后必须调用 release 归还
+     * @param stateCount 状态总数
+     * @param cityCount 城市总数
+     */
+    public static AStarSearchContext acquire(int stateCount, int cityCount) {
+        AStarSearchContext context = POOL.poll();
+        if (context == null) {
+            context = new AStarSearchContext();
+        }
+        context.prepare(stateCount, cityCount);
+        return context;
+    }
+
+    /**
+     * 归还工作区，之后不得再访问
+     */
+    public void release() {
+        POOL.offer(this);
+    }
+
+    private void prepare(int stateCount, int cityCount) {
+        if (stateStamp.length < stateCount) {
+            stateStamp = Arrays.copyOf(stateStamp, stateCount);
+            gScores = Arrays.copyOf(gScores, stateCount);
+            parentStates = Arrays.copyOf(parentStates, stateCount);
+            parentEdges = Arrays.copyOf(parentEdges, stateCount);
+            stateFlags = Arrays.copyOf(stateFlags, stateCount);
+            openSet.ensureCapacity(stateCount);
+        }
+        if (heuristicStamp.length < cityCount) {
+            heuristicStamp = Arrays.copyOf(heuristicStamp, cityCount);
+            heuristicValues = Arrays.copyOf(heuristicValues, cityCount);
+            cityStamp = Arrays.copyOf(cityStamp, cityCount);
+        }
+        expandedCount = 0;
+        pushedCount = 0;
+        updatedCount = 0;
+        peakOpenSize = 0;
+        heuristicEvaluationCount = 0;
+        heuristicCalculationCount = 0;
+        restart();
+    }
+
+    /**
+     * 在同一查询内重新开始一轮搜索（清空 open set 与状态表），保留工作量计数
+     * 用于逐轮降低膨胀系数的任意时间搜索
+     */
+    public void restart() {
+        openSet.clear();
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            // 代数溢出时整体重置一次
+            Arrays.fill(stateStamp, 0);
+            Arrays.fill(heuristicStamp, 0);
+            Arrays.fill(cityStamp, 0);
+            generation = 1;
+        }
+    }
+
+    // --- 状态表 ---
+
+    /**
+     * 状态在本次查询中是否已被访问（写入过gScore）
+     */
+    public boolean isVisited(int state) {
+        return stateStamp[state] == generation;
+    }
+
+    /**
+     * 状态的gScore，本次查询未访问时为 Long.MAX_VALUE
+     */
+    public long getGScore(int state) {
+        return isVisited(state) ? gScores[state] : Long.MAX_VALUE;
+    }
+
+    public boolean isClosed(int state) {
+        return isVisited(state) && stateFlags[state] == CLOSED;
+    }
+
+    public void close(int state) {
+        stateFlags[state] = CLOSED;
+    }
+
+    public int getParentState(int state) { return parentStates[state]; }
+    public int getParentEdge(int state) { return parentEdges[state]; }
+
+    /**
+     * 记录到达某状态的更优路径，并将其加入（或在 open set 中前移）
+     * 已关闭的状态若找到更优路径会被重新打开，与原实现的语义保持一致
+     */
+    public void open(int state, long gScore, double fScore, int parentState, int parentEdge) {
+        if (openSet.contains(state)) {
+            updatedCount++;
+        } else {
+            pushedCount++;
+        }
+        stateStamp[state] = generation;
+        gScores[state] = gScore;
+        parentStates[state] = parentState;
+        parentEdges[state] = parentEdge;
+        stateFlags[state] = 0;
+        openSet.insertOrUpdate(state, fScore);
+        if (openSet.size() > peakOpenSize) {
+            peakOpenSize = openSet.size();
+        }
+    }
+
+    public boolean hasOpenStates() { return !openSet.isEmpty(); }
+    public int pollOpenState() {
+        expandedCount++;
+        return openSet.poll();
+    }
+    public int openSetSize() { return openSet.size(); }
+    // open set 中第 index 个状态（堆数组顺序，index 取 [0, openSetSize())），用于遍历计算下界
+    public int openStateAt(int index) { return openSet.itemAt(index); }
+    public double peekOpenKey() { return openSet.peekKey(); }
+
+    // --- 城市访问标记 ---
+
+    public void markCityVisited(int cityId) {
+        cityStamp[cityId] = generation;
+    }
+
+    public boolean isCityVisited(int cityId) {
+        return cityStamp[cityId] == generation;
+    }
+
+    // --- 启发值缓存 ---
+
+    public boolean hasHeuristic(int cityId) {
+        return heuristicStamp[cityId] == generation;
+    }
+
+    public double getHeuristic(int cityId) {
+        return heuristicValues[cityId];
+    }
+
+    /**
+     * 记录一次启发值读取；calculated 表示调用了启发式计算器逐个计算
+     */
+    public void countHeuristic(boolean calculated) {
+        heuristicEvaluationCount++;
+        if (calculated) {
+            heuristicCalculationCount++;
+        }
+    }
+
+    /**
+     * 把本次查询的工作量计数累加到 statistics
+     */
+    public void addStatisticsTo(SearchStatistics statistics) {
+        SearchStatistics own = new SearchStatistics();
+        own.setExpandedStates(expandedCount);
+        own.setPushedStates(pushedCount);
+        own.setUpdatedStates(updatedCount);
+        own.setPeakOpenSetSize(peakOpenSize);
+        own.setHeuristicEvaluations(heuristicEvaluationCount);
+        own.setHeuristicCalculations(heuristicCalculationCount);
+        statistics.add(own);
+    }
+
+    public void putHeuristic(int cityId, double value) {
+        heuristicStamp[cityId] = generation;
+        heuristicValues[cityId] = value;
+    }
+
+    /**
+     * 分段下界缓冲区与遍历队列（按城市ID索引），容量不足时扩容；内容由调用方每次重新填充
+     */
+    public int[] segmentBoundBuffer(int cityCount) {
+        if (segmentBounds.length < cityCount) {
+            segmentBounds = new int[cityCount];
+            cityQueue = new int[cityCount];
+        }
+        return segmentBounds;
+    }
+
+    public int[] cityQueueBuffer() { return cityQueue; }
+
+    /**
+     * 回溯路径用的缓冲区，容量不足时扩容
+     */
+    public int[] pathBuffer(int capacity) {
+        if (pathBuffer.length < capacity) {
+            pathBuffer = new int[capacity];
+        }
+        return pathBuffer;
+    }
+}
@@ -0,0 +1,462 @@
+package service.impl;
+
+import enumObject.OptimizeTargetEnum;
+import enumObject.TransportModeEnum;
+import model.CompactTransportGraph;
+
+import java.util.Arrays;
+
+/**
+ * 干线（大板车）子图上的收缩层次（Contraction Hierarchies）
+ * 预处理：按优先级（新增捷径数 - 删除的边数 + 已收缩的邻居数）由小到大依次收缩城市，
+ * 收缩城市v时，对每对未收缩的入邻居u、出邻居w，若见证搜索（绕开v、有结算上限的Dijkstra）找不到不长于 u→v→w 的路径，
+ * 就添加捷径 u→w 并记录两条子边，以便查询后展开。收缩顺序即城市的层级。
+ * 查询：前向只沿通往更高层级城市的边、后向只沿来自更高层级城市的边各做一次Dijkstra，
+ * 两侧都到达的城市上距离之和的最小值即为原图上的最短路径。
+ * 每个实例只服务一个优化目标（时效：小时；价格：分），平行边只保留最优的一条；
+ * 层次不感知分段上限和代驾规则，由调用方对展开后的路径校验。实例构建后不可变，可被多个查询线程共享。
+ */
+public class ContractionHierarchy {
+
+    // 见证搜索最多结算的城市数，超出后视为没有见证路径（只会多加捷径，不影响正确性）
+    private static final int WITNESS_SETTLE_LIMIT = 256;
+
+    private final CompactTransportGraph graph;
+    private final OptimizeTargetEnum target;
+    private final int cityCount;
+
+    // 城市ID → 层级（收缩顺序）
+    private final int[] rank;
+
+    // --- 层次中的边（原始大板车边 + 捷径），按边下标访问 ---
+    private int edgeCount;
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private long[] edgeWeight = new long[16];
+    // 对应的原图边下标，捷径为-1
+    private int[] edgeOriginal = new int[16];
+    // 捷径展开后的两条子边（u→v、v→w）
+    private int[] edgeFirstChild = new int[16];
+    private int[] edgeSecondChild = new int[16];
+    // 展开后的原图边数
+    private int[] edgeHops = new int[16];
+
+    // --- 查询用的CSR：upward 为城市指向更高层级城市的边，downward 为从更高层级城市指向该城市的边 ---
+    private final int[] upwardOffsets;
+    private final int[] upwardEdges;
+    private final int[] downwardOffsets;
+    private final int[] downwardEdges;
+
+    private final int baseEdgeCount;
+    private final int shortcutCount;
+    private final long preprocessingNanos;
+
+    // --- 以下只在预处理期间使用 ---
+    private int[][] outEdges;
+    private int[][] inEdges;
+    private int[] outSize;
+    private int[] inSize;
+    private boolean[] contracted;
+    private long[] witnessDistance;
+    private int[] witnessStamp;
+    private int witnessGeneration;
+    private IndexedMinHeap witnessHeap;
+
+    /**
+     * 在图的大板车子图上构建收缩层次
+     * @param graph CSR运输网络图
+     * @param target 优化目标，决定边权（时效：小时；价格：分）
+     */
+    public ContractionHierarchy(CompactTransportGraph graph, OptimizeTargetEnum target) {
+        long startNanos = System.nanoTime();
+        this.graph = graph;
+        this.target = target;
+        this.cityCount = graph.getCityCount();
+        this.rank = new int[cityCount];
+
+        outEdges = new int[cityCount][];
+        inEdges = new int[cityCount][];
+        outSize = new int[cityCount];
+        inSize = new int[cityCount];
+        contracted = new boolean[cityCount];
+        witnessDistance = new long[cityCount];
+        witnessStamp = new int[cityCount];
+        witnessHeap = new IndexedMinHeap(cityCount);
+        for (int city = 0; city < cityCount; city++) {
+            outEdges[city] = new int[4];
+            inEdges[city] = new int[4];
+        }
+
+        addTrunkEdges();
+        this.baseEdgeCount = edgeCount;
+        contractAll();
+        this.shortcutCount = edgeCount - baseEdgeCount;
+
+        // 按层级拆分为 upward/downward 两份CSR
+        upwardOffsets = new int[cityCount + 1];
+        downwardOffsets = new int[cityCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (rank[edgeFrom[e]] < rank[edgeTo[e]]) {
+                upwardOffsets[edgeFrom[e] + 1]++;
+            } else {
+                downwardOffsets[edgeTo[e] + 1]++;
+            }
+        }
+        for (int city = 0; city < cityCount; city++) {
+            upwardOffsets[city + 1] += upwardOffsets[city];
+            downwardOffsets[city + 1] += downwardOffsets[city];
+        }
+        upwardEdges = new int[upwardOffsets[cityCount]];
+        downwardEdges = new int[downwardOffsets[cityCount]];
+        int[] upwardFill = Arrays.copyOf(upwardOffsets, cityCount);
+        int[] downwardFill = Arrays.copyOf(downwardOffsets, cityCount);
+        for (int e = 0; e < edgeCount; e++) {
+            if (rank[edgeFrom[e]] < rank[edgeTo[e]]) {
+                upwardEdges[upwardFill[edgeFrom[e]]++] = e;
+            } else {
+                downwardEdges[downwardFill[edgeTo[e]]++] = e;
+            }
+        }
+
+        outEdges = null;
+        inEdges = null;
+        outSize = null;
+        inSize = null;
+        contracted = null;
+        witnessDistance = null;
+        witnessStamp = null;
+        witnessHeap = null;
+        this.preprocessingNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 将原图中的大板车边加入层次，同一城市对之间只保留权值最小的一条，自环忽略
+     */
+    private void addTrunkEdges() {
+        int[] bestEdgeTo = new int[cityCount];
+        int[] bestStamp = new int[cityCount];
+        for (int from = 0; from < cityCount; from++) {
+            int end = graph.edgeEnd(from);
+            for (int edge = graph.edgeStart(from); edge < end; edge++) {
+                int to = graph.edgeTarget(edge);
+                if (graph.edgeModeOrdinal(edge) != TransportModeEnum.BIG_TRUCK.ordinal() || to == from) {
+                    continue;
+                }
+                long weight = originalWeight(edge);
+                if (bestStamp[to] == from + 1) {
+                    int existing = bestEdgeTo[to];
+                    if (weight < edgeWeight[existing]) {
+                        edgeWeight[existing] = weight;
+                        edgeOriginal[existing] = edge;
+                    }
+                    continue;
+                }
+                bestStamp[to] = from + 1;
+                bestEdgeTo[to] = addEdge(from, to, weight, edge, -1, -1);
+            }
+        }
+    }
+
+    /**
+     * 惰性更新优先级：取出优先级最小的城市时重新计算，仍不大于堆顶才收缩，否则以新优先级放回
+     */
+    private void contractAll() {
+        int[] contractedNeighbors = new int[cityCount];
+        IndexedMinHeap queue = new IndexedMinHeap(cityCount);
+        for (int city = 0; city < cityCount; city++) {
+            queue.insertOrUpdate(city, priority(city, contractedNeighbors));
+        }
+        int order = 0;
+        while (!queue.isEmpty()) {
+            int city = queue.poll();
+            int priority = priority(city, contractedNeighbors);
+            if (!queue.isEmpty() && priority > queue.peekKey()) {
+                queue.insertOrUpdate(city, priority);
+                continue;
+            }
+            contract(city, true);
+            contracted[city] = true;
+            rank[city] = order++;
+            for (int i = 0; i < outSize[city]; i++) {
+                contractedNeighbors[edgeTo[outEdges[city][i]]]++;
+            }
+            for (int i = 0; i < inSize[city]; i++) {
+                contractedNeighbors[edgeFrom[inEdges[city][i]]]++;
+            }
+        }
+    }
+
+    private int priority(int city, int[] contractedNeighbors) {
+        int removedEdges = 0;
+        for (int i = 0; i < outSize[city]; i++) {
+            if (!contracted[edgeTo[outEdges[city][i]]]) {
+                removedEdges++;
+            }
+        }
+        for (int i = 0; i < inSize[city]; i++) {
+            if (!contracted[edgeFrom[inEdges[city][i]]]) {
+                removedEdges++;
+            }
+        }
+        return contract(city, false) - removedEdges + contractedNeighbors[city];
+    }
+
+    /**
+     * 收缩（或模拟收缩）一个城市
+     * @param apply 为false时只统计需要的捷径数，不修改层次
+     * @return 需要的捷径数
+     */
+    private int contract(int city, boolean apply) {
+        int shortcuts = 0;
+        for (int i = 0; i < inSize[city]; i++) {
+            int inEdge = inEdges[city][i];
+            int from = edgeFrom[inEdge];
+            if (contracted[from]) {
+                continue;
+            }
+            long maxCost = -1;
+            for (int j = 0; j < outSize[city]; j++) {
+                int outEdge = outEdges[city][j];
+                int to = edgeTo[outEdge];
+                if (!contracted[to] && to != from) {
+                    maxCost = Math.max(maxCost, edgeWeight[inEdge] + edgeWeight[outEdge]);
+                }
+            }
+            if (maxCost < 0) {
+                continue;
+            }
+            witnessSearch(from, city, maxCost);
+            for (int j = 0; j < outSize[city]; j++) {
+                int outEdge = outEdges[city][j];
+                int to = edgeTo[outEdge];
+                if (contracted[to] || to == from) {
+                    continue;
+                }
+                long viaCost = edgeWeight[inEdge] + edgeWeight[outEdge];
+                if (witnessDistance(to) <= viaCost) {
+                    continue;
+                }
+                shortcuts++;
+                // 同一对城市之间的平行出边只需要一条捷径
+                witnessStamp[to] = witnessGeneration;
+                witnessDistance[to] = viaCost;
+                if (apply) {
+                    addEdge(from, to, viaCost, -1, inEdge, outEdge);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * 从 source 出发、不经过 excluded 与已收缩城市的Dijkstra，代价超过 maxCost 或结算数达到上限时停止
+     */
+    private void witnessSearch(int source, int excluded, long maxCost) {
+        witnessGeneration++;
+        witnessHeap.clear();
+        witnessStamp[source] = witnessGeneration;
+        witnessDistance[source] = 0;
+        witnessHeap.insertOrUpdate(source, 0);
+        int settled = 0;
+        while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+            int city = witnessHeap.poll();
+            long distance = witnessDistance[city];
+            if (distance > maxCost) {
+                break;
+            }
+            settled++;
+            for (int i = 0; i < outSize[city]; i++) {
+                int edge = outEdges[city][i];
+                int to = edgeTo[edge];
+                if (to == excluded || contracted[to]) {
+                    continue;
+                }
+                long candidate = distance + edgeWeight[edge];
+                if (candidate < witnessDistance(to)) {
+                    witnessStamp[to] = witnessGeneration;
+                    witnessDistance[to] = candidate;
+                    witnessHeap.insertOrUpdate(to, candidate);
+                }
+            }
+        }
+    }
+
+    private long witnessDistance(int city) {
+        return witnessStamp[city] == witnessGeneration ? witnessDistance[city] : Long.MAX_VALUE;
+    }
+
+    private int addEdge(int from, int to, long weight, int original, int firstChild, int secondChild) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeOriginal = Arrays.copyOf(edgeOriginal, capacity);
+            edgeFirstChild = Arrays.copyOf(edgeFirstChild, capacity);
+            edgeSecondChild = Arrays.copyOf(edgeSecondChild, capacity);
+            edgeHops = Arrays.copyOf(edgeHops, capacity);
+        }
+        int edge = edgeCount++;
+        edgeFrom[edge] = from;
+        edgeTo[edge] = to;
+        edgeWeight[edge] = weight;
+        edgeOriginal[edge] = original;
+        edgeFirstChild[edge] = firstChild;
+        edgeSecondChild[edge] = secondChild;
+        edgeHops[edge] = original >= 0 ? 1 : edgeHops[firstChild] + edgeHops[secondChild];
+
+        if (outSize[from] == outEdges[from].length) {
+            outEdges[from] = Arrays.copyOf(outEdges[from], outSize[from] * 2);
+        }
+        outEdges[from][outSize[from]++] = edge;
+        if (inSize[to] == inEdges[to].length) {
+            inEdges[to] = Arrays.copyOf(inEdges[to], inSize[to] * 2);
+        }
+        inEdges[to][inSize[to]++] = edge;
+        return edge;
+    }
+
+    /**
+     * 原图边在本层次中的权值（时效：小时；价格：分）
+     */
+    public long originalWeight(int edge) {
+        return target == OptimizeTargetEnum.TIME ? graph.edgeTimeHours(edge) : graph.edgePriceFen(edge);
+    }
+
+    /**
+     * 【查询】多源多汇的最短路径：前向从各起点城市以给定初始代价出发，后向从各终点城市以给定初始代价出发
+     * 相当于在超级源点/汇点与这些城市之间各连一条边，两侧的upward搜索在最高层级的城市上相遇。
+     * 任一侧堆顶不小于当前最优值时该侧停止。
+     * @return 最短路径（含展开后的原图边），不可达时返回null
+     */
+    public Path shortestPath(int[] sources, long[] sourceCosts, int[] targets, long[] targetCosts) {
+        AStarSearchContext forward = AStarSearchContext.acquire(cityCount, 0);
+        AStarSearchContext backward = AStarSearchContext.acquire(cityCount, 0);
+        try {
+            for (int i = 0; i < sources.length; i++) {
+                if (sourceCosts[i] < forward.getGScore(sources[i])) {
+                    forward.open(sources[i], sourceCosts[i], sourceCosts[i], -1, -1);
+                }
+            }
+            for (int i = 0; i < targets.length; i++) {
+                if (targetCosts[i] < backward.getGScore(targets[i])) {
+                    backward.open(targets[i], targetCosts[i], targetCosts[i], -1, -1);
+                }
+            }
+
+            long best = Long.MAX_VALUE;
+            int meeting = -1;
+            while (true) {
+                boolean forwardActive = forward.hasOpenStates() && forward.peekOpenKey() < best;
+                boolean backwardActive = backward.hasOpenStates() && backward.peekOpenKey() < best;
+                if (!forwardActive && !backwardActive) {
+                    break;
+                }
+                boolean expandForward = forwardActive
+                        && (!backwardActive || forward.openSetSize() <= backward.openSetSize());
+                AStarSearchContext current = expandForward ? forward : backward;
+                AStarSearchContext opposite = expandForward ? backward : forward;
+                int city = current.pollOpenState();
+                current.close(city);
+                long distance = current.getGScore(city);
+                long oppositeDistance = opposite.getGScore(city);
+                if (oppositeDistance != Long.MAX_VALUE && distance + oppositeDistance < best) {
+                    best = distance + oppositeDistance;
+                    meeting = city;
+                }
+
+                int[] offsets = expandForward ? upwardOffsets : downwardOffsets;
+                int[] edges = expandForward ? upwardEdges : downwardEdges;
+                for (int i = offsets[city]; i < offsets[city + 1]; i++) {
+                    int edge = edges[i];
+                    int next = expandForward ? edgeTo[edge] : edgeFrom[edge];
+                    long candidate = distance + edgeWeight[edge];
+                    if (candidate < current.getGScore(next)) {
+                        current.open(next, candidate, candidate, city, edge);
+                    }
+                }
+            }
+            if (meeting < 0) {
+                return null;
+            }
+
+            // 先统计展开后的边数，前向链从相遇城市回溯到起点侧（逆序），后向链从相遇城市走向终点侧（正序）
+            int pathLength = 0;
+            int source = meeting;
+            while (forward.getParentState(source) >= 0) {
+                pathLength += edgeHops[forward.getParentEdge(source)];
+                source = forward.getParentState(source);
+            }
+            int targetCity = meeting;
+            while (backward.getParentState(targetCity) >= 0) {
+                pathLength += edgeHops[backward.getParentEdge(targetCity)];
+                targetCity = backward.getParentState(targetCity);
+            }
+            int[] path = new int[pathLength];
+            int position = 0;
+            for (int city = meeting; forward.getParentState(city) >= 0; city = forward.getParentState(city)) {
+                int edge = forward.getParentEdge(city);
+                position += edgeHops[edge];
+                unpack(edge, path, pathLength - position);
+            }
+            // 前向部分先从数组末尾向前填充，再整体移到开头；后向部分接在其后
+            System.arraycopy(path, pathLength - position, path, 0, position);
+            for (int city = meeting; backward.getParentState(city) >= 0; city = backward.getParentState(city)) {
+                int edge = backward.getParentEdge(city);
+                unpack(edge, path, position);
+                position += edgeHops[edge];
+            }
+            return new Path(best, source, targetCity, path);
+        } finally {
+            backward.release();
+            forward.release();
+        }
+    }
+
+    /**
+     * 将层次中的一条边展开为原图边序列，写入 path[offset, offset + edgeHops[edge])
+     */
+    private void unpack(int edge, int[] path, int offset) {
+        int[] stack = new int[edgeHops[edge] + 1];
+        int top = 0;
+        stack[top++] = edge;
+        while (top > 0) {
+            int current = stack[--top];
+            if (edgeOriginal[current] >= 0) {
+                path[offset++] = edgeOriginal[current];
+                continue;
+            }
+            // 先压入后半段，先弹出前半段
+            stack[top++] = edgeSecondChild[current];
+            stack[top++] = edgeFirstChild[current];
+        }
+    }
+
+    public CompactTransportGraph getGraph() { return graph; }
+    public OptimizeTargetEnum getTarget() { return target; }
+    public int getShortcutCount() { return shortcutCount; }
+    public int getTrunkEdgeCount() { return baseEdgeCount; }
+    public long getPreprocessingNanos() { return preprocessingNanos; }
+
+    /**
+     * 层次查询得到的最短路径
+     */
+    public static class Path {
+        private final long cost;        // 总代价（含初始代价）
+        private final int sourceCity;   // 路径从哪个起点城市出发
+        private final int targetCity;   // 路径到达哪个终点城市
+        private final int[] edges;      // 展开后的原图大板车边，按行驶顺序
+
+        Path(long cost, int sourceCity, int targetCity, int[] edges) {
+            this.cost = cost;
+            this.sourceCity = sourceCity;
+            this.targetCity = targetCity;
+            this.edges = edges;
+        }
+
+        public long getCost() { return cost; }
+        public int getSourceCity() { return sourceCity; }
+        public int getTargetCity() { return targetCity; }
+        public int[] getEdges() { return edges; }
+    }
+}
@@ -7,18 +7,28 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import model.CityBaseData;
+import model.CompactTransportGraph;
+import model.GraphSnapshot;
+import service.GraphChangeListener;
 import service.HeuristicCalculator;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * 默认启发函数：基于城市直线距离预估剩余成本
+ * 构造时把城市坐标预处理为原始类型数组；每个目标城市第一次出现时，
+ * 一次性算出所有城市到它的时效/价格预估值并放入有界缓存，之后每次入堆只需一次数组读取。
+ * 注册到路由器后，发布新快照时按快照中的城市数据重建坐标数组。
  */
-public class DefaultHeuristicCalculator implements HeuristicCalculator {
+public class DefaultHeuristicCalculator implements HeuristicCalculator, GraphChangeListener {
 
-    // 城市经纬度数据，用于计算直线距离
-    private final Map<String, CityBaseData> cityPositionData;
+    // 默认缓存的热门目的地数量
+    public static final int DEFAULT_MAX_CACHED_DESTINATIONS = 256;
+
+    // 城市数据缺失时的惩罚值
+    private static final double UNKNOWN_CITY_PENALTY = 1_000_000.0;
 
     // --- 成本估算参数 (可配置) ---
     // 不同运输方式的预估单价（元/公里）
@@ -33,12 +43,62 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
     private final double DEFAULT_RAIL_SPEED_KMH = 80.0;
     private final double DEFAULT_SEA_SPEED_KMH = 30.0;
 
+    // 预处理后的城市坐标，城市数据变化时整体替换
+    private volatile CityCoordinates coordinates;
+
+    // 最便宜单价、最快时速在构造时算好
+    private final double cheapestPricePerKm;
+    private final double fastestSpeedKmH;
+
+    // 目的地 → 按图城市ID索引的 [时效, 价格] 预估值，按访问顺序淘汰（LRU）
+    private final int maxCachedDestinations;
+    private final Map<String, double[][]> destinationTables;
+    // 缓存所对应的图与坐标，以及该图城市ID → 坐标下标的映射
+    private CompactTransportGraph cachedGraph;
+    private CityCoordinates cachedCoordinates;
+    private int[] graphToLocalIndex;
+
     /**
      * 构造函数，注入城市数据
      * @param cityPositionData 包含城市经纬度的Map
      */
     public DefaultHeuristicCalculator(Map<String, CityBaseData> cityPositionData) {
-        this.cityPositionData = cityPositionData;
+        this(cityPositionData, DEFAULT_MAX_CACHED_DESTINATIONS);
+    }
+
+    /**
+     * 构造函数，注入城市数据并指定目的地缓存容量
+     * @param cityPositionData 包含城市经纬度的Map
+     * @param maxCachedDestinations 最多缓存多少个目的地的预估值数组
+     */
+    public DefaultHeuristicCalculator(Map<String, CityBaseData> cityPositionData, int maxCachedDestinations) {
+        this.coordinates = new CityCoordinates(cityPositionData);
+
+        // 策略：选择所有可用运输方式中**最便宜**的单价、**最快**的速度，保证是"乐观估计"
+        this.cheapestPricePerKm = Math.min(
+                Math.min(DEFAULT_TRUCK_PRICE_PER_KM, DEFAULT_DRIVER_PRICE_PER_KM),
+                Math.min(DEFAULT_RAIL_PRICE_PER_KM, DEFAULT_SEA_PRICE_PER_KM)
+        );
+        this.fastestSpeedKmH = Math.max(
+                Math.max(DEFAULT_TRUCK_SPEED_KMH, DEFAULT_DRIVER_SPEED_KMH),
+                Math.max(DEFAULT_RAIL_SPEED_KMH, DEFAULT_SEA_SPEED_KMH)
+        );
+
+        this.maxCachedDestinations = maxCachedDestinations;
+        this.destinationTables = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, double[][]> eldest) {
+                return size() > DefaultHeuristicCalculator.this.maxCachedDestinations;
+            }
+        };
+    }
+
+    @Override
+    public void onGraphChanged(GraphSnapshot previous, GraphSnapshot current) {
+        // 估算只依赖城市坐标，线路的增量变更（城市数据不变）不影响已算好的预估值
+        if (previous == null || previous.getCityBaseDataMap() != current.getCityBaseDataMap()) {
+            this.coordinates = new CityCoordinates(current.getCityBaseDataMap());
+        }
     }
 
     /**
@@ -63,7 +123,7 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
         // 3. 如果无法估算距离（例如，某个城市的数据不存在），返回一个很大的默认值
         //    这会让A*算法尽量避免选择这条未知的路径
         if (straightLineDistance < 0) {
-            return 1_000_000.0; // 一个足够大的惩罚值
+            return UNKNOWN_CITY_PENALTY; // 一个足够大的惩罚值
         }
 
         // 4. 根据不同的优化目标，计算不同的H值
@@ -78,6 +138,75 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
         }
     }
 
+    /**
+     * 批量获取图中所有城市到目标城市的预估值
+     * 每个目的地第一次出现时同时算好时效、价格两份数组并放入LRU缓存
+     */
+    @Override
+    public double[] heuristicTable(CompactTransportGraph graph, String targetCity, OptimizeTargetEnum optimizeTarget) {
+        double[][] tables;
+        int[] localIndex;
+        CityCoordinates boundCoordinates;
+        synchronized (destinationTables) {
+            if (cachedCoordinates == coordinates && graph.hasSameCityIds(cachedGraph)) {
+                // 增量修改得到的图，城市ID不变，预估值仍然可用
+                cachedGraph = graph;
+            } else if (cachedGraph != graph || cachedCoordinates != coordinates) {
+                // 换了一张图（城市ID可能变化）或城市坐标，重建映射并清空缓存
+                bindGraph(graph, coordinates);
+            }
+            tables = destinationTables.get(targetCity);
+            localIndex = graphToLocalIndex;
+            boundCoordinates = cachedCoordinates;
+        }
+        if (tables == null) {
+            // 在锁外计算，并发下同一目的地可能被重复计算一次，结果相同
+            tables = buildDestinationTables(graph, boundCoordinates, localIndex, targetCity);
+            synchronized (destinationTables) {
+                if (graph.hasSameCityIds(cachedGraph) && cachedCoordinates == boundCoordinates) {
+                    destinationTables.put(targetCity, tables);
+                }
+            }
+        }
+        return optimizeTarget == OptimizeTargetEnum.TIME ? tables[0] : tables[1];
+    }
+
+    private void bindGraph(CompactTransportGraph graph, CityCoordinates cityCoordinates) {
+        int[] localIndex = new int[graph.getCityCount()];
+        for (int cityId = 0; cityId < localIndex.length; cityId++) {
+            localIndex[cityId] = cityCoordinates.cityIndex.getOrDefault(graph.getCityName(cityId), -1);
+        }
+        this.cachedGraph = graph;
+        this.cachedCoordinates = cityCoordinates;
+        this.graphToLocalIndex = localIndex;
+        destinationTables.clear();
+    }
+
+    /**
+     * 计算图中所有城市到目标城市的 [时效, 价格] 预估值，语义与 calculate 完全一致
+     */
+    private double[][] buildDestinationTables(CompactTransportGraph graph, CityCoordinates cityCoordinates,
+                                              int[] localIndex, String targetCity) {
+        int cityCount = localIndex.length;
+        double[] timeTable = new double[cityCount];
+        double[] priceTable = new double[cityCount];
+        Integer targetIndex = cityCoordinates.cityIndex.get(targetCity);
+        for (int cityId = 0; cityId < cityCount; cityId++) {
+            if (graph.getCityName(cityId).equals(targetCity)) {
+                continue; // 当前城市就是目标城市，预估成本为0
+            }
+            if (targetIndex == null || localIndex[cityId] < 0) {
+                timeTable[cityId] = UNKNOWN_CITY_PENALTY;
+                priceTable[cityId] = UNKNOWN_CITY_PENALTY;
+                continue;
+            }
+            double distance = haversine(cityCoordinates, localIndex[cityId], targetIndex);
+            timeTable[cityId] = calculateTimeHeuristic(distance);
+            priceTable[cityId] = calculatePriceHeuristic(distance);
+        }
+        return new double[][]{timeTable, priceTable};
+    }
+
     /**
      * 估算两个城市之间的地球表面直线距离（Haversine公式）
      * @param cityA 城市A
@@ -85,28 +214,30 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
      * @return 距离（公里），如果数据不足则返回-1
      */
     private double estimateStraightLineDistance(String cityA, String cityB) {
-        // 从注入的Map中获取两个城市的经纬度数据
-        CityBaseData cityAData = cityPositionData.get(cityA);
-        CityBaseData cityBData = cityPositionData.get(cityB);
+        // 从预处理的坐标数组中获取两个城市的下标
+        CityCoordinates cityCoordinates = coordinates;
+        Integer indexA = cityCoordinates.cityIndex.get(cityA);
+        Integer indexB = cityCoordinates.cityIndex.get(cityB);
 
         // 检查数据是否存在
-        if (cityAData == null || cityBData == null) {
+        if (indexA == null || indexB == null) {
             return -1.0; // 表示无法计算
         }
+        return haversine(cityCoordinates, indexA, indexB);
+    }
 
-        // 提取经纬度（注意：CityBaseData中存储的是弧度）
-        double lat1 = cityAData.getFromLat();
-        double lon1 = cityAData.getFromLng();
-        double lat2 = cityBData.getFromLat();
-        double lon2 = cityBData.getFromLng();
-
-        // Haversine公式计算两点间距离
+    /**
+     * Haversine公式计算两点间距离（坐标为度，纬度余弦已预先算好）
+     */
+    private static double haversine(CityCoordinates cityCoordinates, int indexA, int indexB) {
         final double R = 6371; // 地球半径，单位为公里
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
+        double[] latitudes = cityCoordinates.latitudes;
+        double[] longitudes = cityCoordinates.longitudes;
+        double latDistance = Math.toRadians(latitudes[indexB] - latitudes[indexA]);
+        double lonDistance = Math.toRadians(longitudes[indexB] - longitudes[indexA]);
 
         double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                + cityCoordinates.cosLatitudes[indexA] * cityCoordinates.cosLatitudes[indexB]
                 * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
 
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
@@ -123,10 +254,6 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
     private double calculatePriceHeuristic(double distance) {
         // 策略：选择所有可用运输方式中**最便宜**的单价来计算
         // 这是一个"乐观估计"，确保H值不会高估实际成本，保证A*算法的最优性
-        double cheapestPricePerKm = Math.min(
-                Math.min(DEFAULT_TRUCK_PRICE_PER_KM, DEFAULT_DRIVER_PRICE_PER_KM),
-                Math.min(DEFAULT_RAIL_PRICE_PER_KM, DEFAULT_SEA_PRICE_PER_KM)
-        );
         return distance * cheapestPricePerKm;
     }
 
@@ -138,13 +265,33 @@ public class DefaultHeuristicCalculator implements HeuristicCalculator {
     private double calculateTimeHeuristic(double distance) {
         // 策略：选择所有可用运输方式中**最快**的速度来计算
         // 同样是一个"乐观估计"，假设能全程使用最快的运输方式
-        double fastestSpeedKmH = Math.max(
-                Math.max(DEFAULT_TRUCK_SPEED_KMH, DEFAULT_DRIVER_SPEED_KMH),
-                Math.max(DEFAULT_RAIL_SPEED_KMH, DEFAULT_SEA_SPEED_KMH)
-        );
         return distance / fastestSpeedKmH;
     }
 
+    /**
+     * 预处理后的城市坐标（按内部城市下标索引），构建后不再修改
+     */
+    private static final class CityCoordinates {
+        private final Map<String, Integer> cityIndex = new HashMap<>();
+        private final double[] latitudes;   // 纬度（度）
+        private final double[] longitudes;  // 经度（度）
+        private final double[] cosLatitudes; // 纬度余弦，Haversine公式中可复用
+
+        private CityCoordinates(Map<String, CityBaseData> cityPositionData) {
+            int cityCount = cityPositionData.size();
+            this.latitudes = new double[cityCount];
+            this.longitudes = new double[cityCount];
+            this.cosLatitudes = new double[cityCount];
+            for (Map.Entry<String, CityBaseData> entry : cityPositionData.entrySet()) {
+                int index = cityIndex.size();
+                cityIndex.put(entry.getKey(), index);
+                latitudes[index] = entry.getValue().getFromLat();
+                longitudes[index] = entry.getValue().getFromLng();
+                cosLatitudes[index] = Math.cos(Math.toRadians(latitudes[index]));
+            }
+        }
+    }
+
     // --- Getters and Setters for configuration ---
     // 为了提高灵活性，可以为这些默认参数提供 setter 方法
     // 这样在不修改类内部代码的情况下，就可以调整估算策略
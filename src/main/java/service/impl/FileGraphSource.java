@@ -0,0 +1,541 @@
+package service.impl;
+
+import enumObject.TransportModeEnum;
+import model.CityBaseData;
+import model.CompactTransportGraph;
+import model.GraphLoadReport;
+import model.GraphSnapshot;
+import service.GraphSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 基于文件的批量数据源（CSV/TSV，UTF-8）
+ * 城市文件每行：城市,纬度,经度；线路文件每行：出发城市,到达城市,运输方式,里程,时效,价格。
+ * 运输方式可写枚举名（BIG_TRUCK）或中文描述（大板车）；文件扩展名为 .tsv 时按制表符分隔，否则按逗号分隔，字段不支持引号转义。
+ * 首行无法解析时视为表头跳过；空行和以 # 开头的行忽略；格式错误的行记入加载报告并跳过，不中断加载。
+ *
+ * 线路文件按字节切分为若干块（块边界对齐到换行符），在 ForkJoinPool 上并行解析，
+ * 每块把城市名映射为块内局部ID并写入列式数组；合并阶段按块顺序分配全局城市ID，
+ * 最后由列式数组直接构建CSR图，全程不创建 TransportEdge 对象。同一出发城市的边保持文件中的顺序。
+ */
+public class FileGraphSource implements GraphSource {
+
+    // 每块的最小/最大字节数
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 28;
+    // 每个并行度切分的块数，块数多于线程数便于负载均衡
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int LINE_FIELDS = 6;
+    private static final int CITY_FIELDS = 3;
+    // 报告中保留的原始行最大长度
+    private static final int MAX_CONTENT_LENGTH = 200;
+
+    // 运输方式名称（枚举名、中文描述）→ 枚举
+    private static final Map<String, TransportModeEnum> MODE_BY_NAME = new HashMap<>();
+
+    static {
+        for (TransportModeEnum mode : TransportModeEnum.values()) {
+            MODE_BY_NAME.put(mode.name(), mode);
+            MODE_BY_NAME.put(mode.getDesc(), mode);
+        }
+    }
+
+    private final Path citiesFile;
+    private final Path lanesFile;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param citiesFile 城市文件，可为null（只使用线路文件中出现的城市，没有经纬度）
+     * @param lanesFile 线路文件
+     */
+    public FileGraphSource(Path citiesFile, Path lanesFile) {
+        this(citiesFile, lanesFile, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool 并行解析使用的线程池
+     */
+    public FileGraphSource(Path citiesFile, Path lanesFile, ForkJoinPool pool) {
+        this.citiesFile = citiesFile;
+        this.lanesFile = Objects.requireNonNull(lanesFile, "lanesFile");
+        this.pool = pool;
+    }
+
+    @Override
+    public GraphSnapshot loadAll(GraphLoadReport report) throws IOException {
+        if (report == null) {
+            report = new GraphLoadReport();
+        }
+        long phaseStart = System.nanoTime();
+
+        // 1. 城市文件（数据量小，顺序读取）
+        Map<String, CityBaseData> cityBaseDataMap = citiesFile == null ? new LinkedHashMap<>() : loadCities(report);
+        phaseStart = report.recordPhase("cities", phaseStart);
+
+        // 2. 按换行符切分线路文件
+        List<long[]> chunks;
+        try (FileChannel channel = FileChannel.open(lanesFile, StandardOpenOption.READ)) {
+            chunks = splitChunks(channel);
+            phaseStart = report.recordPhase("split", phaseStart);
+
+            // 3. 并行解析各块
+            List<ChunkResult> results = parseChunks(channel, chunks);
+            phaseStart = report.recordPhase("parse", phaseStart);
+
+            // 4. 按块顺序合并：分配全局城市ID，拼接边数组，汇总被拒绝的行
+            Map<String, Integer> cityIdMap = new HashMap<>();
+            List<String> names = new ArrayList<>();
+            for (String city : cityBaseDataMap.keySet()) {
+                assignCityId(city, cityIdMap, names);
+            }
+            int edgeCount = 0;
+            for (ChunkResult result : results) {
+                edgeCount += result.size;
+            }
+            int[] sources = new int[edgeCount];
+            int[] targets = new int[edgeCount];
+            byte[] modes = new byte[edgeCount];
+            int[] mileages = new int[edgeCount];
+            int[] timeHours = new int[edgeCount];
+            long[] prices = new long[edgeCount];
+            String fileName = lanesFile.getFileName().toString();
+            int offset = 0;
+            long lineOffset = 0;
+            for (ChunkResult result : results) {
+                int[] globalIds = new int[result.cityNames.size()];
+                for (int i = 0; i < globalIds.length; i++) {
+                    globalIds[i] = assignCityId(result.cityNames.get(i), cityIdMap, names);
+                }
+                for (int i = 0; i < result.size; i++) {
+                    sources[offset + i] = globalIds[result.sources[i]];
+                    targets[offset + i] = globalIds[result.targets[i]];
+                }
+                System.arraycopy(result.modes, 0, modes, offset, result.size);
+                System.arraycopy(result.mileages, 0, mileages, offset, result.size);
+                System.arraycopy(result.timeHours, 0, timeHours, offset, result.size);
+                System.arraycopy(result.prices, 0, prices, offset, result.size);
+                offset += result.size;
+
+                report.setTotalRows(report.getTotalRows() + result.rowCount);
+                report.setAcceptedRows(report.getAcceptedRows() + result.size);
+                for (GraphLoadReport.RejectedRow row : result.rejected) {
+                    row.setFile(fileName);
+                    row.setLineNumber(row.getLineNumber() + lineOffset);
+                    report.reject(row);
+                }
+                // 块内超出明细上限的行只计数
+                report.setRejectedRows(report.getRejectedRows() + result.rejectedCount - result.rejected.size());
+                lineOffset += result.lineCount;
+            }
+            phaseStart = report.recordPhase("merge", phaseStart);
+
+            // 5. 构建CSR图与快照
+            CompactTransportGraph graph = CompactTransportGraph.fromEdgeArrays(names.toArray(new String[0]), cityIdMap,
+                    edgeCount, sources, targets, modes, mileages, timeHours, prices);
+            phaseStart = report.recordPhase("build", phaseStart);
+            GraphSnapshot snapshot = new GraphSnapshot(graph, cityBaseDataMap);
+            report.recordPhase("snapshot", phaseStart);
+
+            report.setCityCount(graph.getCityCount());
+            report.setEdgeCount(graph.getEdgeCount());
+            if (report.getRejectedRows() > 0) {
+                GraphLoadReport.RejectedRow first = report.getRejectedSamples().get(0);
+                System.err.println("警告：运输网络文件中有 " + report.getRejectedRows() + " 行格式错误，已跳过；首个错误："
+                        + first.getFile() + " 第" + first.getLineNumber() + "行，" + first.getReason());
+            }
+            return snapshot;
+        }
+    }
+
+    // --- 城市文件 ---
+
+    private Map<String, CityBaseData> loadCities(GraphLoadReport report) throws IOException {
+        Map<String, CityBaseData> cities = new LinkedHashMap<>();
+        String delimiter = isTsv(citiesFile) ? "\t" : ",";
+        String fileName = citiesFile.getFileName().toString();
+        try (BufferedReader reader = Files.newBufferedReader(citiesFile, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            boolean firstRow = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1);
+                }
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(delimiter, -1);
+                String reason = null;
+                double lat = 0;
+                double lng = 0;
+                if (fields.length != CITY_FIELDS) {
+                    reason = "列数应为" + CITY_FIELDS + "，实际为" + fields.length;
+                } else if (fields[0].isBlank()) {
+                    reason = "城市名为空";
+                } else {
+                    try {
+                        lat = Double.parseDouble(fields[1].trim());
+                        lng = Double.parseDouble(fields[2].trim());
+                        if (!(lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180)) {
+                            reason = "经纬度超出范围";
+                        }
+                    } catch (NumberFormatException e) {
+                        reason = "经纬度不是数字";
+                    }
+                }
+                boolean header = firstRow && reason != null;
+                firstRow = false;
+                if (header) {
+                    continue;
+                }
+                report.setTotalRows(report.getTotalRows() + 1);
+                if (reason != null) {
+                    report.reject(new GraphLoadReport.RejectedRow(fileName, lineNumber, reason, truncate(line)));
+                    continue;
+                }
+                String city = fields[0].trim();
+                cities.put(city, new CityBaseData(city, city, lat, lng, lat, lng, 0));
+                report.setAcceptedRows(report.getAcceptedRows() + 1);
+            }
+        }
+        return cities;
+    }
+
+    // --- 线路文件 ---
+
+    /**
+     * 把文件切分为若干 [start, end) 字节区间，除首块外每块都从一行的开头开始
+     */
+    private List<long[]> splitChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max(1, Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+        chunkCount = Math.max(chunkCount, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        for (long i = 1; i <= chunkCount && start < size; i++) {
+            long end = i == chunkCount ? size : nextLineStart(channel, size * i / chunkCount, size);
+            if (end > start) {
+                chunks.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new long[]{0, 0});
+        }
+        return chunks;
+    }
+
+    /**
+     * @return position 所在行的下一行的起始位置（position 恰为行首时返回 position）
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position <= 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long cursor = position - 1;
+        while (cursor < size) {
+            buffer.clear();
+            int read = channel.read(buffer, cursor);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return cursor + i + 1;
+                }
+            }
+            cursor += read;
+        }
+        return size;
+    }
+
+    private List<ChunkResult> parseChunks(FileChannel channel, List<long[]> chunks) throws IOException {
+        byte delimiter = (byte) (isTsv(lanesFile) ? '\t' : ',');
+        try {
+            return pool.submit(() -> IntStream.range(0, chunks.size()).parallel()
+                    .mapToObj(i -> {
+                        try {
+                            return parseChunk(channel, chunks.get(i)[0], chunks.get(i)[1], delimiter, i == 0);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList())).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ChunkResult parseChunk(FileChannel channel, long start, long end, byte delimiter,
+                                          boolean firstChunk) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file: " + (start + buffer.position()));
+            }
+        }
+
+        ChunkResult result = new ChunkResult(Math.max(16, bytes.length / 48));
+        int[] fieldStarts = new int[LINE_FIELDS];
+        int[] fieldEnds = new int[LINE_FIELDS];
+        boolean firstRow = firstChunk;
+        int position = 0;
+        // 跳过UTF-8 BOM
+        if (firstChunk && bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            position = 3;
+        }
+        while (position < bytes.length) {
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            position = lineEnd + 1;
+            result.lineCount++;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (isBlank(bytes, lineStart, lineEnd) || bytes[lineStart] == '#') {
+                continue;
+            }
+
+            String reason = parseLine(bytes, lineStart, lineEnd, delimiter, fieldStarts, fieldEnds, result);
+            boolean header = firstRow && reason != null;
+            firstRow = false;
+            if (header) {
+                continue;
+            }
+            result.rowCount++;
+            if (reason != null) {
+                result.reject(result.lineCount, reason,
+                        truncate(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 解析一行并追加到块结果
+     * @return 拒绝原因，解析成功时返回null
+     */
+    private static String parseLine(byte[] bytes, int lineStart, int lineEnd, byte delimiter,
+                                    int[] fieldStarts, int[] fieldEnds, ChunkResult result) {
+        int fieldCount = 0;
+        int fieldStart = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || bytes[i] == delimiter) {
+                if (fieldCount < LINE_FIELDS) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        if (fieldCount != LINE_FIELDS) {
+            return "列数应为" + LINE_FIELDS + "，实际为" + fieldCount;
+        }
+        for (int f = 0; f < LINE_FIELDS; f++) {
+            while (fieldStarts[f] < fieldEnds[f] && isSpace(bytes[fieldStarts[f]])) {
+                fieldStarts[f]++;
+            }
+            while (fieldEnds[f] > fieldStarts[f] && isSpace(bytes[fieldEnds[f] - 1])) {
+                fieldEnds[f]--;
+            }
+        }
+
+        String fromCity = field(bytes, fieldStarts[0], fieldEnds[0]);
+        String toCity = field(bytes, fieldStarts[1], fieldEnds[1]);
+        if (fromCity.isEmpty() || toCity.isEmpty()) {
+            return "城市名为空";
+        }
+        if (fromCity.equals(toCity)) {
+            return "出发城市与到达城市相同";
+        }
+        String modeName = field(bytes, fieldStarts[2], fieldEnds[2]);
+        TransportModeEnum mode = MODE_BY_NAME.get(modeName);
+        if (mode == null) {
+            return "未知的运输方式：" + modeName;
+        }
+        int mileage = parseNonNegativeInt(bytes, fieldStarts[3], fieldEnds[3]);
+        if (mileage < 0) {
+            return "里程不是非负整数：" + field(bytes, fieldStarts[3], fieldEnds[3]);
+        }
+        int timeHours = parseNonNegativeInt(bytes, fieldStarts[4], fieldEnds[4]);
+        if (timeHours < 0) {
+            return "时效不是非负整数：" + field(bytes, fieldStarts[4], fieldEnds[4]);
+        }
+        long price = parseNonNegativeFen(bytes, fieldStarts[5], fieldEnds[5]);
+        if (price < 0) {
+            return "价格不是非负数：" + field(bytes, fieldStarts[5], fieldEnds[5]);
+        }
+
+        result.add(result.cityId(fromCity), result.cityId(toCity), mode, mileage, timeHours, price);
+        return null;
+    }
+
+    /**
+     * 解析非负十进制整数，格式错误或超出 int 范围时返回-1
+     */
+    private static int parseNonNegativeInt(byte[] bytes, int start, int end) {
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * 解析以元为单位的非负十进制金额并换算为分（如 "12000"、"1500.5"），超过两位的小数四舍五入，
+     * 与 CompactTransportGraph.toFen 一致；格式错误或金额过大时返回-1
+     */
+    private static long parseNonNegativeFen(byte[] bytes, int start, int end) {
+        int point = start;
+        while (point < end && bytes[point] != '.') {
+            point++;
+        }
+        if (point == start || point - start > 15 || point == end - 1) {
+            return -1;
+        }
+        long yuan = 0;
+        for (int i = start; i < point; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            yuan = yuan * 10 + digit;
+        }
+        long fen = 0;
+        for (int i = point + 1, place = 0; i < end; i++, place++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            if (place < 2) {
+                fen = fen * 10 + digit;
+            } else if (place == 2 && digit >= 5) {
+                fen++;
+            }
+        }
+        if (end - point - 1 == 1) {
+            fen *= 10;
+        }
+        return yuan * CompactTransportGraph.FEN_PER_YUAN + fen;
+    }
+
+    private static String field(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTsv(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".tsv");
+    }
+
+    private static String truncate(String line) {
+        return line.length() <= MAX_CONTENT_LENGTH ? line : line.substring(0, MAX_CONTENT_LENGTH) + "...";
+    }
+
+    private static int assignCityId(String city, Map<String, Integer> cityIdMap, List<String> names) {
+        Integer id = cityIdMap.get(city);
+        if (id == null) {
+            id = names.size();
+            cityIdMap.put(city, id);
+            names.add(city);
+        }
+        return id;
+    }
+
+    /**
+     * 一块的解析结果：块内局部城市ID的列式边数组，以及被拒绝的行（行号相对块首）
+     */
+    private static final class ChunkResult {
+        private final Map<String, Integer> cityIds = new HashMap<>();
+        private final List<String> cityNames = new ArrayList<>();
+        private int[] sources;
+        private int[] targets;
+        private byte[] modes;
+        private int[] mileages;
+        private int[] timeHours;
+        private long[] prices;    // 价格（分）
+        private int size;
+        private long lineCount;
+        private long rowCount;
+        private final List<GraphLoadReport.RejectedRow> rejected = new ArrayList<>();
+        private int rejectedCount;
+
+        private ChunkResult(int capacity) {
+            sources = new int[capacity];
+            targets = new int[capacity];
+            modes = new byte[capacity];
+            mileages = new int[capacity];
+            timeHours = new int[capacity];
+            prices = new long[capacity];
+        }
+
+        private int cityId(String city) {
+            return assignCityId(city, cityIds, cityNames);
+        }
+
+        private void add(int source, int target, TransportModeEnum mode, int mileage, int hours, long price) {
+            if (size == sources.length) {
+                int capacity = size * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                modes = Arrays.copyOf(modes, capacity);
+                mileages = Arrays.copyOf(mileages, capacity);
+                timeHours = Arrays.copyOf(timeHours, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+            }
+            sources[size] = source;
+            targets[size] = target;
+            modes[size] = (byte) mode.ordinal();
+            mileages[size] = mileage;
+            timeHours[size] = hours;
+            prices[size] = price;
+            size++;
+        }
+
+        private void reject(long lineNumber, String reason, String content) {
+            rejectedCount++;
+            if (rejected.size() < GraphLoadReport.MAX_REJECTED_SAMPLES) {
+                rejected.add(new GraphLoadReport.RejectedRow(null, lineNumber, reason, content));
+            }
+        }
+    }
+}
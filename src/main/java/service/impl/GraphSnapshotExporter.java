@@ -0,0 +1,341 @@
+package service.impl;
+
+import model.CityBaseData;
+import model.CompactTransportGraph;
+import model.GraphSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运输网络快照的二进制导出/映射加载
+ * 文件为小端序，由定长文件头和若干按8字节对齐的段组成：城市表、CSR区间偏移、各边属性数组、反向索引、城市基础数据。
+ * 加载时用 NIO 把边属性各段映射为只读 Buffer，CSR图直接在映射内存上读取，不创建 TransportEdge / BigDecimal 对象，
+ * 只有按城市数计的城市表、区间偏移和城市基础数据会读入堆内，加载时间与边数无关，边数据在堆外、不参与GC扫描。
+ * 文件由 writeBinary 生成，加载时只校验文件头、段长度和区间偏移，不逐条校验边数据。
+ * 可作为数据源使用：router.loadGraph(report -> GraphSnapshotExporter.mapBinary(path))。
+ */
+public class GraphSnapshotExporter {
+
+    // 文件头魔数 "RGPH"
+    private static final int MAGIC = 0x52475048;
+    // 版本2：价格段与文件头中的干线最低价格改为以分为单位的 long
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 128;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // 段序号，文件头中依次存放各段的起始位置
+    private static final int SECTION_CITY_NAMES = 0;
+    private static final int SECTION_EDGE_OFFSETS = 1;
+    private static final int SECTION_TARGETS = 2;
+    private static final int SECTION_MODES = 3;
+    private static final int SECTION_MILEAGES = 4;
+    private static final int SECTION_TIME_HOURS = 5;
+    private static final int SECTION_PRICES = 6;
+    private static final int SECTION_SOURCES = 7;
+    private static final int SECTION_REVERSE_OFFSETS = 8;
+    private static final int SECTION_REVERSE_EDGES = 9;
+    private static final int SECTION_CITY_DATA = 10;
+    private static final int SECTION_COUNT = 11;
+    // 魔数、格式版本、城市数、边数、城市基础数据条数、保留字段、干线最低价格（分）之后是段起始位置表
+    private static final int SECTION_TABLE_OFFSET = 32;
+
+    private GraphSnapshotExporter() {
+    }
+
+    /**
+     * 导出快照（增量修改留下的废弃槽位不写入，边按城市重新连续编号）
+     */
+    public static void writeBinary(GraphSnapshot snapshot, Path path) throws IOException {
+        CompactTransportGraph graph = snapshot.getGraph();
+        int cityCount = graph.getCityCount();
+        int edgeCount = graph.getEdgeCount();
+        // 导出后的边下标：城市 i 的出边从 offsets[i] 开始连续编号
+        int[] offsets = new int[cityCount + 1];
+        for (int city = 0; city < cityCount; city++) {
+            offsets[city + 1] = offsets[city] + graph.edgeEnd(city) - graph.edgeStart(city);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            long[] sections = new long[SECTION_COUNT];
+            out.skip(HEADER_SIZE);
+
+            sections[SECTION_CITY_NAMES] = out.align();
+            for (int city = 0; city < cityCount; city++) {
+                out.putString(graph.getCityName(city));
+            }
+            sections[SECTION_EDGE_OFFSETS] = out.align();
+            for (int offset : offsets) {
+                out.putInt(offset);
+            }
+            sections[SECTION_TARGETS] = out.align();
+            forEachEdge(graph, edge -> out.putInt(graph.edgeTarget(edge)));
+            sections[SECTION_MODES] = out.align();
+            forEachEdge(graph, edge -> out.putByte((byte) graph.edgeModeOrdinal(edge)));
+            sections[SECTION_MILEAGES] = out.align();
+            forEachEdge(graph, edge -> out.putInt(graph.edgeMileage(edge)));
+            sections[SECTION_TIME_HOURS] = out.align();
+            forEachEdge(graph, edge -> out.putInt(graph.edgeTimeHours(edge)));
+            sections[SECTION_PRICES] = out.align();
+            forEachEdge(graph, edge -> out.putLong(graph.edgePriceFen(edge)));
+            sections[SECTION_SOURCES] = out.align();
+            forEachEdge(graph, edge -> out.putInt(graph.edgeSource(edge)));
+
+            // 增量修改后各城市的入边区间不一定相邻，按城市顺序重新连续编排
+            sections[SECTION_REVERSE_OFFSETS] = out.align();
+            int reverseOffset = 0;
+            for (int city = 0; city < cityCount; city++) {
+                out.putInt(reverseOffset);
+                reverseOffset += graph.inEdgeEnd(city) - graph.inEdgeStart(city);
+            }
+            out.putInt(reverseOffset);
+            sections[SECTION_REVERSE_EDGES] = out.align();
+            for (int city = 0; city < cityCount; city++) {
+                int end = graph.inEdgeEnd(city);
+                for (int i = graph.inEdgeStart(city); i < end; i++) {
+                    int edge = graph.inEdge(i);
+                    int source = graph.edgeSource(edge);
+                    out.putInt(offsets[source] + edge - graph.edgeStart(source));
+                }
+            }
+
+            sections[SECTION_CITY_DATA] = out.align();
+            for (Map.Entry<String, CityBaseData> entry : snapshot.getCityBaseDataMap().entrySet()) {
+                CityBaseData city = entry.getValue();
+                out.putString(entry.getKey());
+                out.putString(city.getFromCity());
+                out.putString(city.getToCity());
+                out.putDouble(city.getFromLat());
+                out.putDouble(city.getFromLng());
+                out.putDouble(city.getToLat());
+                out.putDouble(city.getToLng());
+                out.putInt(city.getMileage());
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(cityCount).putInt(edgeCount)
+                    .putInt(snapshot.getCityBaseDataMap().size()).putInt(0)
+                    .putLong(snapshot.getMinTrunkEdgePrice());
+            for (long section : sections) {
+                header.putLong(section);
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * 映射加载 writeBinary 导出的快照
+     */
+    public static GraphSnapshot mapBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("not a graph snapshot file: " + path);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("not a graph snapshot file: " + path);
+            }
+            int version = header.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported graph snapshot format version: " + version);
+            }
+            int cityCount = header.getInt(8);
+            int edgeCount = header.getInt(12);
+            int cityDataCount = header.getInt(16);
+            long minTrunkEdgePrice = header.getLong(24);
+            long[] sections = new long[SECTION_COUNT + 1];
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                sections[i] = header.getLong(SECTION_TABLE_OFFSET + i * Long.BYTES);
+            }
+            sections[SECTION_COUNT] = fileSize;
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                if (sections[i] < HEADER_SIZE || sections[i] > sections[i + 1]) {
+                    throw new IOException("corrupt graph snapshot file: " + path);
+                }
+            }
+
+            // 城市表、区间偏移：按城市数读入堆内
+            ByteBuffer names = section(channel, sections, SECTION_CITY_NAMES, -1);
+            String[] cityNames = new String[cityCount];
+            Map<String, Integer> cityIdMap = new HashMap<>(cityCount * 2);
+            for (int city = 0; city < cityCount; city++) {
+                cityNames[city] = getString(names);
+                cityIdMap.put(cityNames[city], city);
+            }
+            IntBuffer offsets = section(channel, sections, SECTION_EDGE_OFFSETS, (long) (cityCount + 1) * Integer.BYTES).asIntBuffer();
+            int[] edgeStarts = new int[cityCount];
+            int[] edgeEnds = new int[cityCount];
+            int previous = 0;
+            for (int city = 0; city < cityCount; city++) {
+                edgeStarts[city] = offsets.get(city);
+                edgeEnds[city] = offsets.get(city + 1);
+                if (edgeStarts[city] != previous || edgeEnds[city] < edgeStarts[city] || edgeEnds[city] > edgeCount) {
+                    throw new IOException("corrupt graph snapshot file: " + path);
+                }
+                previous = edgeEnds[city];
+            }
+            if (previous != edgeCount) {
+                throw new IOException("corrupt graph snapshot file: " + path);
+            }
+
+            // 边属性、反向索引：映射，不复制
+            long intSection = (long) edgeCount * Integer.BYTES;
+            CompactTransportGraph graph = CompactTransportGraph.fromBuffers(cityNames, cityIdMap, edgeStarts, edgeEnds,
+                    section(channel, sections, SECTION_TARGETS, intSection).asIntBuffer(),
+                    section(channel, sections, SECTION_MODES, edgeCount),
+                    section(channel, sections, SECTION_MILEAGES, intSection).asIntBuffer(),
+                    section(channel, sections, SECTION_TIME_HOURS, intSection).asIntBuffer(),
+                    section(channel, sections, SECTION_PRICES, (long) edgeCount * Long.BYTES).asLongBuffer(),
+                    section(channel, sections, SECTION_SOURCES, intSection).asIntBuffer(),
+                    section(channel, sections, SECTION_REVERSE_OFFSETS, (long) (cityCount + 1) * Integer.BYTES).asIntBuffer(),
+                    section(channel, sections, SECTION_REVERSE_EDGES, intSection).asIntBuffer());
+
+            ByteBuffer cityData = section(channel, sections, SECTION_CITY_DATA, -1);
+            Map<String, CityBaseData> cityBaseDataMap = new LinkedHashMap<>(cityDataCount * 2);
+            for (int i = 0; i < cityDataCount; i++) {
+                String key = getString(cityData);
+                cityBaseDataMap.put(key, new CityBaseData(getString(cityData), getString(cityData), cityData.getDouble(),
+                        cityData.getDouble(), cityData.getDouble(), cityData.getDouble(), cityData.getInt()));
+            }
+            return new GraphSnapshot(graph, cityBaseDataMap, minTrunkEdgePrice);
+        }
+    }
+
+    /**
+     * 映射一个段
+     * @param length 段的有效长度，-1 表示到下一段起始位置为止
+     */
+    private static ByteBuffer section(FileChannel channel, long[] sections, int section, long length) throws IOException {
+        long available = sections[section + 1] - sections[section];
+        if (length < 0) {
+            length = available;
+        } else if (length > available) {
+            throw new IOException("corrupt graph snapshot file: section " + section + " is truncated");
+        }
+        return map(channel, sections[section], length);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void forEachEdge(CompactTransportGraph graph, EdgeWriter writer) throws IOException {
+        for (int city = 0; city < graph.getCityCount(); city++) {
+            for (int edge = graph.edgeStart(city); edge < graph.edgeEnd(city); edge++) {
+                writer.write(edge);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EdgeWriter {
+        void write(int edge) throws IOException;
+    }
+
+    /**
+     * 顺序写出小端序数据，记录已写出的字节数以便对齐
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void skip(int bytes) throws IOException {
+            for (int i = 0; i < bytes; i++) {
+                putByte((byte) 0);
+            }
+        }
+
+        /**
+         * 补零对齐到8字节
+         * @return 对齐后的位置
+         */
+        private long align() throws IOException {
+            skip((int) ((Long.BYTES - position % Long.BYTES) % Long.BYTES));
+            return position;
+        }
+
+        private void putByte(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+            position += Byte.BYTES;
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        private void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+            position += Double.BYTES;
+        }
+
+        private void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (byte b : bytes) {
+                putByte(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package service.impl;
+
+import java.util.Arrays;
+
+/**
+ * 带索引的二叉最小堆（A*的 open set）
+ * 元素为 [0, capacity) 范围内的int编号，支持 O(log n) 的插入、弹出和 decrease-key，
+ * 堆内只存原始类型，运行过程中不产生任何对象分配。
+ */
+public class IndexedMinHeap {
+
+    // 元素不在堆中
+    private static final int ABSENT = -1;
+
+    // 堆数组：heap[i] 为元素编号，heapKeys[i] 为其排序键
+    private int[] heap;
+    private double[] heapKeys;
+    // 元素编号 → 在堆数组中的位置（ABSENT 表示不在堆中）
+    private int[] positions;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[16];
+        this.heapKeys = new double[16];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+    }
+
+    /**
+     * 确保可容纳 [0, capacity) 的元素编号
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, oldLength, capacity, ABSENT);
+        }
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+    public boolean contains(int item) { return positions[item] != ABSENT; }
+
+    /**
+     * 插入元素；若元素已在堆中则按新键值更新位置
+     */
+    public void insertOrUpdate(int item, double key) {
+        int position = positions[item];
+        if (position == ABSENT) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                heapKeys = Arrays.copyOf(heapKeys, size * 2);
+            }
+            heap[size] = item;
+            heapKeys[size] = key;
+            positions[item] = size;
+            siftUp(size++);
+        } else if (key < heapKeys[position]) {
+            heapKeys[position] = key;
+            siftUp(position);
+        } else {
+            heapKeys[position] = key;
+            siftDown(position);
+        }
+    }
+
+    /**
+     * 弹出键值最小的元素
+     */
+    public int poll() {
+        int top = heap[0];
+        positions[top] = ABSENT;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            heapKeys[0] = heapKeys[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    public double peekKey() { return heapKeys[0]; }
+
+    /**
+     * 堆数组中 position 处的元素（position 取 [0, size)），用于不出堆地遍历全部元素
+     */
+    public int itemAt(int position) { return heap[position]; }
+
+    /**
+     * 清空堆，只重置仍在堆中的元素，代价与当前堆大小成正比
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int item = heap[position];
+        double key = heapKeys[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            moveTo(parent, position);
+            position = parent;
+        }
+        place(item, key, position);
+    }
+
+    private void siftDown(int position) {
+        int item = heap[position];
+        double key = heapKeys[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (key <= heapKeys[child]) {
+                break;
+            }
+            moveTo(child, position);
+            position = child;
+        }
+        place(item, key, position);
+    }
+
+    private void moveTo(int from, int to) {
+        heap[to] = heap[from];
+        heapKeys[to] = heapKeys[from];
+        positions[heap[to]] = to;
+    }
+
+    private void place(int item, double key, int position) {
+        heap[position] = item;
+        heapKeys[position] = key;
+        positions[item] = position;
+    }
+}
@@ -0,0 +1,366 @@
+package service.impl;
+
+import enumObject.OptimizeTargetEnum;
+import enumObject.TransportModeEnum;
+import model.CompactTransportGraph;
+import model.GraphChange;
+import model.GraphSnapshot;
+import service.GraphChangeListener;
+import service.HeuristicCalculator;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 地标启发函数（ALT：A* + Landmarks + Triangle inequality）
+ * 预先选出若干地标城市，用Dijkstra精确计算每个地标到所有城市（正向）以及所有城市到地标（反向）的
+ * 最短时效和最低价格；查询时利用三角不等式给出剩余成本的下界：
+ * d(v, t) >= max( d(L, t) - d(L, v), d(v, L) - d(t, L) )
+ * 距离只在干线搜索会使用的边（大板车、代驾）上计算，不含同城提送费，因此下界对A*是可采纳的。
+ * 作为 GraphChangeListener 注册到路由器后，发布新快照时自动重建；重建完成前对新图返回0，
+ * 进行中的旧图查询在重建后同样得到0，两者都仍是可采纳的下界。
+ * 单条线路的增量变更只会让路径变差时（删除、涨价、延长时效），旧距离表给出的下界不超过旧图上的真实距离，
+ * 也就不超过新图上的真实距离，因此直接沿用；可能让路径变好的变更使距离表失效，在后台重建，期间返回0。
+ */
+public class LandmarkHeuristicCalculator implements HeuristicCalculator, GraphChangeListener {
+
+    // 默认地标数量
+    public static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    private static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+
+    private final int landmarkCount;
+
+    // 预处理结果，重建时整体替换，查询线程总是读取一份完整的数据
+    private volatile LandmarkTable table;
+    // 后台重建使用的执行器
+    private volatile Executor rebuildExecutor = ForkJoinPool.commonPool();
+
+    // 以下状态只在持有 this 锁时读写
+    // 最近一次通知的图
+    private CompactTransportGraph latestGraph;
+    // 距离表对最新的图是否已失效
+    private boolean stale;
+    // 每次让距离表失效的变更或整体重建加一，后台重建据此判断重建期间是否又有新的失效
+    private long generation;
+    private boolean rebuildScheduled;
+
+    public LandmarkHeuristicCalculator(CompactTransportGraph graph) {
+        this(graph, DEFAULT_LANDMARK_COUNT);
+    }
+
+    /**
+     * @param graph CSR运输网络图
+     * @param landmarkCount 地标数量（越多下界越紧，预处理时间和内存线性增长）
+     */
+    public LandmarkHeuristicCalculator(CompactTransportGraph graph, int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+        rebuild(graph);
+    }
+
+    /**
+     * 图发生变化后重新选择地标并重算距离表
+     */
+    public void rebuild(CompactTransportGraph graph) {
+        LandmarkTable rebuilt = new LandmarkTable(graph, landmarkCount);
+        synchronized (this) {
+            this.table = rebuilt;
+            this.latestGraph = graph;
+            this.stale = false;
+            this.generation++;
+        }
+    }
+
+    @Override
+    public void onGraphChanged(GraphSnapshot previous, GraphSnapshot current) {
+        GraphChange change = current.getChange();
+        if (change == null) {
+            // 整体替换：同步重建
+            rebuild(current.getGraph());
+            return;
+        }
+        synchronized (this) {
+            CompactTransportGraph previousGraph = latestGraph;
+            latestGraph = current.getGraph();
+            if (stale) {
+                // 后台重建完成时会采用最新的图
+                if (change.isImproving()) {
+                    generation++;
+                }
+                return;
+            }
+            if (!change.isImproving() && previous != null && previousGraph == previous.getGraph()) {
+                table.compatibleGraph = latestGraph;
+                return;
+            }
+            stale = true;
+            generation++;
+            if (!rebuildScheduled) {
+                rebuildScheduled = true;
+                CompletableFuture.runAsync(this::rebuildLatest, rebuildExecutor);
+            }
+        }
+    }
+
+    /**
+     * 后台重建：重建期间又有让距离表失效的变更时重新开始，最终的距离表对最新的图有效
+     */
+    private void rebuildLatest() {
+        while (true) {
+            CompactTransportGraph graph;
+            long startGeneration;
+            synchronized (this) {
+                if (!stale) {
+                    rebuildScheduled = false;
+                    return;
+                }
+                graph = latestGraph;
+                startGeneration = generation;
+            }
+            LandmarkTable rebuilt;
+            try {
+                rebuilt = new LandmarkTable(graph, landmarkCount);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    rebuildScheduled = false;
+                }
+                System.err.println("警告：地标距离表重建失败，启发值退化为0：" + e);
+                return;
+            }
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    // 重建期间只有让路径变差的变更，距离表对最新的图同样适用
+                    rebuilt.compatibleGraph = latestGraph;
+                    table = rebuilt;
+                    stale = false;
+                    rebuildScheduled = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 距离表是否因增量变更失效、正在等待后台重建
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * 设置后台重建使用的执行器（默认公共ForkJoinPool）
+     */
+    public void setRebuildExecutor(Executor rebuildExecutor) {
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    /**
+     * 当前使用的地标城市
+     */
+    public String[] getLandmarkCities() {
+        LandmarkTable current = table;
+        String[] cities = new String[current.landmarks.length];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = current.graph.getCityName(current.landmarks[i]);
+        }
+        return cities;
+    }
+
+    @Override
+    public double calculate(String currentCity, String targetCity, OptimizeTargetEnum target) {
+        if (currentCity.equals(targetCity)) {
+            return 0.0;
+        }
+        LandmarkTable current = table;
+        int cityId = current.graph.getCityId(currentCity);
+        int targetId = current.graph.getCityId(targetCity);
+        if (cityId < 0 || targetId < 0) {
+            // 不在图中的城市没有可用的下界
+            return 0.0;
+        }
+        if (target == OptimizeTargetEnum.TIME) {
+            return current.lowerBound(current.forwardTime, current.backwardTime, cityId, targetId);
+        }
+        return current.lowerBound(current.forwardPrice, current.backwardPrice, cityId, targetId);
+    }
+
+    @Override
+    public double calculate(CompactTransportGraph graph, int cityId, String targetCity, OptimizeTargetEnum target) {
+        LandmarkTable current = table;
+        if (current.graph != graph && current.compatibleGraph != graph) {
+            // 距离表不适用于这张图（图刚被替换或有改进型变更），没有可靠的下界
+            return 0.0;
+        }
+        int targetId = graph.getCityId(targetCity);
+        if (targetId < 0 || targetId == cityId) {
+            return 0.0;
+        }
+        if (target == OptimizeTargetEnum.TIME) {
+            return current.lowerBound(current.forwardTime, current.backwardTime, cityId, targetId);
+        }
+        return current.lowerBound(current.forwardPrice, current.backwardPrice, cityId, targetId);
+    }
+
+    /**
+     * 一次预处理的结果：地标列表及按城市ID索引的距离数组
+     */
+    private static final class LandmarkTable {
+        private final CompactTransportGraph graph;
+        // 除 graph 之外，距离表仍然适用的最新一张图（其间只有让路径变差的增量变更）
+        private volatile CompactTransportGraph compatibleGraph;
+        private final int[] landmarks;
+        // [地标][城市]：地标 → 城市
+        private final double[][] forwardTime;
+        private final double[][] forwardPrice;
+        // [地标][城市]：城市 → 地标
+        private final double[][] backwardTime;
+        private final double[][] backwardPrice;
+
+        private LandmarkTable(CompactTransportGraph graph, int landmarkCount) {
+            this.graph = graph;
+            this.landmarks = selectLandmarks(graph, Math.min(landmarkCount, graph.getCityCount()));
+            int count = landmarks.length;
+            this.forwardTime = new double[count][];
+            this.forwardPrice = new double[count][];
+            this.backwardTime = new double[count][];
+            this.backwardPrice = new double[count][];
+            IndexedMinHeap heap = new IndexedMinHeap(graph.getCityCount());
+            for (int i = 0; i < count; i++) {
+                forwardTime[i] = dijkstra(graph, heap, landmarks[i], true, OptimizeTargetEnum.TIME);
+                forwardPrice[i] = dijkstra(graph, heap, landmarks[i], true, OptimizeTargetEnum.PRICE);
+                backwardTime[i] = dijkstra(graph, heap, landmarks[i], false, OptimizeTargetEnum.TIME);
+                backwardPrice[i] = dijkstra(graph, heap, landmarks[i], false, OptimizeTargetEnum.PRICE);
+            }
+        }
+
+        /**
+         * 三角不等式下界；能证明不可达时返回正无穷
+         */
+        private double lowerBound(double[][] forward, double[][] backward, int cityId, int targetId) {
+            double bound = 0.0;
+            for (int i = 0; i < landmarks.length; i++) {
+                double fromLandmarkToCity = forward[i][cityId];
+                double fromLandmarkToTarget = forward[i][targetId];
+                if (fromLandmarkToCity != UNREACHABLE) {
+                    if (fromLandmarkToTarget == UNREACHABLE) {
+                        // 地标能到当前城市却到不了目标，说明当前城市也到不了目标
+                        return UNREACHABLE;
+                    }
+                    bound = Math.max(bound, fromLandmarkToTarget - fromLandmarkToCity);
+                }
+                double fromCityToLandmark = backward[i][cityId];
+                double fromTargetToLandmark = backward[i][targetId];
+                if (fromTargetToLandmark != UNREACHABLE) {
+                    if (fromCityToLandmark == UNREACHABLE) {
+                        // 目标能到地标而当前城市不能，说明当前城市到不了目标
+                        return UNREACHABLE;
+                    }
+                    bound = Math.max(bound, fromCityToLandmark - fromTargetToLandmark);
+                }
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * 最远点策略选择地标：第一个地标取离任意起点（出度最大的城市）最远的城市，
+     * 之后每次选取与已选地标"最近距离"最大的城市，不可达视为无穷远，以覆盖不连通的子网
+     */
+    private static int[] selectLandmarks(CompactTransportGraph graph, int landmarkCount) {
+        int cityCount = graph.getCityCount();
+        if (landmarkCount <= 0) {
+            return new int[0];
+        }
+        int seed = 0;
+        for (int city = 1; city < cityCount; city++) {
+            if (graph.edgeEnd(city) - graph.edgeStart(city) > graph.edgeEnd(seed) - graph.edgeStart(seed)) {
+                seed = city;
+            }
+        }
+
+        IndexedMinHeap heap = new IndexedMinHeap(cityCount);
+        double[] nearest = new double[cityCount];
+        Arrays.fill(nearest, UNREACHABLE);
+        boolean[] chosen = new boolean[cityCount];
+        int[] landmarks = new int[landmarkCount];
+
+        // 以种子城市的距离确定第一个地标
+        int next = farthest(undirectedTimeDistances(graph, heap, seed), chosen);
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarks[i] = next;
+            chosen[next] = true;
+            double[] distances = undirectedTimeDistances(graph, heap, next);
+            for (int city = 0; city < cityCount; city++) {
+                nearest[city] = Math.min(nearest[city], distances[city]);
+            }
+            next = farthest(nearest, chosen);
+        }
+        return landmarks;
+    }
+
+    private static int farthest(double[] distances, boolean[] chosen) {
+        int best = -1;
+        for (int city = 0; city < distances.length; city++) {
+            if (!chosen[city] && (best < 0 || distances[city] > distances[best])) {
+                best = city;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 把图视为无向图计算时效距离，只用于挑选分布均匀的地标
+     */
+    private static double[] undirectedTimeDistances(CompactTransportGraph graph, IndexedMinHeap heap, int source) {
+        double[] forward = dijkstra(graph, heap, source, true, OptimizeTargetEnum.TIME);
+        double[] backward = dijkstra(graph, heap, source, false, OptimizeTargetEnum.TIME);
+        for (int city = 0; city < forward.length; city++) {
+            forward[city] = Math.min(forward[city], backward[city]);
+        }
+        return forward;
+    }
+
+    /**
+     * 单源Dijkstra
+     * @param forward true：从 source 出发沿出边；false：沿入边反向搜索（得到各城市到 source 的距离）
+     */
+    private static double[] dijkstra(CompactTransportGraph graph, IndexedMinHeap heap, int source,
+                                     boolean forward, OptimizeTargetEnum target) {
+        double[] distances = new double[graph.getCityCount()];
+        Arrays.fill(distances, UNREACHABLE);
+        distances[source] = 0.0;
+        heap.clear();
+        heap.insertOrUpdate(source, 0.0);
+        while (!heap.isEmpty()) {
+            int city = heap.poll();
+            double distance = distances[city];
+            int end = forward ? graph.edgeEnd(city) : graph.inEdgeEnd(city);
+            for (int i = forward ? graph.edgeStart(city) : graph.inEdgeStart(city); i < end; i++) {
+                int edge = forward ? i : graph.inEdge(i);
+                if (!isTrunkEdge(graph, edge)) {
+                    continue;
+                }
+                int neighbor = forward ? graph.edgeTarget(edge) : graph.edgeSource(edge);
+                // 距离表按接口约定以元为单位
+                double weight = target == OptimizeTargetEnum.TIME ? graph.edgeTimeHours(edge)
+                        : (double) graph.edgePriceFen(edge) / CompactTransportGraph.FEN_PER_YUAN;
+                double newDistance = distance + weight;
+                if (newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    heap.insertOrUpdate(neighbor, newDistance);
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * 与干线搜索使用相同的边集（大板车、代驾）
+     */
+    private static boolean isTrunkEdge(CompactTransportGraph graph, int edge) {
+        int modeOrdinal = graph.edgeModeOrdinal(edge);
+        return modeOrdinal == TransportModeEnum.BIG_TRUCK.ordinal() || modeOrdinal == TransportModeEnum.DRIVER.ordinal();
+    }
+}
@@ -0,0 +1,186 @@
+package service.impl;
+
+import enumObject.OptimizeTargetEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import model.SearchStatistics;
+import service.SearchMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Micrometer 的搜索指标实现
+ * 所有计量器在构造时按优化目标（标签 target = TIME / PRICE / BOTH，BOTH 为双目标标签搜索）一次性注册，
+ * 回调只做数组下标访问与计量器累加，不查找注册表、不创建标签对象。
+ * <ul>
+ *     <li>router.search.states：扩展/入堆/前移（标签 kind = expanded / pushed / updated）的状态数</li>
+ *     <li>router.search.stale.skipped：出堆后跳过的失效标签数</li>
+ *     <li>router.search.open.peak：每次搜索的 open set 峰值分布</li>
+ *     <li>router.search.heuristic：启发值读取/计算器调用次数（标签 kind = evaluations / calculations）</li>
+ *     <li>router.search.hierarchy.fallbacks：收缩层次路径不满足规则而回退到A*的次数</li>
+ *     <li>router.best.route：findBestRoute 耗时（标签 outcome = found / not_found）</li>
+ *     <li>router.plan.route：planRoute 耗时（含缓存命中）</li>
+ * </ul>
+ */
+public class MicrometerSearchMetrics implements SearchMetrics {
+
+    private static final String[] TARGET_TAGS = targetTags();
+    private static final int BOTH = TARGET_TAGS.length - 1;
+    // 延迟分布的百分位（由计量器在客户端计算，导出到JMX/监控系统）
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Counter[] expandedStates = new Counter[TARGET_TAGS.length];
+    private final Counter[] pushedStates = new Counter[TARGET_TAGS.length];
+    private final Counter[] updatedStates = new Counter[TARGET_TAGS.length];
+    private final Counter[] staleSkipped = new Counter[TARGET_TAGS.length];
+    private final Counter[] heuristicEvaluations = new Counter[TARGET_TAGS.length];
+    private final Counter[] heuristicCalculations = new Counter[TARGET_TAGS.length];
+    private final DistributionSummary[] peakOpenSetSize = new DistributionSummary[TARGET_TAGS.length];
+    private final Counter[] hierarchyFallbacks = new Counter[TARGET_TAGS.length];
+    private final Timer[] bestRouteFound = new Timer[TARGET_TAGS.length];
+    private final Timer[] bestRouteNotFound = new Timer[TARGET_TAGS.length];
+    private final Timer planRoute;
+    private final DistributionSummary planCount;
+
+    public MicrometerSearchMetrics(MeterRegistry registry) {
+        for (int i = 0; i < TARGET_TAGS.length; i++) {
+            String target = TARGET_TAGS[i];
+            expandedStates[i] = stateCounter(registry, target, "expanded");
+            pushedStates[i] = stateCounter(registry, target, "pushed");
+            updatedStates[i] = stateCounter(registry, target, "updated");
+            staleSkipped[i] = Counter.builder("router.search.stale.skipped")
+                    .description("出堆后发现已被支配而跳过的标签数")
+                    .tag("target", target)
+                    .register(registry);
+            heuristicEvaluations[i] = heuristicCounter(registry, target, "evaluations");
+            heuristicCalculations[i] = heuristicCounter(registry, target, "calculations");
+            peakOpenSetSize[i] = DistributionSummary.builder("router.search.open.peak")
+                    .description("单次搜索的 open set 峰值大小")
+                    .tag("target", target)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            if (i == BOTH) {
+                continue;
+            }
+            hierarchyFallbacks[i] = Counter.builder("router.search.hierarchy.fallbacks")
+                    .description("收缩层次路径不满足分段/运输方式规则、回退到A*的次数")
+                    .tag("target", target)
+                    .register(registry);
+            bestRouteFound[i] = bestRouteTimer(registry, target, "found");
+            bestRouteNotFound[i] = bestRouteTimer(registry, target, "not_found");
+        }
+        planRoute = Timer.builder("router.plan.route")
+                .description("planRoute 耗时（含缓存命中）")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        planCount = DistributionSummary.builder("router.plan.route.plans")
+                .description("planRoute 返回的方案数")
+                .register(registry);
+    }
+
+    @Override
+    public void recordSearch(OptimizeTargetEnum target, SearchStatistics statistics) {
+        int index = index(target);
+        expandedStates[index].increment(statistics.getExpandedStates());
+        pushedStates[index].increment(statistics.getPushedStates());
+        updatedStates[index].increment(statistics.getUpdatedStates());
+        staleSkipped[index].increment(statistics.getStaleSkipped());
+        heuristicEvaluations[index].increment(statistics.getHeuristicEvaluations());
+        heuristicCalculations[index].increment(statistics.getHeuristicCalculations());
+        peakOpenSetSize[index].record(statistics.getPeakOpenSetSize());
+    }
+
+    @Override
+    public void recordBestRoute(OptimizeTargetEnum target, long elapsedNanos, boolean found) {
+        (found ? bestRouteFound : bestRouteNotFound)[index(target)].record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordHierarchyFallback(OptimizeTargetEnum target) {
+        hierarchyFallbacks[index(target)].increment();
+    }
+
+    @Override
+    public void recordPlanRoute(long elapsedNanos, int planCount) {
+        planRoute.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        this.planCount.record(planCount);
+    }
+
+    /**
+     * 各优化目标的累计值汇总（供运维端点直接展示，无需逐个查询计量器）
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (int i = 0; i < TARGET_TAGS.length; i++) {
+            Map<String, Object> target = new LinkedHashMap<>();
+            target.put("expandedStates", (long) expandedStates[i].count());
+            target.put("pushedStates", (long) pushedStates[i].count());
+            target.put("updatedStates", (long) updatedStates[i].count());
+            target.put("staleSkipped", (long) staleSkipped[i].count());
+            target.put("heuristicEvaluations", (long) heuristicEvaluations[i].count());
+            target.put("heuristicCalculations", (long) heuristicCalculations[i].count());
+            target.put("searches", peakOpenSetSize[i].count());
+            target.put("meanPeakOpenSetSize", peakOpenSetSize[i].mean());
+            target.put("maxPeakOpenSetSize", peakOpenSetSize[i].max());
+            if (i != BOTH) {
+                target.put("hierarchyFallbacks", (long) hierarchyFallbacks[i].count());
+                target.put("bestRouteFound", timerSummary(bestRouteFound[i]));
+                target.put("bestRouteNotFound", timerSummary(bestRouteNotFound[i]));
+            }
+            summary.put(TARGET_TAGS[i], target);
+        }
+        summary.put("planRoute", timerSummary(planRoute));
+        return summary;
+    }
+
+    private static Map<String, Object> timerSummary(Timer timer) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", timer.count());
+        summary.put("meanMillis", timer.mean(TimeUnit.MILLISECONDS));
+        summary.put("maxMillis", timer.max(TimeUnit.MILLISECONDS));
+        return summary;
+    }
+
+    private static Counter stateCounter(MeterRegistry registry, String target, String kind) {
+        return Counter.builder("router.search.states")
+                .description("搜索扩展/入堆/前移（decrease-key）的状态数")
+                .tag("target", target)
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    private static Counter heuristicCounter(MeterRegistry registry, String target, String kind) {
+        return Counter.builder("router.search.heuristic")
+                .description("启发值读取/启发式计算器调用次数")
+                .tag("target", target)
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    private static Timer bestRouteTimer(MeterRegistry registry, String target, String outcome) {
+        return Timer.builder("router.best.route")
+                .description("findBestRoute 耗时")
+                .tag("target", target)
+                .tag("outcome", outcome)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    private static int index(OptimizeTargetEnum target) {
+        return target == null ? BOTH : target.ordinal();
+    }
+
+    private static String[] targetTags() {
+        OptimizeTargetEnum[] targets = OptimizeTargetEnum.values();
+        String[] tags = new String[targets.length + 1];
+        for (int i = 0; i < targets.length; i++) {
+            tags[i] = targets[i].name();
+        }
+        tags[targets.length] = "BOTH";
+        return tags;
+    }
+}
@@ -0,0 +1,504 @@
+package service.impl;
+
+import model.SearchStatistics;
+
+import java.util.Arrays;
+
+/**
+ * 双目标（时效、价格）标签搜索的可复用工作区（与 AStarSearchContext 一样按查询从池中借用）
+ * 每个标签代表一条部分路径，属性全部存放在按标签编号索引的原始类型数组中；
+ * 同一 (城市, 当前运输方式) 下的非支配标签通过单链表串成一个桶，
+ * 待扩展标签按 (时效估值, 价格估值) 的字典序存放在二叉堆中。
+ * 一对多搜索时，每个目的地另有一份各自的前沿（终点价格含送车费）。
+ * 价格以分为单位的 long 存放，桶内/前沿支配比较都是精确的整数比较；价格启发值同样换算为分。
+ */
+public class ParetoSearchContext {
+
+    private static final SearchContextPool<ParetoSearchContext> POOL = new SearchContextPool<>();
+
+    private static final int NONE = -1;
+
+    private int generation;
+
+    // --- 标签池（按标签编号索引） ---
+    private int labelCount;
+    private int[] labelCities = new int[64];
+    private int[] labelSegments = new int[64];
+    private int[] labelModeSlots = new int[64];
+    private int[] labelTimes = new int[64];
+    private long[] labelPrices = new long[64];     // 价格（分）
+    private int[] labelParents = new int[64];
+    private int[] labelEdges = new int[64];
+    private int[] labelNext = new int[64];      // 同一桶内的下一个标签
+    private boolean[] labelDead = new boolean[64]; // 已被支配
+    private double[] labelTimeKeys = new double[64];  // 时效估值 = 时效 + 启发值
+    private double[] labelPriceKeys = new double[64]; // 价格估值 = 价格 + 启发值（分）
+
+    // --- 桶（按 城市 * 运输方式槽位数 + 槽位 索引） ---
+    private int[] bucketStamp = new int[0];
+    private int[] bucketHeads = new int[0];
+
+    // --- 启发值缓存（按城市ID索引，时效/价格各一份） ---
+    private int[] heuristicStamp = new int[0];
+    private double[] timeHeuristics = new double[0];
+    private double[] priceHeuristics = new double[0]; // 价格启发值（分）
+
+    // --- 待扩展标签堆 ---
+    private int[] heap = new int[64];
+    private int heapSize;
+
+    // --- 到达终点的非支配标签 ---
+    private int[] frontier = new int[16];
+    private int frontierSize;
+
+    // --- 一对多搜索：城市ID → 目标序号，每个目标一份前沿 ---
+    private int[] targetStamp = new int[0];
+    private int[] targetIndexes = new int[0];
+    private int targetCount;
+    private int[][] targetFrontiers = new int[0][];
+    private long[][] targetFrontierPrices = new long[0][]; // 终点价格（分，含送车费）
+    private int[] targetFrontierSizes = new int[0];
+
+    // --- 本次查询的工作量计数 ---
+    private long expandedCount;
+    private long pushedCount;
+    private long staleCount;
+    private int peakHeapSize;
+    private long heuristicEvaluationCount;
+    private long heuristicCalculationCount;
+
+    // 回溯路径用的边下标缓冲区
+    private int[] pathBuffer = new int[16];
+
+    /**
+     * 从池中借用一个工作区；查询结束后必须调用 release 归还
+     */
+    public static ParetoSearchContext acquire(int bucketCount, int cityCount) {
+        ParetoSearchContext context = POOL.poll();
+        if (context == null) {
+            context = new ParetoSearchContext();
+        }
+        context.prepare(bucketCount, cityCount);
+        return context;
+    }
+
+    /**
+     * 归还工作区，之后不得再访问
+     */
+    public void release() {
+        POOL.offer(this);
+    }
+
+    private void prepare(int bucketCount, int cityCount) {
+        if (bucketStamp.length < bucketCount) {
+            bucketStamp = Arrays.copyOf(bucketStamp, bucketCount);
+            bucketHeads = Arrays.copyOf(bucketHeads, bucketCount);
+        }
+        if (heuristicStamp.length < cityCount) {
+            heuristicStamp = Arrays.copyOf(heuristicStamp, cityCount);
+            timeHeuristics = Arrays.copyOf(timeHeuristics, cityCount);
+            priceHeuristics = Arrays.copyOf(priceHeuristics, cityCount);
+            targetStamp = Arrays.copyOf(targetStamp, cityCount);
+            targetIndexes = Arrays.copyOf(targetIndexes, cityCount);
+        }
+        labelCount = 0;
+        heapSize = 0;
+        frontierSize = 0;
+        targetCount = 0;
+        expandedCount = 0;
+        pushedCount = 0;
+        staleCount = 0;
+        peakHeapSize = 0;
+        heuristicEvaluationCount = 0;
+        heuristicCalculationCount = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(bucketStamp, 0);
+            Arrays.fill(heuristicStamp, 0);
+            Arrays.fill(targetStamp, 0);
+            generation = 1;
+        }
+    }
+
+    // --- 标签 ---
+
+    /**
+     * 新建一个标签并返回其编号
+     */
+    public int newLabel(int cityId, int segmentCount, int modeSlot, int time, long price,
+                        int parent, int edge, double timeKey, double priceKey) {
+        if (labelCount == labelCities.length) {
+            growLabels();
+        }
+        int label = labelCount++;
+        labelCities[label] = cityId;
+        labelSegments[label] = segmentCount;
+        labelModeSlots[label] = modeSlot;
+        labelTimes[label] = time;
+        labelPrices[label] = price;
+        labelParents[label] = parent;
+        labelEdges[label] = edge;
+        labelNext[label] = NONE;
+        labelDead[label] = false;
+        labelTimeKeys[label] = timeKey;
+        labelPriceKeys[label] = priceKey;
+        return label;
+    }
+
+    private void growLabels() {
+        int capacity = labelCities.length * 2;
+        labelCities = Arrays.copyOf(labelCities, capacity);
+        labelSegments = Arrays.copyOf(labelSegments, capacity);
+        labelModeSlots = Arrays.copyOf(labelModeSlots, capacity);
+        labelTimes = Arrays.copyOf(labelTimes, capacity);
+        labelPrices = Arrays.copyOf(labelPrices, capacity);
+        labelParents = Arrays.copyOf(labelParents, capacity);
+        labelEdges = Arrays.copyOf(labelEdges, capacity);
+        labelNext = Arrays.copyOf(labelNext, capacity);
+        labelDead = Arrays.copyOf(labelDead, capacity);
+        labelTimeKeys = Arrays.copyOf(labelTimeKeys, capacity);
+        labelPriceKeys = Arrays.copyOf(labelPriceKeys, capacity);
+    }
+
+    public int getCity(int label) { return labelCities[label]; }
+    public int getSegmentCount(int label) { return labelSegments[label]; }
+    public int getModeSlot(int label) { return labelModeSlots[label]; }
+    public int getTime(int label) { return labelTimes[label]; }
+    public long getPrice(int label) { return labelPrices[label]; }
+    public int getParent(int label) { return labelParents[label]; }
+    public int getEdge(int label) { return labelEdges[label]; }
+    public boolean isDead(int label) { return labelDead[label]; }
+    public int labelCount() { return labelCount; }
+
+    // --- 桶内支配检查 ---
+
+    /**
+     * 判断 (时效, 价格, 分段数) 是否被桶内某个存活标签弱支配
+     */
+    public boolean isDominatedInBucket(int bucket, int time, long price, int segmentCount) {
+        if (bucketStamp[bucket] != generation) {
+            return false;
+        }
+        for (int label = bucketHeads[bucket]; label != NONE; label = labelNext[label]) {
+            if (labelTimes[label] <= time && labelPrices[label] <= price && labelSegments[label] <= segmentCount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将新标签加入桶，并剔除（标记为已支配）被它支配的旧标签
+     */
+    public void addToBucket(int bucket, int newLabel) {
+        int time = labelTimes[newLabel];
+        long price = labelPrices[newLabel];
+        int segmentCount = labelSegments[newLabel];
+        int head = NONE;
+        if (bucketStamp[bucket] == generation) {
+            int previous = NONE;
+            for (int label = bucketHeads[bucket]; label != NONE; label = labelNext[label]) {
+                if (time <= labelTimes[label] && price <= labelPrices[label] && segmentCount <= labelSegments[label]) {
+                    labelDead[label] = true;
+                    if (previous == NONE) {
+                        bucketHeads[bucket] = labelNext[label];
+                    } else {
+                        labelNext[previous] = labelNext[label];
+                    }
+                } else {
+                    previous = label;
+                }
+            }
+            head = bucketHeads[bucket];
+        }
+        bucketStamp[bucket] = generation;
+        labelNext[newLabel] = head;
+        bucketHeads[bucket] = newLabel;
+    }
+
+    // --- 终点前沿 ---
+
+    /**
+     * 判断 (时效估值, 价格估值) 是否被终点前沿中的某个标签弱支配（用于目标剪枝）
+     */
+    public boolean isDominatedByFrontier(double timeKey, double priceKey) {
+        for (int i = 0; i < frontierSize; i++) {
+            int label = frontier[i];
+            if (labelTimes[label] <= timeKey && labelPrices[label] <= priceKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 向终点前沿加入一个标签（调用方需保证它未被前沿支配），同时移除被它支配的旧标签
+     */
+    public void addToFrontier(int newLabel) {
+        int time = labelTimes[newLabel];
+        long price = labelPrices[newLabel];
+        int size = 0;
+        for (int i = 0; i < frontierSize; i++) {
+            int label = frontier[i];
+            if (!(time <= labelTimes[label] && price <= labelPrices[label])) {
+                frontier[size++] = label;
+            }
+        }
+        if (size == frontier.length) {
+            frontier = Arrays.copyOf(frontier, size * 2);
+        }
+        frontier[size++] = newLabel;
+        frontierSize = size;
+    }
+
+    /**
+     * 将前沿按时效升序（价格降序）排列后返回其大小，元素通过 frontierLabel 读取
+     */
+    public int sortFrontier() {
+        // 前沿通常只有个位数元素，插入排序即可
+        for (int i = 1; i < frontierSize; i++) {
+            int label = frontier[i];
+            int j = i - 1;
+            while (j >= 0 && labelTimes[frontier[j]] > labelTimes[label]) {
+                frontier[j + 1] = frontier[j];
+                j--;
+            }
+            frontier[j + 1] = label;
+        }
+        return frontierSize;
+    }
+
+    public int frontierLabel(int index) { return frontier[index]; }
+
+    // --- 一对多搜索的目标前沿 ---
+
+    /**
+     * 登记一个目的地城市并返回其目标序号，重复登记返回同一序号
+     */
+    public int addTarget(int cityId) {
+        if (targetStamp[cityId] == generation) {
+            return targetIndexes[cityId];
+        }
+        if (targetCount == targetFrontierSizes.length) {
+            int capacity = Math.max(4, targetCount * 2);
+            targetFrontiers = Arrays.copyOf(targetFrontiers, capacity);
+            targetFrontierPrices = Arrays.copyOf(targetFrontierPrices, capacity);
+            targetFrontierSizes = Arrays.copyOf(targetFrontierSizes, capacity);
+        }
+        int target = targetCount++;
+        if (targetFrontiers[target] == null) {
+            targetFrontiers[target] = new int[4];
+            targetFrontierPrices[target] = new long[4];
+        }
+        targetFrontierSizes[target] = 0;
+        targetStamp[cityId] = generation;
+        targetIndexes[cityId] = target;
+        return target;
+    }
+
+    /**
+     * 城市对应的目标序号，不是目的地时返回-1
+     */
+    public int targetIndex(int cityId) {
+        return targetStamp[cityId] == generation ? targetIndexes[cityId] : NONE;
+    }
+
+    public int targetCount() { return targetCount; }
+
+    /**
+     * 判断到达目标的 (时效, 终点价格) 是否被该目标前沿中的某个方案弱支配
+     */
+    public boolean isDominatedByTargetFrontier(int target, int time, long price) {
+        int[] labels = targetFrontiers[target];
+        long[] prices = targetFrontierPrices[target];
+        for (int i = 0, size = targetFrontierSizes[target]; i < size; i++) {
+            if (labelTimes[labels[i]] <= time && prices[i] <= price) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 向目标前沿加入一个到达标签（调用方需保证它未被前沿支配），同时移除被它支配的旧方案
+     * @param price 终点价格（分，含送车费）
+     */
+    public void addToTargetFrontier(int target, int newLabel, long price) {
+        int time = labelTimes[newLabel];
+        int[] labels = targetFrontiers[target];
+        long[] prices = targetFrontierPrices[target];
+        int size = 0;
+        for (int i = 0, oldSize = targetFrontierSizes[target]; i < oldSize; i++) {
+            if (!(time <= labelTimes[labels[i]] && price <= prices[i])) {
+                labels[size] = labels[i];
+                prices[size] = prices[i];
+                size++;
+            }
+        }
+        if (size == labels.length) {
+            labels = targetFrontiers[target] = Arrays.copyOf(labels, size * 2);
+            prices = targetFrontierPrices[target] = Arrays.copyOf(prices, size * 2);
+        }
+        labels[size] = newLabel;
+        prices[size] = price;
+        targetFrontierSizes[target] = size + 1;
+    }
+
+    public int targetFrontierSize(int target) { return targetFrontierSizes[target]; }
+
+    /**
+     * 目标前沿中价格最低的终点价格（分），前沿为空时为 Long.MAX_VALUE
+     */
+    public long targetBestPrice(int target) {
+        long best = Long.MAX_VALUE;
+        long[] prices = targetFrontierPrices[target];
+        for (int i = 0, size = targetFrontierSizes[target]; i < size; i++) {
+            best = Math.min(best, prices[i]);
+        }
+        return best;
+    }
+
+    /**
+     * 目标前沿中价格最低方案的时效，前沿为空时为 Integer.MAX_VALUE
+     */
+    public int targetBestPriceTime(int target) {
+        int bestTime = Integer.MAX_VALUE;
+        long best = Long.MAX_VALUE;
+        int[] labels = targetFrontiers[target];
+        long[] prices = targetFrontierPrices[target];
+        for (int i = 0, size = targetFrontierSizes[target]; i < size; i++) {
+            if (prices[i] < best) {
+                best = prices[i];
+                bestTime = labelTimes[labels[i]];
+            }
+        }
+        return bestTime;
+    }
+
+    /**
+     * 将目标前沿按时效升序排列后返回其大小，元素通过 targetFrontierLabel 读取
+     */
+    public int sortTargetFrontier(int target) {
+        int[] labels = targetFrontiers[target];
+        long[] prices = targetFrontierPrices[target];
+        int size = targetFrontierSizes[target];
+        for (int i = 1; i < size; i++) {
+            int label = labels[i];
+            long price = prices[i];
+            int j = i - 1;
+            while (j >= 0 && labelTimes[labels[j]] > labelTimes[label]) {
+                labels[j + 1] = labels[j];
+                prices[j + 1] = prices[j];
+                j--;
+            }
+            labels[j + 1] = label;
+            prices[j + 1] = price;
+        }
+        return size;
+    }
+
+    public int targetFrontierLabel(int target, int index) { return targetFrontiers[target][index]; }
+
+    // --- 启发值缓存 ---
+
+    public boolean hasHeuristic(int cityId) { return heuristicStamp[cityId] == generation; }
+    public double getTimeHeuristic(int cityId) { return timeHeuristics[cityId]; }
+    public double getPriceHeuristic(int cityId) { return priceHeuristics[cityId]; }
+
+    public void putHeuristic(int cityId, double timeHeuristic, double priceHeuristic) {
+        heuristicStamp[cityId] = generation;
+        timeHeuristics[cityId] = timeHeuristic;
+        priceHeuristics[cityId] = priceHeuristic;
+    }
+
+    /**
+     * 记录一次启发值读取；calculated 表示调用了启发式计算器逐个计算
+     */
+    public void countHeuristic(boolean calculated) {
+        heuristicEvaluationCount++;
+        if (calculated) {
+            heuristicCalculationCount++;
+        }
+    }
+
+    // --- 待扩展标签堆（按 时效估值、价格估值 字典序） ---
+
+    public boolean hasQueuedLabels() { return heapSize > 0; }
+
+    public void enqueue(int label) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int position = heapSize++;
+        pushedCount++;
+        if (heapSize > peakHeapSize) {
+            peakHeapSize = heapSize;
+        }
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(label, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = label;
+    }
+
+    public int dequeue() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int position = 0;
+        int half = heapSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], last)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        if (heapSize > 0) {
+            heap[position] = last;
+        }
+        expandedCount++;
+        if (labelDead[top]) {
+            staleCount++;
+        }
+        return top;
+    }
+
+    /**
+     * 把本次查询的工作量计数累加到 statistics；出堆时已被支配的标签计为陈旧元素，不计入扩展数
+     */
+    public void addStatisticsTo(SearchStatistics statistics) {
+        SearchStatistics own = new SearchStatistics();
+        own.setExpandedStates(expandedCount - staleCount);
+        own.setPushedStates(pushedCount);
+        own.setStaleSkipped(staleCount);
+        own.setPeakOpenSetSize(peakHeapSize);
+        own.setHeuristicEvaluations(heuristicEvaluationCount);
+        own.setHeuristicCalculations(heuristicCalculationCount);
+        statistics.add(own);
+    }
+
+    private boolean before(int a, int b) {
+        if (labelTimeKeys[a] != labelTimeKeys[b]) {
+            return labelTimeKeys[a] < labelTimeKeys[b];
+        }
+        return labelPriceKeys[a] < labelPriceKeys[b];
+    }
+
+    /**
+     * 回溯路径用的缓冲区，容量不足时扩容
+     */
+    public int[] pathBuffer(int capacity) {
+        if (pathBuffer.length < capacity) {
+            pathBuffer = new int[capacity];
+        }
+        return pathBuffer;
+    }
+}
@@ -0,0 +1,108 @@
+package service.impl;
+
+import model.CompactTransportGraph;
+import model.RouteMatrix;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OD矩阵导出/导入
+ * CSV：每个起讫点一行（起点,终点,时效,价格），不可达时时效、价格为空，便于报价表、投标文件直接引用；
+ * 二进制：文件头 + 城市名 + 行优先的时效 int 数组 + 价格（分）long 数组（大端序），可原样读回。
+ */
+public class RouteMatrixExporter {
+
+    // 二进制文件头魔数 "RMTX"
+    private static final int MAGIC = 0x524D5458;
+    // 版本2：价格改为以分为单位的 long
+    private static final int FORMAT_VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private RouteMatrixExporter() {
+    }
+
+    /**
+     * 导出为CSV（UTF-8）
+     */
+    public static void writeCsv(RouteMatrix matrix, Path path) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            writer.write("fromCity,toCity,timeHours,price\n");
+            int size = matrix.size();
+            for (int from = 0; from < size; from++) {
+                String fromCity = matrix.getCity(from);
+                for (int to = 0; to < size; to++) {
+                    writer.write(fromCity);
+                    writer.write(',');
+                    writer.write(matrix.getCity(to));
+                    writer.write(',');
+                    if (matrix.isReachable(from, to)) {
+                        writer.write(Integer.toString(matrix.getTime(from, to)));
+                        writer.write(',');
+                        writer.write(CompactTransportGraph.toPriceDecimal(matrix.getPrice(from, to)).toPlainString());
+                    } else {
+                        writer.write(',');
+                    }
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * 导出为二进制格式
+     */
+    public static void writeBinary(RouteMatrix matrix, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(matrix.isNeedSameCityPick());
+            out.writeBoolean(matrix.isNeedSameCityDeliver());
+            out.writeInt(matrix.size());
+            for (String city : matrix.getCities()) {
+                out.writeUTF(city);
+            }
+            for (int time : matrix.rawTimes()) {
+                out.writeInt(time);
+            }
+            for (long price : matrix.rawPrices()) {
+                out.writeLong(price);
+            }
+        }
+    }
+
+    /**
+     * 读取 writeBinary 导出的矩阵
+     */
+    public static RouteMatrix readBinary(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a route matrix file: " + path);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported route matrix format version: " + version);
+            }
+            boolean needSameCityPick = in.readBoolean();
+            boolean needSameCityDeliver = in.readBoolean();
+            int size = in.readInt();
+            List<String> cities = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                cities.add(in.readUTF());
+            }
+            int[] times = new int[size * size];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = in.readInt();
+            }
+            long[] prices = new long[size * size];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = in.readLong();
+            }
+            return new RouteMatrix(cities, needSameCityPick, needSameCityDeliver, times, prices);
+        }
+    }
+}
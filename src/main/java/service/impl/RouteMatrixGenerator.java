@@ -0,0 +1,258 @@
+package service.impl;
+
+import model.CompactTransportGraph;
+import model.RouteMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 多对多（OD矩阵）时效/价格生成器
+ * 对每个起点做一次一对全部的搜索，得到它到所有城市的最短干线时效和最低价格；各起点之间相互独立，
+ * 在 ForkJoinPool 上按行并行计算。
+ * 搜索遵循 TransportGraphRouter 的规则：只走大板车、代驾边，运输方式转移规则、分段数上限、
+ * 代驾距离上限、板车单段里程上限与路由器的规则表一致，禁止中间段代驾时代驾只能出现在首尾；时效、价格口径与 planRoute 的时效最优/价格最优方案相同
+ * （含同城提/送车的时间和费用，首/末段为代驾时免收提/送车费）。
+ * 价格以分为单位的 long 累加，矩阵中的价格是精确值。
+ * 由于分段数上限很小，一对全部的搜索按分段数逐层松弛（每层一次扫描所有可达状态的出边），不需要优先队列。
+ */
+public class RouteMatrixGenerator {
+
+    // 干线搜索涉及的运输方式槽位：0 起始，1 大板车，2 代驾（与路由器规则表的槽位一致）
+    private static final int MODE_SLOTS = 3;
+
+    private static final int INF_TIME = Integer.MAX_VALUE;
+    private static final long INF_PRICE = RouteMatrix.UNREACHABLE_PRICE;
+
+    // 每个工作线程复用一份逐层松弛用的数组
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final TransportGraphRouter router;
+    private final ForkJoinPool pool;
+
+    public RouteMatrixGenerator(TransportGraphRouter router) {
+        this(router, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param router 提供运输网络图及分段数、代驾距离、同城服务等参数的路由器
+     * @param pool 执行并行计算的线程池
+     */
+    public RouteMatrixGenerator(TransportGraphRouter router, ForkJoinPool pool) {
+        this.router = router;
+        this.pool = pool;
+    }
+
+    /**
+     * 生成城市基础信息中所有城市两两之间的矩阵
+     */
+    public RouteMatrix generate(boolean needSameCityPick, boolean needSameCityDeliver) {
+        return generate(new ArrayList<>(router.getCityBaseDataMap().keySet()), needSameCityPick, needSameCityDeliver);
+    }
+
+    /**
+     * 生成指定城市两两之间的矩阵
+     * @param cities 城市列表，同时作为行（起点）和列（终点）；不在运输网络中的城市整行整列不可达
+     * @param needSameCityPick 是否需要同城提车
+     * @param needSameCityDeliver 是否需要同城送车
+     */
+    public RouteMatrix generate(List<String> cities, boolean needSameCityPick, boolean needSameCityDeliver) {
+        // 只读取一次当前快照的图，生成期间图被替换不影响本次矩阵
+        CompactTransportGraph graph = router.getGraph();
+        // 生成期间参数保持不变（避免计算过程中被setter修改）
+        SearchParameters parameters = new SearchParameters(router.getMaxSegments(), router.getRuleTable(), graph,
+                CompactTransportGraph.toFen(router.getSameCityServicePrice()), router.getSameCityServiceTime(),
+                needSameCityPick, needSameCityDeliver);
+
+        int size = cities.size();
+        int[] cityIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            cityIds[i] = graph.getCityId(cities.get(i));
+        }
+
+        RouteMatrix matrix = new RouteMatrix(new ArrayList<>(cities), needSameCityPick, needSameCityDeliver);
+        pool.submit(() -> IntStream.range(0, size).parallel().forEach(row -> {
+            if (cityIds[row] < 0) {
+                return;
+            }
+            Workspace workspace = WORKSPACE.get();
+            workspace.prepare(graph.getCityCount(), size);
+            searchFromOrigin(graph, cityIds[row], parameters, workspace);
+
+            int[] rowTimes = workspace.rowTimes;
+            long[] rowPrices = workspace.rowPrices;
+            for (int column = 0; column < size; column++) {
+                int cityId = cityIds[column];
+                if (cityId < 0 || workspace.bestTimes[cityId] == INF_TIME) {
+                    rowTimes[column] = RouteMatrix.UNREACHABLE_TIME;
+                    rowPrices[column] = INF_PRICE;
+                } else {
+                    rowTimes[column] = workspace.bestTimes[cityId] + parameters.serviceTime;
+                    rowPrices[column] = workspace.bestPrices[cityId];
+                }
+            }
+            matrix.setRow(row, rowTimes, rowPrices);
+        })).join();
+        return matrix;
+    }
+
+    /**
+     * 按分段数逐层松弛：第 k 层保存恰好使用 k 段到达各 (城市, 当前运输方式) 的最短时效和最低价格，
+     * 每层结束时把到达各城市的值（价格按末段方式计入送车费）并入该城市的最优值
+     */
+    private static void searchFromOrigin(CompactTransportGraph graph, int origin, SearchParameters parameters,
+                                         Workspace workspace) {
+        int stateCount = graph.getCityCount() * MODE_SLOTS;
+        int[] times = workspace.layerTimes;
+        long[] prices = workspace.layerPrices;
+        int[] nextTimes = workspace.nextLayerTimes;
+        long[] nextPrices = workspace.nextLayerPrices;
+        Arrays.fill(times, 0, stateCount, INF_TIME);
+        Arrays.fill(prices, 0, stateCount, INF_PRICE);
+        Arrays.fill(workspace.bestTimes, 0, graph.getCityCount(), INF_TIME);
+        Arrays.fill(workspace.bestPrices, 0, graph.getCityCount(), INF_PRICE);
+
+        // 第0层：只有起点的起始状态；起点即终点时，空路径按非代驾口径收取提/送车费
+        times[origin * MODE_SLOTS] = 0;
+        prices[origin * MODE_SLOTS] = 0;
+        workspace.bestTimes[origin] = 0;
+        workspace.bestPrices[origin] = parameters.pickFee + parameters.deliverFee;
+
+        TrunkAdjacency adjacency = parameters.adjacency;
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = parameters.rules.getSlotTransitions();
+        int driverSlot = parameters.rules.getDriverSlot();
+        boolean driverOnlyAtEnds = parameters.rules.isForbidDriverInMiddle();
+
+        for (int layer = 0; layer < parameters.segmentLimit; layer++) {
+            Arrays.fill(nextTimes, 0, stateCount, INF_TIME);
+            Arrays.fill(nextPrices, 0, stateCount, INF_PRICE);
+            boolean anyReached = false;
+
+            for (int state = 0; state < stateCount; state++) {
+                if (times[state] == INF_TIME) {
+                    continue;
+                }
+                int modeSlot = state % MODE_SLOTS;
+                // 禁止中间段代驾时，大板车之后的代驾只能作为末段，不再扩展
+                if (driverOnlyAtEnds && modeSlot == driverSlot && layer >= 2) {
+                    continue;
+                }
+                long allowedSlots = slotTransitions[modeSlot];
+                int cityId = state / MODE_SLOTS;
+                int time = times[state];
+                long price = prices[state];
+
+                // 干线邻接表只含可用的边（已去掉超限边和被支配的平行边），按槽位分组
+                int edgeEnd = adjacency.outEnd(cityId, allowedSlots);
+                for (int i = adjacency.outStart(cityId, allowedSlots); i < edgeEnd; i++) {
+                    int edge = adjacency.outEdge(i);
+                    int nextModeSlot = edgeSlots.get(edge);
+                    if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                        continue;
+                    }
+                    int nextState = graph.edgeTarget(edge) * MODE_SLOTS + nextModeSlot;
+                    int newTime = time + graph.edgeTimeHours(edge);
+                    long newPrice = price + graph.edgePriceFen(edge);
+                    // 首段不是代驾时收取提车费
+                    if (layer == 0 && nextModeSlot != driverSlot) {
+                        newPrice += parameters.pickFee;
+                    }
+                    if (newTime < nextTimes[nextState]) {
+                        nextTimes[nextState] = newTime;
+                    }
+                    if (newPrice < nextPrices[nextState]) {
+                        nextPrices[nextState] = newPrice;
+                    }
+                    anyReached = true;
+                }
+            }
+            if (!anyReached) {
+                break;
+            }
+
+            // 本层到达的状态并入各城市的最优值
+            for (int state = 0; state < stateCount; state++) {
+                if (nextTimes[state] == INF_TIME) {
+                    continue;
+                }
+                int cityId = state / MODE_SLOTS;
+                long endPrice = nextPrices[state];
+                // 末段不是代驾时收取送车费
+                if (state % MODE_SLOTS != driverSlot) {
+                    endPrice += parameters.deliverFee;
+                }
+                if (cityId == origin) {
+                    // 与 planRoute 一致：起点即终点时只有空路径方案
+                    continue;
+                }
+                workspace.bestTimes[cityId] = Math.min(workspace.bestTimes[cityId], nextTimes[state]);
+                workspace.bestPrices[cityId] = Math.min(workspace.bestPrices[cityId], endPrice);
+            }
+
+            int[] swapTimes = times;
+            times = nextTimes;
+            nextTimes = swapTimes;
+            long[] swapPrices = prices;
+            prices = nextPrices;
+            nextPrices = swapPrices;
+        }
+    }
+
+    /**
+     * 一次矩阵生成使用的参数快照
+     */
+    private static final class SearchParameters {
+        private final int segmentLimit;
+        private final TransportRuleTable rules;
+        private final TrunkAdjacency adjacency; // 规则表为本图准备的干线邻接表
+        private final long pickFee;       // 分
+        private final long deliverFee;    // 分
+        private final int serviceTime; // 同城提/送车时间之和
+
+        private SearchParameters(int segmentLimit, TransportRuleTable rules, CompactTransportGraph graph,
+                                 long sameCityServicePrice, int sameCityServiceTime,
+                                 boolean needSameCityPick, boolean needSameCityDeliver) {
+            this.segmentLimit = segmentLimit;
+            this.rules = rules;
+            this.adjacency = rules.prepare(graph);
+            this.pickFee = needSameCityPick ? sameCityServicePrice : 0;
+            this.deliverFee = needSameCityDeliver ? sameCityServicePrice : 0;
+            this.serviceTime = (needSameCityPick ? sameCityServiceTime : 0) + (needSameCityDeliver ? sameCityServiceTime : 0);
+        }
+    }
+
+    /**
+     * 线程级工作区：两层状态数组、各城市最优值、一行结果
+     */
+    private static final class Workspace {
+        private int[] layerTimes = new int[0];
+        private long[] layerPrices = new long[0];
+        private int[] nextLayerTimes = new int[0];
+        private long[] nextLayerPrices = new long[0];
+        private int[] bestTimes = new int[0];
+        private long[] bestPrices = new long[0];
+        private int[] rowTimes = new int[0];
+        private long[] rowPrices = new long[0];
+
+        private void prepare(int cityCount, int rowSize) {
+            int stateCount = cityCount * MODE_SLOTS;
+            if (layerTimes.length < stateCount) {
+                layerTimes = new int[stateCount];
+                layerPrices = new long[stateCount];
+                nextLayerTimes = new int[stateCount];
+                nextLayerPrices = new long[stateCount];
+                bestTimes = new int[cityCount];
+                bestPrices = new long[cityCount];
+            }
+            if (rowTimes.length < rowSize) {
+                rowTimes = new int[rowSize];
+                rowPrices = new long[rowSize];
+            }
+        }
+    }
+}
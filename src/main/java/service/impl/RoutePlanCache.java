@@ -0,0 +1,326 @@
+package service.impl;
+
+import enumObject.OptimizeTargetEnum;
+import model.GraphChange;
+import model.GraphSnapshot;
+import model.RoutePlan;
+import model.RouteQuery;
+import model.RouteSegment;
+import service.GraphChangeListener;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 路由结果缓存
+ * 以 查询条件 + 路由参数 为键缓存 planRoute 的方案列表，按LRU淘汰，容量有上限。
+ * 每个缓存项记录计算时的图版本号，图发生变化（版本号不同）时视为过期。
+ * 缓存内部保存方案的深拷贝，读取时再拷贝一份返回，调用方修改返回结果不会污染缓存。
+ * 为降低并发读写的锁竞争，按键的哈希值分成若干段，每段是一个独立加锁的LRU链表。
+ * 路由器整体替换快照时会通知缓存清空，旧版本的缓存项无需等到被访问才释放。
+ * 单条线路的增量变更只会让路径变差时不清空缓存，只记入变更日志：读到旧版本的缓存项时沿日志核对，
+ * 方案没有经过变更的线路则仍然有效（其余路径只会变差），直接升级到当前版本；可能让路径变好的变更仍清空缓存。
+ */
+public class RoutePlanCache implements GraphChangeListener {
+
+    // 默认最大缓存条数
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    // 分段数，必须为2的幂
+    private static final int SEGMENT_COUNT = 16;
+    // 变更日志最多保留的条数，更早的缓存项直接视为过期
+    private static final int MAX_CHANGE_LOG = 1024;
+
+    private final int maxEntries;
+    private final Segment[] segments;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    // 增量变更日志：新版本号 → (旧版本号, 变更)
+    private final Map<Long, ChangeRecord> changeLog = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ChangeRecord> eldest) {
+            return size() > MAX_CHANGE_LOG;
+        }
+    };
+
+    public RoutePlanCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries 最大缓存条数（按分段平均分配，每段至少1条）
+     */
+    public RoutePlanCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        int segmentCount = Math.min(SEGMENT_COUNT, Integer.highestOneBit(maxEntries));
+        int segmentCapacity = (maxEntries + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * 读取缓存的方案列表
+     * @param key 缓存键
+     * @param graphVersion 当前图版本号
+     * @return 方案列表的拷贝；未命中或已过期时返回null
+     */
+    public List<RoutePlan> get(Key key, long graphVersion) {
+        Entry entry = segmentFor(key).get(key, graphVersion);
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return copyPlans(entry.plans);
+    }
+
+    /**
+     * 写入方案列表（保存其深拷贝）
+     */
+    public void put(Key key, long graphVersion, List<RoutePlan> plans) {
+        segmentFor(key).put(key, new Entry(graphVersion, copyPlans(plans)));
+    }
+
+    @Override
+    public void onGraphChanged(GraphSnapshot previous, GraphSnapshot current) {
+        GraphChange change = current.getChange();
+        if (previous == null || change == null || change.isImproving()) {
+            synchronized (changeLog) {
+                changeLog.clear();
+            }
+            clear();
+            return;
+        }
+        synchronized (changeLog) {
+            changeLog.put(current.getVersion(), new ChangeRecord(previous.getVersion(), change));
+        }
+    }
+
+    /**
+     * 沿变更日志从当前版本回溯到缓存项的版本：途经的变更都只会让路径变差、且都没有经过方案中的线路时，缓存项仍然有效
+     */
+    private boolean isStillValid(Entry entry, long graphVersion) {
+        long version = graphVersion;
+        synchronized (changeLog) {
+            while (version > entry.graphVersion) {
+                ChangeRecord record = changeLog.get(version);
+                if (record == null || record.change.isImproving()) {
+                    return false;
+                }
+                for (RoutePlan plan : entry.plans) {
+                    if (record.change.touches(plan)) {
+                        return false;
+                    }
+                }
+                version = record.previousVersion;
+            }
+        }
+        return version == entry.graphVersion;
+    }
+
+    /**
+     * 清空所有缓存项（计数器保留）
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getMaxEntries() { return maxEntries; }
+    public long getHitCount() { return hitCount.sum(); }
+    public long getMissCount() { return missCount.sum(); }
+    public long getEvictionCount() { return evictionCount.sum(); }
+
+    /**
+     * 命中率，尚无请求时为0
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private Segment segmentFor(Key key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * 缓存键：查询条件 + 影响规划结果的路由参数
+     */
+    public static final class Key {
+        private final String fromCity;
+        private final String toCity;
+        private final boolean needSameCityPick;
+        private final boolean needSameCityDeliver;
+        private final OptimizeTargetEnum optimizeTarget;
+        // 帕累托搜索按 ε-支配剪枝，不同 ε 的结果不同
+        private final double suboptimality;
+        private final int maxSegments;
+        // 编译后的业务规则（含代驾距离上限），按实例比较：规则或代驾距离上限修改后重新编译为新实例
+        private final TransportRuleTable rules;
+        private final BigDecimal sameCityServicePrice;
+        private final int sameCityServiceTime;
+        private final int hash;
+
+        public Key(RouteQuery query, int maxSegments, TransportRuleTable rules,
+                   BigDecimal sameCityServicePrice, int sameCityServiceTime) {
+            this.fromCity = query.getFromCity();
+            this.toCity = query.getToCity();
+            this.needSameCityPick = query.isNeedSameCityPick();
+            this.needSameCityDeliver = query.isNeedSameCityDeliver();
+            this.optimizeTarget = query.getOptimizeTarget();
+            this.suboptimality = query.getSuboptimality();
+            this.maxSegments = maxSegments;
+            this.rules = rules;
+            // 200 与 200.00 视为同一价格
+            this.sameCityServicePrice = sameCityServicePrice == null ? null : sameCityServicePrice.stripTrailingZeros();
+            this.sameCityServiceTime = sameCityServiceTime;
+            this.hash = Objects.hash(fromCity, toCity, needSameCityPick, needSameCityDeliver, optimizeTarget, suboptimality,
+                    maxSegments, System.identityHashCode(rules), this.sameCityServicePrice, sameCityServiceTime);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash
+                    && needSameCityPick == key.needSameCityPick
+                    && needSameCityDeliver == key.needSameCityDeliver
+                    && maxSegments == key.maxSegments
+                    && rules == key.rules
+                    && sameCityServiceTime == key.sameCityServiceTime
+                    && optimizeTarget == key.optimizeTarget
+                    && Double.compare(suboptimality, key.suboptimality) == 0
+                    && Objects.equals(fromCity, key.fromCity)
+                    && Objects.equals(toCity, key.toCity)
+                    && Objects.equals(sameCityServicePrice, key.sameCityServicePrice);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class ChangeRecord {
+        private final long previousVersion;
+        private final GraphChange change;
+
+        private ChangeRecord(long previousVersion, GraphChange change) {
+            this.previousVersion = previousVersion;
+            this.change = change;
+        }
+    }
+
+    private static final class Entry {
+        // 缓存项确认有效的图版本号，核对变更日志后可升级
+        private long graphVersion;
+        private final List<RoutePlan> plans;
+
+        private Entry(long graphVersion, List<RoutePlan> plans) {
+            this.graphVersion = graphVersion;
+            this.plans = plans;
+        }
+    }
+
+    /**
+     * 一个分段：访问顺序的 LinkedHashMap，超出容量时淘汰最久未访问的缓存项
+     */
+    private final class Segment {
+        private final LinkedHashMap<Key, Entry> entries;
+
+        private Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() > capacity) {
+                        evictionCount.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized Entry get(Key key, long graphVersion) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.graphVersion > graphVersion) {
+                // 旧快照上进行中的查询读到新版本的结果，不使用也不移除
+                return null;
+            }
+            if (entry != null && entry.graphVersion != graphVersion) {
+                if (isStillValid(entry, graphVersion)) {
+                    entry.graphVersion = graphVersion;
+                    return entry;
+                }
+                // 图已变化且影响了该结果，过期项直接移除
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        private synchronized void put(Key key, Entry entry) {
+            Entry existing = entries.get(key);
+            // 旧快照上进行中的查询晚于新快照完成时，不覆盖新版本的结果（版本号单调递增）
+            if (existing == null || existing.graphVersion <= entry.graphVersion) {
+                entries.put(key, entry);
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    // --- 深拷贝 ---
+
+    private static List<RoutePlan> copyPlans(List<RoutePlan> plans) {
+        List<RoutePlan> copies = new ArrayList<>(plans.size());
+        for (RoutePlan plan : plans) {
+            copies.add(copyPlan(plan));
+        }
+        return copies;
+    }
+
+    private static RoutePlan copyPlan(RoutePlan plan) {
+        List<RouteSegment> segments = null;
+        if (plan.getSegments() != null) {
+            segments = new ArrayList<>(plan.getSegments().size());
+            for (RouteSegment segment : plan.getSegments()) {
+                segments.add(new RouteSegment(segment.getSegmentNo(), segment.getFromCity(), segment.getToCity(),
+                        segment.getMode(), segment.getMileage(), segment.getTimeHours(), segment.getPrice(),
+                        segment.isLastMile(), segment.getDepartureTime(), segment.getArrivalTime()));
+            }
+        }
+        return new RoutePlan(plan.getFromCity(), plan.getToCity(), plan.getSegmentCount(),
+                plan.getModeList() == null ? null : new ArrayList<>(plan.getModeList()),
+                segments, plan.getTotalTime(), plan.getTotalPrice(),
+                plan.isNeedSameCityPick(), plan.isNeedSameCityDeliver(), plan.getOptimizeTarget(),
+                plan.getFirstMainMode(), plan.getLastMainMode(), plan.getDepartureTime(), plan.getArrivalTime(),
+                plan.getSuboptimalityBound());
+    }
+}
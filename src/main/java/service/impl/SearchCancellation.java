@@ -0,0 +1,53 @@
+package service.impl;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 单次查询的截止时间与取消标记
+ * 同一查询的各个子任务共享一个实例，搜索循环定期调用 checkpoint，
+ * 超过截止时间或被取消后抛出 CancellationException 尽快退出，不依赖线程中断，适用于任意执行器。
+ */
+public class SearchCancellation {
+
+    // 不限时、不可取消
+    public static final SearchCancellation NONE = new SearchCancellation(null) {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+
+    /**
+     * @param timeout 从现在起的时限，为null表示不限时
+     */
+    public SearchCancellation(Duration timeout) {
+        this.deadlineNanos = timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos > 0);
+    }
+
+    /**
+     * 距截止时间的剩余纳秒数，不限时为 Long.MAX_VALUE
+     */
+    public long remainingNanos() {
+        return deadlineNanos == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * 已超时或已取消时抛出 CancellationException
+     */
+    public void checkpoint() {
+        if (isCancelled()) {
+            throw new CancellationException("route search cancelled or deadline exceeded");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package service.impl;
+
+import java.util.Arrays;
+
+/**
+ * 搜索工作区的空闲池：预分配数组上的栈，借用/归还只移动栈顶下标，不分配对象
+ * （ConcurrentLinkedQueue 每次入队都要分配一个链表节点）。
+ * 容量等于曾经同时进行的最大查询数，只在并发峰值刷新时扩容，临界区只有几次数组读写。
+ */
+final class SearchContextPool<T> {
+
+    private Object[] idle = new Object[16];
+    private int idleCount;
+
+    /**
+     * 取出一个空闲工作区，池为空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    synchronized T poll() {
+        if (idleCount == 0) {
+            return null;
+        }
+        T context = (T) idle[--idleCount];
+        idle[idleCount] = null;
+        return context;
+    }
+
+    /**
+     * 放回一个工作区
+     */
+    synchronized void offer(T context) {
+        if (idleCount == idle.length) {
+            idle = Arrays.copyOf(idle, idleCount * 2);
+        }
+        idle[idleCount++] = context;
+    }
+}
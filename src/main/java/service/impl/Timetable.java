@@ -0,0 +1,299 @@
+package service.impl;
+
+import enumObject.TransportModeEnum;
+import model.CompactTransportGraph;
+import model.TimetableConnection;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * 海运/铁路时刻表：所有区间班次按出发时刻排序后以列式原始类型数组存放，用连接扫描算法（CSA）回答最早到达查询
+ * 时刻以"1970-01-01T00:00 起的分钟数"存放（不带时区，与输入的 LocalDateTime 口径一致）。
+ * 扫描一次按出发时刻顺序遍历班次数组，每个班次只做常数次数组读写，没有优先队列；
+ * 标签按 (站点, 已用分段数, 到达运输方式) 区分，分段数与运输方式衔接规则和干线搜索一致：
+ * 同一航次/车次连续乘坐算一段，换乘另一班次算新的一段，是否能衔接由规则表的运输方式编号判断。
+ * 实例不可变（与图的站点映射缓存除外，并发重复计算的结果相同），可在多个查询线程之间共享。
+ */
+public final class Timetable {
+
+    // 不可达的到达时刻
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final TransportModeEnum[] MODES = TransportModeEnum.values();
+
+    // 站点ID → 城市名，城市名 → 站点ID
+    private final String[] stopNames;
+    private final Map<String, Integer> stopIds;
+    // 班次编号（tripId）→ 航次/车次内部编号
+    private final String[] tripNames;
+
+    // 以下按班次下标（出发时刻升序）存储
+    private final int[] departures;    // 出发时刻（分钟）
+    private final int[] arrivals;      // 到达时刻（分钟）
+    private final int[] fromStops;
+    private final int[] toStops;
+    private final int[] trips;
+    private final byte[] modes;        // 运输方式 ordinal
+    private final int[] mileages;
+    private final long[] prices;       // 价格（分）
+
+    // 换乘到另一班次所需的最短时间（分钟），留在同一班次上不计
+    private final int minTransferMinutes;
+
+    // 最近一次使用的图上的站点映射（只缓存当前图的一份）
+    private volatile StopMapping stopMapping;
+
+    /**
+     * @param connections 区间班次，顺序任意
+     * @param minTransferMinutes 登上班次前的最短换乘/装船装车时间（分钟），从起点出发时不计
+     * @throws IllegalArgumentException 班次的到达早于出发，或缺少必填字段
+     */
+    public Timetable(Collection<TimetableConnection> connections, int minTransferMinutes) {
+        List<TimetableConnection> sorted = new ArrayList<>(connections);
+        for (TimetableConnection connection : sorted) {
+            if (connection.getFromCity() == null || connection.getToCity() == null || connection.getMode() == null
+                    || connection.getDepartureTime() == null || connection.getArrivalTime() == null
+                    || connection.getTripId() == null || connection.getPrice() == null) {
+                throw new IllegalArgumentException("班次缺少必填字段: " + connection);
+            }
+            if (connection.getArrivalTime().isBefore(connection.getDepartureTime())) {
+                throw new IllegalArgumentException("班次到达早于出发: " + connection);
+            }
+        }
+        sorted.sort(Comparator.comparing(TimetableConnection::getDepartureTime)
+                .thenComparing(TimetableConnection::getArrivalTime));
+
+        int count = sorted.size();
+        departures = new int[count];
+        arrivals = new int[count];
+        fromStops = new int[count];
+        toStops = new int[count];
+        trips = new int[count];
+        modes = new byte[count];
+        mileages = new int[count];
+        prices = new long[count];
+        Map<String, Integer> stopIdMap = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> tripIdMap = new HashMap<>();
+        List<String> tripList = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            TimetableConnection connection = sorted.get(c);
+            departures[c] = toMinute(connection.getDepartureTime());
+            arrivals[c] = toMinute(connection.getArrivalTime());
+            fromStops[c] = stopIdMap.computeIfAbsent(connection.getFromCity(), name -> register(names, name));
+            toStops[c] = stopIdMap.computeIfAbsent(connection.getToCity(), name -> register(names, name));
+            trips[c] = tripIdMap.computeIfAbsent(connection.getTripId(), name -> register(tripList, name));
+            modes[c] = (byte) connection.getMode().ordinal();
+            mileages[c] = connection.getMileage();
+            prices[c] = CompactTransportGraph.toFen(connection.getPrice());
+        }
+        this.stopNames = names.toArray(new String[0]);
+        this.stopIds = stopIdMap;
+        this.tripNames = tripList.toArray(new String[0]);
+        this.minTransferMinutes = minTransferMinutes;
+    }
+
+    private static int register(List<String> names, String name) {
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * 时刻转换为分钟数
+     */
+    public static int toMinute(LocalDateTime time) {
+        return Math.toIntExact(time.toEpochSecond(ZoneOffset.UTC) / 60);
+    }
+
+    /**
+     * 分钟数还原为时刻
+     */
+    public static LocalDateTime toDateTime(int minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60L, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * 第一个出发时刻不早于 minute 的班次下标（二分查找），没有时返回班次数
+     */
+    public int firstDepartureAtOrAfter(int minute) {
+        int low = 0;
+        int high = departures.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departures[middle] < minute) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 标签下标：(站点, 已用分段数, 到达运输方式编号)，运输方式编号见 TransportRuleTable.modeIndex
+     */
+    public int labelIndex(int stop, int segmentCount, int modeIndex, int segmentLimit) {
+        return (stop * (segmentLimit + 1) + segmentCount) * TransportRuleTable.modeIndexCount() + modeIndex;
+    }
+
+    /**
+     * 标签数组的长度
+     */
+    public int labelCount(int segmentLimit) {
+        return stopNames.length * (segmentLimit + 1) * TransportRuleTable.modeIndexCount();
+    }
+
+    /**
+     * 连接扫描：从 departureMinute 起按出发时刻顺序扫描班次，出发晚于 horizonMinute 的班次不再扫描
+     * 能登上班次的条件：该班次已乘坐（留在车/船上），或出发站上有某个标签满足
+     * 到达时刻 + 换乘时间 <= 班次出发时刻、分段数未用尽、运输方式规则允许衔接；同一班次按最少分段数登上。
+     * @param labelArrivals 标签 → 最早到达时刻，调用方预先写入初始标签（起点、首段干线到达的站点），其余为 UNREACHABLE；扫描中原地更新
+     * @return 每个标签最后一次改善时的乘坐信息，用于重建路线
+     */
+    public ScanResult scan(TransportRuleTable rules, int segmentLimit, int[] labelArrivals, int departureMinute,
+                           int horizonMinute) {
+        int modeIndexCount = TransportRuleTable.modeIndexCount();
+        int labelCount = labelArrivals.length;
+        int[] boardConnections = new int[labelCount];
+        int[] alightConnections = new int[labelCount];
+        int[] previousLabels = new int[labelCount];
+        Arrays.fill(boardConnections, -1);
+        Arrays.fill(alightConnections, -1);
+        Arrays.fill(previousLabels, -1);
+        // 航次/车次 → 登上时的分段数（未登上为0）、登上的班次、登上前的标签
+        int[] tripSegments = new int[tripNames.length];
+        int[] tripBoardConnections = new int[tripNames.length];
+        int[] tripPreviousLabels = new int[tripNames.length];
+
+        for (int c = firstDepartureAtOrAfter(departureMinute); c < departures.length; c++) {
+            int departure = departures[c];
+            if (departure > horizonMinute) {
+                break;
+            }
+            int trip = trips[c];
+            int modeIndex = modes[c] + 1;
+            int fromStop = fromStops[c];
+            // 尝试以更少的分段数登上该班次
+            int boardedSegments = tripSegments[trip] == 0 ? segmentLimit + 1 : tripSegments[trip];
+            for (int segmentCount = 0; segmentCount + 1 < boardedSegments; segmentCount++) {
+                int base = labelIndex(fromStop, segmentCount, 0, segmentLimit);
+                for (int previousMode = 0; previousMode < modeIndexCount; previousMode++) {
+                    int arrival = labelArrivals[base + previousMode];
+                    if (arrival == UNREACHABLE || !rules.canTransitionIndex(previousMode, modeIndex)) {
+                        continue;
+                    }
+                    // 从起点出发（编号0）不计换乘时间
+                    int ready = previousMode == TransportRuleTable.START ? arrival : arrival + minTransferMinutes;
+                    if (ready <= departure) {
+                        boardedSegments = segmentCount + 1;
+                        tripSegments[trip] = boardedSegments;
+                        tripBoardConnections[trip] = c;
+                        tripPreviousLabels[trip] = base + previousMode;
+                        break;
+                    }
+                }
+            }
+            if (tripSegments[trip] == 0) {
+                continue;
+            }
+            int label = labelIndex(toStops[c], tripSegments[trip], modeIndex, segmentLimit);
+            if (arrivals[c] < labelArrivals[label]) {
+                labelArrivals[label] = arrivals[c];
+                boardConnections[label] = tripBoardConnections[trip];
+                alightConnections[label] = c;
+                previousLabels[label] = tripPreviousLabels[trip];
+            }
+        }
+        return new ScanResult(boardConnections, alightConnections, previousLabels);
+    }
+
+    /**
+     * 图的城市ID → 站点ID，不是站点的城市为-1；同一张图只计算一次
+     */
+    public int[] cityStops(CompactTransportGraph graph) {
+        return mapping(graph).cityStops;
+    }
+
+    /**
+     * 站点ID → 图的城市ID，不在图中的站点为-1；同一张图只计算一次
+     */
+    public int[] stopCities(CompactTransportGraph graph) {
+        return mapping(graph).stopCities;
+    }
+
+    private StopMapping mapping(CompactTransportGraph graph) {
+        StopMapping cached = stopMapping;
+        if (cached != null && cached.graph == graph) {
+            return cached;
+        }
+        int[] cityStops = new int[graph.getCityCount()];
+        Arrays.fill(cityStops, -1);
+        int[] stopCities = new int[stopNames.length];
+        for (int stop = 0; stop < stopNames.length; stop++) {
+            int cityId = graph.getCityId(stopNames[stop]);
+            stopCities[stop] = cityId;
+            if (cityId >= 0) {
+                cityStops[cityId] = stop;
+            }
+        }
+        cached = new StopMapping(graph, cityStops, stopCities);
+        stopMapping = cached;
+        return cached;
+    }
+
+    // --- 访问 ---
+    public int getConnectionCount() { return departures.length; }
+    public int getStopCount() { return stopNames.length; }
+    public int getTripCount() { return tripNames.length; }
+    public int getMinTransferMinutes() { return minTransferMinutes; }
+    public String getStopName(int stop) { return stopNames[stop]; }
+    /**
+     * @return 站点ID，不存在时返回-1
+     */
+    public int getStopId(String city) {
+        Integer id = stopIds.get(city);
+        return id == null ? -1 : id;
+    }
+    public int departure(int connection) { return departures[connection]; }
+    public int arrival(int connection) { return arrivals[connection]; }
+    public int fromStop(int connection) { return fromStops[connection]; }
+    public int toStop(int connection) { return toStops[connection]; }
+    public int trip(int connection) { return trips[connection]; }
+    public String tripName(int trip) { return tripNames[trip]; }
+    public TransportModeEnum mode(int connection) { return MODES[modes[connection]]; }
+    public int mileage(int connection) { return mileages[connection]; }
+    public long priceFen(int connection) { return prices[connection]; }
+
+    private static final class StopMapping {
+        private final CompactTransportGraph graph;
+        private final int[] cityStops;
+        private final int[] stopCities;
+
+        private StopMapping(CompactTransportGraph graph, int[] cityStops, int[] stopCities) {
+            this.graph = graph;
+            this.cityStops = cityStops;
+            this.stopCities = stopCities;
+        }
+    }
+
+    /**
+     * 一次扫描的乘坐记录：标签 → 登上的班次、下车的班次、登上前所在的标签（初始标签均为-1）
+     */
+    public static final class ScanResult {
+        private final int[] boardConnections;
+        private final int[] alightConnections;
+        private final int[] previousLabels;
+
+        private ScanResult(int[] boardConnections, int[] alightConnections, int[] previousLabels) {
+            this.boardConnections = boardConnections;
+            this.alightConnections = alightConnections;
+            this.previousLabels = previousLabels;
+        }
+
+        public int boardConnection(int label) { return boardConnections[label]; }
+        public int alightConnection(int label) { return alightConnections[label]; }
+        public int previousLabel(int label) { return previousLabels[label]; }
+    }
+}
@@ -1,38 +1,84 @@
 package service.impl;
 
+import config.TransportRuleConfig;
 import enumObject.OptimizeTargetEnum;
+import enumObject.SearchOutcomeEnum;
 import enumObject.TransportModeEnum;
 import model.*;
+import service.GraphChangeListener;
+import service.GraphSource;
 import service.HeuristicCalculator;
+import service.SearchMetrics;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
  * 运输路径规划器的核心实现类。
  * 负责根据用户查询（起点、终点、是否需要同城提送货等），
  * 结合运输网络和费用规则，计算出最优的运输方案。
+ * 运输网络以不可变快照（GraphSnapshot）的形式通过原子引用发布，查询无锁读取，更新时整体替换。
  */
 public class TransportGraphRouter {
 
-    // 存储整个运输网络的图结构，key是出发地-目的地对，value是对应的运输方式列表
-    private final Map<CityPair, List<TransportEdge>> transportGraph;
-    // 优化后的出边查找Map，key为出发城市，value为该城市所有的出边列表
-    private final Map<String, List<TransportEdge>> outgoingEdgesMap;
-    // 城市基础信息Map，可用于获取城市坐标等信息
-    private final Map<String, CityBaseData> cityBaseDataMap;
+    // 干线搜索涉及的运输方式；状态中的运输方式以槽位编号存储，槽位0表示"无"（起始状态）
+    private static final TransportModeEnum[] SLOT_MODES = {null, TransportModeEnum.BIG_TRUCK, TransportModeEnum.DRIVER};
+    private static final int MODE_SLOTS = SLOT_MODES.length;
+
+    // 直达方案涉及的运输方式，顺序即结果列表中的顺序
+    private static final TransportModeEnum[] DIRECT_MODES = {TransportModeEnum.SHIP, TransportModeEnum.RAIL,
+            TransportModeEnum.DRIVER, TransportModeEnum.SMALL_TRUCK};
+    // A*每出堆多少个状态检查一次截止时间/取消标记（2的幂减1）
+    private static final int CANCELLATION_CHECK_MASK = 255;
+    // 收缩层次给出的路径不满足分段/代驾规则、需要回退到A*时的返回值
+    private static final int[] HIERARCHY_FALLBACK = new int[0];
+
+    // 当前发布的运输网络快照（CSR图 + 城市数据），每次查询开始时读取一次，整个查询只使用这一份
+    private final AtomicReference<GraphSnapshot> snapshot;
     // 启发式计算器，用于A*算法中估算节点到终点的成本
     private final HeuristicCalculator heuristicCalculator;
+    // 快照变更监听器
+    private final List<GraphChangeListener> graphChangeListeners = new CopyOnWriteArrayList<>();
+    // 串行化快照的写入方（整体替换、增量修改），查询线程不获取此锁
+    private final Object snapshotWriteLock = new Object();
 
     // 路径最大分段数限制
     private int maxSegments = 5;
     // 代驾最大运输距离限制
     private int maxDriverDistance = 1000;
+    // 业务规则配置（运输方式转移规则、板车单段里程上限、中间段是否禁止代驾）
+    private TransportRuleConfig ruleConfig = new TransportRuleConfig();
+    // 由业务规则配置和代驾距离上限编译得到的规则表，搜索只读取该表；配置修改后整体替换
+    private volatile TransportRuleTable ruleTable = new TransportRuleTable(ruleConfig, SLOT_MODES, maxDriverDistance);
     // 同城提/送货服务基础价格
     private BigDecimal sameCityServicePrice = new BigDecimal("200");
+    // 同城提/送货服务基础价格（分），搜索中只使用该值
+    private long sameCityServicePriceFen = CompactTransportGraph.toFen(sameCityServicePrice);
     // 同城提/送货服务基础时间（小时）
     private int sameCityServiceTime = 2;
+    // 起讫点直线距离超过该值（公里）时，单目标A*改用双向搜索；设为 Integer.MAX_VALUE 可关闭
+    private int bidirectionalThresholdKm = 1500;
+    // 干线收缩层次（按 OptimizeTargetEnum.ordinal() 索引），为null表示未启用；只用于构建时的那张图
+    private volatile ContractionHierarchy[] trunkHierarchies;
+    // 路由结果缓存，为null时不启用
+    private RoutePlanCache routePlanCache;
+    // 并发执行模式：时效A*、价格A*与各直达方案作为独立任务并发执行
+    private boolean concurrentExecution = false;
+    // 并发模式使用的执行器，为null时使用默认执行器（支持虚拟线程的JDK上为虚拟线程，否则为公共ForkJoinPool）
+    private Executor executor;
+    // 并发模式下单次查询的时限，为null表示不限时
+    private Duration queryTimeout;
+    // 海运/铁路时刻表，未设置时按时刻表规划只返回纯干线方案
+    private volatile Timetable timetable;
+    // 搜索指标接收方，为null时不上报（工作区仍做计数自增，开销可忽略）
+    private volatile SearchMetrics searchMetrics;
 
     /**
      * 构造函数，初始化路由计算器
@@ -43,181 +89,2128 @@ public class TransportGraphRouter {
     public TransportGraphRouter(Map<CityPair, List<TransportEdge>> transportGraph,
                                 Map<String, CityBaseData> cityBaseDataMap,
                                 HeuristicCalculator heuristicCalculator) {
-        this.transportGraph = transportGraph;
-        this.cityBaseDataMap = cityBaseDataMap;
+        // 在构造函数中，从原始 transportGraph 一次性构建CSR图，之后不再持有原始Map
+        this(GraphSnapshot.build(transportGraph, cityBaseDataMap), heuristicCalculator);
+    }
+
+    /**
+     * 构造函数，使用预先构建好的CSR图（启发式计算器依赖同一张图时使用，例如地标启发式）
+     * @param graph CSR运输网络图
+     * @param cityBaseDataMap 城市基础信息
+     * @param heuristicCalculator 启发式计算器
+     */
+    public TransportGraphRouter(CompactTransportGraph graph,
+                                Map<String, CityBaseData> cityBaseDataMap,
+                                HeuristicCalculator heuristicCalculator) {
+        this(new GraphSnapshot(graph, cityBaseDataMap), heuristicCalculator);
+    }
+
+    /**
+     * 构造函数，使用预先构建好的快照
+     * @param snapshot 运输网络快照
+     * @param heuristicCalculator 启发式计算器
+     */
+    public TransportGraphRouter(GraphSnapshot snapshot, HeuristicCalculator heuristicCalculator) {
+        this.snapshot = new AtomicReference<>(snapshot);
         this.heuristicCalculator = heuristicCalculator;
+    }
+
+    /**
+     * 构造函数，使用预先构建好的快照和业务规则配置
+     * @param snapshot 运输网络快照
+     * @param heuristicCalculator 启发式计算器
+     * @param ruleConfig 业务规则配置，分段数上限取自 maxSegment
+     */
+    public TransportGraphRouter(GraphSnapshot snapshot, HeuristicCalculator heuristicCalculator,
+                                TransportRuleConfig ruleConfig) {
+        this(snapshot, heuristicCalculator);
+        setRuleConfig(ruleConfig);
+    }
+
+    /**
+     * 由新的运输网络和城市数据构建快照并发布
+     * @return 新发布的快照
+     */
+    public GraphSnapshot updateGraph(Map<CityPair, List<TransportEdge>> transportGraph,
+                                     Map<String, CityBaseData> cityBaseDataMap) {
+        GraphSnapshot next = GraphSnapshot.build(transportGraph, cityBaseDataMap);
+        publishSnapshot(next);
+        return next;
+    }
+
+    /**
+     * 从批量数据源加载全部城市与线路，构建快照并发布（加载期间查询继续使用当前快照）
+     * @return 加载报告：各阶段耗时、行数、被拒绝的行
+     */
+    public GraphLoadReport loadGraph(GraphSource source) throws IOException {
+        GraphLoadReport report = new GraphLoadReport();
+        publishSnapshot(source.loadAll(report));
+        return report;
+    }
+
+    /**
+     * 【快照发布】原子地替换当前快照
+     * 读取方不加锁：进行中的查询继续使用开始时读到的旧快照直至结束，替换之后开始的查询使用新快照。
+     * 替换完成后依次通知：启发式计算器（若实现了 GraphChangeListener）、结果缓存、已注册的监听器。
+     * @param next 新快照
+     * @return 被替换的旧快照
+     */
+    public GraphSnapshot publishSnapshot(GraphSnapshot next) {
+        Objects.requireNonNull(next, "snapshot");
+        synchronized (snapshotWriteLock) {
+            // 增量修改得到的图在发布前由旧图的干线邻接表修补出自己的邻接表，新查询无需整体重新准备
+            ruleTable.carryForward(snapshot.get().getGraph(), next.getGraph());
+            GraphSnapshot previous = snapshot.getAndSet(next);
+            if (heuristicCalculator instanceof GraphChangeListener) {
+                ((GraphChangeListener) heuristicCalculator).onGraphChanged(previous, next);
+            }
+            RoutePlanCache cache = routePlanCache;
+            if (cache != null) {
+                cache.onGraphChanged(previous, next);
+            }
+            for (GraphChangeListener listener : graphChangeListeners) {
+                listener.onGraphChanged(previous, next);
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * 【增量更新】新增一条线路
+     * 只修补出发城市的邻接区间，不重建整张图；新快照记录本次变更，缓存与启发式据此只让受影响的部分失效。
+     * @return 新发布的快照
+     */
+    public GraphSnapshot addEdge(TransportEdge edge) {
+        synchronized (snapshotWriteLock) {
+            GraphSnapshot next = snapshot.get().withEdgeAdded(edge);
+            publishSnapshot(next);
+            return next;
+        }
+    }
+
+    /**
+     * 【增量更新】修改一条线路的里程、时效、价格（按 出发城市、到达城市、运输方式 定位）
+     * @return 新发布的快照
+     * @throws IllegalArgumentException 线路不存在，或该线路有多条平行边
+     */
+    public GraphSnapshot updateEdge(TransportEdge edge) {
+        synchronized (snapshotWriteLock) {
+            GraphSnapshot next = snapshot.get().withEdgeUpdated(edge);
+            publishSnapshot(next);
+            return next;
+        }
+    }
+
+    /**
+     * 【增量更新】修改线路上的指定一条边：多家承运商的平行边按 current 的里程、时效、价格区分
+     * @return 新发布的快照
+     * @throws IllegalArgumentException 没有与 current 完全匹配的边，或 updated 换了线路
+     */
+    public GraphSnapshot updateEdge(TransportEdge current, TransportEdge updated) {
+        synchronized (snapshotWriteLock) {
+            GraphSnapshot next = snapshot.get().withEdgeUpdated(current, updated);
+            publishSnapshot(next);
+            return next;
+        }
+    }
+
+    /**
+     * 【增量更新】删除一条线路
+     * @return 新发布的快照
+     * @throws IllegalArgumentException 线路不存在，或该线路有多条平行边
+     */
+    public GraphSnapshot removeEdge(String fromCity, String toCity, TransportModeEnum mode) {
+        synchronized (snapshotWriteLock) {
+            GraphSnapshot next = snapshot.get().withEdgeRemoved(fromCity, toCity, mode);
+            publishSnapshot(next);
+            return next;
+        }
+    }
+
+    /**
+     * 【增量更新】删除线路上与 edge 的里程、时效、价格完全匹配的一条边
+     * @return 新发布的快照
+     * @throws IllegalArgumentException 没有完全匹配的边
+     */
+    public GraphSnapshot removeEdge(TransportEdge edge) {
+        synchronized (snapshotWriteLock) {
+            GraphSnapshot next = snapshot.get().withEdgeRemoved(edge);
+            publishSnapshot(next);
+            return next;
+        }
+    }
+
+    public void addGraphChangeListener(GraphChangeListener listener) {
+        graphChangeListeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    public void removeGraphChangeListener(GraphChangeListener listener) {
+        graphChangeListeners.remove(listener);
+    }
+
+    /**
+     * 【核心入口方法】执行路由规划
+     * @param query 用户查询条件
+     * @return 包含所有符合条件的方案的列表
+     */
+    public List<RoutePlan> planRoute(RouteQuery query) {
+        SearchMetrics metrics = searchMetrics;
+        if (metrics == null) {
+            return executePlanRoute(query);
+        }
+        long startNanos = System.nanoTime();
+        List<RoutePlan> plans = executePlanRoute(query);
+        metrics.recordPlanRoute(System.nanoTime() - startNanos, plans.size());
+        return plans;
+    }
+
+    private List<RoutePlan> executePlanRoute(RouteQuery query) {
+        if (concurrentExecution) {
+            try {
+                return planRouteAsync(query).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        GraphSnapshot current = snapshot.get();
+        RoutePlanCache cache = routePlanCache;
+        if (cache == null) {
+            return toPlanList(planRouteResult(current.getGraph(), query));
+        }
+        // 热门线路反复询价：键包含所有影响结果的路由参数，图版本号变化后旧结果自动失效
+        RoutePlanCache.Key key = new RoutePlanCache.Key(query, maxSegments, ruleTable,
+                sameCityServicePrice, sameCityServiceTime);
+        long graphVersion = current.getVersion();
+        List<RoutePlan> cachedPlans = cache.get(key, graphVersion);
+        if (cachedPlans != null) {
+            return cachedPlans;
+        }
+        List<RoutePlan> plans = toPlanList(planRouteResult(current.getGraph(), query));
+        cache.put(key, graphVersion, plans);
+        return plans;
+    }
+
+    /**
+     * 【并发入口】异步执行路由规划
+     * 双目标帕累托搜索（与 planRoute 相同，一次遍历得到时效最优和价格最优方案）以及海运、铁路、代驾、小板车直达查找
+     * 作为独立任务提交到执行器并发执行，全部完成后按 planRoute 相同的方式组装为方案列表，结果与串行执行完全一致；
+     * 单次查询的延迟取决于最慢的子任务而不是各子任务之和。
+     * 超过 queryTimeout 或调用方取消返回的 Future 时，未完成的子任务在下一个检查点退出，
+     * 超时情况下只返回已完成子任务的方案（不完整的结果不写入缓存）。
+     * @param query 用户查询条件
+     * @return 方案列表的 Future
+     */
+    public CompletableFuture<List<RoutePlan>> planRouteAsync(RouteQuery query) {
+        RoutePlanCache cache = routePlanCache;
+        RoutePlanCache.Key key = null;
+        CompactTransportGraph graph = snapshot.get().getGraph();
+        long graphVersion = graph.getVersion();
+        if (cache != null) {
+            key = new RoutePlanCache.Key(query, maxSegments, ruleTable, sameCityServicePrice, sameCityServiceTime);
+            List<RoutePlan> cachedPlans = cache.get(key, graphVersion);
+            if (cachedPlans != null) {
+                return CompletableFuture.completedFuture(cachedPlans);
+            }
+        }
+
+        SearchCancellation cancellation = new SearchCancellation(queryTimeout);
+        Executor taskExecutor = executor != null ? executor : DefaultExecutorHolder.EXECUTOR;
+        CompletableFuture<List<RoutePlan>> paretoTask = CompletableFuture.supplyAsync(() -> {
+            cancellation.checkpoint();
+            return findParetoRoutes(graph, query, cancellation);
+        }, taskExecutor);
+        List<CompletableFuture<RoutePlan>> directTasks = new ArrayList<>(DIRECT_MODES.length);
+        for (TransportModeEnum mode : DIRECT_MODES) {
+            directTasks.add(CompletableFuture.supplyAsync(() -> {
+                cancellation.checkpoint();
+                return findDirectRoute(graph, query, mode);
+            }, taskExecutor));
+        }
+
+        List<CompletableFuture<?>> tasks = new ArrayList<>(directTasks);
+        tasks.add(paretoTask);
+        CompletableFuture<Void> allTasks = CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+        long remainingNanos = cancellation.remainingNanos();
+        if (remainingNanos != Long.MAX_VALUE) {
+            allTasks = allTasks.completeOnTimeout(null, remainingNanos, TimeUnit.NANOSECONDS);
+        }
+
+        final RoutePlanCache.Key cacheKey = key;
+        CompletableFuture<List<RoutePlan>> result = allTasks.handle((ignored, error) -> {
+            boolean complete = true;
+            for (CompletableFuture<?> task : tasks) {
+                complete &= task.isDone() && !task.isCompletedExceptionally();
+            }
+            // 通知仍在运行的子任务尽快退出
+            cancellation.cancel();
+
+            RouteResult routeResult = new RouteResult();
+            List<RoutePlan> trunkPlans = completedResult(paretoTask);
+            applyParetoPlans(routeResult, query, trunkPlans == null ? Collections.emptyList() : trunkPlans);
+            routeResult.setShipPlan(completedResult(directTasks.get(0)));
+            routeResult.setRailPlan(completedResult(directTasks.get(1)));
+            routeResult.setDriverPlan(completedResult(directTasks.get(2)));
+            routeResult.setSmallTruckPlan(completedResult(directTasks.get(3)));
+
+            List<RoutePlan> plans = toPlanList(routeResult);
+            if (complete && cache != null) {
+                cache.put(cacheKey, graphVersion, plans);
+            } else if (!complete) {
+                System.err.println("警告：路由规划超时或被取消，只返回已完成的方案。");
+            }
+            return plans;
+        });
+        // 调用方取消结果时，同时取消子任务
+        result.whenComplete((plans, error) -> {
+            if (error != null) {
+                cancellation.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 读取已完成子任务的结果：未完成或被取消时返回null，其他异常原样抛出
+     */
+    private static <T> T completedResult(CompletableFuture<T> task) {
+        if (!task.isDone()) {
+            task.cancel(false);
+            return null;
+        }
+        try {
+            return task.join();
+        } catch (CancellationException e) {
+            return null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行路由规划，返回结构化的结果（含时效-价格帕累托前沿）
+     * @param query 用户查询条件
+     * @return 规划结果，未找到的方案对应字段为null
+     */
+    public RouteResult planRouteResult(RouteQuery query) {
+        return planRouteResult(snapshot.get().getGraph(), query);
+    }
+
+    private RouteResult planRouteResult(CompactTransportGraph graph, RouteQuery query) {
+        // 一次双目标搜索得到"大板车"方案的帕累托前沿
+        return assembleResult(graph, query, findParetoRoutes(graph, query));
+    }
+
+    /**
+     * 【批量入口】批量执行路由规划
+     * 起点、提/送车需求、优化目标都相同的精确查询归为一组，每组只做一次一对多的双目标标签搜索，
+     * 组内所有目的地的帕累托前沿在同一次搜索中得到，搜索量随分组数而不是查询数增长。
+     * 每个查询的结果与单独调用 planRoute 相同（成本完全相同的备选路径之间可能选取不同的一条）。
+     * 允许次优（ε > 0）的查询逐个走点对点搜索。
+     * @param queries 查询条件集合
+     * @return 与输入迭代顺序一致的方案列表
+     */
+    public List<List<RoutePlan>> planRoutes(Collection<RouteQuery> queries) {
+        List<RouteQuery> queryList = new ArrayList<>(queries);
+        List<List<RoutePlan>> results = new ArrayList<>(Collections.nCopies(queryList.size(), null));
+        RoutePlanCache cache = routePlanCache;
+        GraphSnapshot current = snapshot.get();
+        CompactTransportGraph graph = current.getGraph();
+        long graphVersion = current.getVersion();
+        RoutePlanCache.Key[] keys = new RoutePlanCache.Key[queryList.size()];
+
+        // 1. 先查缓存，未命中的查询按 (起点, 提车, 送车, 优化目标, 次优程度) 分组
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < queryList.size(); i++) {
+            RouteQuery query = queryList.get(i);
+            validateSuboptimality(query);
+            if (cache != null) {
+                keys[i] = new RoutePlanCache.Key(query, maxSegments, ruleTable,
+                        sameCityServicePrice, sameCityServiceTime);
+                List<RoutePlan> cachedPlans = cache.get(keys[i], graphVersion);
+                if (cachedPlans != null) {
+                    results.set(i, cachedPlans);
+                    continue;
+                }
+            }
+            List<Object> groupKey = Arrays.asList(query.getFromCity(), query.isNeedSameCityPick(),
+                    query.isNeedSameCityDeliver(), query.getOptimizeTarget(), query.getSuboptimality());
+            groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(i);
+        }
+
+        // 2. 每组一次一对多搜索
+        long minTrunkEdgePrice = current.getMinTrunkEdgePrice();
+        for (List<Integer> group : groups.values()) {
+            List<RouteQuery> groupQueries = new ArrayList<>(group.size());
+            for (int index : group) {
+                groupQueries.add(queryList.get(index));
+            }
+            long deliverFee = groupQueries.get(0).isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+            List<List<RoutePlan>> groupTrunkPlans;
+            if (group.size() == 1 || deliverFee > minTrunkEdgePrice || groupQueries.get(0).getSuboptimality() > 0) {
+                // 单个查询用带启发式的点对点搜索更快；
+                // 送车费高于最便宜的干线边时，途经目的地的标签可能剪掉单独查询时的最优解，一对多搜索不再精确；
+                // 允许次优的查询用点对点搜索的 ε-支配剪枝（一对多搜索没有启发式，ε 不能减少它的扩展量）
+                groupTrunkPlans = new ArrayList<>(group.size());
+                for (RouteQuery query : groupQueries) {
+                    groupTrunkPlans.add(findParetoRoutes(graph, query));
+                }
+            } else {
+                groupTrunkPlans = findParetoRoutesToMany(graph, groupQueries);
+            }
+            for (int i = 0; i < group.size(); i++) {
+                int index = group.get(i);
+                List<RoutePlan> plans = toPlanList(assembleResult(graph, groupQueries.get(i), groupTrunkPlans.get(i)));
+                if (cache != null) {
+                    cache.put(keys[index], graphVersion, plans);
+                }
+                results.set(index, plans);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 由干线帕累托前沿组装结构化结果：添加同城服务、标记时效/价格最优，并补充各直达方案
+     * @param trunkPlans 按总时效升序排列的干线方案
+     */
+    private RouteResult assembleResult(CompactTransportGraph graph, RouteQuery query, List<RoutePlan> trunkPlans) {
+        RouteResult result = new RouteResult();
+
+        // 1. --- "大板车"方案的帕累托前沿 ---
+        applyParetoPlans(result, query, trunkPlans);
+
+        // 2. --- 添加其他单一运输方式的直达方案 ---
+        // 例如：海运直达、铁路直达、代驾直达等
+        result.setShipPlan(findDirectRoute(graph, query, DIRECT_MODES[0]));
+        result.setRailPlan(findDirectRoute(graph, query, DIRECT_MODES[1]));
+        result.setDriverPlan(findDirectRoute(graph, query, DIRECT_MODES[2]));
+        result.setSmallTruckPlan(findDirectRoute(graph, query, DIRECT_MODES[3]));
+
+        return result;
+    }
+
+    /**
+     * 为干线帕累托前沿上的方案添加同城服务，写入结果并标记时效/价格最优方案
+     * @param trunkPlans 按总时效升序排列的干线方案
+     */
+    private void applyParetoPlans(RouteResult result, RouteQuery query, List<RoutePlan> trunkPlans) {
+        // 前沿按时效升序排列，首尾分别为时效最优与价格最优方案
+        List<RoutePlan> paretoPlans = new ArrayList<>();
+        for (RoutePlan trunkPlan : trunkPlans) {
+            // 为找到的干线运输路径添加同城提/送货服务，并应用费用规则
+            RoutePlan processedPlan = addCityServicesToPlan(trunkPlan, query);
+            if (processedPlan != null) {
+                paretoPlans.add(processedPlan);
+            }
+        }
+        result.setParetoPlans(paretoPlans);
+        if (!paretoPlans.isEmpty()) {
+            RoutePlan priceOptimalPlan = paretoPlans.get(paretoPlans.size() - 1);
+            priceOptimalPlan.setOptimizeTarget(OptimizeTargetEnum.PRICE);
+            RoutePlan timeOptimalPlan = paretoPlans.get(0);
+            // 前沿只有一个方案时，它同时是时效最优和价格最优
+            timeOptimalPlan.setOptimizeTarget(OptimizeTargetEnum.TIME);
+            result.setTimeOptimalPlan(timeOptimalPlan);
+            result.setPriceOptimalPlan(priceOptimalPlan);
+        }
+    }
+
+    /**
+     * 将结构化结果展开为方案列表：时效最优、价格最优（与时效最优不同时）、各直达方案
+     */
+    private List<RoutePlan> toPlanList(RouteResult result) {
+        List<RoutePlan> finalResults = new ArrayList<>();
+        if (result.getTimeOptimalPlan() != null) {
+            finalResults.add(result.getTimeOptimalPlan());
+        }
+        // 避免重复添加（如果时间最优和价格最优是同一个方案）
+        if (result.getPriceOptimalPlan() != null && result.getPriceOptimalPlan() != result.getTimeOptimalPlan()) {
+            finalResults.add(result.getPriceOptimalPlan());
+        }
+        for (RoutePlan directPlan : Arrays.asList(result.getShipPlan(), result.getRailPlan(),
+                result.getDriverPlan(), result.getSmallTruckPlan())) {
+            if (directPlan != null) {
+                finalResults.add(directPlan);
+            }
+        }
+        return finalResults;
+    }
+
+    /**
+     * 【核心算法】双目标标签搜索，一次遍历得到时效-价格的帕累托最优干线路径集合
+     * 每个标签携带 (时效, 价格, 分段数)，同一 (城市, 当前运输方式) 下只保留互不支配的标签；
+     * 估值（实际值+启发值）被终点已有方案支配的标签直接剪枝。
+     * 查询允许次优（ε > 0）时按 ε-支配剪枝：终点前沿上有方案的时效、价格都不超过估值的 (1+ε) 倍即剪掉该标签。
+     * 每个被剪掉的方案都有返回的方案在两个目标上不超过它的 (1+ε) 倍，时效最优、价格最优方案分别不超过对应最优值的 (1+ε) 倍。
+     * @param query 查询条件
+     * @return 互不支配的干线路径方案，按总时效升序（总价格降序）排列
+     */
+    private List<RoutePlan> findParetoRoutes(CompactTransportGraph graph, RouteQuery query) {
+        return findParetoRoutes(graph, query, SearchCancellation.NONE);
+    }
+
+    /**
+     * 带截止时间/取消检查的双目标标签搜索（并发执行时使用），超时或被取消时抛出 CancellationException
+     */
+    private List<RoutePlan> findParetoRoutes(CompactTransportGraph graph, RouteQuery query,
+                                             SearchCancellation cancellation) {
+        double weight = suboptimalityWeight(query);
+        String endCity = query.getToCity();
+        int startCityId = graph.getCityId(query.getFromCity());
+        int endCityId = graph.getCityId(endCity);
+        if (startCityId < 0 || endCityId < 0) {
+            return Collections.emptyList();
+        }
+
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        int driverSlot = rules.getDriverSlot();
+        long pickFee = query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+        long deliverFee = query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+        ParetoSearchContext context = ParetoSearchContext.acquire(graph.getCityCount() * MODE_SLOTS, graph.getCityCount());
+        try {
+            double[] timeHeuristics = heuristicCalculator.heuristicTable(graph, endCity, OptimizeTargetEnum.TIME);
+            double[] priceHeuristics = heuristicCalculator.heuristicTable(graph, endCity, OptimizeTargetEnum.PRICE);
+            ensureParetoHeuristic(graph, context, timeHeuristics, priceHeuristics, startCityId, endCity);
+            int startLabel = context.newLabel(startCityId, 0, 0, 0, 0, -1, -1,
+                    context.getTimeHeuristic(startCityId), context.getPriceHeuristic(startCityId));
+            if (startCityId == endCityId) {
+                context.addToFrontier(startLabel);
+            } else {
+                context.enqueue(startLabel);
+            }
+
+            int dequeuedLabels = 0;
+            while (context.hasQueuedLabels()) {
+                int label = context.dequeue();
+                if ((++dequeuedLabels & CANCELLATION_CHECK_MASK) == 0) {
+                    cancellation.checkpoint();
+                }
+                // 入堆后已被同桶的新标签支配，跳过
+                if (context.isDead(label)) {
+                    continue;
+                }
+                int segmentCount = context.getSegmentCount(label);
+                int newSegmentCount = segmentCount + 1;
+                if (newSegmentCount > segmentLimit) {
+                    continue;
+                }
+                int cityId = context.getCity(label);
+                int time = context.getTime(label);
+                long price = context.getPrice(label);
+                // 入堆之后终点前沿可能已经改善，重新做一次目标剪枝
+                if (context.isDominatedByFrontier((time + context.getTimeHeuristic(cityId)) * weight,
+                        (price + context.getPriceHeuristic(cityId)) * weight)) {
+                    continue;
+                }
+                long allowedSlots = slotTransitions[context.getModeSlot(label)];
+
+                int edgeEnd = adjacency.outEnd(cityId, allowedSlots);
+                for (int i = adjacency.outStart(cityId, allowedSlots); i < edgeEnd; i++) {
+                    int edge = adjacency.outEdge(i);
+                    int nextModeSlot = edgeSlots.get(edge);
+                    if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                        continue;
+                    }
+
+                    int neighborCityId = graph.edgeTarget(edge);
+                    boolean reachesEnd = neighborCityId == endCityId;
+                    // 中间段禁止代驾：大板车之后的代驾只能作为末段，到不了终点的不再生成标签
+                    if (nextModeSlot == terminalOnlySlot && segmentCount > 0 && !reachesEnd) {
+                        continue;
+                    }
+                    // 时效直接累加；价格累加干线费用，并计入首段提车费、末段送车费（代驾首尾段免收）
+                    int newTime = time + graph.edgeTimeHours(edge);
+                    long newPrice = price + graph.edgePriceFen(edge);
+                    if (nextModeSlot != driverSlot) {
+                        if (segmentCount == 0) {
+                            newPrice += pickFee;
+                        }
+                        if (reachesEnd) {
+                            newPrice += deliverFee;
+                        }
+                    }
+
+                    ensureParetoHeuristic(graph, context, timeHeuristics, priceHeuristics, neighborCityId, endCity);
+                    double timeKey = newTime + context.getTimeHeuristic(neighborCityId);
+                    double priceKey = newPrice + context.getPriceHeuristic(neighborCityId);
+                    // 估值被终点前沿（w 倍）支配，或启发值证明到不了终点（无穷大），剪枝
+                    if (context.isDominatedByFrontier(timeKey * weight, priceKey * weight)
+                            || timeKey == Double.POSITIVE_INFINITY || priceKey == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+
+                    if (reachesEnd) {
+                        // 到达终点的标签不再扩展，直接并入前沿
+                        context.addToFrontier(context.newLabel(neighborCityId, newSegmentCount, nextModeSlot,
+                                newTime, newPrice, label, edge, newTime, newPrice));
+                        continue;
+                    }
+
+                    int bucket = neighborCityId * MODE_SLOTS + nextModeSlot;
+                    if (context.isDominatedInBucket(bucket, newTime, newPrice, newSegmentCount)) {
+                        continue;
+                    }
+                    int newLabel = context.newLabel(neighborCityId, newSegmentCount, nextModeSlot,
+                            newTime, newPrice, label, edge, timeKey, priceKey);
+                    context.addToBucket(bucket, newLabel);
+                    context.enqueue(newLabel);
+                }
+            }
+
+            // 按时效升序重建前沿上的每条路径
+            int frontierSize = context.sortFrontier();
+            List<RoutePlan> plans = new ArrayList<>(frontierSize);
+            int[] path = context.pathBuffer(segmentLimit + 1);
+            for (int i = 0; i < frontierSize; i++) {
+                int edgeCount = 0;
+                for (int label = context.frontierLabel(i); context.getParent(label) >= 0; label = context.getParent(label)) {
+                    path[edgeCount++] = context.getEdge(label);
+                }
+                RoutePlan plan = buildTrunkPlan(graph, path, edgeCount, query, null);
+                plan.setSuboptimalityBound(weight);
+                plans.add(plan);
+            }
+            return plans;
+        } finally {
+            recordParetoSearch(context);
+            context.release();
+        }
+    }
+
+    /**
+     * 【核心算法】一对多双目标标签搜索：同一起点、同一提/送车需求的多个目的地共用一次遍历
+     * 与 findParetoRoutes 的区别：
+     * 1. 不使用启发式（各目的地的启发值不同），标签按 (时效, 价格) 字典序出堆；
+     * 2. 到达目的地的标签既并入该目的地的前沿，也继续扩展去往其他目的地；
+     *    标签价格不含送车费，只在作为某个目的地的终点方案时按末段运输方式计入；
+     * 3. 所有目的地都已到达后，时效和价格都不低于各目的地"价格最优方案"中最大者的标签，
+     *    不可能再改进任何目的地的前沿，出堆后直接丢弃，队列很快耗尽。
+     * 途经某目的地后再回到该目的地的方案，被途经时的前缀方案支配（前提是送车费不高于任一干线边的价格，
+     * 由调用方保证），因此桶内支配剪枝不会丢失单独查询时能找到的方案。
+     * @param queries 同一分组的查询
+     * @return 与 queries 一一对应的干线方案列表，每个都按总时效升序排列
+     */
+    private List<List<RoutePlan>> findParetoRoutesToMany(CompactTransportGraph graph, List<RouteQuery> queries) {
+        List<List<RoutePlan>> results = new ArrayList<>(queries.size());
+        RouteQuery first = queries.get(0);
+        int startCityId = graph.getCityId(first.getFromCity());
+        if (startCityId < 0) {
+            for (int i = 0; i < queries.size(); i++) {
+                results.add(Collections.emptyList());
+            }
+            return results;
+        }
+
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        int driverSlot = rules.getDriverSlot();
+        long pickFee = first.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+        long deliverFee = first.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+        ParetoSearchContext context = ParetoSearchContext.acquire(graph.getCityCount() * MODE_SLOTS, graph.getCityCount());
+        try {
+            int[] queryTargets = new int[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                int endCityId = graph.getCityId(queries.get(i).getToCity());
+                queryTargets[i] = endCityId < 0 ? -1 : context.addTarget(endCityId);
+            }
+            int unreachedTargets = context.targetCount();
+
+            int startLabel = context.newLabel(startCityId, 0, 0, 0, 0, -1, -1, 0, 0);
+            int startTarget = context.targetIndex(startCityId);
+            if (startTarget >= 0) {
+                context.addToTargetFrontier(startTarget, startLabel, 0);
+                unreachedTargets--;
+            }
+            context.enqueue(startLabel);
+
+            // 停止界：所有目的地都到达后，各目的地价格最优方案的 时效、价格 最大值
+            int settleTime = Integer.MAX_VALUE;
+            long settlePrice = Long.MAX_VALUE;
+            boolean settleDirty = true;
+
+            while (context.hasQueuedLabels()) {
+                int label = context.dequeue();
+                if (context.isDead(label)) {
+                    continue;
+                }
+                int time = context.getTime(label);
+                long price = context.getPrice(label);
+                if (unreachedTargets == 0) {
+                    if (settleDirty) {
+                        settleTime = 0;
+                        settlePrice = 0;
+                        for (int target = 0; target < context.targetCount(); target++) {
+                            settleTime = Math.max(settleTime, context.targetBestPriceTime(target));
+                            settlePrice = Math.max(settlePrice, context.targetBestPrice(target));
+                        }
+                        settleDirty = false;
+                    }
+                    if (time >= settleTime && price >= settlePrice) {
+                        continue;
+                    }
+                }
+                int segmentCount = context.getSegmentCount(label);
+                int newSegmentCount = segmentCount + 1;
+                if (newSegmentCount > segmentLimit) {
+                    continue;
+                }
+                int cityId = context.getCity(label);
+                long allowedSlots = slotTransitions[context.getModeSlot(label)];
+
+                int edgeEnd = adjacency.outEnd(cityId, allowedSlots);
+                for (int i = adjacency.outStart(cityId, allowedSlots); i < edgeEnd; i++) {
+                    int edge = adjacency.outEdge(i);
+                    int nextModeSlot = edgeSlots.get(edge);
+                    if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                        continue;
+                    }
+
+                    int neighborCityId = graph.edgeTarget(edge);
+                    int newTime = time + graph.edgeTimeHours(edge);
+                    long newPrice = price + graph.edgePriceFen(edge);
+                    if (nextModeSlot != driverSlot && segmentCount == 0) {
+                        newPrice += pickFee;
+                    }
+
+                    int newLabel = -1;
+                    int target = context.targetIndex(neighborCityId);
+                    if (target >= 0) {
+                        // 作为该目的地的终点方案：末段不是代驾时计入送车费
+                        long endPrice = nextModeSlot != driverSlot ? newPrice + deliverFee : newPrice;
+                        if (!context.isDominatedByTargetFrontier(target, newTime, endPrice)) {
+                            if (context.targetFrontierSize(target) == 0) {
+                                unreachedTargets--;
+                            }
+                            newLabel = context.newLabel(neighborCityId, newSegmentCount, nextModeSlot,
+                                    newTime, newPrice, label, edge, newTime, newPrice);
+                            context.addToTargetFrontier(target, newLabel, endPrice);
+                            settleDirty = true;
+                        }
+                    }
+
+                    // 分段数已用尽的标签、大板车之后的代驾（中间段禁止代驾时只能作为末段）无法继续扩展，不再入桶
+                    if (newSegmentCount == segmentLimit || (nextModeSlot == terminalOnlySlot && segmentCount > 0)) {
+                        continue;
+                    }
+                    int bucket = neighborCityId * MODE_SLOTS + nextModeSlot;
+                    if (context.isDominatedInBucket(bucket, newTime, newPrice, newSegmentCount)) {
+                        continue;
+                    }
+                    if (newLabel < 0) {
+                        newLabel = context.newLabel(neighborCityId, newSegmentCount, nextModeSlot,
+                                newTime, newPrice, label, edge, newTime, newPrice);
+                    }
+                    context.addToBucket(bucket, newLabel);
+                    context.enqueue(newLabel);
+                }
+            }
+
+            // 按时效升序重建每个目的地前沿上的路径
+            int[] path = context.pathBuffer(segmentLimit + 1);
+            for (int i = 0; i < queries.size(); i++) {
+                int target = queryTargets[i];
+                if (target < 0) {
+                    results.add(Collections.emptyList());
+                    continue;
+                }
+                int frontierSize = context.sortTargetFrontier(target);
+                List<RoutePlan> plans = new ArrayList<>(frontierSize);
+                for (int j = 0; j < frontierSize; j++) {
+                    int edgeCount = 0;
+                    for (int l = context.targetFrontierLabel(target, j); context.getParent(l) >= 0; l = context.getParent(l)) {
+                        path[edgeCount++] = context.getEdge(l);
+                    }
+                    plans.add(buildTrunkPlan(graph, path, edgeCount, queries.get(i), null));
+                }
+                results.add(plans);
+            }
+            return results;
+        } finally {
+            recordParetoSearch(context);
+            context.release();
+        }
+    }
+
+    /**
+     * 把单目标搜索工作区（双向搜索为两个方向）的计数上报给指标接收方，未设置接收方时不做任何事
+     */
+    private void recordSearch(OptimizeTargetEnum optimizeTarget, AStarSearchContext context, AStarSearchContext other) {
+        SearchMetrics metrics = searchMetrics;
+        if (metrics == null) {
+            return;
+        }
+        SearchStatistics statistics = new SearchStatistics();
+        context.addStatisticsTo(statistics);
+        if (other != null) {
+            other.addStatisticsTo(statistics);
+        }
+        metrics.recordSearch(optimizeTarget, statistics);
+    }
+
+    /**
+     * 把双目标标签搜索的计数上报给指标接收方（优化目标为null）
+     */
+    private void recordParetoSearch(ParetoSearchContext context) {
+        SearchMetrics metrics = searchMetrics;
+        if (metrics == null) {
+            return;
+        }
+        SearchStatistics statistics = new SearchStatistics();
+        context.addStatisticsTo(statistics);
+        metrics.recordSearch(null, statistics);
+    }
+
+    /**
+     * 获取城市到终点的时效、价格启发值（优先读取预估值数组），同一查询内每个城市只计算一次
+     * 价格启发值由元换算为分，与标签价格口径一致
+     */
+    private void ensureParetoHeuristic(CompactTransportGraph graph, ParetoSearchContext context, double[] timeHeuristics,
+                                       double[] priceHeuristics, int cityId, String endCity) {
+        boolean miss = !context.hasHeuristic(cityId);
+        context.countHeuristic(miss && (timeHeuristics == null || priceHeuristics == null));
+        if (miss) {
+            double priceHeuristic = priceHeuristics != null ? priceHeuristics[cityId]
+                    : heuristicCalculator.calculate(graph, cityId, endCity, OptimizeTargetEnum.PRICE);
+            context.putHeuristic(cityId,
+                    timeHeuristics != null ? timeHeuristics[cityId] : heuristicCalculator.calculate(graph, cityId, endCity, OptimizeTargetEnum.TIME),
+                    priceHeuristic * CompactTransportGraph.FEN_PER_YUAN);
+        }
+    }
+
+    /**
+     * 【核心算法】使用A*算法寻找最优的干线运输路径
+     * 搜索状态 (城市, 分段数, 上一运输方式, 当前运输方式) 编码为int下标，
+     * gScore/前驱存放在线程级复用的原始类型数组中，open set 为支持 decrease-key 的索引堆，
+     * 稳态下除最终的 RoutePlan 外不产生对象分配。
+     * gScore 为整数成本（时效→小时，价格→分），松弛只做整数加法与比较。
+     * 只关心单一优化目标时使用；同时需要时效、价格两个目标时 planRoute 使用 findParetoRoutes 一次完成。
+     * @param query 查询条件
+     * @param optimizeTarget 优化目标 (时间/价格)
+     * @return 最优干线路径方案（不含同城服务段），如果未找到则返回null
+     */
+    public RoutePlan findBestRoute(RouteQuery query, OptimizeTargetEnum optimizeTarget) {
+        return findBestRoute(query, optimizeTarget, SearchCancellation.NONE);
+    }
+
+    /**
+     * 带截止时间/取消检查的A*搜索，超时或被取消时抛出 CancellationException
+     */
+    public RoutePlan findBestRoute(RouteQuery query, OptimizeTargetEnum optimizeTarget, SearchCancellation cancellation) {
+        SearchMetrics metrics = searchMetrics;
+        if (metrics == null) {
+            return searchBestRoute(snapshot.get().getGraph(), query, optimizeTarget, cancellation);
+        }
+        long startNanos = System.nanoTime();
+        RoutePlan plan = searchBestRoute(snapshot.get().getGraph(), query, optimizeTarget, cancellation);
+        metrics.recordBestRoute(optimizeTarget, System.nanoTime() - startNanos, plan != null);
+        return plan;
+    }
+
+    /**
+     * 【限时/限量搜索】在预算内返回当前最优的干线方案及其最优性差距
+     * 查询开始时沿入边做一次按分段数的广度优先遍历（放宽运输方式规则），起点在分段上限内到不了终点时立即返回 UNREACHABLE，
+     * 否则用各城市到终点的分段下界剪掉剩余分段数不够的状态。
+     * 搜索为逐轮降低膨胀系数的加权A*（与 ARA* 一样先快速找到可行方案再逐步改进；每轮重新开始而不复用上一轮的 open set），
+     * 每轮只保留 g + h 低于当前方案成本的状态，某一轮的 open set 耗尽即证明当前方案最优。
+     * 预算耗尽时，最优成本的下界取 max(已完成各轮的 方案成本 / 系数, min(当前方案成本, 被打断一轮中 open set 上最小的 g + h))。
+     * 不使用收缩层次和双向搜索；与 findBestRoute 遵循相同的分段数、运输方式转移与代驾规则，系数为1时结果与之相同。
+     * @param budget 时限、扩展状态数上限、膨胀系数
+     */
+    public AnytimeRouteResult findBestRouteWithinBudget(RouteQuery query, OptimizeTargetEnum optimizeTarget, SearchBudget budget) {
+        if (budget.getInitialInflation() < 1 || budget.getInflationStep() <= 0) {
+            throw new IllegalArgumentException("initialInflation must be >= 1 and inflationStep must be positive");
+        }
+        long startNanos = System.nanoTime();
+        CompactTransportGraph graph = snapshot.get().getGraph();
+        AnytimeRouteResult result = new AnytimeRouteResult();
+        result.setPlanCost(Double.POSITIVE_INFINITY);
+        result.setOptimalityGap(Double.POSITIVE_INFINITY);
+        result.setSuboptimalityBound(Double.POSITIVE_INFINITY);
+        int startCityId = graph.getCityId(query.getFromCity());
+        int endCityId = graph.getCityId(query.getToCity());
+        if (startCityId < 0 || endCityId < 0) {
+            result.setOutcome(SearchOutcomeEnum.UNREACHABLE);
+        } else {
+            searchAnytime(graph, query, optimizeTarget, budget, startCityId, endCityId, result);
+        }
+        result.setElapsedNanos(System.nanoTime() - startNanos);
+        return result;
+    }
+
+    /**
+     * 【K条备选路线】按优化目标返回前K条互不相同的无环干线路线（Yen算法），例如给调度提供绕开拥堵枢纽的备选方案
+     * 遵循与 findBestRoute 相同的分段数、运输方式转移与代驾规则，第一条与 findBestRoute 的最优代价相同。
+     * 查询开始时沿入边做一次到终点的Dijkstra（放宽分段数与运输方式规则、不计同城费），
+     * 得到的最短路径树在所有偏离搜索之间共用：它给出的剩余代价是禁用边/城市之后的下界，偏离搜索基本只沿树上的路径扩展，
+     * K=5 时总耗时约为单次查询的若干倍。
+     * @param k 需要的路线数；网络中满足规则的无环路线不足K条时返回全部
+     * @return 按优化目标代价升序排列的干线方案（不含同城服务段），起讫城市不存在时返回空列表
+     */
+    public List<RoutePlan> findAlternativeRoutes(RouteQuery query, OptimizeTargetEnum optimizeTarget, int k) {
+        return findAlternativeRoutes(query, optimizeTarget, k, SearchCancellation.NONE);
+    }
+
+    /**
+     * 带截止时间/取消检查的K条备选路线搜索，超时或被取消时抛出 CancellationException
+     */
+    public List<RoutePlan> findAlternativeRoutes(RouteQuery query, OptimizeTargetEnum optimizeTarget, int k,
+                                                 SearchCancellation cancellation) {
+        CompactTransportGraph graph = snapshot.get().getGraph();
+        int startCityId = graph.getCityId(query.getFromCity());
+        int endCityId = graph.getCityId(query.getToCity());
+        List<RoutePlan> plans = new ArrayList<>();
+        if (k <= 0 || startCityId < 0 || endCityId < 0) {
+            return plans;
+        }
+        if (startCityId == endCityId) {
+            // 起点即终点：只有空路径一个方案
+            plans.add(buildTrunkPlan(graph, new int[0], 0, query, optimizeTarget));
+            return plans;
+        }
+
+        AlternativeRouteSearch search = new AlternativeRouteSearch(graph, query, optimizeTarget, cancellation,
+                startCityId, endCityId);
+        for (int[] path : search.run(k)) {
+            int[] reversed = new int[path.length];
+            for (int i = 0; i < path.length; i++) {
+                reversed[path.length - 1 - i] = path[i];
+            }
+            plans.add(buildTrunkPlan(graph, reversed, reversed.length, query, optimizeTarget));
+        }
+        return plans;
+    }
+
+    /**
+     * 【按时刻表规划】给定出发时刻，求最早到达终点的干线方案：海运/铁路按时刻表的班次乘坐（需要候船/候车），并与图中的大板车/代驾组合
+     * 1. 先求纯干线的时效最优方案，其到达时刻作为上界，只有更早到达时才采用含班次的方案；
+     * 2. 从起点沿干线邻接表按时效做Dijkstra（首段干线），到达时刻不早于上界的状态剪掉，途经的港口/车站写入初始标签；
+     * 3. 连接扫描（Timetable.scan）得到各站点在各 (分段数, 到达运输方式) 下的最早到达时刻，出发晚于上界的班次不扫描；
+     * 4. 从终点沿入边做一次反向Dijkstra（末段干线），与下船/下车的标签按运输方式规则和分段数上限拼接，取最早到达者。
+     * 分段数、运输方式衔接、中间段禁止代驾等规则与干线搜索一致（默认配置下海运/铁路不能与其他方式拼接，只能从起点直达终点站）。
+     * 干线段到站后立即出发，只有登上另一班次前计换乘时间；干线只作为首段/末段接入，两段班次之间跨站点的干线转运不考虑。
+     * @param departureTime 起点出发时刻
+     * @return 最早到达的干线方案（不含同城服务段，价格口径与 findBestRoute 一致），各段带出发/到达时刻，
+     *         总时效为从出发到最终到达的小时数（含候船/候车时间，向上取整）；不可达时返回null
+     */
+    public RoutePlan findEarliestArrivalRoute(RouteQuery query, LocalDateTime departureTime) {
+        CompactTransportGraph graph = snapshot.get().getGraph();
+        Timetable schedule = timetable;
+        int departureMinute = Timetable.toMinute(departureTime);
+
+        // 1. 纯干线方案（不受时刻限制，出发即走）
+        RoutePlan truckPlan = searchBestRoute(graph, query, OptimizeTargetEnum.TIME, SearchCancellation.NONE);
+        if (truckPlan != null) {
+            applyDepartureTimes(truckPlan, departureMinute);
+        }
+        int startStop = schedule == null ? -1 : schedule.getStopId(query.getFromCity());
+        int endStop = schedule == null ? -1 : schedule.getStopId(query.getToCity());
+        if (schedule == null || schedule.getConnectionCount() == 0 || query.getFromCity().equals(query.getToCity())) {
+            return truckPlan;
+        }
+
+        // 本次查询使用的分段上限与规则表（避免查询过程中被setter修改）
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        int startCityId = graph.getCityId(query.getFromCity());
+        int endCityId = graph.getCityId(query.getToCity());
+        long boundHours = truckPlan == null ? Long.MAX_VALUE : truckPlan.getTotalTime();
+        long bestArrival = truckPlan == null ? Long.MAX_VALUE : departureMinute + boundHours * 60;
+
+        int stateCount = graph.getCityCount() * (segmentLimit + 1) * MODE_SLOTS * MODE_SLOTS;
+        AStarSearchContext firstMile = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        AStarSearchContext lastMile = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        try {
+            // 2. 首段干线 → 初始标签；labelFirstMileStates 记录初始标签对应的首段干线状态
+            int[] labelArrivals = new int[schedule.labelCount(segmentLimit)];
+            Arrays.fill(labelArrivals, Timetable.UNREACHABLE);
+            int[] labelFirstMileStates = new int[labelArrivals.length];
+            Arrays.fill(labelFirstMileStates, -1);
+            if (startCityId >= 0) {
+                searchFirstMile(graph, rules, adjacency, schedule, firstMile, startCityId, segmentLimit, boundHours,
+                        departureMinute, labelArrivals, labelFirstMileStates);
+            } else if (startStop >= 0) {
+                labelArrivals[schedule.labelIndex(startStop, 0, TransportRuleTable.START, segmentLimit)] = departureMinute;
+            }
+
+            // 3. 连接扫描
+            int horizonMinute = (int) Math.min(bestArrival - 1, Integer.MAX_VALUE - 1);
+            Timetable.ScanResult scan = schedule.scan(rules, segmentLimit, labelArrivals, departureMinute, horizonMinute);
+
+            // 4. 末段干线，与下船/下车的标签拼接
+            if (endCityId >= 0) {
+                searchLastMile(graph, rules, adjacency, lastMile, endCityId, segmentLimit, boundHours);
+            }
+            int bestLabel = -1;
+            int bestLastMileState = -1;
+            int[] stopCities = schedule.stopCities(graph);
+            int modeIndexCount = TransportRuleTable.modeIndexCount();
+            for (int stop = 0; stop < schedule.getStopCount(); stop++) {
+                int cityId = stopCities[stop];
+                if (cityId < 0 && stop != endStop) {
+                    continue;
+                }
+                for (int segmentCount = 1; segmentCount <= segmentLimit; segmentCount++) {
+                    for (int modeIndex = 1; modeIndex < modeIndexCount; modeIndex++) {
+                        int label = schedule.labelIndex(stop, segmentCount, modeIndex, segmentLimit);
+                        int arrival = labelArrivals[label];
+                        // 只拼接乘坐班次到达的标签，首段干线直接到达的情况已包含在纯干线方案中
+                        if (arrival == Timetable.UNREACHABLE || scan.alightConnection(label) < 0) {
+                            continue;
+                        }
+                        if (stop == endStop) {
+                            if (arrival < bestArrival) {
+                                bestArrival = arrival;
+                                bestLabel = label;
+                                bestLastMileState = -1;
+                            }
+                            continue;
+                        }
+                        if (endCityId < 0) {
+                            continue;
+                        }
+                        for (int count = 1; segmentCount + count <= segmentLimit; count++) {
+                            for (int slot = 1; slot < MODE_SLOTS; slot++) {
+                                if (!rules.canTransitionIndex(modeIndex, TransportRuleTable.modeIndex(SLOT_MODES[slot]))) {
+                                    continue;
+                                }
+                                int state = encodeState(cityId, count, 0, slot, segmentLimit);
+                                long hours = lastMile.getGScore(state);
+                                if (hours != Long.MAX_VALUE && arrival + hours * 60 < bestArrival) {
+                                    bestArrival = arrival + hours * 60;
+                                    bestLabel = label;
+                                    bestLastMileState = state;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            if (bestLabel < 0) {
+                return truckPlan;
+            }
+            return buildTimetablePlan(graph, schedule, scan, firstMile, lastMile, labelFirstMileStates, bestLabel,
+                    bestLastMileState, segmentLimit, departureMinute, query);
+        } finally {
+            firstMile.release();
+            lastMile.release();
+        }
+    }
+
+    /**
+     * 首段干线：从起点按时效做Dijkstra，关闭的状态所在城市是站点时写入初始标签（到达时刻、到达运输方式、分段数）
+     * 之后至少还要乘坐一段班次，因此首段干线最多 segmentLimit - 1 段；中间段禁止代驾时代驾只能是第一段。
+     */
+    private void searchFirstMile(CompactTransportGraph graph, TransportRuleTable rules, TrunkAdjacency adjacency,
+                                 Timetable schedule, AStarSearchContext context, int startCityId, int segmentLimit,
+                                 long boundHours, int departureMinute, int[] labelArrivals, int[] labelFirstMileStates) {
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        int[] cityStops = schedule.cityStops(graph);
+        context.open(encodeState(startCityId, 0, 0, 0, segmentLimit), 0, 0, -1, -1);
+        while (context.hasOpenStates()) {
+            int currentState = context.pollOpenState();
+            context.close(currentState);
+            int currentModeSlot = currentState % MODE_SLOTS;
+            int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+            int segmentCount = rest % (segmentLimit + 1);
+            int currentCityId = rest / (segmentLimit + 1);
+            long currentGScore = context.getGScore(currentState);
+
+            int stop = cityStops[currentCityId];
+            if (stop >= 0) {
+                int label = schedule.labelIndex(stop, segmentCount, TransportRuleTable.modeIndex(SLOT_MODES[currentModeSlot]),
+                        segmentLimit);
+                int arrival = (int) (departureMinute + currentGScore * 60);
+                if (arrival < labelArrivals[label]) {
+                    labelArrivals[label] = arrival;
+                    labelFirstMileStates[label] = currentState;
+                }
+            }
+            if (segmentCount + 2 > segmentLimit) {
+                continue;
+            }
+            long allowedSlots = slotTransitions[currentModeSlot];
+            if (terminalOnlySlot >= 0 && segmentCount > 0) {
+                allowedSlots &= ~(1L << terminalOnlySlot);
+            }
+            int edgeEnd = adjacency.outEnd(currentCityId, allowedSlots);
+            for (int i = adjacency.outStart(currentCityId, allowedSlots); i < edgeEnd; i++) {
+                int edge = adjacency.outEdge(i);
+                int nextModeSlot = edgeSlots.get(edge);
+                if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                    continue;
+                }
+                long newGScore = currentGScore + graph.edgeTimeHours(edge);
+                // 到达时刻不早于纯干线方案时，之后再接班次也不会更早到达
+                if (newGScore >= boundHours) {
+                    continue;
+                }
+                int neighborState = encodeState(graph.edgeTarget(edge), segmentCount + 1, 0, nextModeSlot, segmentLimit);
+                if (newGScore < context.getGScore(neighborState)) {
+                    context.open(neighborState, newGScore, newGScore, currentState, edge);
+                }
+            }
+        }
+    }
+
+    /**
+     * 末段干线：从终点沿入边按时效做反向Dijkstra，状态为 (城市, 到终点的分段数, 0, 该城市出发的第一段槽位)
+     * 前驱指针指向离终点更近的状态，前驱边即从该城市出发的下一段；中间段禁止代驾时代驾只能是最后一段。
+     */
+    private void searchLastMile(CompactTransportGraph graph, TransportRuleTable rules, TrunkAdjacency adjacency,
+                                AStarSearchContext context, int endCityId, int segmentLimit, long boundHours) {
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        long allSlots = adjacency.allSlots();
+        context.open(encodeState(endCityId, 0, 0, 0, segmentLimit), 0, 0, -1, -1);
+        while (context.hasOpenStates()) {
+            int currentState = context.pollOpenState();
+            context.close(currentState);
+            int firstModeSlot = currentState % MODE_SLOTS;
+            int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+            int segmentCount = rest % (segmentLimit + 1);
+            int currentCityId = rest / (segmentLimit + 1);
+            // 之前至少还有一段班次
+            if (segmentCount + 2 > segmentLimit) {
+                continue;
+            }
+            long currentGScore = context.getGScore(currentState);
+            long firstSlotBit = firstModeSlot == 0 ? 0 : 1L << firstModeSlot;
+            int inEdgeEnd = adjacency.inEnd(currentCityId, allSlots);
+            for (int i = adjacency.inStart(currentCityId, allSlots); i < inEdgeEnd; i++) {
+                int edge = adjacency.inEdge(i);
+                int previousModeSlot = edgeSlots.get(edge);
+                if ((slotTransitions[previousModeSlot] & firstSlotBit) != firstSlotBit) {
+                    continue;
+                }
+                if (previousModeSlot == terminalOnlySlot && segmentCount > 0) {
+                    continue;
+                }
+                int previousCityId = graph.edgeSource(edge);
+                long newGScore = currentGScore + graph.edgeTimeHours(edge);
+                if (previousCityId == endCityId || newGScore >= boundHours) {
+                    continue;
+                }
+                int previousState = encodeState(previousCityId, segmentCount + 1, 0, previousModeSlot, segmentLimit);
+                if (newGScore < context.getGScore(previousState)) {
+                    context.open(previousState, newGScore, newGScore, currentState, edge);
+                }
+            }
+        }
+    }
+
+    /**
+     * 由最优标签重建按时刻表的方案：首段干线 → 各段班次（同一航次/车次连续乘坐的区间合并为一段）→ 末段干线
+     * 班次段的价格、里程为所乘区间之和；总价格的同城费口径与 buildTrunkPlan 一致。
+     */
+    private RoutePlan buildTimetablePlan(CompactTransportGraph graph, Timetable schedule, Timetable.ScanResult scan,
+                                         AStarSearchContext firstMile, AStarSearchContext lastMile,
+                                         int[] labelFirstMileStates, int label, int lastMileState, int segmentLimit,
+                                         int departureMinute, RouteQuery query) {
+        // 班次段：沿标签前驱回溯，逆序记录 (登上的班次, 下车的班次)
+        int[] rides = new int[2 * segmentLimit];
+        int rideCount = 0;
+        int current = label;
+        while (scan.alightConnection(current) >= 0) {
+            rides[2 * rideCount] = scan.boardConnection(current);
+            rides[2 * rideCount + 1] = scan.alightConnection(current);
+            rideCount++;
+            current = scan.previousLabel(current);
+        }
+        // 首段干线：沿前驱指针回溯，逆序记录边
+        int[] firstEdges = new int[segmentLimit];
+        int firstEdgeCount = 0;
+        int state = labelFirstMileStates[current];
+        while (state >= 0 && firstMile.getParentState(state) >= 0) {
+            firstEdges[firstEdgeCount++] = firstMile.getParentEdge(state);
+            state = firstMile.getParentState(state);
+        }
+
+        List<RouteSegment> segments = new ArrayList<>();
+        long totalPrice = 0;
+        int minute = departureMinute;
+        for (int i = firstEdgeCount - 1; i >= 0; i--) {
+            int edge = firstEdges[i];
+            int arrival = minute + graph.edgeTimeHours(edge) * 60;
+            segments.add(timedSegment(segments.size() + 1, graph.getCityName(graph.edgeSource(edge)),
+                    graph.getCityName(graph.edgeTarget(edge)), graph.edgeMode(edge), graph.edgeMileage(edge),
+                    graph.edgePriceFen(edge), minute, arrival));
+            totalPrice += graph.edgePriceFen(edge);
+            minute = arrival;
+        }
+        for (int i = rideCount - 1; i >= 0; i--) {
+            int board = rides[2 * i];
+            int alight = rides[2 * i + 1];
+            int trip = schedule.trip(board);
+            long ridePrice = 0;
+            int rideMileage = 0;
+            for (int c = board; c <= alight; c++) {
+                if (schedule.trip(c) == trip) {
+                    ridePrice += schedule.priceFen(c);
+                    rideMileage += schedule.mileage(c);
+                }
+            }
+            segments.add(timedSegment(segments.size() + 1, schedule.getStopName(schedule.fromStop(board)),
+                    schedule.getStopName(schedule.toStop(alight)), schedule.mode(board), rideMileage, ridePrice,
+                    schedule.departure(board), schedule.arrival(alight)));
+            totalPrice += ridePrice;
+            minute = schedule.arrival(alight);
+        }
+        // 末段干线：前驱指针按正序指向终点
+        state = lastMileState;
+        while (state >= 0 && lastMile.getParentState(state) >= 0) {
+            int edge = lastMile.getParentEdge(state);
+            int arrival = minute + graph.edgeTimeHours(edge) * 60;
+            segments.add(timedSegment(segments.size() + 1, graph.getCityName(graph.edgeSource(edge)),
+                    graph.getCityName(graph.edgeTarget(edge)), graph.edgeMode(edge), graph.edgeMileage(edge),
+                    graph.edgePriceFen(edge), minute, arrival));
+            totalPrice += graph.edgePriceFen(edge);
+            minute = arrival;
+            state = lastMile.getParentState(state);
+        }
+
+        RoutePlan plan = new RoutePlan();
+        plan.setFromCity(query.getFromCity());
+        plan.setToCity(query.getToCity());
+        plan.setSegments(segments);
+        plan.setSegmentCount(segments.size());
+        plan.setModeList(segments.stream().map(RouteSegment::getMode).collect(Collectors.toList()));
+        plan.setTotalTime((minute - departureMinute + 59) / 60);
+        plan.setNeedSameCityPick(query.isNeedSameCityPick());
+        plan.setNeedSameCityDeliver(query.isNeedSameCityDeliver());
+        plan.setOptimizeTarget(OptimizeTargetEnum.TIME);
+        plan.setFirstMainMode(segments.get(0).getMode());
+        plan.setLastMainMode(segments.get(segments.size() - 1).getMode());
+        plan.setDepartureTime(Timetable.toDateTime(departureMinute));
+        plan.setArrivalTime(Timetable.toDateTime(minute));
+        if (query.isNeedSameCityPick() && plan.getFirstMainMode() != TransportModeEnum.DRIVER) {
+            totalPrice += sameCityServicePriceFen;
+        }
+        if (query.isNeedSameCityDeliver() && plan.getLastMainMode() != TransportModeEnum.DRIVER) {
+            totalPrice += sameCityServicePriceFen;
+        }
+        plan.setTotalPrice(CompactTransportGraph.toPriceDecimal(totalPrice));
+        return plan;
+    }
+
+    /**
+     * 为纯干线方案按出发时刻依次填写各段的出发/到达时刻（干线段到站后立即出发）
+     */
+    private static void applyDepartureTimes(RoutePlan plan, int departureMinute) {
+        int minute = departureMinute;
+        for (RouteSegment segment : plan.getSegments()) {
+            segment.setDepartureTime(Timetable.toDateTime(minute));
+            minute += segment.getTimeHours() * 60;
+            segment.setArrivalTime(Timetable.toDateTime(minute));
+        }
+        plan.setDepartureTime(Timetable.toDateTime(departureMinute));
+        plan.setArrivalTime(Timetable.toDateTime(minute));
+    }
+
+    /**
+     * 创建带出发/到达时刻的干线或班次段，时效按实际运行时间向上取整为小时
+     */
+    private static RouteSegment timedSegment(int segmentNo, String fromCity, String toCity, TransportModeEnum mode,
+                                             int mileage, long priceFen, int departureMinute, int arrivalMinute) {
+        RouteSegment segment = new RouteSegment();
+        segment.setSegmentNo(segmentNo);
+        segment.setFromCity(fromCity);
+        segment.setToCity(toCity);
+        segment.setMode(mode);
+        segment.setMileage(mileage);
+        segment.setTimeHours((arrivalMinute - departureMinute + 59) / 60);
+        segment.setPrice(CompactTransportGraph.toPriceDecimal(priceFen));
+        segment.setLastMile(false);
+        segment.setDepartureTime(Timetable.toDateTime(departureMinute));
+        segment.setArrivalTime(Timetable.toDateTime(arrivalMinute));
+        return segment;
+    }
+
+    /**
+     * 【图准备】按当前规则表为当前快照的图准备干线邻接表：去掉超过代驾距离/板车单段里程上限的边和被支配的平行边，
+     * 出边按运输方式槽位分组。搜索首次用到新图时也会自动准备，发布快照后调用可提前完成并查看去掉的边数。
+     * 邻接表绑定图和规则表：发布新快照或修改规则、代驾距离上限后重新准备。
+     */
+    public TrunkAdjacency prepareTrunkGraph() {
+        return ruleTable.prepare(snapshot.get().getGraph());
+    }
+
+    /**
+     * 【收缩层次预处理】为当前快照的干线网络构建收缩层次（时效、价格各一份），之后的单目标查询优先用层次求解
+     * 层次绑定构建时的图：发布新快照（整体替换或增量修改）后不再用于新图，查询回退到A*，需要重新构建。
+     * @param sampleQueries 用于测量加速比的随机起讫点对数量（固定随机种子，0表示不测量）
+     * @return 预处理报告：耗时、捷径数、抽样查询上的平均耗时与加速比
+     */
+    public ContractionHierarchyReport buildContractionHierarchies(int sampleQueries) {
+        CompactTransportGraph graph = snapshot.get().getGraph();
+        ContractionHierarchy[] hierarchies = new ContractionHierarchy[OptimizeTargetEnum.values().length];
+        for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+            hierarchies[target.ordinal()] = new ContractionHierarchy(graph, target);
+        }
+        ContractionHierarchy time = hierarchies[OptimizeTargetEnum.TIME.ordinal()];
+        ContractionHierarchy price = hierarchies[OptimizeTargetEnum.PRICE.ordinal()];
+        ContractionHierarchyReport report = new ContractionHierarchyReport();
+        report.setTrunkEdgeCount(time.getTrunkEdgeCount());
+        report.setTimeShortcutCount(time.getShortcutCount());
+        report.setPriceShortcutCount(price.getShortcutCount());
+        report.setTimePreprocessingMillis(time.getPreprocessingNanos() / 1_000_000);
+        report.setPricePreprocessingMillis(price.getPreprocessingNanos() / 1_000_000);
+
+        if (sampleQueries > 0 && graph.getCityCount() > 1) {
+            List<RouteQuery> queries = new ArrayList<>(sampleQueries);
+            Random random = new Random(42);
+            while (queries.size() < sampleQueries) {
+                int from = random.nextInt(graph.getCityCount());
+                int to = random.nextInt(graph.getCityCount());
+                if (from != to) {
+                    RouteQuery query = new RouteQuery();
+                    query.setFromCity(graph.getCityName(from));
+                    query.setToCity(graph.getCityName(to));
+                    query.setNeedSameCityPick(true);
+                    query.setNeedSameCityDeliver(true);
+                    queries.add(query);
+                }
+            }
+            long searchNanos = 0;
+            for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+                long startNanos = System.nanoTime();
+                for (RouteQuery query : queries) {
+                    searchTrunkRoute(graph, query, target, SearchCancellation.NONE,
+                            graph.getCityId(query.getFromCity()), graph.getCityId(query.getToCity()));
+                }
+                searchNanos += System.nanoTime() - startNanos;
+            }
+            // 抽样阶段把层次作为局部值传给搜索，全部完成后才发布给并发查询
+            long hierarchyNanos = 0;
+            for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+                long startNanos = System.nanoTime();
+                for (RouteQuery query : queries) {
+                    searchBestRoute(graph, query, target, SearchCancellation.NONE, hierarchies);
+                }
+                hierarchyNanos += System.nanoTime() - startNanos;
+            }
+            int measured = queries.size() * OptimizeTargetEnum.values().length;
+            report.setSampledQueries(measured);
+            report.setSearchMicros(searchNanos / 1000.0 / measured);
+            report.setHierarchyMicros(hierarchyNanos / 1000.0 / measured);
+        }
+        trunkHierarchies = hierarchies;
+        return report;
+    }
+
+    /**
+     * 停用收缩层次，单目标查询全部使用A*
+     */
+    public void clearContractionHierarchies() {
+        trunkHierarchies = null;
+    }
+
+    private RoutePlan searchBestRoute(CompactTransportGraph graph, RouteQuery query, OptimizeTargetEnum optimizeTarget,
+                                      SearchCancellation cancellation) {
+        return searchBestRoute(graph, query, optimizeTarget, cancellation, trunkHierarchies);
+    }
+
+    /**
+     * @param hierarchies 使用的收缩层次，为null时只用A*
+     */
+    private RoutePlan searchBestRoute(CompactTransportGraph graph, RouteQuery query, OptimizeTargetEnum optimizeTarget,
+                                      SearchCancellation cancellation, ContractionHierarchy[] hierarchies) {
+        cancellation.checkpoint();
+        validateSuboptimality(query);
+        String endCity = query.getToCity();
+        // 查询入口处一次性把城市名转换为ID，之后的扩展只做数组访问
+        int startCityId = graph.getCityId(query.getFromCity());
+        int endCityId = graph.getCityId(endCity);
+        if (startCityId < 0 || endCityId < 0) {
+            return null;
+        }
+        // 已为当前图构建收缩层次时优先用层次求解，展开后的路径不满足分段/代驾规则时回退到A*
+        if (hierarchies != null && startCityId != endCityId) {
+            ContractionHierarchy hierarchy = hierarchies[optimizeTarget.ordinal()];
+            if (hierarchy.getGraph() == graph) {
+                int[] path = searchWithHierarchy(graph, hierarchy, query, optimizeTarget, startCityId, endCityId);
+                if (path != HIERARCHY_FALLBACK) {
+                    return path == null ? null : buildTrunkPlan(graph, path, path.length, query, optimizeTarget);
+                }
+                SearchMetrics metrics = searchMetrics;
+                if (metrics != null) {
+                    metrics.recordHierarchyFallback(optimizeTarget);
+                }
+            }
+        }
+        return searchTrunkRoute(graph, query, optimizeTarget, cancellation, startCityId, endCityId);
+    }
+
+    /**
+     * 检查查询允许的次优程度ε
+     * @throws IllegalArgumentException ε 为负数或NaN
+     */
+    private static void validateSuboptimality(RouteQuery query) {
+        if (!(query.getSuboptimality() >= 0)) {
+            throw new IllegalArgumentException("suboptimality must be non-negative: " + query.getSuboptimality());
+        }
+    }
+
+    /**
+     * 查询的次优系数 1+ε
+     * @throws IllegalArgumentException ε 为负数或NaN
+     */
+    private static double suboptimalityWeight(RouteQuery query) {
+        validateSuboptimality(query);
+        return 1 + query.getSuboptimality();
+    }
+
+    /**
+     * 单目标干线搜索（A*），起讫点距离较远时使用双向A*
+     * 查询允许次优（ε > 0）时改用单向加权A*：估值 = g + (1+ε) × h，已关闭的状态找到更优路径时重新打开，
+     * 在启发值可采纳的前提下方案成本不超过 (1+ε) × 最优成本；启发值越接近真实成本，少扩展的状态越多。
+     */
+    private RoutePlan searchTrunkRoute(CompactTransportGraph graph, RouteQuery query, OptimizeTargetEnum optimizeTarget,
+                                       SearchCancellation cancellation, int startCityId, int endCityId) {
+        String endCity = query.getToCity();
+        double weight = suboptimalityWeight(query);
+        // 长途查询：前向A*要探索几乎整个网络才能到达终点，改用双向A*在中间相遇
+        if (weight == 1 && startCityId != endCityId && isLongHaul(query)) {
+            return searchBestRouteBidirectional(graph, query, optimizeTarget, cancellation, startCityId, endCityId);
+        }
+
+        // 本次查询使用的分段上限与规则表（避免查询过程中被setter修改）
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        int stateCount = graph.getCityCount() * (segmentLimit + 1) * MODE_SLOTS * MODE_SLOTS;
+        AStarSearchContext context = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        try {
+            // 启发式计算器支持批量预估时，每次入堆只需一次数组读取
+            double[] heuristicTable = heuristicCalculator.heuristicTable(graph, endCity, optimizeTarget);
+            // 启发值以元为单位，价格目标下换算为分后与gScore相加；允许次优时再乘以权重
+            double heuristicScale = (optimizeTarget == OptimizeTargetEnum.PRICE ? CompactTransportGraph.FEN_PER_YUAN : 1) * weight;
+            // 同城提/送车费（分），只在价格目标下计入gScore
+            long pickFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+            long deliverFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+
+            // 起始状态：分段数0，无上一/当前运输方式
+            int startState = encodeState(startCityId, 0, 0, 0, segmentLimit);
+            context.open(startState, 0,
+                    heuristic(graph, context, heuristicTable, startCityId, endCity, optimizeTarget) * heuristicScale, -1, -1);
+
+            // 到终点的分段下界，搜索规模超过城市数后才计算（可达的查询通常在此之前就已结束）
+            int[] segmentBounds = null;
+            int polledStates = 0;
+            while (context.hasOpenStates()) {
+                if ((++polledStates & CANCELLATION_CHECK_MASK) == 0) {
+                    cancellation.checkpoint();
+                    if (segmentBounds == null && polledStates >= graph.getCityCount()) {
+                        segmentBounds = computeSegmentBounds(graph, adjacency, context, endCityId, segmentLimit);
+                        // 起点在分段上限内到不了终点：不必再耗尽整个状态空间
+                        if (segmentBounds[startCityId] > segmentLimit) {
+                            return null;
+                        }
+                    }
+                }
+                // 取出fScore最小的状态
+                int currentState = context.pollOpenState();
+                int currentModeSlot = currentState % MODE_SLOTS;
+                int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+                int segmentCount = rest % (segmentLimit + 1);
+                int currentCityId = rest / (segmentLimit + 1);
+
+                // 找到终点，立即返回重建的路径
+                if (currentCityId == endCityId) {
+                    RoutePlan plan = reconstructPlan(graph, context, currentState, segmentLimit, query, optimizeTarget);
+                    plan.setSuboptimalityBound(weight);
+                    return plan;
+                }
+                // 剩余分段数不够到达终点的状态不再扩展
+                if (segmentBounds != null && segmentCount + segmentBounds[currentCityId] > segmentLimit) {
+                    continue;
+                }
 
-        // 在构造函数中，从原始 transportGraph 构建 outgoingEdgesMap
-        this.outgoingEdgesMap = buildOutgoingEdgesMap(transportGraph);
+                // 将当前状态标记为已扩展；open set 中不存在重复元素，无需再做陈旧节点检查
+                context.close(currentState);
+
+                // 检查路径分段数是否超限
+                int newSegmentCount = segmentCount + 1;
+                if (newSegmentCount > segmentLimit) {
+                    continue;
+                }
+                long currentGScore = context.getGScore(currentState);
+                long allowedSlots = slotTransitions[currentModeSlot];
+
+                // 只遍历干线邻接表中允许衔接的槽位区间（已去掉非干线边、超限边和被支配的平行边）
+                int edgeEnd = adjacency.outEnd(currentCityId, allowedSlots);
+                for (int i = adjacency.outStart(currentCityId, allowedSlots); i < edgeEnd; i++) {
+                    int edge = adjacency.outEdge(i);
+                    int nextModeSlot = edgeSlots.get(edge);
+
+                    // 检查转移是否合法（例如：代驾之后只能接大板车）
+                    if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                        continue;
+                    }
+
+                    int neighborCityId = graph.edgeTarget(edge);
+                    // 中间段禁止代驾：大板车之后的代驾只能作为末段
+                    if (nextModeSlot == terminalOnlySlot && segmentCount > 0 && neighborCityId != endCityId) {
+                        continue;
+                    }
+
+                    // 计算新的gScore（从起点到下一个节点的实际成本，包含预估的同城费）
+                    long newGScore = calculateNewGScore(graph, currentGScore, segmentCount == 0, edge, optimizeTarget,
+                            pickFee, deliverFee, endCityId);
+                    int neighborState = encodeState(neighborCityId, newSegmentCount, currentModeSlot, nextModeSlot, segmentLimit);
+
+                    // 邻居状态首次到达，或找到了更优的路径，则加入open set（已在堆中则decrease-key）
+                    if (newGScore < context.getGScore(neighborState)) {
+                        double hScore = heuristic(graph, context, heuristicTable, neighborCityId, endCity, optimizeTarget);
+                        // 启发值为无穷大表示该城市已被证明到不了终点
+                        if (hScore == Double.POSITIVE_INFINITY) {
+                            continue;
+                        }
+                        context.open(neighborState, newGScore, newGScore + hScore * heuristicScale, currentState, edge);
+                    }
+                }
+            }
+            return null; // 未找到路径
+        } finally {
+            recordSearch(optimizeTarget, context, null);
+            context.release();
+        }
     }
 
     /**
-     * 从原始的 transportGraph 构建一个优化的出边查找Map。
-     * 这个方法只在对象初始化时执行一次。
+     * 任意时间搜索的主体，结果写入 result（成本换算为小时/元）
      */
-    private Map<String, List<TransportEdge>> buildOutgoingEdgesMap(Map<CityPair, List<TransportEdge>> transportGraph) {
-        Map<String, List<TransportEdge>> resultMap = new HashMap<>();
-
-        for (Map.Entry<CityPair, List<TransportEdge>> entry : transportGraph.entrySet()) {
-            CityPair cityPair = entry.getKey();
-            String fromCity = cityPair.getFromCity();
-            List<TransportEdge> edges = entry.getValue();
+    private void searchAnytime(CompactTransportGraph graph, RouteQuery query, OptimizeTargetEnum optimizeTarget,
+                               SearchBudget budget, int startCityId, int endCityId, AnytimeRouteResult result) {
+        String endCity = query.getToCity();
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long[] slotTransitions = rules.getSlotTransitions();
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        // 成本单位：时效为小时，价格为分（与gScore一致）
+        double costUnit = optimizeTarget == OptimizeTargetEnum.PRICE ? CompactTransportGraph.FEN_PER_YUAN : 1;
+        SearchCancellation deadline = new SearchCancellation(budget.getTimeLimit());
+        long maxExpansions = budget.getMaxExpansions() > 0 ? budget.getMaxExpansions() : Long.MAX_VALUE;
+        int stateCount = graph.getCityCount() * (segmentLimit + 1) * MODE_SLOTS * MODE_SLOTS;
+        AStarSearchContext context = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        long expansions = 0;
+        try {
+            int[] segmentBounds = computeSegmentBounds(graph, adjacency, context, endCityId, segmentLimit);
+            double[] heuristicTable = heuristicCalculator.heuristicTable(graph, endCity, optimizeTarget);
+            double startHeuristic = heuristic(graph, context, heuristicTable, startCityId, endCity, optimizeTarget);
+            if (segmentBounds[startCityId] > segmentLimit || startHeuristic == Double.POSITIVE_INFINITY) {
+                result.setOutcome(SearchOutcomeEnum.UNREACHABLE);
+                return;
+            }
+            long pickFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+            long deliverFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+
+            long incumbentCost = Long.MAX_VALUE;
+            RoutePlan incumbent = null;
+            // 最优成本的下界（gScore单位），起点的启发值可采纳
+            double lowerBound = startCityId == endCityId ? 0 : startHeuristic * costUnit;
+            double inflation = budget.getInitialInflation();
+            boolean budgetExhausted = false;
+            int iterations = 0;
+            while (true) {
+                iterations++;
+                if (iterations > 1) {
+                    context.restart();
+                }
+                context.open(encodeState(startCityId, 0, 0, 0, segmentLimit), 0, inflation * startHeuristic * costUnit, -1, -1);
+                boolean improved = false;
+                while (context.hasOpenStates()) {
+                    if (expansions >= maxExpansions
+                            || ((expansions & CANCELLATION_CHECK_MASK) == 0 && deadline.isCancelled())) {
+                        budgetExhausted = true;
+                        break;
+                    }
+                    expansions++;
+                    int currentState = context.pollOpenState();
+                    int currentModeSlot = currentState % MODE_SLOTS;
+                    int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+                    int segmentCount = rest % (segmentLimit + 1);
+                    int currentCityId = rest / (segmentLimit + 1);
+                    long currentGScore = context.getGScore(currentState);
+
+                    if (currentCityId == endCityId) {
+                        // 进入本轮的状态都满足 g + h < 当前方案成本，出堆的终点状态必然更优
+                        incumbentCost = currentGScore;
+                        incumbent = reconstructPlan(graph, context, currentState, segmentLimit, query, optimizeTarget);
+                        improved = true;
+                        break;
+                    }
+                    context.close(currentState);
+                    int newSegmentCount = segmentCount + 1;
+                    if (newSegmentCount > segmentLimit) {
+                        continue;
+                    }
+                    long allowedSlots = slotTransitions[currentModeSlot];
+                    int edgeEnd = adjacency.outEnd(currentCityId, allowedSlots);
+                    for (int i = adjacency.outStart(currentCityId, allowedSlots); i < edgeEnd; i++) {
+                        int edge = adjacency.outEdge(i);
+                        int nextModeSlot = edgeSlots.get(edge);
+                        if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                            continue;
+                        }
+                        int neighborCityId = graph.edgeTarget(edge);
+                        if (nextModeSlot == terminalOnlySlot && segmentCount > 0 && neighborCityId != endCityId) {
+                            continue;
+                        }
+                        if (newSegmentCount + segmentBounds[neighborCityId] > segmentLimit) {
+                            continue;
+                        }
+                        long newGScore = calculateNewGScore(graph, currentGScore, segmentCount == 0, edge, optimizeTarget,
+                                pickFee, deliverFee, endCityId);
+                        int neighborState = encodeState(neighborCityId, newSegmentCount, currentModeSlot, nextModeSlot, segmentLimit);
+                        if (newGScore < context.getGScore(neighborState)) {
+                            double hScore = heuristic(graph, context, heuristicTable, neighborCityId, endCity, optimizeTarget) * costUnit;
+                            // 不可能优于当前方案的状态不再入堆
+                            if (hScore == Double.POSITIVE_INFINITY || newGScore + hScore >= incumbentCost) {
+                                continue;
+                            }
+                            context.open(neighborState, newGScore, newGScore + inflation * hScore, currentState, edge);
+                        }
+                    }
+                }
 
-            // 如果 resultMap 中还没有这个出发城市的条目，就创建一个新的空列表
-            resultMap.computeIfAbsent(fromCity, k -> new ArrayList<>());
+                if (budgetExhausted) {
+                    // 最优路径上必有一个状态以最优gScore留在 open set 中（或已被当前方案的成本剪掉）
+                    double openBound = incumbentCost;
+                    for (int i = 0; i < context.openSetSize(); i++) {
+                        int state = context.openStateAt(i);
+                        int cityId = state / MODE_SLOTS / MODE_SLOTS / (segmentLimit + 1);
+                        double f = context.getGScore(state)
+                                + heuristic(graph, context, heuristicTable, cityId, endCity, optimizeTarget) * costUnit;
+                        openBound = Math.min(openBound, f);
+                    }
+                    lowerBound = Math.max(lowerBound, openBound);
+                    break;
+                }
+                if (!improved) {
+                    // 本轮 open set 耗尽：不存在比当前方案更优的路径（无方案时即不可达）
+                    lowerBound = incumbentCost;
+                    break;
+                }
+                // 加权A*（允许重新打开已关闭状态）的解不超过 系数 × 最优成本
+                lowerBound = Math.max(lowerBound, Math.min(incumbentCost, Math.ceil(incumbentCost / inflation)));
+                if (inflation <= 1 || lowerBound >= incumbentCost) {
+                    lowerBound = incumbentCost;
+                    break;
+                }
+                inflation = Math.max(1, inflation - budget.getInflationStep());
+            }
 
-            // 将当前城市对的所有边添加到对应的列表中
-            resultMap.get(fromCity).addAll(edges);
+            result.setPlan(incumbent);
+            result.setFinalInflation(inflation);
+            result.setIterations(iterations);
+            result.setExpandedStates(expansions);
+            if (incumbent == null) {
+                result.setOutcome(budgetExhausted ? SearchOutcomeEnum.BUDGET_EXHAUSTED : SearchOutcomeEnum.UNREACHABLE);
+                result.setLowerBound(budgetExhausted ? lowerBound / costUnit : Double.POSITIVE_INFINITY);
+                return;
+            }
+            boolean optimal = lowerBound >= incumbentCost;
+            result.setOutcome(optimal ? SearchOutcomeEnum.OPTIMAL : SearchOutcomeEnum.BOUNDED);
+            result.setPlanCost(incumbentCost / costUnit);
+            result.setLowerBound(Math.min(lowerBound, incumbentCost) / costUnit);
+            result.setOptimalityGap(optimal ? 0 : (incumbentCost - lowerBound) / costUnit);
+            result.setSuboptimalityBound(optimal ? 1 : lowerBound > 0 ? incumbentCost / lowerBound : Double.POSITIVE_INFINITY);
+            incumbent.setSuboptimalityBound(result.getSuboptimalityBound());
+        } finally {
+            recordSearch(optimizeTarget, context, null);
+            context.release();
         }
+    }
 
-        return resultMap;
+    /**
+     * 各城市到终点至少还需的分段数（沿干线邻接表的入边做广度优先遍历，放宽运输方式转移与代驾规则，因而是下界）
+     * 超过 segmentLimit 的记为 segmentLimit + 1，表示在分段上限内不可达；代价与边数成正比
+     * @return 按城市ID索引的分段下界，借用 context 的缓冲区
+     */
+    private int[] computeSegmentBounds(CompactTransportGraph graph, TrunkAdjacency adjacency, AStarSearchContext context,
+                                       int endCityId, int segmentLimit) {
+        int cityCount = graph.getCityCount();
+        int[] bounds = context.segmentBoundBuffer(cityCount);
+        int[] queue = context.cityQueueBuffer();
+        Arrays.fill(bounds, 0, cityCount, segmentLimit + 1);
+        bounds[endCityId] = 0;
+        queue[0] = endCityId;
+        int head = 0;
+        int tail = 1;
+        long allSlots = adjacency.allSlots();
+        while (head < tail) {
+            int cityId = queue[head++];
+            int nextBound = bounds[cityId] + 1;
+            if (nextBound > segmentLimit) {
+                continue;
+            }
+            int inEnd = adjacency.inEnd(cityId, allSlots);
+            for (int i = adjacency.inStart(cityId, allSlots); i < inEnd; i++) {
+                int previousCityId = graph.edgeSource(adjacency.inEdge(i));
+                if (bounds[previousCityId] > nextBound) {
+                    bounds[previousCityId] = nextBound;
+                    queue[tail++] = previousCityId;
+                }
+            }
+        }
+        return bounds;
     }
 
     /**
-     * 【核心入口方法】执行路由规划
-     * @param query 用户查询条件
-     * @return 包含所有符合条件的方案的列表
+     * 【收缩层次查询】用干线收缩层次求解单目标查询
+     * 层次只含大板车边，首尾代驾作为多源/多汇的初始代价接入：前向从起点（计入提车费）和首段代驾可达的城市出发，
+     * 后向从终点（计入送车费）和可代驾到终点的城市出发；起点直接代驾到终点单独作为一个候选。
+     * 得到的是放宽分段上限、运输方式转移规则和板车单段里程上限之后的最优解；中间段禁止代驾时合法路径都在放宽后的解空间内，
+     * 因此展开后的路径满足规则表时就是原问题的最优解，否则（或允许中间段代驾时）交给A*处理。
+     * @return 逆序存放的路径边（与 buildTrunkPlan 一致）；不可达时返回null；需要回退到A*时返回 HIERARCHY_FALLBACK
      */
-    public List<RoutePlan> planRoute(RouteQuery query) {
-        List<RoutePlan> finalResults = new ArrayList<>();
+    private int[] searchWithHierarchy(CompactTransportGraph graph, ContractionHierarchy hierarchy, RouteQuery query,
+                                      OptimizeTargetEnum optimizeTarget, int startCityId, int endCityId) {
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        if (!rules.isForbidDriverInMiddle()) {
+            return HIERARCHY_FALLBACK;
+        }
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        // 首尾代驾只需遍历代驾槽位的出边/入边
+        long driverSlotMask = 1L << rules.getDriverSlot();
+        long pickFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+        long deliverFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+
+        // 起点直接代驾到终点的候选（不收同城费）
+        long directCost = Long.MAX_VALUE;
+        int directEdge = -1;
+        // 前向初始点：起点本身 + 首段代驾到达的城市
+        int edgeEnd = adjacency.outEnd(startCityId, driverSlotMask);
+        int[] sources = new int[1 + edgeEnd - adjacency.outStart(startCityId, driverSlotMask)];
+        long[] sourceCosts = new long[sources.length];
+        int[] sourceEdges = new int[sources.length];
+        sources[0] = startCityId;
+        sourceCosts[0] = pickFee;
+        sourceEdges[0] = -1;
+        int sourceCount = 1;
+        for (int i = adjacency.outStart(startCityId, driverSlotMask); i < edgeEnd; i++) {
+            int edge = adjacency.outEdge(i);
+            int to = graph.edgeTarget(edge);
+            if (to == startCityId) {
+                continue;
+            }
+            long cost = hierarchy.originalWeight(edge);
+            if (to == endCityId) {
+                if (cost < directCost) {
+                    directCost = cost;
+                    directEdge = edge;
+                }
+                continue;
+            }
+            sources[sourceCount] = to;
+            sourceCosts[sourceCount] = cost;
+            sourceEdges[sourceCount++] = edge;
+        }
+        // 后向初始点：终点本身 + 末段代驾的出发城市（起点直接代驾的边已作为单独候选）
+        int inEdgeEnd = adjacency.inEnd(endCityId, driverSlotMask);
+        int[] targets = new int[1 + inEdgeEnd - adjacency.inStart(endCityId, driverSlotMask)];
+        long[] targetCosts = new long[targets.length];
+        int[] targetEdges = new int[targets.length];
+        targets[0] = endCityId;
+        targetCosts[0] = deliverFee;
+        targetEdges[0] = -1;
+        int targetCount = 1;
+        for (int i = adjacency.inStart(endCityId, driverSlotMask); i < inEdgeEnd; i++) {
+            int edge = adjacency.inEdge(i);
+            int from = graph.edgeSource(edge);
+            if (from == endCityId || from == startCityId) {
+                continue;
+            }
+            targets[targetCount] = from;
+            targetCosts[targetCount] = hierarchy.originalWeight(edge);
+            targetEdges[targetCount++] = edge;
+        }
 
-        // 1. --- 寻找“大板车”方案中的最优解 ---
-        // 分别计算时间最优和价格最优的大板车干线运输路径
-        RoutePlan timeOptimalBigTruckPlan = findBestRoute(query, OptimizeTargetEnum.TIME);
-        RoutePlan priceOptimalBigTruckPlan = findBestRoute(query, OptimizeTargetEnum.PRICE);
+        ContractionHierarchy.Path trunk = hierarchy.shortestPath(Arrays.copyOf(sources, sourceCount),
+                Arrays.copyOf(sourceCosts, sourceCount), Arrays.copyOf(targets, targetCount),
+                Arrays.copyOf(targetCosts, targetCount));
+        if (trunk == null || trunk.getCost() > directCost) {
+            return directEdge < 0 ? null : new int[]{directEdge};
+        }
 
-        // 为找到的干线运输路径添加同城提/送货服务，并应用费用规则
-        if (timeOptimalBigTruckPlan != null) {
-            RoutePlan processedTimePlan = addCityServicesToPlan(timeOptimalBigTruckPlan, query);
-            if(processedTimePlan != null) finalResults.add(processedTimePlan);
+        int firstDriverEdge = seedEdge(trunk.getSourceCity(), sources, sourceCosts, sourceEdges, sourceCount);
+        int lastDriverEdge = seedEdge(trunk.getTargetCity(), targets, targetCosts, targetEdges, targetCount);
+        int[] trunkEdges = trunk.getEdges();
+        int edgeCount = trunkEdges.length + (firstDriverEdge >= 0 ? 1 : 0) + (lastDriverEdge >= 0 ? 1 : 0);
+        if (edgeCount > segmentLimit) {
+            return HIERARCHY_FALLBACK;
+        }
+        int[] reversed = new int[edgeCount];
+        int position = edgeCount;
+        if (firstDriverEdge >= 0) {
+            reversed[--position] = firstDriverEdge;
         }
-        if (priceOptimalBigTruckPlan != null) {
-            // 避免重复添加（如果时间最优和价格最优是同一个方案）
-            if (timeOptimalBigTruckPlan == null || !priceOptimalBigTruckPlan.getTotalPrice().equals(timeOptimalBigTruckPlan.getTotalPrice()) ||
-                    priceOptimalBigTruckPlan.getTotalTime() != timeOptimalBigTruckPlan.getTotalTime()) {
-                RoutePlan processedPricePlan = addCityServicesToPlan(priceOptimalBigTruckPlan, query);
-                if(processedPricePlan != null) finalResults.add(processedPricePlan);
+        for (int edge : trunkEdges) {
+            reversed[--position] = edge;
+        }
+        if (lastDriverEdge >= 0) {
+            reversed[--position] = lastDriverEdge;
+        }
+        return followsRules(graph, rules, edgeSlots, reversed, endCityId) ? reversed : HIERARCHY_FALLBACK;
+    }
+
+    /**
+     * 逆序存放的路径是否满足规则表：每条边可用、相邻两段的运输方式可以衔接、中间段禁止代驾时代驾只在首尾，
+     * 且中途不经过终点（与A*一致，到达终点后不再继续）
+     */
+    private static boolean followsRules(CompactTransportGraph graph, TransportRuleTable rules, ByteBuffer edgeSlots,
+                                        int[] reversedEdges, int endCityId) {
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        int previousSlot = 0;
+        for (int i = reversedEdges.length - 1; i >= 0; i--) {
+            int edge = reversedEdges[i];
+            int slot = edgeSlots.get(edge);
+            if (slot < 0 || !rules.canTransitionSlot(previousSlot, slot)) {
+                return false;
             }
+            boolean middle = i != reversedEdges.length - 1 && i != 0;
+            if ((slot == terminalOnlySlot && middle) || (i != 0 && graph.edgeTarget(edge) == endCityId)) {
+                return false;
+            }
+            previousSlot = slot;
         }
+        return true;
+    }
 
-        // 2. --- 添加其他单一运输方式的直达方案 ---
-        // 例如：海运直达、铁路直达、代驾直达等
-        List<TransportModeEnum> otherModes = Arrays.asList(
-                TransportModeEnum.SHIP,
-                TransportModeEnum.RAIL,
-                TransportModeEnum.DRIVER,
-                TransportModeEnum.SMALL_TRUCK
-        );
-
-        for (TransportModeEnum mode : otherModes) {
-            RoutePlan directPlan = findDirectRoute(query, mode);
-            if (directPlan != null) {
-                finalResults.add(directPlan);
+    /**
+     * 只能出现在首段或末段的槽位：中间段禁止代驾时为代驾槽位，否则为-1（不与任何槽位相等）
+     */
+    private static int terminalOnlySlot(TransportRuleTable rules) {
+        return rules.isForbidDriverInMiddle() ? rules.getDriverSlot() : -1;
+    }
+
+    /**
+     * 层次路径的起点/终点城市对应的代驾边：起讫点本身没有代驾边，返回-1；同一城市有多条代驾边时取代价最小的一条
+     */
+    private static int seedEdge(int city, int[] seeds, long[] seedCosts, int[] seedEdges, int seedCount) {
+        int best = 0;
+        for (int i = 1; i < seedCount; i++) {
+            if (seeds[i] == city && (seeds[best] != city || seedCosts[i] < seedCosts[best])) {
+                best = i;
             }
         }
+        return seeds[best] == city ? seedEdges[best] : -1;
+    }
 
-        return finalResults;
+    /**
+     * 起讫点直线距离是否超过双向搜索阈值
+     */
+    private boolean isLongHaul(RouteQuery query) {
+        double distance = snapshot.get().straightLineDistanceKm(query.getFromCity(), query.getToCity());
+        return distance > bidirectionalThresholdKm;
     }
 
     /**
-     * 【核心算法】使用A*算法寻找最优的干线运输路径
-     * @param query 查询条件
-     * @param optimizeTarget 优化目标 (时间/价格)
-     * @return 最优干线路径方案，如果未找到则返回null
+     * 【核心算法】双向A*：前向搜索从起点沿出边、后向搜索从终点沿反向索引（入边）交替进行，在中间相遇
+     * 前向状态与单向A*相同，启发值为城市到终点的预估成本；
+     * 后向状态为 (城市, 到终点的分段数, 0, 后缀首段运输方式)，启发值为起点到该城市的预估成本。
+     * 一侧生成的状态所在城市另一侧也到过时做相遇检查：分段数之和不超过上限、两段运输方式可以衔接、
+     * 代驾只在首尾，满足时用两侧gScore之和更新当前最优解。
+     * 同城费口径与单向A*一致：前向在首段、到达终点的边上计入；后向在终点的入边上计入送车费，
+     * 提车费在与起点状态拼接时按后缀首段计入。与单向A*一样，路径不经过终点后再继续。
+     * 任一侧堆顶的估值不小于当前最优解时，不可能再有更优的路径，搜索结束。
      */
-    private RoutePlan findBestRoute(RouteQuery query, OptimizeTargetEnum optimizeTarget) {
-        String startCity = query.getFromCity();
+    private RoutePlan searchBestRouteBidirectional(CompactTransportGraph graph, RouteQuery query,
+                                                   OptimizeTargetEnum optimizeTarget, SearchCancellation cancellation,
+                                                   int startCityId, int endCityId) {
         String endCity = query.getToCity();
-
-        // A*算法的优先队列（open set），按fScore排序
-        PriorityQueue<AStarNode> openSet = new PriorityQueue<>(Comparator.comparingDouble(AStarNode::getFScore));
-        // A*算法的已访问节点集合（closed set），记录已经处理过的节点
-        Map<AStarNodeKey, AStarNode> closedSet = new HashMap<>();
-
-        // 创建起始节点
-        AStarNode startNode = new AStarNode();
-        startNode.setCity(startCity);
-        startNode.setSegmentCount(0);
-        startNode.setPreviousMode(null);
-        startNode.setCurrentMode(null);
-        startNode.setGScore(0); // 从起点到当前节点的实际成本
-        startNode.setHScore(heuristicCalculator.calculate(startCity, endCity, optimizeTarget)); // 预估成本
-        startNode.setPrevNode(null);
-        startNode.setEdge(null);
-
-        openSet.add(startNode);
-
-        while (!openSet.isEmpty()) {
-            // 取出fScore最小的节点
-            AStarNode currentNode = openSet.poll();
-            AStarNodeKey currentKey = new AStarNodeKey(
-                    currentNode.getCity(),
-                    currentNode.getSegmentCount(),
-                    currentNode.getPreviousMode(),
-                    currentNode.getCurrentMode()
-            );
-
-            // 找到终点，立即返回重建的路径
-            if (currentNode.getCity().equals(endCity)) {
-                return reconstructPlan(currentNode, query, optimizeTarget);
-            }
-
-            // 如果该节点已被处理过且记录的gScore更小，则跳过
-            if (closedSet.containsKey(currentKey) && closedSet.get(currentKey).getGScore() <= currentNode.getGScore()) {
-                continue;
+        int segmentLimit = maxSegments;
+        TransportRuleTable rules = ruleTable;
+        TrunkAdjacency adjacency = rules.prepare(graph);
+        int stateCount = graph.getCityCount() * (segmentLimit + 1) * MODE_SLOTS * MODE_SLOTS;
+        AStarSearchContext forward = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        AStarSearchContext backward = AStarSearchContext.acquire(stateCount, graph.getCityCount());
+        try {
+            double[] heuristicTable = heuristicCalculator.heuristicTable(graph, endCity, optimizeTarget);
+            double heuristicScale = optimizeTarget == OptimizeTargetEnum.PRICE ? CompactTransportGraph.FEN_PER_YUAN : 1;
+            long pickFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+            long deliverFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+
+            forward.open(encodeState(startCityId, 0, 0, 0, segmentLimit), 0,
+                    heuristic(graph, forward, heuristicTable, startCityId, endCity, optimizeTarget) * heuristicScale, -1, -1);
+            forward.markCityVisited(startCityId);
+            backward.open(encodeState(endCityId, 0, 0, 0, segmentLimit), 0,
+                    backwardHeuristic(graph, backward, startCityId, endCityId, optimizeTarget) * heuristicScale, -1, -1);
+            backward.markCityVisited(endCityId);
+
+            // 当前最优解 μ 及其两侧的相遇状态
+            long[] best = {Long.MAX_VALUE, -1, -1};
+            int polledStates = 0;
+            while (forward.hasOpenStates() && backward.hasOpenStates()) {
+                if ((++polledStates & CANCELLATION_CHECK_MASK) == 0) {
+                    cancellation.checkpoint();
+                }
+                if (Math.max(forward.peekOpenKey(), backward.peekOpenKey()) >= best[0]) {
+                    break;
+                }
+                // 优先扩展 open set 较小的一侧，两侧搜索范围保持均衡
+                if (forward.openSetSize() <= backward.openSetSize()) {
+                    expandForward(graph, rules, adjacency, forward, backward, heuristicTable, heuristicScale, pickFee,
+                            deliverFee, startCityId, endCityId, segmentLimit, optimizeTarget, query, best);
+                } else {
+                    expandBackward(graph, rules, adjacency, forward, backward, heuristicScale, pickFee, deliverFee,
+                            startCityId, endCityId, segmentLimit, optimizeTarget, best);
+                }
+            }
+            if (best[0] == Long.MAX_VALUE) {
+                return null; // 未找到路径
             }
 
-            // 将当前节点加入已处理集合
-            closedSet.put(currentKey, currentNode);
-
-            // 获取当前节点的所有出边（可到达的下一个节点）
-            List<TransportEdge> outgoingEdges = getOutgoingEdges(currentNode, true);
+            // 前向链（逆序）接在后向链（正序，需反转）之后，得到逆序存放的完整路径
+            int[] path = forward.pathBuffer(segmentLimit + 1);
+            int edgeCount = 0;
+            for (int state = (int) best[2]; backward.getParentState(state) >= 0; state = backward.getParentState(state)) {
+                path[edgeCount++] = backward.getParentEdge(state);
+            }
+            for (int i = 0, j = edgeCount - 1; i < j; i++, j--) {
+                int edge = path[i];
+                path[i] = path[j];
+                path[j] = edge;
+            }
+            for (int state = (int) best[1]; forward.getParentState(state) >= 0; state = forward.getParentState(state)) {
+                path[edgeCount++] = forward.getParentEdge(state);
+            }
+            return buildTrunkPlan(graph, path, edgeCount, query, optimizeTarget);
+        } finally {
+            recordSearch(optimizeTarget, forward, backward);
+            backward.release();
+            forward.release();
+        }
+    }
 
-            for (TransportEdge edge : outgoingEdges) {
-                // 检查转移是否合法（例如：代驾之后只能接大板车）
-                if (!canTransition(currentNode, edge)) {
+    /**
+     * 双向A*的前向一步：弹出前向堆顶并沿出边扩展，规则与单向A*相同；终点上的状态不再扩展
+     */
+    private void expandForward(CompactTransportGraph graph, TransportRuleTable rules, TrunkAdjacency adjacency,
+                               AStarSearchContext forward, AStarSearchContext backward,
+                               double[] heuristicTable, double heuristicScale, long pickFee, long deliverFee,
+                               int startCityId, int endCityId, int segmentLimit, OptimizeTargetEnum optimizeTarget,
+                               RouteQuery query, long[] best) {
+        int currentState = forward.pollOpenState();
+        forward.close(currentState);
+        int currentModeSlot = currentState % MODE_SLOTS;
+        int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+        int segmentCount = rest % (segmentLimit + 1);
+        int currentCityId = rest / (segmentLimit + 1);
+        int newSegmentCount = segmentCount + 1;
+        if (currentCityId == endCityId || newSegmentCount > segmentLimit) {
+            return;
+        }
+        long currentGScore = forward.getGScore(currentState);
+        long allowedSlots = rules.getSlotTransitions()[currentModeSlot];
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+
+        int edgeEnd = adjacency.outEnd(currentCityId, allowedSlots);
+        for (int i = adjacency.outStart(currentCityId, allowedSlots); i < edgeEnd; i++) {
+            int edge = adjacency.outEdge(i);
+            int nextModeSlot = edgeSlots.get(edge);
+            if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                continue;
+            }
+            int neighborCityId = graph.edgeTarget(edge);
+            if (nextModeSlot == terminalOnlySlot && segmentCount > 0 && neighborCityId != endCityId) {
+                continue;
+            }
+            long newGScore = calculateNewGScore(graph, currentGScore, segmentCount == 0, edge, optimizeTarget,
+                    pickFee, deliverFee, endCityId);
+            int neighborState = encodeState(neighborCityId, newSegmentCount, currentModeSlot, nextModeSlot, segmentLimit);
+            if (newGScore < forward.getGScore(neighborState)) {
+                double hScore = heuristic(graph, forward, heuristicTable, neighborCityId, query.getToCity(), optimizeTarget);
+                if (hScore == Double.POSITIVE_INFINITY) {
                     continue;
                 }
-
-                // 检查路径分段数是否超限
-                int newSegmentCount = currentNode.getSegmentCount() + 1;
-                if (newSegmentCount > maxSegments) {
-                    continue;
+                forward.open(neighborState, newGScore, newGScore + hScore * heuristicScale, currentState, edge);
+                forward.markCityVisited(neighborCityId);
+                if (backward.isCityVisited(neighborCityId)) {
+                    // 与后向在该城市上的所有状态尝试拼接
+                    for (int backwardCount = 0; backwardCount + newSegmentCount <= segmentLimit; backwardCount++) {
+                        for (int backwardSlot = 0; backwardSlot < MODE_SLOTS; backwardSlot++) {
+                            int backwardState = encodeState(neighborCityId, backwardCount, 0, backwardSlot, segmentLimit);
+                            updateMeeting(rules, forward, backward, neighborState, newSegmentCount, nextModeSlot,
+                                    backwardState, backwardCount, backwardSlot, pickFee, best);
+                        }
+                    }
                 }
+            }
+        }
+    }
 
-                // 检查代驾距离是否超限
-                if (edge.getMode() == TransportModeEnum.DRIVER && edge.getMileage() > maxDriverDistance) {
+    /**
+     * 双向A*的后向一步：弹出后向堆顶并沿入边（反向索引）扩展
+     * 中间段禁止代驾时，不是末段的代驾边只能从起点出发（作为首段），这样的后向状态不再继续扩展；
+     * 路径不经过终点后再继续。
+     */
+    private void expandBackward(CompactTransportGraph graph, TransportRuleTable rules, TrunkAdjacency adjacency,
+                                AStarSearchContext forward, AStarSearchContext backward, double heuristicScale,
+                                long pickFee, long deliverFee, int startCityId, int endCityId,
+                                int segmentLimit, OptimizeTargetEnum optimizeTarget, long[] best) {
+        int currentState = backward.pollOpenState();
+        backward.close(currentState);
+        int firstModeSlot = currentState % MODE_SLOTS;
+        int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+        int segmentCount = rest % (segmentLimit + 1);
+        int currentCityId = rest / (segmentLimit + 1);
+        int newSegmentCount = segmentCount + 1;
+        int terminalOnlySlot = terminalOnlySlot(rules);
+        if (newSegmentCount > segmentLimit || (firstModeSlot == terminalOnlySlot && segmentCount > 1)) {
+            return;
+        }
+        long currentGScore = backward.getGScore(currentState);
+        long[] slotTransitions = rules.getSlotTransitions();
+        ByteBuffer edgeSlots = adjacency.getEdgeSlots();
+        long firstSlotBit = firstModeSlot == 0 ? 0 : 1L << firstModeSlot;
+
+        long allSlots = adjacency.allSlots();
+        int inEdgeEnd = adjacency.inEnd(currentCityId, allSlots);
+        for (int i = adjacency.inStart(currentCityId, allSlots); i < inEdgeEnd; i++) {
+            int edge = adjacency.inEdge(i);
+            int previousModeSlot = edgeSlots.get(edge);
+            if ((slotTransitions[previousModeSlot] & firstSlotBit) != firstSlotBit) {
+                continue;
+            }
+            int previousCityId = graph.edgeSource(edge);
+            if (previousCityId == endCityId) {
+                continue;
+            }
+            // 中间段禁止代驾：不是末段的代驾只能是首段
+            if (previousModeSlot == terminalOnlySlot && segmentCount > 0 && previousCityId != startCityId) {
+                continue;
+            }
+            long newGScore = currentGScore;
+            if (optimizeTarget == OptimizeTargetEnum.TIME) {
+                newGScore += graph.edgeTimeHours(edge);
+            } else {
+                newGScore += graph.edgePriceFen(edge);
+                if (segmentCount == 0 && previousModeSlot != rules.getDriverSlot()) {
+                    newGScore += deliverFee;
+                }
+            }
+            int previousState = encodeState(previousCityId, newSegmentCount, 0, previousModeSlot, segmentLimit);
+            if (newGScore < backward.getGScore(previousState)) {
+                double hScore = backwardHeuristic(graph, backward, startCityId, previousCityId, optimizeTarget);
+                if (hScore == Double.POSITIVE_INFINITY) {
                     continue;
                 }
+                backward.open(previousState, newGScore, newGScore + hScore * heuristicScale, currentState, edge);
+                backward.markCityVisited(previousCityId);
+                if (forward.isCityVisited(previousCityId)) {
+                    // 与前向在该城市上的所有状态尝试拼接
+                    for (int forwardCount = 0; forwardCount + newSegmentCount <= segmentLimit; forwardCount++) {
+                        for (int forwardPreviousSlot = 0; forwardPreviousSlot < MODE_SLOTS; forwardPreviousSlot++) {
+                            for (int forwardSlot = 0; forwardSlot < MODE_SLOTS; forwardSlot++) {
+                                int forwardState = encodeState(previousCityId, forwardCount, forwardPreviousSlot,
+                                        forwardSlot, segmentLimit);
+                                updateMeeting(rules, forward, backward, forwardState, forwardCount, forwardSlot,
+                                        previousState, newSegmentCount, previousModeSlot, pickFee, best);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
 
-                // 计算新的gScore（从起点到下一个节点的实际成本，包含预估的同城费）
-                double newGScore = calculateNewGScore(currentNode, edge, optimizeTarget, query, endCity);
+    /**
+     * 检查同一城市上的前向状态与后向状态能否拼接成合法路径，能拼接且更优时更新最优解
+     * 前向为起点状态时（未走任何分段），提车费按后缀首段计入；
+     * 中间段禁止代驾时，后向首段为代驾且不是末段的状态只能与起点状态拼接。
+     */
+    private static void updateMeeting(TransportRuleTable rules, AStarSearchContext forward, AStarSearchContext backward,
+                                      int forwardState, int forwardCount, int forwardSlot,
+                                      int backwardState, int backwardCount, int backwardSlot, long pickFee, long[] best) {
+        long forwardGScore = forward.getGScore(forwardState);
+        long backwardGScore = backward.getGScore(backwardState);
+        if (forwardGScore == Long.MAX_VALUE || backwardGScore == Long.MAX_VALUE) {
+            return;
+        }
+        if (backwardCount > 0) {
+            // 前向为起点状态时槽位为0（起始），可以接任意运输方式
+            if (!rules.canTransitionSlot(forwardSlot, backwardSlot)
+                    || (backwardSlot == terminalOnlySlot(rules) && backwardCount > 1 && forwardCount > 0)) {
+                return;
+            }
+        }
+        long cost = forwardGScore + backwardGScore;
+        if (forwardCount == 0 && backwardSlot != rules.getDriverSlot()) {
+            cost += pickFee;
+        }
+        if (cost < best[0]) {
+            best[0] = cost;
+            best[1] = forwardState;
+            best[2] = backwardState;
+        }
+    }
 
-                // 创建邻居节点
-                AStarNode neighborNode = new AStarNode();
-                neighborNode.setCity(edge.getToCity());
-                neighborNode.setSegmentCount(newSegmentCount);
-                neighborNode.setPreviousMode(currentNode.getCurrentMode());
-                neighborNode.setCurrentMode(edge.getMode());
-                neighborNode.setGScore(newGScore);
-                neighborNode.setHScore(heuristicCalculator.calculate(edge.getToCity(), endCity, optimizeTarget));
-                neighborNode.setPrevNode(currentNode);
-                neighborNode.setEdge(edge);
+    /**
+     * 后向搜索的启发值：起点到该城市的预估成本，同一查询内每个城市只计算一次
+     */
+    private double backwardHeuristic(CompactTransportGraph graph, AStarSearchContext context, int startCityId, int cityId,
+                                     OptimizeTargetEnum optimizeTarget) {
+        if (cityId == startCityId) {
+            return 0;
+        }
+        boolean miss = !context.hasHeuristic(cityId);
+        context.countHeuristic(miss);
+        if (miss) {
+            context.putHeuristic(cityId, heuristicCalculator.calculate(graph, startCityId, graph.getCityName(cityId), optimizeTarget));
+        }
+        return context.getHeuristic(cityId);
+    }
 
-                AStarNodeKey neighborKey = new AStarNodeKey(
-                        neighborNode.getCity(),
-                        neighborNode.getSegmentCount(),
-                        neighborNode.getPreviousMode(),
-                        neighborNode.getCurrentMode()
-                );
+    /**
+     * 将搜索状态编码为int下标
+     */
+    private static int encodeState(int cityId, int segmentCount, int previousModeSlot, int currentModeSlot, int segmentLimit) {
+        return ((cityId * (segmentLimit + 1) + segmentCount) * MODE_SLOTS + previousModeSlot) * MODE_SLOTS + currentModeSlot;
+    }
 
-                // 如果邻居节点不在openSet中，或者有更优的路径，则加入/更新openSet
-                if (!closedSet.containsKey(neighborKey) || newGScore < closedSet.get(neighborKey).getGScore()) {
-                    openSet.add(neighborNode);
-                }
-            }
+    /**
+     * 获取城市到终点的启发值：优先读取预估值数组，否则同一查询内每个城市只计算一次
+     */
+    private double heuristic(CompactTransportGraph graph, AStarSearchContext context, double[] heuristicTable, int cityId,
+                             String endCity, OptimizeTargetEnum optimizeTarget) {
+        if (heuristicTable != null) {
+            context.countHeuristic(false);
+            return heuristicTable[cityId];
+        }
+        boolean miss = !context.hasHeuristic(cityId);
+        context.countHeuristic(miss);
+        if (miss) {
+            context.putHeuristic(cityId, heuristicCalculator.calculate(graph, cityId, endCity, optimizeTarget));
         }
-        return null; // 未找到路径
+        return context.getHeuristic(cityId);
     }
 
     /**
@@ -226,35 +2219,32 @@ public class TransportGraphRouter {
      * @param mode 运输方式
      * @return 直达路线方案，如果不存在则返回null
      */
-    private RoutePlan findDirectRoute(RouteQuery query, TransportModeEnum mode) {
+    private RoutePlan findDirectRoute(CompactTransportGraph graph, RouteQuery query, TransportModeEnum mode) {
         String fromCity = query.getFromCity();
         String toCity = query.getToCity();
 
         // 1. 检查是否存在从 fromCity 到 toCity 的直达边
-        CityPair directPair = new CityPair(fromCity, toCity);
-        if (!transportGraph.containsKey(directPair)) {
+        int fromCityId = graph.getCityId(fromCity);
+        int toCityId = graph.getCityId(toCity);
+        if (fromCityId < 0 || toCityId < 0) {
             return null;
         }
 
-        List<TransportEdge> directEdges = transportGraph.get(directPair);
-        TransportEdge chosenEdge = directEdges.stream()
-                .filter(e -> e.getMode() == mode)
-                .findFirst()
-                .orElse(null);
-
-        if (chosenEdge == null) {
+        int chosenEdge = graph.findEdge(fromCityId, toCityId, mode);
+        if (chosenEdge < 0) {
             return null;
         }
 
-        // 代驾直达需要检查距离限制
-        if (mode == TransportModeEnum.DRIVER && chosenEdge.getMileage() > maxDriverDistance) {
+        // 直达同样需要检查单段里程限制（代驾距离、板车单段里程）
+        if (!ruleTable.allowsMileage(mode, graph.edgeMileage(chosenEdge))) {
             return null;
         }
 
         // 2. 构建分段详情
         List<RouteSegment> segments = new ArrayList<>();
-        BigDecimal totalPrice = chosenEdge.getPrice();
-        int totalTime = chosenEdge.getTimeHours();
+        BigDecimal edgePrice = graph.edgePriceDecimal(chosenEdge);
+        BigDecimal totalPrice = edgePrice;
+        int totalTime = graph.edgeTimeHours(chosenEdge);
 
         int segmentNo = 1;
         // 处理同城提车
@@ -275,9 +2265,9 @@ public class TransportGraphRouter {
         mainSegment.setFromCity(fromCity);
         mainSegment.setToCity(toCity);
         mainSegment.setMode(mode);
-        mainSegment.setMileage(chosenEdge.getMileage());
-        mainSegment.setTimeHours(chosenEdge.getTimeHours());
-        mainSegment.setPrice(chosenEdge.getPrice());
+        mainSegment.setMileage(graph.edgeMileage(chosenEdge));
+        mainSegment.setTimeHours(graph.edgeTimeHours(chosenEdge));
+        mainSegment.setPrice(edgePrice);
         mainSegment.setLastMile(false);
         segments.add(mainSegment);
 
@@ -315,18 +2305,13 @@ public class TransportGraphRouter {
      * 此方法主要负责构建最终的 RouteSegment 列表。
      */
     private RoutePlan addCityServicesToPlan(RoutePlan originalPlan, RouteQuery query) {
-        // 校验原始路径是否符合支线规则（例如：代驾只能在路径首尾）
-        if (!isRouteValid(originalPlan)) {
-            System.err.println("警告：找到的路径不符合支线规则，已跳过。");
-            return null;
-        }
-
         RoutePlan newPlan = new RoutePlan();
         newPlan.setFromCity(originalPlan.getFromCity());
         newPlan.setToCity(originalPlan.getToCity());
         newPlan.setNeedSameCityPick(originalPlan.isNeedSameCityPick());
         newPlan.setNeedSameCityDeliver(originalPlan.isNeedSameCityDeliver());
         newPlan.setOptimizeTarget(originalPlan.getOptimizeTarget());
+        newPlan.setSuboptimalityBound(originalPlan.getSuboptimalityBound());
 
         List<RouteSegment> originalSegments = originalPlan.getSegments();
         List<RouteSegment> newSegments = new ArrayList<>();
@@ -401,99 +2386,35 @@ public class TransportGraphRouter {
     }
 
     /**
-     * 校验一个路径是否符合“支线(DRIVER)只能在首尾”的规则
-     */
-    private boolean isRouteValid(RoutePlan plan) {
-        List<RouteSegment> segments = plan.getSegments();
-        if (segments.isEmpty()) return true;
-
-        boolean hasSeenNonDriver = false;
-
-        for (RouteSegment seg : segments) {
-            if (seg.getMode() == TransportModeEnum.DRIVER) {
-                if (hasSeenNonDriver) {
-                    return false;
-                }
-            } else {
-                hasSeenNonDriver = true;
-            }
-        }
-        return true;
-    }
-
-    /**
-     * 获取当前节点所有可能的出边
-     * @param currentNode 当前节点
-     * @param bigTruckOnly 是否只考虑大板车运输
-     * @return 出边列表
-     */
-    private List<TransportEdge> getOutgoingEdges(AStarNode currentNode, boolean bigTruckOnly) {
-        String currentCity = currentNode.getCity();
-
-        // 1. 从优化后的 Map 中直接获取当前城市的所有出边
-        // 如果没有出边，返回一个空列表，避免空指针异常
-        List<TransportEdge> allOutgoingEdges = outgoingEdgesMap.getOrDefault(currentCity, Collections.emptyList());
-
-        // 2. 如果不需要过滤，则直接返回所有出边
-        if (!bigTruckOnly) {
-            return allOutgoingEdges;
-        }
-        // 3. 如果需要过滤（只保留 BIG_TRUCK 和 DRIVER），则进行流式过滤
-        return allOutgoingEdges.stream()
-                .filter(e -> e.getMode() == TransportModeEnum.BIG_TRUCK || e.getMode() == TransportModeEnum.DRIVER)
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * 【核心转移规则】判断从当前节点到下一个节点的转移是否合法
-     */
-    private boolean canTransition(AStarNode currentNode, TransportEdge nextEdge) {
-        TransportModeEnum currentMode = currentNode.getCurrentMode();
-        TransportModeEnum nextMode = nextEdge.getMode();
-
-        // 1. 如果当前模式是 DRIVER (支线)，下一段必须是 BIG_TRUCK (干线)
-        if (currentMode == TransportModeEnum.DRIVER) {
-            return nextMode == TransportModeEnum.BIG_TRUCK;
-        }
-        // 2. 如果当前模式是 BIG_TRUCK (干线)，下一段可以是 BIG_TRUCK (继续干线) 或 DRIVER (末端支线)
-        if (currentMode == TransportModeEnum.BIG_TRUCK) {
-            return nextMode == TransportModeEnum.BIG_TRUCK || nextMode == TransportModeEnum.DRIVER;
-        }
-        // 3. 初始状态，可以选择 BIG_TRUCK (直接干线) 或 DRIVER (起始支线)
-        if (currentMode == null) {
-            return nextMode == TransportModeEnum.BIG_TRUCK || nextMode == TransportModeEnum.DRIVER;
-        }
-        // 4. 其他模式不允许
-        return false;
-    }
-
-    /**
-     * 根据优化目标计算新的G值 (从起点到当前邻居节点的累计实际成本)
+     * 根据优化目标计算新的G值 (从起点到当前邻居节点的累计实际成本：时效→小时，价格→分)
      * 当优化目标是价格时，会预估并加入可能产生的同城提/送货费用。
+     * @param pickFee 同城提车费（分），不需要提车时为0
+     * @param deliverFee 同城送车费（分），不需要送车时为0
      */
-    private double calculateNewGScore(AStarNode currentNode, TransportEdge edge, OptimizeTargetEnum target, RouteQuery query, String endCity) {
-        double newGScore = currentNode.getGScore();
+    private long calculateNewGScore(CompactTransportGraph graph, long currentGScore, boolean fromStart, int edge,
+                                    OptimizeTargetEnum target, long pickFee, long deliverFee, int endCityId) {
+        long newGScore = currentGScore;
 
         if (target == OptimizeTargetEnum.TIME) {
-            newGScore += edge.getTimeHours();
+            newGScore += graph.edgeTimeHours(edge);
         } else { // PRICE
-            newGScore += edge.getPrice().doubleValue();
+            newGScore += graph.edgePriceFen(edge);
 
             // 1. 预估同城提车成本
             // 如果当前节点是起点，并且需要提车服务
-            if (currentNode.getPrevNode() == null && query.isNeedSameCityPick()) {
+            if (fromStart) {
                 // 判断未来第一条路由是否是代驾。如果是，提车费将被减免。
-                if (edge.getMode() != TransportModeEnum.DRIVER) {
-                    newGScore += sameCityServicePrice.doubleValue();
+                if (graph.edgeModeOrdinal(edge) != TransportModeEnum.DRIVER.ordinal()) {
+                    newGScore += pickFee;
                 }
             }
 
             // 2. 预估同城送车成本
             // 如果下一个节点(neighbor)是终点，并且需要送车服务
-            if (edge.getToCity().equals(endCity) && query.isNeedSameCityDeliver()) {
+            if (graph.edgeTarget(edge) == endCityId) {
                 // 判断未来最后一条路由是否是代驾。如果是，送车费将被减免。
-                if (edge.getMode() != TransportModeEnum.DRIVER) {
-                    newGScore += sameCityServicePrice.doubleValue();
+                if (graph.edgeModeOrdinal(edge) != TransportModeEnum.DRIVER.ordinal()) {
+                    newGScore += deliverFee;
                 }
             }
         }
@@ -502,35 +2423,51 @@ public class TransportGraphRouter {
     }
 
     /**
-     * 从目标节点回溯，重建完整的路径规划方案
+     * 从目标状态回溯，重建完整的路径规划方案
      */
-    private RoutePlan reconstructPlan(AStarNode endNode, RouteQuery query, OptimizeTargetEnum optimizeTarget) {
-        List<TransportEdge> edges = new ArrayList<>();
-        AStarNode current = endNode;
-        while (current.getPrevNode() != null) {
-            edges.add(current.getEdge());
-            current = current.getPrevNode();
+    private RoutePlan reconstructPlan(CompactTransportGraph graph, AStarSearchContext context, int endState, int segmentLimit,
+                                     RouteQuery query, OptimizeTargetEnum optimizeTarget) {
+        // 沿前驱指针回溯，边下标逆序写入缓冲区
+        int[] path = context.pathBuffer(segmentLimit + 1);
+        int edgeCount = 0;
+        int state = endState;
+        while (context.getParentState(state) >= 0) {
+            path[edgeCount++] = context.getParentEdge(state);
+            state = context.getParentState(state);
         }
-        Collections.reverse(edges);
+        return buildTrunkPlan(graph, path, edgeCount, query, optimizeTarget);
+    }
 
+    /**
+     * 根据逆序存放的边下标构建干线方案
+     * 总价格 = 干线费用 + 同城提/送车费（首/末段为代驾时免收），总时效只含干线时效；
+     * 价格按分累加，最后一次性还原为 BigDecimal
+     * @param reversedEdges 边下标，reversedEdges[0] 为最后一段
+     * @param edgeCount 边数
+     */
+    private RoutePlan buildTrunkPlan(CompactTransportGraph graph, int[] reversedEdges, int edgeCount, RouteQuery query,
+                                    OptimizeTargetEnum optimizeTarget) {
         List<RouteSegment> segments = new ArrayList<>();
-        BigDecimal totalPrice = BigDecimal.ZERO;
+        long totalPrice = 0;
         int totalTime = 0;
-        for (int i = 0; i < edges.size(); i++) {
-            TransportEdge edge = edges.get(i);
+        int fromCityId = graph.getCityId(query.getFromCity());
+        for (int i = 0; i < edgeCount; i++) {
+            int edge = reversedEdges[edgeCount - 1 - i];
+            int toCityId = graph.edgeTarget(edge);
             RouteSegment segment = new RouteSegment();
             segment.setSegmentNo(i + 1);
-            segment.setFromCity(edge.getFromCity());
-            segment.setToCity(edge.getToCity());
-            segment.setMode(edge.getMode());
-            segment.setMileage(edge.getMileage());
-            segment.setTimeHours(edge.getTimeHours());
-            segment.setPrice(edge.getPrice());
+            segment.setFromCity(graph.getCityName(fromCityId));
+            segment.setToCity(graph.getCityName(toCityId));
+            segment.setMode(graph.edgeMode(edge));
+            segment.setMileage(graph.edgeMileage(edge));
+            segment.setTimeHours(graph.edgeTimeHours(edge));
+            segment.setPrice(graph.edgePriceDecimal(edge));
             segment.setLastMile(false);
 
             segments.add(segment);
-            totalPrice = totalPrice.add(edge.getPrice());
-            totalTime += edge.getTimeHours();
+            totalPrice += graph.edgePriceFen(edge);
+            totalTime += graph.edgeTimeHours(edge);
+            fromCityId = toCityId;
         }
 
         RoutePlan plan = new RoutePlan();
@@ -550,20 +2487,444 @@ public class TransportGraphRouter {
             plan.setLastMainMode(segments.get(segments.size() - 1).getMode());
         }
 
-        // 设置最终价格（已包含预估的同城费）
-        // 注意：这里的 endNode.getGScore() 已经是包含了干线费和预估同城费的总成本
-        plan.setTotalPrice(BigDecimal.valueOf(endNode.getGScore()));
+        // 设置最终价格（包含同城费），与搜索中的价格口径一致
+        if (query.isNeedSameCityPick() && plan.getFirstMainMode() != TransportModeEnum.DRIVER) {
+            totalPrice += sameCityServicePriceFen;
+        }
+        if (query.isNeedSameCityDeliver() && plan.getLastMainMode() != TransportModeEnum.DRIVER) {
+            totalPrice += sameCityServicePriceFen;
+        }
+        plan.setTotalPrice(CompactTransportGraph.toPriceDecimal(totalPrice));
 
         return plan;
     }
 
     // --- Getters and Setters ---
+    public GraphSnapshot getSnapshot() { return snapshot.get(); }
+    public CompactTransportGraph getGraph() { return snapshot.get().getGraph(); }
+    public Map<String, CityBaseData> getCityBaseDataMap() { return snapshot.get().getCityBaseDataMap(); }
     public int getMaxSegments() { return maxSegments; }
     public void setMaxSegments(int maxSegments) { this.maxSegments = maxSegments; }
     public int getMaxDriverDistance() { return maxDriverDistance; }
-    public void setMaxDriverDistance(int maxDriverDistance) { this.maxDriverDistance = maxDriverDistance; }
+    public void setMaxDriverDistance(int maxDriverDistance) {
+        this.maxDriverDistance = maxDriverDistance;
+        this.ruleTable = new TransportRuleTable(ruleConfig, SLOT_MODES, maxDriverDistance);
+    }
+    public TransportRuleConfig getRuleConfig() { return ruleConfig; }
+    /**
+     * 设置业务规则配置：分段数上限取自 maxSegment，转移规则、板车单段里程上限、中间段是否禁止代驾编译为规则表
+     * 配置在设置时编译，之后再修改配置对象不会生效，需要重新调用本方法。
+     */
+    public void setRuleConfig(TransportRuleConfig ruleConfig) {
+        this.ruleConfig = Objects.requireNonNull(ruleConfig, "ruleConfig");
+        this.maxSegments = ruleConfig.getMaxSegment();
+        this.ruleTable = new TransportRuleTable(ruleConfig, SLOT_MODES, maxDriverDistance);
+    }
+    /**
+     * 当前生效的规则表
+     */
+    public TransportRuleTable getRuleTable() { return ruleTable; }
     public BigDecimal getSameCityServicePrice() { return sameCityServicePrice; }
-    public void setSameCityServicePrice(BigDecimal sameCityServicePrice) { this.sameCityServicePrice = sameCityServicePrice; }
+    public void setSameCityServicePrice(BigDecimal sameCityServicePrice) {
+        this.sameCityServicePriceFen = CompactTransportGraph.toFen(sameCityServicePrice);
+        this.sameCityServicePrice = sameCityServicePrice;
+    }
     public int getSameCityServiceTime() { return sameCityServiceTime; }
     public void setSameCityServiceTime(int sameCityServiceTime) { this.sameCityServiceTime = sameCityServiceTime; }
+    public int getBidirectionalThresholdKm() { return bidirectionalThresholdKm; }
+    public void setBidirectionalThresholdKm(int bidirectionalThresholdKm) { this.bidirectionalThresholdKm = bidirectionalThresholdKm; }
+    public RoutePlanCache getRoutePlanCache() { return routePlanCache; }
+    public void setRoutePlanCache(RoutePlanCache routePlanCache) { this.routePlanCache = routePlanCache; }
+    public boolean isConcurrentExecution() { return concurrentExecution; }
+    public void setConcurrentExecution(boolean concurrentExecution) { this.concurrentExecution = concurrentExecution; }
+    public Executor getExecutor() { return executor; }
+    public void setExecutor(Executor executor) { this.executor = executor; }
+    public Duration getQueryTimeout() { return queryTimeout; }
+    public void setQueryTimeout(Duration queryTimeout) { this.queryTimeout = queryTimeout; }
+    public Timetable getTimetable() { return timetable; }
+    public void setTimetable(Timetable timetable) { this.timetable = timetable; }
+    public SearchMetrics getSearchMetrics() { return searchMetrics; }
+    public void setSearchMetrics(SearchMetrics searchMetrics) { this.searchMetrics = searchMetrics; }
+
+    /**
+     * 一次K条备选路线查询（Yen算法）
+     * 偏离搜索从上一条选中路线的每个偏离点出发：根路径（起点到偏离点）保持不变，根路径上的城市不可再经过，
+     * 偏离路径也不重复经过自身已到过的城市，与已选路线共享同一根路径的下一条边被禁用；偏离搜索的状态从根路径末端的 (分段数, 上一/当前运输方式) 继续，
+     * 因此分段数与运输方式规则对整条路线生效。
+     */
+    private final class AlternativeRouteSearch {
+        private static final long UNREACHABLE = Long.MAX_VALUE;
+
+        private final CompactTransportGraph graph;
+        private final OptimizeTargetEnum optimizeTarget;
+        private final SearchCancellation cancellation;
+        private final int startCityId;
+        private final int endCityId;
+        // 查询开始时读取一次的参数与规则（避免查询过程中被setter修改）
+        private final int segmentLimit;
+        private final TrunkAdjacency adjacency;
+        private final ByteBuffer edgeSlots;
+        private final long[] slotTransitions;
+        private final int terminalOnlySlot;
+        private final long pickFee;
+        private final long deliverFee;
+        // 各城市到终点的最短代价（放宽规则的最短路径树），所有偏离搜索共用的启发值；到不了终点为 UNREACHABLE
+        private final long[] costToEnd;
+        // 偏离搜索中不可经过的城市（根路径上的城市），按代数戳标记
+        private final int[] blockedStamp;
+        private int blockedGeneration;
+        // 偏离搜索的标签（一条部分路径一个标签），按标签编号索引，每次偏离搜索从0重新编号
+        private int[] labelStates = new int[64];
+        private long[] labelCosts = new long[64];
+        private int[] labelParents = new int[64];
+        private int[] labelEdges = new int[64];
+        private int[] labelNext = new int[64];
+        private boolean[] labelDead = new boolean[64];
+        private int labelCount;
+        // 按 (代价 + 到终点的最短代价) 出堆的标签
+        private final IndexedMinHeap openLabels = new IndexedMinHeap(64);
+        // 每个城市的标签串成单链表（桶），bucketStamp 等于本次偏离搜索的代数时才有效
+        private final int[] bucketHeads;
+        private final int[] bucketStamp;
+
+        private AlternativeRouteSearch(CompactTransportGraph graph, RouteQuery query, OptimizeTargetEnum optimizeTarget,
+                                       SearchCancellation cancellation, int startCityId, int endCityId) {
+            this.graph = graph;
+            this.optimizeTarget = optimizeTarget;
+            this.cancellation = cancellation;
+            this.startCityId = startCityId;
+            this.endCityId = endCityId;
+            this.segmentLimit = maxSegments;
+            TransportRuleTable rules = ruleTable;
+            this.adjacency = rules.prepare(graph);
+            this.edgeSlots = adjacency.getEdgeSlots();
+            this.slotTransitions = rules.getSlotTransitions();
+            this.terminalOnlySlot = terminalOnlySlot(rules);
+            this.pickFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityPick() ? sameCityServicePriceFen : 0;
+            this.deliverFee = optimizeTarget == OptimizeTargetEnum.PRICE && query.isNeedSameCityDeliver() ? sameCityServicePriceFen : 0;
+            this.costToEnd = reverseShortestPathTree();
+            this.blockedStamp = new int[graph.getCityCount()];
+            this.bucketHeads = new int[graph.getCityCount()];
+            this.bucketStamp = new int[graph.getCityCount()];
+        }
+
+        /**
+         * @return 前K条路线（正序边下标），按代价升序
+         */
+        private List<int[]> run(int k) {
+            List<int[]> accepted = new ArrayList<>();
+            int[] first = spur(new int[0], 0, new int[0], 0);
+            if (first == null) {
+                return accepted;
+            }
+            accepted.add(first);
+            // 候选路线按代价升序，代价相同时先产生的优先
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                    Comparator.comparingLong((Candidate c) -> c.cost).thenComparingInt(c -> c.order));
+            int candidateOrder = 0;
+            while (accepted.size() < k) {
+                int[] last = accepted.get(accepted.size() - 1);
+                int[] banned = new int[accepted.size()];
+                for (int rootLength = 0; rootLength < last.length; rootLength++) {
+                    // 与上一条路线共享这段根路径的已选路线，其下一条边都要禁用
+                    int bannedCount = 0;
+                    for (int[] path : accepted) {
+                        if (path.length > rootLength && Arrays.equals(path, 0, rootLength, last, 0, rootLength)) {
+                            banned[bannedCount++] = path[rootLength];
+                        }
+                    }
+                    int[] path = spur(last, rootLength, banned, bannedCount);
+                    if (path != null && !containsPath(candidates, path)) {
+                        candidates.add(new Candidate(pathCost(path), path, candidateOrder++));
+                    }
+                }
+                Candidate next = candidates.poll();
+                if (next == null) {
+                    break;
+                }
+                accepted.add(next.edges);
+            }
+            return accepted;
+        }
+
+        /**
+         * 偏离搜索：保持 root[0, rootLength) 不变，从其末端城市出发做A*到终点
+         * 状态含运输方式，同一城市可以不同方式多次到达，因此搜索的是部分路径（标签）而不是状态：
+         * 扩展时不走回本标签已到过的城市；同一状态下代价不更高、且到过的城市是对方子集的标签才支配对方，
+         * 被剪掉的路径的任何无环延伸，支配它的标签都能以不更高的代价走通，第一条出堆的终点标签即最优的无环偏离路线。
+         * @param banned 偏离点上禁用的出边
+         * @return 完整路线（根路径 + 偏离路径，正序边下标）；不存在时返回null
+         */
+        private int[] spur(int[] root, int rootLength, int[] banned, int bannedCount) {
+            int spurCityId = rootLength == 0 ? startCityId : graph.edgeTarget(root[rootLength - 1]);
+            if (costToEnd[spurCityId] == UNREACHABLE) {
+                return null;
+            }
+            // 根路径上的城市（含偏离点）不可再经过；代数同时标识本次偏离搜索的标签桶
+            blockedGeneration++;
+            blockedStamp[startCityId] = blockedGeneration;
+            for (int i = 0; i < rootLength; i++) {
+                blockedStamp[graph.edgeTarget(root[i])] = blockedGeneration;
+            }
+            long rootCost = 0;
+            for (int i = 0; i < rootLength; i++) {
+                rootCost = calculateNewGScore(graph, rootCost, i == 0, root[i], optimizeTarget, pickFee, deliverFee, endCityId);
+            }
+            int previousSlot = rootLength >= 2 ? edgeSlots.get(root[rootLength - 2]) : 0;
+            int currentSlot = rootLength >= 1 ? edgeSlots.get(root[rootLength - 1]) : 0;
+
+            labelCount = 0;
+            openLabels.clear();
+            int spurLabel = newLabel(encodeState(spurCityId, rootLength, previousSlot, currentSlot, segmentLimit), rootCost, -1, -1);
+            openLabels.insertOrUpdate(spurLabel, rootCost + costToEnd[spurCityId]);
+            int polledLabels = 0;
+            while (!openLabels.isEmpty()) {
+                if ((++polledLabels & CANCELLATION_CHECK_MASK) == 0) {
+                    cancellation.checkpoint();
+                }
+                int label = openLabels.poll();
+                // 入堆后被同一状态的新标签支配，跳过
+                if (labelDead[label]) {
+                    continue;
+                }
+                int currentState = labelStates[label];
+                int currentModeSlot = currentState % MODE_SLOTS;
+                int rest = currentState / MODE_SLOTS / MODE_SLOTS;
+                int segmentCount = rest % (segmentLimit + 1);
+                int currentCityId = rest / (segmentLimit + 1);
+                if (currentCityId == endCityId) {
+                    return joinPath(label, root, rootLength);
+                }
+                int newSegmentCount = segmentCount + 1;
+                if (newSegmentCount > segmentLimit) {
+                    continue;
+                }
+                long currentCost = labelCosts[label];
+                long allowedSlots = slotTransitions[currentModeSlot];
+
+                int edgeEnd = adjacency.outEnd(currentCityId, allowedSlots);
+                for (int i = adjacency.outStart(currentCityId, allowedSlots); i < edgeEnd; i++) {
+                    int edge = adjacency.outEdge(i);
+                    int nextModeSlot = edgeSlots.get(edge);
+                    if ((allowedSlots & (1L << nextModeSlot)) == 0) {
+                        continue;
+                    }
+                    int neighborCityId = graph.edgeTarget(edge);
+                    if (blockedStamp[neighborCityId] == blockedGeneration || costToEnd[neighborCityId] == UNREACHABLE
+                            || isOnSpurPath(label, neighborCityId)) {
+                        continue;
+                    }
+                    // 中间段禁止代驾：大板车之后的代驾只能作为末段
+                    if (nextModeSlot == terminalOnlySlot && segmentCount > 0 && neighborCityId != endCityId) {
+                        continue;
+                    }
+                    // 偏离点之后不再回到偏离点，被禁用的边只会出现在偏离点的出边中
+                    if (currentCityId == spurCityId && isBanned(edge, banned, bannedCount)) {
+                        continue;
+                    }
+                    long newCost = calculateNewGScore(graph, currentCost, segmentCount == 0, edge, optimizeTarget,
+                            pickFee, deliverFee, endCityId);
+                    int neighborState = encodeState(neighborCityId, newSegmentCount, currentModeSlot, nextModeSlot, segmentLimit);
+                    if (isDominatedInBucket(neighborCityId, neighborState, newCost, label)) {
+                        continue;
+                    }
+                    int newLabel = newLabel(neighborState, newCost, label, edge);
+                    addToBucket(neighborCityId, newLabel);
+                    openLabels.insertOrUpdate(newLabel, newCost + costToEnd[neighborCityId]);
+                }
+            }
+            return null;
+        }
+
+        private int newLabel(int state, long cost, int parent, int edge) {
+            if (labelCount == labelStates.length) {
+                int capacity = labelCount * 2;
+                labelStates = Arrays.copyOf(labelStates, capacity);
+                labelCosts = Arrays.copyOf(labelCosts, capacity);
+                labelParents = Arrays.copyOf(labelParents, capacity);
+                labelEdges = Arrays.copyOf(labelEdges, capacity);
+                labelNext = Arrays.copyOf(labelNext, capacity);
+                labelDead = Arrays.copyOf(labelDead, capacity);
+                openLabels.ensureCapacity(capacity);
+            }
+            int label = labelCount++;
+            labelStates[label] = state;
+            labelCosts[label] = cost;
+            labelParents[label] = parent;
+            labelEdges[label] = edge;
+            labelNext[label] = -1;
+            labelDead[label] = false;
+            return label;
+        }
+
+        /**
+         * 从 parent 经一条边到达 cityId 的状态 state、代价 cost 的新路径，是否被该城市已有的标签支配
+         */
+        private boolean isDominatedInBucket(int cityId, int state, long cost, int parent) {
+            if (bucketStamp[cityId] != blockedGeneration) {
+                return false;
+            }
+            for (int label = bucketHeads[cityId]; label >= 0; label = labelNext[label]) {
+                if (labelStates[label] == state && labelCosts[label] <= cost
+                        && visitsOnlyCitiesOf(labelParents[label], parent)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 把标签放入所在城市的桶，并移除（标记失效）被它支配的同状态标签
+         */
+        private void addToBucket(int cityId, int newLabel) {
+            if (bucketStamp[cityId] != blockedGeneration) {
+                bucketStamp[cityId] = blockedGeneration;
+                bucketHeads[cityId] = -1;
+            }
+            int previous = -1;
+            for (int label = bucketHeads[cityId]; label >= 0; label = labelNext[label]) {
+                if (labelStates[label] == labelStates[newLabel] && labelCosts[newLabel] <= labelCosts[label]
+                        && visitsOnlyCitiesOf(labelParents[newLabel], labelParents[label])) {
+                    labelDead[label] = true;
+                    if (previous < 0) {
+                        bucketHeads[cityId] = labelNext[label];
+                    } else {
+                        labelNext[previous] = labelNext[label];
+                    }
+                } else {
+                    previous = label;
+                }
+            }
+            labelNext[newLabel] = bucketHeads[cityId];
+            bucketHeads[cityId] = newLabel;
+        }
+
+        /**
+         * 标签 label 的偏离路径到过的城市是否都在 other 的偏离路径上
+         */
+        private boolean visitsOnlyCitiesOf(int label, int other) {
+            for (; labelParents[label] >= 0; label = labelParents[label]) {
+                if (!isOnSpurPath(other, graph.edgeTarget(labelEdges[label]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 从偏离点到标签 label 的偏离路径是否已经过 cityId（偏离路径不超过分段数上限，逐个回溯父标签）
+         */
+        private boolean isOnSpurPath(int label, int cityId) {
+            for (; labelParents[label] >= 0; label = labelParents[label]) {
+                if (graph.edgeTarget(labelEdges[label]) == cityId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 根路径 + 从终点标签回溯得到的偏离路径
+         */
+        private int[] joinPath(int endLabel, int[] root, int rootLength) {
+            int spurLength = 0;
+            for (int label = endLabel; labelParents[label] >= 0; label = labelParents[label]) {
+                spurLength++;
+            }
+            int[] path = Arrays.copyOf(root, rootLength + spurLength);
+            int position = path.length;
+            for (int label = endLabel; labelParents[label] >= 0; label = labelParents[label]) {
+                path[--position] = labelEdges[label];
+            }
+            return path;
+        }
+
+        /**
+         * 路线的代价，口径与A*的gScore相同（价格目标含同城提/送车费）
+         */
+        private long pathCost(int[] path) {
+            long cost = 0;
+            for (int i = 0; i < path.length; i++) {
+                cost = calculateNewGScore(graph, cost, i == 0, path[i], optimizeTarget, pickFee, deliverFee, endCityId);
+            }
+            return cost;
+        }
+
+        /**
+         * 沿入边从终点出发的Dijkstra（放宽分段数与运输方式规则、不计同城费），得到各城市到终点的最短代价
+         */
+        private long[] reverseShortestPathTree() {
+            int cityCount = graph.getCityCount();
+            long[] costs = new long[cityCount];
+            Arrays.fill(costs, UNREACHABLE);
+            costs[endCityId] = 0;
+            IndexedMinHeap heap = new IndexedMinHeap(cityCount);
+            heap.insertOrUpdate(endCityId, 0);
+            long allSlots = adjacency.allSlots();
+            while (!heap.isEmpty()) {
+                int cityId = heap.poll();
+                int inEnd = adjacency.inEnd(cityId, allSlots);
+                for (int i = adjacency.inStart(cityId, allSlots); i < inEnd; i++) {
+                    int edge = adjacency.inEdge(i);
+                    long weight = optimizeTarget == OptimizeTargetEnum.TIME ? graph.edgeTimeHours(edge) : graph.edgePriceFen(edge);
+                    int from = graph.edgeSource(edge);
+                    long cost = costs[cityId] + weight;
+                    if (cost < costs[from]) {
+                        costs[from] = cost;
+                        heap.insertOrUpdate(from, cost);
+                    }
+                }
+            }
+            return costs;
+        }
+
+        private boolean containsPath(PriorityQueue<Candidate> candidates, int[] path) {
+            for (Candidate candidate : candidates) {
+                if (Arrays.equals(candidate.edges, path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isBanned(int edge, int[] banned, int bannedCount) {
+            for (int i = 0; i < bannedCount; i++) {
+                if (banned[i] == edge) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Yen算法的候选路线
+     */
+    private static final class Candidate {
+        private final long cost;
+        private final int[] edges;
+        private final int order;
+
+        private Candidate(long cost, int[] edges, int order) {
+            this.cost = cost;
+            this.edges = edges;
+            this.order = order;
+        }
+    }
+
+    /**
+     * 默认执行器：JDK 21+ 使用虚拟线程（每个子任务一个虚拟线程），否则使用公共ForkJoinPool；
+     * 通过反射获取，项目仍可在较低版本的JDK上编译运行
+     */
+    private static final class DefaultExecutorHolder {
+        private static final Executor EXECUTOR = createDefaultExecutor();
+
+        private static Executor createDefaultExecutor() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
 }
\ No newline at end of file
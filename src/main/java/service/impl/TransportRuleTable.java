@@ -0,0 +1,177 @@
+package service.impl;
+
+import config.TransportRuleConfig;
+import enumObject.TransportModeEnum;
+import model.CompactTransportGraph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 由 TransportRuleConfig 编译得到的规则表，搜索中每条规则只需一次数组读取和一次位运算
+ * 运输方式编号：0 表示起始（尚未选择运输方式），ordinal+1 表示对应的运输方式；
+ * transitions[i] 的第 j 位为1表示编号 i 之后可以接编号 j，起始之后可以接任意运输方式。
+ * 干线搜索按槽位（起始、大板车、代驾）编码状态，编译时同时生成槽位之间的转移表；
+ * 每条边是否可用（运输方式属于干线、不超过代驾距离上限和板车单段里程上限、不是被支配的平行边）
+ * 在图准备阶段算成边的槽位和按槽位分组的干线邻接表（TrunkAdjacency），以规则表为所有者依附在图上缓存，
+ * 新旧快照的图各自持有自己的邻接表；增量修改得到的图由旧图的邻接表修补（carryForward）。
+ * 实例不可变（邻接表缓存在图上，并发重复计算的结果相同），配置或代驾距离上限修改后整体重新编译。
+ */
+public final class TransportRuleTable {
+
+    // 起始（尚未选择运输方式）的编号
+    public static final int START = 0;
+
+    // 运输方式编号 → 允许的下一运输方式编号的位掩码
+    private final long[] transitions;
+    // 槽位 → 允许的下一槽位的位掩码
+    private final long[] slotTransitions;
+    // 运输方式 ordinal → 槽位，非干线运输方式为-1
+    private final int[] ordinalSlots;
+    private final int driverSlot;
+
+    private final int maxSingleSegmentMileage;
+    private final int maxDriverDistance;
+    private final boolean forbidDriverInMiddle;
+
+    private final int slotCount;
+
+    /**
+     * @param config 业务规则配置
+     * @param slotModes 干线搜索的槽位 → 运输方式，槽位0为起始（null）
+     * @param maxDriverDistance 代驾单段距离上限
+     */
+    public TransportRuleTable(TransportRuleConfig config, TransportModeEnum[] slotModes, int maxDriverDistance) {
+        int modeCount = TransportModeEnum.values().length;
+        if (modeCount + 1 > Long.SIZE || slotModes.length > Long.SIZE) {
+            throw new IllegalArgumentException("运输方式数量超过位掩码容量");
+        }
+        transitions = new long[modeCount + 1];
+        transitions[START] = ((1L << modeCount) - 1) << 1;
+        for (Map.Entry<TransportModeEnum, Set<TransportModeEnum>> entry : config.getAllowedModeTransitions().entrySet()) {
+            long mask = 0;
+            for (TransportModeEnum next : entry.getValue()) {
+                mask |= 1L << modeIndex(next);
+            }
+            transitions[modeIndex(entry.getKey())] = mask;
+        }
+
+        ordinalSlots = new int[modeCount];
+        Arrays.fill(ordinalSlots, -1);
+        int driver = -1;
+        for (int slot = 1; slot < slotModes.length; slot++) {
+            ordinalSlots[slotModes[slot].ordinal()] = slot;
+            if (slotModes[slot] == TransportModeEnum.DRIVER) {
+                driver = slot;
+            }
+        }
+        driverSlot = driver;
+        slotCount = slotModes.length;
+        slotTransitions = new long[slotModes.length];
+        for (int from = 0; from < slotModes.length; from++) {
+            for (int to = 1; to < slotModes.length; to++) {
+                if (canTransition(slotModes[from], slotModes[to])) {
+                    slotTransitions[from] |= 1L << to;
+                }
+            }
+        }
+
+        this.maxSingleSegmentMileage = config.getMaxSingleSegmentMileage();
+        this.maxDriverDistance = maxDriverDistance;
+        this.forbidDriverInMiddle = config.isForbidDriverInMiddle();
+    }
+
+    /**
+     * 运输方式编号（null 为起始）
+     */
+    public static int modeIndex(TransportModeEnum mode) {
+        return mode == null ? START : mode.ordinal() + 1;
+    }
+
+    /**
+     * 运输方式 current 之后能否接 next（current 为null表示起始）
+     */
+    public boolean canTransition(TransportModeEnum current, TransportModeEnum next) {
+        return (transitions[modeIndex(current)] & (1L << modeIndex(next))) != 0;
+    }
+
+    /**
+     * 运输方式编号 current 之后能否接编号 next（编号见 modeIndex）
+     */
+    public boolean canTransitionIndex(int current, int next) {
+        return (transitions[current] & (1L << next)) != 0;
+    }
+
+    /**
+     * 运输方式编号的个数（起始 + 各运输方式）
+     */
+    public static int modeIndexCount() {
+        return TransportModeEnum.values().length + 1;
+    }
+
+    /**
+     * 槽位 current 之后能否接槽位 next
+     */
+    public boolean canTransitionSlot(int current, int next) {
+        return (slotTransitions[current] & (1L << next)) != 0;
+    }
+
+    /**
+     * 该运输方式的单段里程是否在上限之内（代驾按代驾距离上限，大/小板车按板车单段里程上限）
+     */
+    public boolean allowsMileage(TransportModeEnum mode, int mileage) {
+        if (mode == TransportModeEnum.DRIVER) {
+            return mileage <= maxDriverDistance;
+        }
+        if (mode == TransportModeEnum.BIG_TRUCK || mode == TransportModeEnum.SMALL_TRUCK) {
+            return mileage <= maxSingleSegmentMileage;
+        }
+        return true;
+    }
+
+    /**
+     * 图准备阶段：按本规则表为图构建干线邻接表（去掉超限边和被支配的平行边）；同一张图只构建一次
+     */
+    public TrunkAdjacency prepare(CompactTransportGraph graph) {
+        Object cached = graph.getAttachment(this);
+        if (cached != null) {
+            return (TrunkAdjacency) cached;
+        }
+        TrunkAdjacency adjacency = new TrunkAdjacency(graph, this, ordinalSlots, slotCount);
+        graph.putAttachment(this, adjacency);
+        return adjacency;
+    }
+
+    /**
+     * 增量修改后沿用邻接表：previous 已准备过邻接表、且 graph 由 previous 只修改一个城市的出边得到时，
+     * 由旧表修补出 graph 的邻接表（代价与该城市及其到达城市的边数成正比），预留空间用尽时整体重新构建；
+     * 其余情况不做处理，graph 首次使用时再准备
+     */
+    public void carryForward(CompactTransportGraph previous, CompactTransportGraph graph) {
+        if (graph.getAttachment(this) != null) {
+            return;
+        }
+        Object cached = previous.getAttachment(this);
+        int city = graph.patchedCityOf(previous);
+        if (cached == null || city < 0) {
+            return;
+        }
+        TrunkAdjacency adjacency = ((TrunkAdjacency) cached).patched(graph, city, this, ordinalSlots);
+        graph.putAttachment(this, adjacency != null ? adjacency : new TrunkAdjacency(graph, this, ordinalSlots, slotCount));
+    }
+
+    /**
+     * 图中每条边在干线搜索中的槽位，不可用或被去掉的边为-1
+     */
+    public ByteBuffer edgeSlots(CompactTransportGraph graph) {
+        return prepare(graph).getEdgeSlots();
+    }
+
+    public long[] getSlotTransitions() { return slotTransitions; }
+    public int getDriverSlot() { return driverSlot; }
+    public int getMaxSingleSegmentMileage() { return maxSingleSegmentMileage; }
+    public int getMaxDriverDistance() { return maxDriverDistance; }
+    public boolean isForbidDriverInMiddle() { return forbidDriverInMiddle; }
+}
@@ -0,0 +1,425 @@
+package service.impl;
+
+import model.CompactTransportGraph;
+import model.PagedIntArray;
+import model.SlotAllocator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * 干线搜索使用的邻接表（图准备阶段的结果），由规则表按图构建并依附在图上缓存
+ * 只保留干线搜索能走的边：运输方式属于干线槽位、不超过代驾距离上限和板车单段里程上限，
+ * 并去掉同一 (出发城市, 到达城市, 运输方式) 下被支配的平行边（时效和价格都不优于另一条边；两条边完全相同时保留先出现的一条）。
+ * 被支配的边不会出现在任何最优解或帕累托前沿中，去掉后只减少扩展的边数，不改变结果。
+ * 出边、入边都按 (城市, 槽位) 分组，同一城市的各组连续存放，同一组内按 (出发城市, 边下标) 的顺序；
+ * 搜索只遍历当前运输方式允许衔接的槽位所覆盖的区间。
+ * 被去掉的边在 edgeSlots 中同样为-1，收缩层次、路径校验等按边下标判断的地方与邻接表一致。
+ * 图只修改一个城市的出边时（增量修改），由旧表修补出新表：重写该城市的出边分组和它新旧出边涉及的到达城市的入边分组，
+ * 写到分组数组尾部的空闲位置，其余分组与旧表共享；尾部空间用尽时整体重新构建。
+ * 边属性存放在堆外的图（映射的快照文件），邻接表也分配在堆外。
+ */
+public final class TrunkAdjacency {
+
+    // 整体构建时为之后的修补预留的最少空闲位置数
+    private static final int MIN_RESERVE = 16;
+
+    private final CompactTransportGraph graph;
+    private final int slotCount;
+    // 边下标 → 槽位，不可用或被去掉的边为-1；修补得到的表与旧表共用（只写入新图新分配的边下标）
+    private final ByteBuffer edgeSlots;
+    // 城市 c 槽位 s 的出边为 outEdges[outBounds[c * (槽位数 + 1) + s], outBounds[c * (槽位数 + 1) + s + 1])
+    private final PagedIntArray outBounds;
+    private final IntBuffer outEdges;
+    private final SlotAllocator outAllocator;
+    // 入边，布局同出边
+    private final PagedIntArray inBounds;
+    private final IntBuffer inEdges;
+    private final SlotAllocator inAllocator;
+
+    // 保留的边数与各原因去掉的边数
+    private final int edgeCount;
+    private final int nonTrunkEdgeCount;
+    private final int overLimitEdgeCount;
+    private final int dominatedEdgeCount;
+
+    /**
+     * 整体构建
+     * @param ordinalSlots 运输方式 ordinal → 槽位，非干线运输方式为-1
+     * @param slotCount 槽位数（含起始槽位0）
+     */
+    TrunkAdjacency(CompactTransportGraph graph, TransportRuleTable rules, int[] ordinalSlots, int slotCount) {
+        this.graph = graph;
+        this.slotCount = slotCount;
+        int cityCount = graph.getCityCount();
+        boolean direct = graph.isDirect();
+        edgeSlots = allocateBytes(graph.edgeIndexLimit(), direct);
+        for (int edge = 0; edge < graph.edgeIndexLimit(); edge++) {
+            edgeSlots.put(edge, (byte) -1);
+        }
+
+        // 1. 运输方式、单段里程过滤，去掉被支配的平行边
+        int[] counts = new int[3];
+        int[] candidates = new int[0];
+        for (int city = 0; city < cityCount; city++) {
+            candidates = classifyEdges(graph, rules, ordinalSlots, city, edgeSlots, candidates, counts);
+        }
+        nonTrunkEdgeCount = counts[0];
+        overLimitEdgeCount = counts[1];
+        dominatedEdgeCount = counts[2];
+
+        // 2. 按 (城市, 槽位) 分组的出边、入边：先计数，再按城市、槽位顺序排出各组起始位置
+        int[] outCounts = new int[cityCount * slotCount];
+        int[] inCounts = new int[cityCount * slotCount];
+        int kept = 0;
+        for (int city = 0; city < cityCount; city++) {
+            int end = graph.edgeEnd(city);
+            for (int edge = graph.edgeStart(city); edge < end; edge++) {
+                int slot = edgeSlots.get(edge);
+                if (slot >= 0) {
+                    outCounts[city * slotCount + slot]++;
+                    inCounts[graph.edgeTarget(edge) * slotCount + slot]++;
+                    kept++;
+                }
+            }
+        }
+        edgeCount = kept;
+        int[] outCursor = groupBounds(outCounts, cityCount);
+        int[] inCursor = groupBounds(inCounts, cityCount);
+        outBounds = PagedIntArray.copyOf(outCursor, 0, outCursor.length);
+        inBounds = PagedIntArray.copyOf(inCursor, 0, inCursor.length);
+        // 预留的空闲位置与图中等待压实的槽位数相当：图已开始增量修改时，邻接表也能修补多次再整体重建
+        int capacity = kept + Math.max(MIN_RESERVE, graph.edgeIndexLimit() - graph.getEdgeCount());
+        outEdges = allocateInts(capacity, direct);
+        inEdges = allocateInts(capacity, direct);
+        outAllocator = new SlotAllocator(kept, capacity);
+        inAllocator = new SlotAllocator(kept, capacity);
+        int stride = slotCount + 1;
+        for (int city = 0; city < cityCount; city++) {
+            int end = graph.edgeEnd(city);
+            for (int edge = graph.edgeStart(city); edge < end; edge++) {
+                int slot = edgeSlots.get(edge);
+                if (slot >= 0) {
+                    outEdges.put(outCursor[city * stride + slot]++, edge);
+                    inEdges.put(inCursor[graph.edgeTarget(edge) * stride + slot]++, edge);
+                }
+            }
+        }
+    }
+
+    private TrunkAdjacency(CompactTransportGraph graph, int slotCount, ByteBuffer edgeSlots,
+                           PagedIntArray outBounds, IntBuffer outEdges, SlotAllocator outAllocator,
+                           PagedIntArray inBounds, IntBuffer inEdges, SlotAllocator inAllocator,
+                           int edgeCount, int[] counts) {
+        this.graph = graph;
+        this.slotCount = slotCount;
+        this.edgeSlots = edgeSlots;
+        this.outBounds = outBounds;
+        this.outEdges = outEdges;
+        this.outAllocator = outAllocator;
+        this.inBounds = inBounds;
+        this.inEdges = inEdges;
+        this.inAllocator = inAllocator;
+        this.edgeCount = edgeCount;
+        this.nonTrunkEdgeCount = counts[0];
+        this.overLimitEdgeCount = counts[1];
+        this.dominatedEdgeCount = counts[2];
+    }
+
+    /**
+     * 图 next 由本表的图只修改城市 city 的出边得到（见 CompactTransportGraph.patchedCityOf）时，修补出 next 的邻接表：
+     * 重新筛选 city 的出边、重写它的出边分组，只重写它新旧出边涉及的到达城市的入边分组，代价与这些城市的边数成正比
+     * @return 修补得到的邻接表，预留空间不足时返回null（由调用方整体重新构建）
+     */
+    TrunkAdjacency patched(CompactTransportGraph next, int city, TransportRuleTable rules, int[] ordinalSlots) {
+        int previousCityCount = graph.getCityCount();
+        int oldStart = city < previousCityCount ? graph.edgeStart(city) : 0;
+        int oldEnd = city < previousCityCount ? graph.edgeEnd(city) : 0;
+        int newStart = next.edgeStart(city);
+        int newEnd = next.edgeEnd(city);
+
+        // 1. 去掉旧出边的计数，重新筛选新出边（新出边的下标是 next 新分配的，写入共用的 edgeSlots 不影响本表）
+        int[] counts = {nonTrunkEdgeCount, overLimitEdgeCount, dominatedEdgeCount};
+        int oldKept = 0;
+        for (int edge = oldStart; edge < oldEnd; edge++) {
+            if (ordinalSlots[graph.edgeModeOrdinal(edge)] < 0) {
+                counts[0]--;
+            } else if (!rules.allowsMileage(graph.edgeMode(edge), graph.edgeMileage(edge))) {
+                counts[1]--;
+            } else if (edgeSlots.get(edge) >= 0) {
+                oldKept++;
+            } else {
+                counts[2]--;
+            }
+        }
+        classifyEdges(next, rules, ordinalSlots, city, edgeSlots, new int[newEnd - newStart], counts);
+        int newKept = 0;
+        for (int edge = newStart; edge < newEnd; edge++) {
+            if (edgeSlots.get(edge) >= 0) {
+                newKept++;
+            }
+        }
+
+        // 2. 受影响的到达城市（去重）与需要的空闲位置数
+        int[] targets = new int[oldKept + newKept];
+        int targetCount = 0;
+        for (int edge = oldStart; edge < oldEnd; edge++) {
+            if (edgeSlots.get(edge) >= 0) {
+                targets[targetCount++] = graph.edgeTarget(edge);
+            }
+        }
+        for (int edge = newStart; edge < newEnd; edge++) {
+            if (edgeSlots.get(edge) >= 0) {
+                targets[targetCount++] = next.edgeTarget(edge);
+            }
+        }
+        Arrays.sort(targets);
+        int stride = slotCount + 1;
+        int distinct = 0;
+        int inRequired = newKept - oldKept;
+        for (int i = 0; i < targetCount; i++) {
+            int target = targets[i];
+            if (i > 0 && target == targets[i - 1]) {
+                continue;
+            }
+            targets[distinct++] = target;
+            if (target < previousCityCount) {
+                inRequired += inBounds.get(target * stride + slotCount) - inBounds.get(target * stride);
+            }
+        }
+        int outCursor = newKept == 0 ? 0 : outAllocator.allocate(newKept);
+        int inCursor = inRequired == 0 ? 0 : inAllocator.allocate(inRequired);
+        if (outCursor < 0 || inCursor < 0) {
+            return null;
+        }
+
+        // 3. 出边分组：city 的各槽位依次写入
+        int boundsLength = next.getCityCount() * stride;
+        PagedIntArray.Editor nextOutBounds = outBounds.edit(boundsLength);
+        for (int slot = 0; slot < slotCount; slot++) {
+            nextOutBounds.set(city * stride + slot, outCursor);
+            for (int edge = newStart; edge < newEnd; edge++) {
+                if (edgeSlots.get(edge) == slot) {
+                    outEdges.put(outCursor++, edge);
+                }
+            }
+        }
+        nextOutBounds.set(city * stride + slotCount, outCursor);
+
+        // 4. 入边分组：去掉 city 的旧出边，在原位置（按出发城市排序）换成 city 的新出边
+        PagedIntArray.Editor nextInBounds = inBounds.edit(boundsLength);
+        for (int k = 0; k < distinct; k++) {
+            int target = targets[k];
+            for (int slot = 0; slot < slotCount; slot++) {
+                nextInBounds.set(target * stride + slot, inCursor);
+                boolean inserted = false;
+                if (target < previousCityCount) {
+                    int end = inBounds.get(target * stride + slot + 1);
+                    for (int i = inBounds.get(target * stride + slot); i < end; i++) {
+                        int edge = inEdges.get(i);
+                        int source = graph.edgeSource(edge);
+                        if (source == city) {
+                            continue;
+                        }
+                        if (!inserted && source > city) {
+                            inCursor = putInEdges(next, target, slot, newStart, newEnd, inCursor);
+                            inserted = true;
+                        }
+                        inEdges.put(inCursor++, edge);
+                    }
+                }
+                if (!inserted) {
+                    inCursor = putInEdges(next, target, slot, newStart, newEnd, inCursor);
+                }
+            }
+            nextInBounds.set(target * stride + slotCount, inCursor);
+        }
+        return new TrunkAdjacency(next, slotCount, edgeSlots, nextOutBounds.build(), outEdges, outAllocator,
+                nextInBounds.build(), inEdges, inAllocator, edgeCount - oldKept + newKept, counts);
+    }
+
+    /**
+     * 把 [start, end) 中到达 target、槽位为 slot 的边按顺序写入入边数组的 cursor 处，返回写完后的位置
+     */
+    private int putInEdges(CompactTransportGraph next, int target, int slot, int start, int end, int cursor) {
+        for (int edge = start; edge < end; edge++) {
+            if (edgeSlots.get(edge) == slot && next.edgeTarget(edge) == target) {
+                inEdges.put(cursor++, edge);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * 筛选城市的出边并写入 edgeSlots：运输方式、单段里程过滤，再按 (到达城市, 运输方式, 时效, 价格, 边下标) 排序去掉被支配的平行边
+     * counts 依次累加非干线、超限、被支配的边数
+     * @param candidates 排序用的缓冲数组
+     * @return 排序用的缓冲数组（容量不足时换成更大的数组，供下一个城市复用）
+     */
+    private static int[] classifyEdges(CompactTransportGraph graph, TransportRuleTable rules, int[] ordinalSlots,
+                                       int city, ByteBuffer edgeSlots, int[] candidates, int[] counts) {
+        int start = graph.edgeStart(city);
+        int end = graph.edgeEnd(city);
+        if (candidates.length < end - start) {
+            candidates = new int[end - start];
+        }
+        int candidateCount = 0;
+        for (int edge = start; edge < end; edge++) {
+            edgeSlots.put(edge, (byte) -1);
+            int ordinal = graph.edgeModeOrdinal(edge);
+            if (ordinalSlots[ordinal] < 0) {
+                counts[0]++;
+            } else if (!rules.allowsMileage(graph.edgeMode(edge), graph.edgeMileage(edge))) {
+                counts[1]++;
+            } else {
+                candidates[candidateCount++] = edge;
+            }
+        }
+        sortParallelEdges(graph, candidates, candidateCount);
+        // 同一组内按时效升序扫描，价格没有严格低于之前所有边的边被支配
+        long groupMinPrice = Long.MAX_VALUE;
+        for (int i = 0; i < candidateCount; i++) {
+            int edge = candidates[i];
+            if (i == 0 || graph.edgeTarget(edge) != graph.edgeTarget(candidates[i - 1])
+                    || graph.edgeModeOrdinal(edge) != graph.edgeModeOrdinal(candidates[i - 1])) {
+                groupMinPrice = Long.MAX_VALUE;
+            }
+            long price = graph.edgePriceFen(edge);
+            if (price < groupMinPrice) {
+                groupMinPrice = price;
+                edgeSlots.put(edge, (byte) ordinalSlots[graph.edgeModeOrdinal(edge)]);
+            } else {
+                counts[2]++;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 按 (到达城市, 运输方式, 时效, 价格, 边下标) 对边下标原地堆排序（原始类型数组，不装箱、不分配）
+     */
+    private static void sortParallelEdges(CompactTransportGraph graph, int[] edges, int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(graph, edges, i, count);
+        }
+        for (int last = count - 1; last > 0; last--) {
+            int top = edges[0];
+            edges[0] = edges[last];
+            edges[last] = top;
+            siftDown(graph, edges, 0, last);
+        }
+    }
+
+    private static void siftDown(CompactTransportGraph graph, int[] edges, int index, int size) {
+        int edge = edges[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compareParallel(graph, edges[child + 1], edges[child]) > 0) {
+                child++;
+            }
+            if (compareParallel(graph, edges[child], edge) <= 0) {
+                break;
+            }
+            edges[index] = edges[child];
+            index = child;
+        }
+        edges[index] = edge;
+    }
+
+    private static int compareParallel(CompactTransportGraph graph, int a, int b) {
+        int order = Integer.compare(graph.edgeTarget(a), graph.edgeTarget(b));
+        if (order == 0) {
+            order = Integer.compare(graph.edgeModeOrdinal(a), graph.edgeModeOrdinal(b));
+        }
+        if (order == 0) {
+            order = Integer.compare(graph.edgeTimeHours(a), graph.edgeTimeHours(b));
+        }
+        if (order == 0) {
+            order = Long.compare(graph.edgePriceFen(a), graph.edgePriceFen(b));
+        }
+        return order != 0 ? order : Integer.compare(a, b);
+    }
+
+    /**
+     * 由各 (城市, 槽位) 组的边数得到各组的起始位置，每个城市多一项作为最后一组的结束位置
+     */
+    private int[] groupBounds(int[] groupCounts, int cityCount) {
+        int[] bounds = new int[cityCount * (slotCount + 1)];
+        int position = 0;
+        for (int city = 0; city < cityCount; city++) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                bounds[city * (slotCount + 1) + slot] = position;
+                position += groupCounts[city * slotCount + slot];
+            }
+            bounds[city * (slotCount + 1) + slotCount] = position;
+        }
+        return bounds;
+    }
+
+    private static ByteBuffer allocateBytes(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.wrap(new byte[capacity]);
+    }
+
+    private static IntBuffer allocateInts(int capacity, boolean direct) {
+        return direct
+                ? ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.wrap(new int[capacity]);
+    }
+
+    // --- 邻接访问：slotMask 为允许的槽位位掩码，返回覆盖最低到最高允许槽位的区间，区间内仍需按位检查槽位 ---
+
+    public int outStart(int cityId, long slotMask) { return outBounds.get(lowBound(cityId, slotMask)); }
+    public int outEnd(int cityId, long slotMask) { return outBounds.get(highBound(cityId, slotMask)); }
+    public int outEdge(int index) { return outEdges.get(index); }
+    public int inStart(int cityId, long slotMask) { return inBounds.get(lowBound(cityId, slotMask)); }
+    public int inEnd(int cityId, long slotMask) { return inBounds.get(highBound(cityId, slotMask)); }
+    public int inEdge(int index) { return inEdges.get(index); }
+
+    private int lowBound(int cityId, long slotMask) {
+        int base = cityId * (slotCount + 1);
+        return slotMask == 0 ? base : base + Long.numberOfTrailingZeros(slotMask);
+    }
+
+    private int highBound(int cityId, long slotMask) {
+        int base = cityId * (slotCount + 1);
+        return slotMask == 0 ? base : base + Long.SIZE - Long.numberOfLeadingZeros(slotMask);
+    }
+
+    /**
+     * 所有槽位的位掩码（不限制运输方式时使用）
+     */
+    public long allSlots() {
+        return (1L << slotCount) - 1;
+    }
+
+    public CompactTransportGraph getGraph() { return graph; }
+    /**
+     * 边下标 → 槽位（只读访问），不可用或被去掉的边为-1
+     */
+    public ByteBuffer getEdgeSlots() { return edgeSlots; }
+    /**
+     * 保留的边数
+     */
+    public int getEdgeCount() { return edgeCount; }
+    /**
+     * 非干线运输方式的边数
+     */
+    public int getNonTrunkEdgeCount() { return nonTrunkEdgeCount; }
+    /**
+     * 超过代驾距离上限或板车单段里程上限的边数
+     */
+    public int getOverLimitEdgeCount() { return overLimitEdgeCount; }
+    /**
+     * 被支配的平行边数
+     */
+    public int getDominatedEdgeCount() { return dominatedEdgeCount; }
+    /**
+     * 准备阶段去掉的边数（超限 + 被支配，不含本来就不参与干线搜索的非干线边）
+     */
+    public int getRemovedEdgeCount() { return overLimitEdgeCount + dominatedEdgeCount; }
+}
@@ -0,0 +1,1281 @@
+package com.example.smartrouter;
+
+import config.TransportRuleConfig;
+import enumObject.OptimizeTargetEnum;
+import enumObject.SearchOutcomeEnum;
+import enumObject.TransportModeEnum;
+import model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.SearchMetrics;
+import service.impl.AStarSearchContext;
+import service.impl.DefaultHeuristicCalculator;
+import service.impl.FileGraphSource;
+import service.impl.GraphSnapshotExporter;
+import service.impl.LandmarkHeuristicCalculator;
+import service.impl.RouteMatrixExporter;
+import service.impl.RouteMatrixGenerator;
+import service.impl.RoutePlanCache;
+import service.impl.Timetable;
+import service.impl.TransportGraphRouter;
+import service.impl.TrunkAdjacency;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransportGraphRouterTests {
+
+    private Map<String, CityBaseData> cityBaseDataMap;
+    private Map<CityPair, List<TransportEdge>> transportGraph;
+    private TransportGraphRouter router;
+
+    @BeforeEach
+    void setUp() {
+        cityBaseDataMap = new HashMap<>();
+        addCity("北京", 39.9042, 116.4074);
+        addCity("天津", 39.9042, 117.2000);
+        addCity("济南", 36.6750, 117.0000);
+        addCity("郑州", 34.7500, 113.7500);
+        addCity("武汉", 30.5928, 114.3055);
+        addCity("长沙", 28.2000, 113.0000);
+        addCity("广州", 23.1291, 113.2644);
+
+        transportGraph = new HashMap<>();
+        addEdge("北京", "广州", TransportModeEnum.BIG_TRUCK, 2100, 28, "12000");
+        addEdge("北京", "天津", TransportModeEnum.BIG_TRUCK, 120, 3, "500");
+        addEdge("北京", "济南", TransportModeEnum.BIG_TRUCK, 490, 10, "2200");
+        addEdge("天津", "济南", TransportModeEnum.BIG_TRUCK, 370, 8, "1600");
+        addEdge("北京", "济南", TransportModeEnum.DRIVER, 670, 8, "1500");
+        addEdge("济南", "郑州", TransportModeEnum.BIG_TRUCK, 450, 9, "2000");
+        addEdge("郑州", "武汉", TransportModeEnum.BIG_TRUCK, 530, 11, "2400");
+        addEdge("武汉", "长沙", TransportModeEnum.BIG_TRUCK, 350, 7, "1500");
+        addEdge("长沙", "广州", TransportModeEnum.BIG_TRUCK, 700, 14, "3100");
+        addEdge("北京", "广州", TransportModeEnum.SHIP, 1200, 20, "6000");
+
+        router = new TransportGraphRouter(transportGraph, cityBaseDataMap, new DefaultHeuristicCalculator(cityBaseDataMap));
+        router.setMaxSegments(5);
+        router.setMaxDriverDistance(1500);
+    }
+
+    @Test
+    void buildsCompactGraphWithDenseCityIds() {
+        CompactTransportGraph graph = router.getGraph();
+        assertEquals(7, graph.getCityCount());
+        assertEquals(10, graph.getEdgeCount());
+
+        int beijing = graph.getCityId("北京");
+        assertEquals("北京", graph.getCityName(beijing));
+        assertEquals(5, graph.edgeEnd(beijing) - graph.edgeStart(beijing));
+        assertEquals(-1, graph.getCityId("不存在"));
+
+        int ship = graph.findEdge(beijing, graph.getCityId("广州"), TransportModeEnum.SHIP);
+        assertEquals(20, graph.edgeTimeHours(ship));
+        assertEquals(new BigDecimal("6000"), graph.edgePriceDecimal(ship));
+    }
+
+    @Test
+    void plansTimeAndPriceOptimalTrunkRoutesAndDirectRoutes() {
+        List<RoutePlan> plans = router.planRoute(query("北京", "广州"));
+
+        assertEquals(3, plans.size());
+        RoutePlan pricePlan = plans.get(1);
+        assertEquals(List.of("北京", "济南", "郑州", "武汉", "长沙"),
+                pricePlan.getSegments().stream().filter(s -> !s.isLastMile()).map(RouteSegment::getFromCity).toList());
+        assertEquals(0, new BigDecimal("10700").compareTo(pricePlan.getTotalPrice()));
+        assertEquals(53, pricePlan.getTotalTime());
+
+        RoutePlan shipPlan = plans.get(2);
+        assertNull(shipPlan.getOptimizeTarget());
+        assertEquals(TransportModeEnum.SHIP, shipPlan.getSegments().get(1).getMode());
+        assertEquals(new BigDecimal("6400"), shipPlan.getTotalPrice());
+    }
+
+    @Test
+    void paretoFrontierSpansTimeAndPriceOptimalPlans() {
+        RouteResult result = router.planRouteResult(query("北京", "广州"));
+        List<RoutePlan> frontier = result.getParetoPlans();
+
+        assertTrue(frontier.size() >= 2);
+        assertSame(result.getTimeOptimalPlan(), frontier.get(0));
+        assertSame(result.getPriceOptimalPlan(), frontier.get(frontier.size() - 1));
+        for (int i = 1; i < frontier.size(); i++) {
+            assertTrue(frontier.get(i).getTotalTime() > frontier.get(i - 1).getTotalTime());
+            assertTrue(frontier.get(i).getTotalPrice().compareTo(frontier.get(i - 1).getTotalPrice()) < 0);
+        }
+        // 时效最优方案的总价格为干线费用加同城提送费
+        assertEquals(0, new BigDecimal("12400").compareTo(result.getTimeOptimalPlan().getTotalPrice()));
+        assertEquals(32, result.getTimeOptimalPlan().getTotalTime());
+    }
+
+    @Test
+    void landmarkHeuristicIsAdmissibleAndKeepsPlansOptimal() {
+        CompactTransportGraph graph = CompactTransportGraph.build(transportGraph, cityBaseDataMap);
+        LandmarkHeuristicCalculator landmarks = new LandmarkHeuristicCalculator(graph, 3);
+        TransportGraphRouter landmarkRouter = new TransportGraphRouter(graph, cityBaseDataMap, landmarks);
+        landmarkRouter.setMaxSegments(5);
+        landmarkRouter.setMaxDriverDistance(1500);
+
+        // 北京→广州最短干线时效为28小时，最低干线价格为 1500+2000+2400+1500+3100
+        assertTrue(landmarks.calculate("北京", "广州", OptimizeTargetEnum.TIME) <= 28);
+        assertTrue(landmarks.calculate("北京", "广州", OptimizeTargetEnum.PRICE) <= 10500);
+        // 广州没有出边，无法到达北京
+        assertEquals(Double.POSITIVE_INFINITY, landmarks.calculate("广州", "北京", OptimizeTargetEnum.TIME));
+
+        RouteResult expected = router.planRouteResult(query("北京", "广州"));
+        RouteResult actual = landmarkRouter.planRouteResult(query("北京", "广州"));
+        assertEquals(expected.getParetoPlans(), actual.getParetoPlans());
+    }
+
+    @Test
+    void defaultHeuristicTableMatchesPointwiseCalculation() {
+        DefaultHeuristicCalculator calculator = new DefaultHeuristicCalculator(cityBaseDataMap, 1);
+        CompactTransportGraph graph = router.getGraph();
+        for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+            double[] table = calculator.heuristicTable(graph, "广州", target);
+            for (int cityId = 0; cityId < graph.getCityCount(); cityId++) {
+                assertEquals(calculator.calculate(graph.getCityName(cityId), "广州", target), table[cityId], 1e-9);
+            }
+            // 同一目的地命中缓存，返回同一数组
+            assertSame(table, calculator.heuristicTable(graph, "广州", target));
+        }
+        // 容量为1时，新的目的地会淘汰旧的
+        double[] guangzhou = calculator.heuristicTable(graph, "广州", OptimizeTargetEnum.TIME);
+        calculator.heuristicTable(graph, "武汉", OptimizeTargetEnum.TIME);
+        assertNotSame(guangzhou, calculator.heuristicTable(graph, "广州", OptimizeTargetEnum.TIME));
+    }
+
+    @Test
+    void routePlanCacheReturnsDefensiveCopiesAndTracksGraphVersion() {
+        RoutePlanCache cache = new RoutePlanCache(1);
+        router.setRoutePlanCache(cache);
+
+        List<RoutePlan> first = router.planRoute(query("北京", "广州"));
+        // 调用方修改返回结果不影响缓存
+        first.get(0).setTotalPrice(BigDecimal.ZERO);
+        first.get(0).getSegments().clear();
+        List<RoutePlan> second = router.planRoute(query("北京", "广州"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, new BigDecimal("12400").compareTo(second.get(0).getTotalPrice()));
+        assertFalse(second.get(0).getSegments().isEmpty());
+
+        // 路由参数属于缓存键的一部分
+        router.setMaxSegments(4);
+        router.planRoute(query("北京", "广州"));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+
+        // 新图版本号不同，旧结果失效
+        TransportGraphRouter rebuilt = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        rebuilt.setMaxSegments(4);
+        rebuilt.setMaxDriverDistance(1500);
+        rebuilt.setRoutePlanCache(cache);
+        assertNotEquals(router.getGraph().getVersion(), rebuilt.getGraph().getVersion());
+        rebuilt.planRoute(query("北京", "广州"));
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void batchPlanningMatchesPerQueryPlanning() {
+        List<RouteQuery> queries = new ArrayList<>();
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                for (int flags = 0; flags < 4; flags++) {
+                    RouteQuery query = query(from, to);
+                    query.setNeedSameCityPick((flags & 1) != 0);
+                    query.setNeedSameCityDeliver((flags & 2) != 0);
+                    queries.add(query);
+                }
+            }
+        }
+        queries.add(query("北京", "拉萨"));
+
+        List<List<RoutePlan>> batch = router.planRoutes(queries);
+        assertEquals(queries.size(), batch.size());
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(router.planRoute(queries.get(i)), batch.get(i), queries.get(i).toString());
+        }
+    }
+
+    @Test
+    void routeMatrixMatchesTimeAndPriceOptimalPlans(@TempDir Path tempDir) throws IOException {
+        List<String> cities = new ArrayList<>(cityBaseDataMap.keySet());
+        cities.add("拉萨");
+        RouteMatrix matrix = new RouteMatrixGenerator(router).generate(cities, true, true);
+
+        for (int from = 0; from < cities.size(); from++) {
+            for (int to = 0; to < cities.size(); to++) {
+                RouteResult result = router.planRouteResult(query(cities.get(from), cities.get(to)));
+                if (result.getTimeOptimalPlan() == null) {
+                    assertFalse(matrix.isReachable(from, to));
+                    continue;
+                }
+                assertEquals(result.getTimeOptimalPlan().getTotalTime(), matrix.getTime(from, to));
+                assertEquals(CompactTransportGraph.toFen(result.getPriceOptimalPlan().getTotalPrice()), matrix.getPrice(from, to));
+            }
+        }
+
+        Path binary = tempDir.resolve("matrix.bin");
+        RouteMatrixExporter.writeBinary(matrix, binary);
+        RouteMatrix restored = RouteMatrixExporter.readBinary(binary);
+        assertEquals(matrix.getCities(), restored.getCities());
+        assertArrayEquals(matrix.rawTimes(), restored.rawTimes());
+        assertArrayEquals(matrix.rawPrices(), restored.rawPrices());
+
+        Path csv = tempDir.resolve("matrix.csv");
+        RouteMatrixExporter.writeCsv(matrix, csv);
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals(cities.size() * cities.size() + 1, lines.size());
+        assertTrue(lines.contains("北京,广州,32,10700"));
+        assertTrue(lines.contains("北京,拉萨,,"));
+    }
+
+    @Test
+    void concurrentExecutionMatchesSequentialPlanning() {
+        List<List<RoutePlan>> expected = new ArrayList<>();
+        for (String to : cityBaseDataMap.keySet()) {
+            expected.add(router.planRoute(query("北京", to)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            router.setConcurrentExecution(true);
+            router.setExecutor(executor);
+            List<List<RoutePlan>> actual = new ArrayList<>();
+            for (String to : cityBaseDataMap.keySet()) {
+                actual.add(router.planRoute(query("北京", to)));
+            }
+            assertEquals(expected, actual);
+
+            // 截止时间已过：所有子任务在检查点退出，不完整的结果不写入缓存
+            RoutePlanCache cache = new RoutePlanCache();
+            router.setRoutePlanCache(cache);
+            router.setQueryTimeout(Duration.ZERO);
+            assertTrue(router.planRoute(query("北京", "广州")).isEmpty());
+            assertEquals(0, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentExecutionPicksTheSameAmongEqualTimeAlternatives() {
+        // 与直达大板车（28小时，12000元）时效相同、价格不同的两条经郑州的线路
+        addEdge("北京", "郑州", TransportModeEnum.BIG_TRUCK, 690, 10, "3000");
+        addEdge("郑州", "广州", TransportModeEnum.BIG_TRUCK, 1400, 18, "4000");
+        addEdge("北京", "武汉", TransportModeEnum.BIG_TRUCK, 1150, 16, "5200");
+        addEdge("武汉", "广州", TransportModeEnum.BIG_TRUCK, 980, 12, "4900");
+        TransportGraphRouter serial = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        serial.setMaxSegments(5);
+        serial.setMaxDriverDistance(1500);
+        List<RoutePlan> expected = serial.planRoute(query("北京", "广州"));
+        // 三条同为28小时的干线中最便宜的一条同时是时效最优和价格最优方案，另有海运直达
+        assertEquals(2, expected.size());
+        assertEquals(0, new BigDecimal("7400").compareTo(expected.get(0).getTotalPrice()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            serial.setConcurrentExecution(true);
+            serial.setExecutor(executor);
+            for (String from : cityBaseDataMap.keySet()) {
+                for (String to : cityBaseDataMap.keySet()) {
+                    serial.setConcurrentExecution(false);
+                    List<RoutePlan> sequential = serial.planRoute(query(from, to));
+                    serial.setConcurrentExecution(true);
+                    assertEquals(sequential, serial.planRoute(query(from, to)), from + "→" + to);
+                }
+            }
+            assertEquals(expected, serial.planRoute(query("北京", "广州")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void publishedSnapshotIsUsedByNewQueriesAndNotifiesListeners() {
+        CompactTransportGraph graph = CompactTransportGraph.build(transportGraph, cityBaseDataMap);
+        LandmarkHeuristicCalculator landmarks = new LandmarkHeuristicCalculator(graph, 3);
+        TransportGraphRouter landmarkRouter = new TransportGraphRouter(graph, cityBaseDataMap, landmarks);
+        landmarkRouter.setMaxSegments(5);
+        landmarkRouter.setMaxDriverDistance(1500);
+        RoutePlanCache cache = new RoutePlanCache();
+        landmarkRouter.setRoutePlanCache(cache);
+        List<GraphSnapshot> published = new ArrayList<>();
+        landmarkRouter.addGraphChangeListener((previous, current) -> published.add(current));
+        GraphSnapshot before = landmarkRouter.getSnapshot();
+        landmarkRouter.planRoute(query("北京", "广州"));
+
+        // 修改原始Map不影响已发布的快照
+        for (TransportEdge edge : transportGraph.get(new CityPair("北京", "广州"))) {
+            if (edge.getMode() == TransportModeEnum.BIG_TRUCK) {
+                edge.setPrice(new BigDecimal("9000"));
+                edge.setPriceWeight(9000);
+            }
+        }
+        assertEquals(0, new BigDecimal("12400").compareTo(
+                landmarkRouter.planRouteResult(query("北京", "广州")).getTimeOptimalPlan().getTotalPrice()));
+
+        GraphSnapshot after = landmarkRouter.updateGraph(transportGraph, cityBaseDataMap);
+        assertSame(after, landmarkRouter.getSnapshot());
+        assertEquals(List.of(after), published);
+        assertEquals(0, cache.size());
+        // 地标距离表已按新图重建：价格下界不超过新的直达干线价格
+        assertTrue(landmarks.calculate(after.getGraph(), after.getGraph().getCityId("北京"), "广州",
+                OptimizeTargetEnum.PRICE) <= 9000);
+        // 旧快照仍然完整可用
+        assertEquals(1200000, before.getGraph().edgePriceFen(before.getGraph().findEdge(before.getGraph().getCityId("北京"),
+                before.getGraph().getCityId("广州"), TransportModeEnum.BIG_TRUCK)));
+
+        List<RoutePlan> plans = landmarkRouter.planRoute(query("北京", "广州"));
+        assertEquals(0, new BigDecimal("9400").compareTo(plans.get(0).getTotalPrice()));
+        TransportGraphRouter rebuilt = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        rebuilt.setMaxSegments(5);
+        rebuilt.setMaxDriverDistance(1500);
+        assertEquals(rebuilt.planRoute(query("北京", "广州")), plans);
+    }
+
+    @Test
+    void shorteningATruckLaneBackUnderTheMileageLimitInvalidatesCachedPlans() {
+        // 板车单段里程上限1000公里：北京→广州的大板车直达（2100公里）不可用
+        TransportRuleConfig mileageLimited = new TransportRuleConfig();
+        mileageLimited.setMaxSingleSegmentMileage(1000);
+        router.setRuleConfig(mileageLimited);
+        RoutePlanCache cache = new RoutePlanCache();
+        router.setRoutePlanCache(cache);
+        assertEquals(53, router.planRoute(query("北京", "广州")).get(0).getTotalTime());
+
+        // 里程修正到上限之内：直达线路不在已缓存的方案中，但变得可用，缓存项必须失效
+        router.updateEdge(edge("北京", "广州", TransportModeEnum.BIG_TRUCK, 900, 28, "12000"));
+        assertTrue(router.getSnapshot().getChange().isImproving());
+        assertEquals(32, router.planRoute(query("北京", "广州")).get(0).getTotalTime());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void parallelCarrierEdgesAreUpdatedAndRemovedIndividually() {
+        // 北京→天津 大板车有两家承运商
+        TransportEdge first = edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 120, 3, "500");
+        TransportEdge second = edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 125, 4, "450");
+        router.addEdge(second);
+        assertThrows(IllegalArgumentException.class,
+                () -> router.updateEdge(edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 125, 4, "400")));
+        assertThrows(IllegalArgumentException.class, () -> router.removeEdge("北京", "天津", TransportModeEnum.BIG_TRUCK));
+        assertThrows(IllegalArgumentException.class,
+                () -> router.updateEdge(edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 125, 4, "999"), second));
+        assertThrows(IllegalArgumentException.class,
+                () -> router.updateEdge(second, edge("北京", "济南", TransportModeEnum.BIG_TRUCK, 125, 4, "400")));
+        assertEquals(List.of("BIG_TRUCK 120km 3h 500", "BIG_TRUCK 125km 4h 450"), lane("北京", "天津"));
+
+        // 第二家降价只改它自己的边
+        router.updateEdge(second, edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 125, 4, "400"));
+        assertEquals(List.of("BIG_TRUCK 120km 3h 500", "BIG_TRUCK 125km 4h 400"), lane("北京", "天津"));
+
+        // 删除第一家后只剩一条边，按线路定位不再有歧义
+        router.removeEdge(first);
+        assertEquals(List.of("BIG_TRUCK 125km 4h 400"), lane("北京", "天津"));
+        router.updateEdge(edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 125, 4, "380"));
+        assertEquals(List.of("BIG_TRUCK 125km 4h 380"), lane("北京", "天津"));
+        assertThrows(IllegalArgumentException.class, () -> router.removeEdge(first));
+    }
+
+    @Test
+    void incrementalEdgeChangesMatchRebuiltGraphAndInvalidateOnlyAffectedPlans() {
+        RoutePlanCache cache = new RoutePlanCache();
+        router.setRoutePlanCache(cache);
+        router.planRoute(query("北京", "广州"));
+        long version = router.getSnapshot().getVersion();
+
+        // 涨价的线路不在已缓存的方案中：缓存项仍然有效
+        router.updateEdge(edge("天津", "济南", TransportModeEnum.BIG_TRUCK, 370, 8, "1700"));
+        assertNotEquals(version, router.getSnapshot().getVersion());
+        router.planRoute(query("北京", "广州"));
+        assertEquals(1, cache.getHitCount());
+
+        // 涨价的线路在价格最优方案中：重新计算
+        router.updateEdge(edge("武汉", "长沙", TransportModeEnum.BIG_TRUCK, 350, 7, "1600"));
+        List<RoutePlan> plans = router.planRoute(query("北京", "广州"));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, new BigDecimal("10800").compareTo(plans.get(1).getTotalPrice()));
+
+        // 删除、新增线路后与按修改后的数据整体重建的结果一致
+        router.removeEdge("北京", "广州", TransportModeEnum.SHIP);
+        router.addEdge(edge("北京", "郑州", TransportModeEnum.BIG_TRUCK, 690, 12, "2600"));
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class,
+                () -> router.removeEdge("北京", "广州", TransportModeEnum.SHIP));
+
+        transportGraph.get(new CityPair("北京", "广州")).removeIf(e -> e.getMode() == TransportModeEnum.SHIP);
+        transportGraph.get(new CityPair("天津", "济南")).get(0).setPrice(new BigDecimal("1700"));
+        transportGraph.get(new CityPair("武汉", "长沙")).get(0).setPrice(new BigDecimal("1600"));
+        addEdge("北京", "郑州", TransportModeEnum.BIG_TRUCK, 690, 12, "2600");
+        TransportGraphRouter rebuilt = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        rebuilt.setMaxSegments(5);
+        rebuilt.setMaxDriverDistance(1500);
+        assertEquals(rebuilt.getGraph().getEdgeCount(), router.getGraph().getEdgeCount());
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                assertEquals(rebuilt.planRoute(query(from, to)), router.planRoute(query(from, to)), from + "→" + to);
+            }
+        }
+    }
+
+    @Test
+    void reverseIndexIsPatchedAcrossIncrementalChanges() {
+        CompactTransportGraph original = router.getGraph();
+        Map<Integer, List<String>> originalInEdges = new HashMap<>();
+        for (int city = 0; city < original.getCityCount(); city++) {
+            originalInEdges.put(city, inEdges(original, city));
+        }
+
+        // 修改已有线路、删除线路、新增城市（跨过分页边界）后，入边与按出边重新扫描的结果一致，旧图不受影响
+        router.updateEdge(edge("天津", "济南", TransportModeEnum.BIG_TRUCK, 370, 7, "1550"));
+        router.removeEdge("北京", "济南", TransportModeEnum.DRIVER);
+        for (int i = 0; i < 1100; i++) {
+            router.addEdge(edge("北京", "城市" + i, TransportModeEnum.BIG_TRUCK, 100 + i, 2, "300"));
+            router.addEdge(edge("城市" + i, "广州", TransportModeEnum.DRIVER, 1000, 12, "800"));
+        }
+        router.addEdge(edge("济南", "广州", TransportModeEnum.BIG_TRUCK, 1700, 24, "7000"));
+
+        CompactTransportGraph patched = router.getGraph();
+        assertEquals(original.getCityCount() + 1100, patched.getCityCount());
+        for (int city = 0; city < patched.getCityCount(); city++) {
+            assertEquals(expectedInEdges(patched, city), inEdges(patched, city), patched.getCityName(city));
+        }
+        for (int city = 0; city < original.getCityCount(); city++) {
+            assertEquals(originalInEdges.get(city), inEdges(original, city));
+        }
+        assertEquals(3 + 1100 + 1, inEdges(patched, patched.getCityId("广州")).size());
+    }
+
+    @Test
+    void fileGraphSourceLoadsLanesAndSkipsMalformedRows(@TempDir Path tempDir) throws IOException {
+        Path cities = tempDir.resolve("cities.csv");
+        List<String> cityLines = new ArrayList<>(List.of("city,lat,lng"));
+        cityBaseDataMap.values().forEach(c -> cityLines.add(c.getFromCity() + "," + c.getFromLat() + "," + c.getFromLng()));
+        Files.write(cities, cityLines);
+
+        Path lanes = tempDir.resolve("lanes.tsv");
+        List<String> laneLines = new ArrayList<>(List.of("出发城市\t到达城市\t运输方式\t里程\t时效\t价格"));
+        transportGraph.values().forEach(edges -> edges.forEach(e -> laneLines.add(String.join("\t", e.getFromCity(),
+                e.getToCity(), e.getMode().getDesc(), String.valueOf(e.getMileage()), String.valueOf(e.getTimeHours()),
+                e.getPrice().toPlainString()))));
+        laneLines.add(3, "北京\t天津\tBIG_TRUCK\t120\t3");
+        laneLines.add("北京\t天津\t飞机\t120\t3\t500");
+        laneLines.add("北京\t天津\tBIG_TRUCK\t-1\t3\t500");
+        laneLines.add("# 注释行");
+        Files.write(lanes, laneLines);
+
+        TransportGraphRouter loaded = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        loaded.setMaxSegments(5);
+        loaded.setMaxDriverDistance(1500);
+        GraphLoadReport report = loaded.loadGraph(new FileGraphSource(cities, lanes));
+
+        assertEquals(10, report.getEdgeCount());
+        assertEquals(3, report.getRejectedRows());
+        assertEquals(4, report.getRejectedSamples().get(0).getLineNumber());
+        assertEquals(List.of("cities", "split", "parse", "merge", "build", "snapshot"),
+                new ArrayList<>(report.getPhaseMillis().keySet()));
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                assertEquals(router.planRoute(query(from, to)), loaded.planRoute(query(from, to)), from + "→" + to);
+            }
+        }
+    }
+
+    @Test
+    void mappedBinarySnapshotPlansLikeTheExportedGraph(@TempDir Path tempDir) throws IOException {
+        // 增量修改后的图含废弃槽位，导出时重新连续编号
+        router.updateEdge(edge("北京", "天津", TransportModeEnum.BIG_TRUCK, 120, 3, "450"));
+        Path file = tempDir.resolve("graph.bin");
+        GraphSnapshotExporter.writeBinary(router.getSnapshot(), file);
+
+        GraphSnapshot mapped = GraphSnapshotExporter.mapBinary(file);
+        assertEquals(router.getSnapshot().getCityBaseDataMap(), mapped.getCityBaseDataMap());
+        assertEquals(router.getSnapshot().getMinTrunkEdgePrice(), mapped.getMinTrunkEdgePrice());
+        assertEquals(0, mapped.getGraph().getDeadSlotCount());
+        TransportGraphRouter mappedRouter = new TransportGraphRouter(mapped,
+                new DefaultHeuristicCalculator(mapped.getCityBaseDataMap()));
+        mappedRouter.setMaxSegments(5);
+        mappedRouter.setMaxDriverDistance(1500);
+
+        // 映射的图只读：增量修改时压实到堆内后再修改
+        router.removeEdge("武汉", "长沙", TransportModeEnum.BIG_TRUCK);
+        mappedRouter.removeEdge("武汉", "长沙", TransportModeEnum.BIG_TRUCK);
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                assertEquals(router.planRoute(query(from, to)), mappedRouter.planRoute(query(from, to)), from + "→" + to);
+            }
+        }
+    }
+
+    @Test
+    void fractionalPricesAccumulateExactlyInFen() {
+        transportGraph.get(new CityPair("北京", "天津")).get(0).setPrice(new BigDecimal("0.1"));
+        transportGraph.get(new CityPair("天津", "济南")).get(0).setPrice(new BigDecimal("0.2"));
+        TransportGraphRouter fractional = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        fractional.setMaxSegments(5);
+        fractional.setMaxDriverDistance(1500);
+        fractional.setSameCityServicePrice(new BigDecimal("199.99"));
+
+        CompactTransportGraph graph = fractional.getGraph();
+        assertEquals(10, graph.edgePriceFen(graph.findEdge(graph.getCityId("北京"), graph.getCityId("天津"),
+                TransportModeEnum.BIG_TRUCK)));
+        assertEquals(1050, CompactTransportGraph.toFen(new BigDecimal("10.495")));
+        assertEquals(new BigDecimal("12.5"), CompactTransportGraph.toPriceDecimal(1250));
+
+        // 0.1 + 0.2 + 同城提送费 199.99 * 2，总价必须是精确的两位小数，不能带 double 累加的舍入误差
+        RoutePlan plan = fractional.findBestRoute(query("北京", "济南"), OptimizeTargetEnum.PRICE);
+        assertEquals(List.of(TransportModeEnum.BIG_TRUCK, TransportModeEnum.BIG_TRUCK), plan.getModeList());
+        assertEquals(new BigDecimal("400.28"), plan.getTotalPrice());
+        RoutePlan pricePlan = fractional.planRouteResult(query("北京", "济南")).getPriceOptimalPlan();
+        assertEquals(new BigDecimal("400.28"), pricePlan.getTotalPrice());
+    }
+
+    @Test
+    void bidirectionalSearchMatchesUnidirectionalSearch() {
+        addEdge("武汉", "广州", TransportModeEnum.DRIVER, 980, 12, "2600");
+        addEdge("北京", "郑州", TransportModeEnum.DRIVER, 690, 9, "1900");
+        TransportGraphRouter bidirectional = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        bidirectional.setMaxSegments(5);
+        bidirectional.setMaxDriverDistance(1500);
+        bidirectional.setBidirectionalThresholdKm(0);
+        TransportGraphRouter unidirectional = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        unidirectional.setMaxSegments(5);
+        unidirectional.setMaxDriverDistance(1500);
+        unidirectional.setBidirectionalThresholdKm(Integer.MAX_VALUE);
+
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                for (boolean sameCity : new boolean[]{true, false}) {
+                    RouteQuery query = query(from, to);
+                    query.setNeedSameCityPick(sameCity);
+                    query.setNeedSameCityDeliver(!sameCity);
+                    for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+                        RoutePlan expected = unidirectional.findBestRoute(query, target);
+                        RoutePlan actual = bidirectional.findBestRoute(query, target);
+                        String label = from + "->" + to + " " + target + " " + sameCity;
+                        assertEquals(expected == null, actual == null, label);
+                        if (expected == null) {
+                            continue;
+                        }
+                        if (target == OptimizeTargetEnum.TIME) {
+                            assertEquals(expected.getTotalTime(), actual.getTotalTime(), label);
+                        } else {
+                            assertEquals(0, expected.getTotalPrice().compareTo(actual.getTotalPrice()), label);
+                        }
+                        assertTrue(actual.getModeList().size() <= 5, label);
+                    }
+                }
+            }
+        }
+        // 北京-广州直线约1900公里，默认阈值下走双向搜索，结果与单向一致
+        RoutePlan longHaul = router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.PRICE);
+        assertEquals(0, new BigDecimal("10700").compareTo(longHaul.getTotalPrice()));
+    }
+
+    @Test
+    void contractionHierarchiesMatchAStarAndFallBackOnSegmentLimit() {
+        addEdge("武汉", "广州", TransportModeEnum.DRIVER, 980, 12, "2600");
+        addEdge("天津", "郑州", TransportModeEnum.DRIVER, 690, 9, "1900");
+        addEdge("郑州", "长沙", TransportModeEnum.BIG_TRUCK, 880, 18, "3600");
+        for (int maxSegments : new int[]{5, 2}) {
+            TransportGraphRouter hierarchical = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                    new DefaultHeuristicCalculator(cityBaseDataMap));
+            hierarchical.setMaxSegments(maxSegments);
+            hierarchical.setMaxDriverDistance(1500);
+            ContractionHierarchyReport report = hierarchical.buildContractionHierarchies(20);
+            TransportGraphRouter plain = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                    new DefaultHeuristicCalculator(cityBaseDataMap));
+            plain.setMaxSegments(maxSegments);
+            plain.setMaxDriverDistance(1500);
+
+            assertEquals(9, report.getTrunkEdgeCount());
+            assertTrue(report.getTimeShortcutCount() >= 0 && report.getPriceShortcutCount() >= 0);
+            assertEquals(40, report.getSampledQueries());
+            assertTrue(report.getSpeedup() > 0, report.summary());
+
+            for (String from : cityBaseDataMap.keySet()) {
+                for (String to : cityBaseDataMap.keySet()) {
+                    for (boolean sameCity : new boolean[]{true, false}) {
+                        RouteQuery query = query(from, to);
+                        query.setNeedSameCityPick(sameCity);
+                        query.setNeedSameCityDeliver(!sameCity);
+                        for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+                            RoutePlan expected = plain.findBestRoute(query, target);
+                            RoutePlan actual = hierarchical.findBestRoute(query, target);
+                            String label = maxSegments + " " + from + "->" + to + " " + target + " " + sameCity;
+                            assertEquals(expected == null, actual == null, label);
+                            if (expected == null) {
+                                continue;
+                            }
+                            if (target == OptimizeTargetEnum.TIME) {
+                                assertEquals(expected.getTotalTime(), actual.getTotalTime(), label);
+                            } else {
+                                assertEquals(0, expected.getTotalPrice().compareTo(actual.getTotalPrice()), label);
+                            }
+                            assertTrue(actual.getModeList().size() <= maxSegments, label);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void ruleConfigIsCompiledAndEnforcedDuringSearch() {
+        // 济南→郑州的代驾只有允许中间段代驾时才能使用
+        addEdge("济南", "郑州", TransportModeEnum.DRIVER, 450, 9, "500");
+        router = new TransportGraphRouter(transportGraph, cityBaseDataMap, new DefaultHeuristicCalculator(cityBaseDataMap));
+        router.setMaxDriverDistance(1500);
+        RouteResult defaults = router.planRouteResult(query("北京", "广州"));
+        assertEquals(0, new BigDecimal("10700").compareTo(defaults.getPriceOptimalPlan().getTotalPrice()));
+
+        // 板车单段里程上限1000公里：北京→广州的大板车直达不可用
+        TransportRuleConfig mileageLimited = new TransportRuleConfig();
+        mileageLimited.setMaxSingleSegmentMileage(1000);
+        router.setRuleConfig(mileageLimited);
+        RouteResult limited = router.planRouteResult(query("北京", "广州"));
+        assertEquals(53, limited.getTimeOptimalPlan().getTotalTime());
+        for (RoutePlan plan : limited.getParetoPlans()) {
+            for (RouteSegment segment : plan.getSegments()) {
+                assertTrue(segment.getMode() != TransportModeEnum.BIG_TRUCK || segment.getMileage() <= 1000);
+            }
+        }
+
+        // 代驾之后不能接大板车：首段不能是代驾
+        TransportRuleConfig noDriverThenTruck = new TransportRuleConfig();
+        noDriverThenTruck.updateModeTransition(TransportModeEnum.DRIVER, Set.of());
+        router.setRuleConfig(noDriverThenTruck);
+        RoutePlan pricePlan = router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.PRICE);
+        assertNotEquals(TransportModeEnum.DRIVER, pricePlan.getFirstMainMode());
+        assertTrue(pricePlan.getTotalPrice().compareTo(new BigDecimal("10700")) > 0);
+
+        // 允许中间段代驾：大板车→代驾→大板车
+        TransportRuleConfig driverInMiddle = new TransportRuleConfig();
+        driverInMiddle.setForbidDriverInMiddle(false);
+        router.setRuleConfig(driverInMiddle);
+        RoutePlan middle = router.planRouteResult(query("北京", "广州")).getPriceOptimalPlan();
+        assertEquals(0, new BigDecimal("10100").compareTo(middle.getTotalPrice()));
+        assertEquals(List.of(TransportModeEnum.BIG_TRUCK, TransportModeEnum.DRIVER, TransportModeEnum.BIG_TRUCK,
+                TransportModeEnum.BIG_TRUCK, TransportModeEnum.BIG_TRUCK),
+                middle.getSegments().stream().filter(s -> !s.isLastMile()).map(RouteSegment::getMode).toList());
+        RouteMatrix matrix = new RouteMatrixGenerator(router).generate(List.of("北京", "广州"), true, true);
+        assertEquals(CompactTransportGraph.toFen(new BigDecimal("10100")), matrix.getPrice(0, 1));
+    }
+
+    @Test
+    void trunkGraphPreparationRemovesDominatedAndOverLimitEdgesWithoutChangingPlans() {
+        TrunkAdjacency baseline = router.prepareTrunkGraph();
+        assertEquals(0, baseline.getRemovedEdgeCount());
+        assertEquals(1, baseline.getNonTrunkEdgeCount());
+        assertEquals(9, baseline.getEdgeCount());
+
+        // 更慢且更贵、完全相同的平行报价，以及超过代驾距离上限的代驾
+        addEdge("济南", "郑州", TransportModeEnum.BIG_TRUCK, 450, 10, "2100");
+        addEdge("济南", "郑州", TransportModeEnum.BIG_TRUCK, 450, 9, "2000");
+        addEdge("北京", "济南", TransportModeEnum.DRIVER, 1600, 7, "900");
+        TransportGraphRouter pruned = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        pruned.setMaxSegments(5);
+        pruned.setMaxDriverDistance(1500);
+        TrunkAdjacency adjacency = pruned.prepareTrunkGraph();
+        assertEquals(2, adjacency.getDominatedEdgeCount());
+        assertEquals(1, adjacency.getOverLimitEdgeCount());
+        assertEquals(3, adjacency.getRemovedEdgeCount());
+        assertEquals(9, adjacency.getEdgeCount());
+        assertSame(adjacency, pruned.prepareTrunkGraph());
+
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                assertEquals(router.planRouteResult(query(from, to)).getParetoPlans(),
+                        pruned.planRouteResult(query(from, to)).getParetoPlans(), from + "->" + to);
+            }
+        }
+
+        // 邻接表依附在各自的图上：增量修改后旧图的邻接表仍然有效，不会被新图的邻接表替换
+        CompactTransportGraph beforeChange = pruned.getGraph();
+        pruned.updateEdge(edge("济南", "郑州", TransportModeEnum.BIG_TRUCK, 450, 9, "2000"),
+                edge("济南", "郑州", TransportModeEnum.BIG_TRUCK, 450, 10, "1900"));
+        TrunkAdjacency afterFirstChange = pruned.prepareTrunkGraph();
+        assertSame(adjacency, pruned.getRuleTable().prepare(beforeChange));
+        assertNotSame(adjacency, afterFirstChange);
+
+        // 之后的修改由旧表修补（与旧表共用边槽位），结果与按修改后的数据整体构建的邻接表一致
+        pruned.addEdge(edge("郑州", "广州", TransportModeEnum.DRIVER, 1400, 20, "5000"));
+        pruned.removeEdge(edge("北京", "济南", TransportModeEnum.DRIVER, 670, 8, "1500"));
+        TrunkAdjacency patched = pruned.prepareTrunkGraph();
+        assertSame(afterFirstChange.getEdgeSlots(), patched.getEdgeSlots());
+        assertSame(pruned.getGraph(), patched.getGraph());
+
+        transportGraph.get(new CityPair("济南", "郑州")).get(0).setTimeHours(10);
+        transportGraph.get(new CityPair("济南", "郑州")).get(0).setPrice(new BigDecimal("1900"));
+        addEdge("郑州", "广州", TransportModeEnum.DRIVER, 1400, 20, "5000");
+        transportGraph.get(new CityPair("北京", "济南")).remove(1);
+        TransportGraphRouter rebuilt = new TransportGraphRouter(transportGraph, cityBaseDataMap,
+                new DefaultHeuristicCalculator(cityBaseDataMap));
+        rebuilt.setMaxSegments(5);
+        rebuilt.setMaxDriverDistance(1500);
+        TrunkAdjacency expected = rebuilt.prepareTrunkGraph();
+        assertEquals(expected.getEdgeCount(), patched.getEdgeCount());
+        assertEquals(expected.getDominatedEdgeCount(), patched.getDominatedEdgeCount());
+        assertEquals(expected.getOverLimitEdgeCount(), patched.getOverLimitEdgeCount());
+        assertEquals(expected.getNonTrunkEdgeCount(), patched.getNonTrunkEdgeCount());
+        for (String city : cityBaseDataMap.keySet()) {
+            assertEquals(trunkGroups(expected, city, true), trunkGroups(patched, city, true), city);
+            assertEquals(trunkGroups(expected, city, false), trunkGroups(patched, city, false), city);
+        }
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                assertEquals(rebuilt.planRouteResult(query(from, to)).getParetoPlans(),
+                        pruned.planRouteResult(query(from, to)).getParetoPlans(), from + "->" + to);
+            }
+        }
+    }
+
+    @Test
+    void alternativeRoutesAreDistinctLooplessAndRankedByTarget() {
+        // 绕开郑州枢纽的线路
+        addEdge("济南", "武汉", TransportModeEnum.BIG_TRUCK, 900, 22, "3900");
+        router.updateGraph(transportGraph, cityBaseDataMap);
+
+        List<RoutePlan> fastest = router.findAlternativeRoutes(query("北京", "广州"), OptimizeTargetEnum.TIME, 5);
+        assertEquals(List.of(28, 49, 51, 51, 53), fastest.stream().map(RoutePlan::getTotalTime).toList());
+        assertEquals(router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.TIME).getTotalTime(),
+                fastest.get(0).getTotalTime());
+        assertTrue(fastest.stream().anyMatch(plan -> plan.getSegments().stream().noneMatch(s -> s.getToCity().equals("郑州"))));
+        Set<String> distinct = new HashSet<>();
+        for (RoutePlan plan : fastest) {
+            List<String> cities = new ArrayList<>(List.of(plan.getFromCity()));
+            plan.getSegments().forEach(s -> cities.add(s.getToCity()));
+            assertEquals(cities.size(), new HashSet<>(cities).size());
+            assertTrue(plan.getSegmentCount() <= 5);
+            distinct.add(plan.getModeList() + " " + cities);
+        }
+        assertEquals(5, distinct.size());
+
+        // 分段数限制下满足规则的无环路线只有6条（北京→天津→济南→郑州→…为6段）
+        List<RoutePlan> all = router.findAlternativeRoutes(query("北京", "广州"), OptimizeTargetEnum.TIME, 10);
+        assertEquals(6, all.size());
+        assertEquals(54, all.get(5).getTotalTime());
+
+        List<RoutePlan> cheapest = router.findAlternativeRoutes(query("北京", "广州"), OptimizeTargetEnum.PRICE, 3);
+        assertEquals(0, router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.PRICE).getTotalPrice()
+                .compareTo(cheapest.get(0).getTotalPrice()));
+        for (int i = 1; i < cheapest.size(); i++) {
+            assertTrue(cheapest.get(i - 1).getTotalPrice().compareTo(cheapest.get(i).getTotalPrice()) <= 0);
+        }
+        assertTrue(router.findAlternativeRoutes(query("北京", "拉萨"), OptimizeTargetEnum.TIME, 3).isEmpty());
+    }
+
+    @Test
+    void alternativeRoutesSkipSpursThatOnlyReachTheEndByLoopingBack() {
+        // 代驾之后只能接大板车：石家庄→保定→唐山 两段代驾不合规，
+        // 最快的合规走法是在保定→沧州→保定绕一圈换成大板车再代驾到唐山，重复经过保定，不是有效路线
+        addCity("石家庄", 38.04, 114.51);
+        addCity("保定", 38.87, 115.46);
+        addCity("沧州", 38.30, 116.84);
+        addCity("廊坊", 39.54, 116.68);
+        addCity("承德", 40.95, 117.96);
+        addCity("唐山", 39.63, 118.18);
+        addEdge("石家庄", "保定", TransportModeEnum.DRIVER, 150, 1, "300");
+        addEdge("保定", "唐山", TransportModeEnum.DRIVER, 250, 1, "500");
+        addEdge("保定", "沧州", TransportModeEnum.BIG_TRUCK, 150, 1, "300");
+        addEdge("沧州", "保定", TransportModeEnum.BIG_TRUCK, 150, 1, "300");
+        addEdge("石家庄", "廊坊", TransportModeEnum.BIG_TRUCK, 300, 10, "1500");
+        addEdge("廊坊", "唐山", TransportModeEnum.BIG_TRUCK, 150, 10, "800");
+        addEdge("石家庄", "承德", TransportModeEnum.BIG_TRUCK, 450, 12, "2200");
+        addEdge("承德", "唐山", TransportModeEnum.BIG_TRUCK, 200, 12, "1000");
+        router.updateGraph(transportGraph, cityBaseDataMap);
+
+        List<RoutePlan> fastest = router.findAlternativeRoutes(query("石家庄", "唐山"), OptimizeTargetEnum.TIME, 3);
+        List<List<String>> routes = new ArrayList<>();
+        for (RoutePlan plan : fastest) {
+            List<String> cities = new ArrayList<>(List.of(plan.getFromCity()));
+            plan.getSegments().stream().filter(s -> !s.isLastMile()).forEach(s -> cities.add(s.getToCity()));
+            routes.add(cities);
+        }
+        assertEquals(List.of(List.of("石家庄", "廊坊", "唐山"), List.of("石家庄", "承德", "唐山")), routes);
+    }
+
+    @Test
+    void alternativeRoutesKeepCostlierPathsThatAvoidCitiesNeededLater() {
+        // 太原→忻州→大同 与 太原→阳泉→大同 到达大同时的 (分段数, 运输方式) 相同，前者更快但经过忻州；
+        // 大同之后只能经忻州代驾到呼和浩特（忻州不能直接代驾接代驾），唯一的无环路线是较慢的那条
+        addCity("太原", 37.87, 112.55);
+        addCity("忻州", 38.42, 112.73);
+        addCity("阳泉", 37.86, 113.58);
+        addCity("大同", 40.08, 113.30);
+        addCity("呼和浩特", 40.84, 111.75);
+        addEdge("太原", "忻州", TransportModeEnum.DRIVER, 80, 1, "300");
+        addEdge("太原", "阳泉", TransportModeEnum.DRIVER, 110, 3, "400");
+        addEdge("忻州", "大同", TransportModeEnum.BIG_TRUCK, 250, 2, "900");
+        addEdge("阳泉", "大同", TransportModeEnum.BIG_TRUCK, 300, 3, "1100");
+        addEdge("大同", "忻州", TransportModeEnum.BIG_TRUCK, 250, 2, "900");
+        addEdge("忻州", "呼和浩特", TransportModeEnum.DRIVER, 300, 4, "1000");
+        router.updateGraph(transportGraph, cityBaseDataMap);
+
+        for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+            List<RoutePlan> routes = router.findAlternativeRoutes(query("太原", "呼和浩特"), target, 3);
+            assertEquals(1, routes.size(), target.name());
+            List<String> cities = new ArrayList<>(List.of(routes.get(0).getFromCity()));
+            routes.get(0).getSegments().stream().filter(s -> !s.isLastMile()).forEach(s -> cities.add(s.getToCity()));
+            assertEquals(List.of("太原", "阳泉", "大同", "忻州", "呼和浩特"), cities);
+        }
+    }
+
+    @Test
+    void timetableRoutingWaitsForSailingsAndCombinesRailWithTruckLegs() {
+        LocalDateTime morning = LocalDateTime.of(2026, 3, 1, 0, 0);
+        router.setTimetable(new Timetable(List.of(
+                new TimetableConnection("S1", "北京", "广州", TransportModeEnum.SHIP, morning.plusHours(2),
+                        morning.plusHours(22), 1200, new BigDecimal("6000")),
+                new TimetableConnection("S2", "北京", "广州", TransportModeEnum.SHIP, morning.plusHours(32),
+                        morning.plusHours(52), 1200, new BigDecimal("6000"))), 60));
+
+        // 赶得上02:00的船：22小时到达，比28小时的大板车直达更早
+        RoutePlan sailing = router.findEarliestArrivalRoute(query("北京", "广州"), morning);
+        assertEquals(List.of(TransportModeEnum.SHIP), sailing.getModeList());
+        assertEquals(22, sailing.getTotalTime());
+        assertEquals(morning.plusHours(2), sailing.getSegments().get(0).getDepartureTime());
+        assertEquals(morning.plusHours(22), sailing.getArrivalTime());
+        assertEquals(0, new BigDecimal("6400").compareTo(sailing.getTotalPrice()));
+
+        // 错过后下一班要等到次日08:00，静态时效20小时的海运实际需要52小时，改走大板车
+        RoutePlan missed = router.findEarliestArrivalRoute(query("北京", "广州"), morning.plusHours(3));
+        assertEquals(List.of(TransportModeEnum.BIG_TRUCK), missed.getModeList());
+        assertEquals(28, missed.getTotalTime());
+        assertEquals(morning.plusHours(31), missed.getArrivalTime());
+
+        // 天津→济南→郑州→武汉的一趟列车（经停不需换乘时间），允许板车与铁路拼接时：大板车→铁路→大板车
+        router.setTimetable(new Timetable(List.of(
+                new TimetableConnection("G1", "天津", "济南", TransportModeEnum.RAIL, morning.plusHours(5),
+                        morning.plusHours(7), 370, new BigDecimal("300")),
+                new TimetableConnection("G1", "济南", "郑州", TransportModeEnum.RAIL, morning.plusHours(7).plusMinutes(10),
+                        morning.plusHours(9), 450, new BigDecimal("300")),
+                new TimetableConnection("G1", "郑州", "武汉", TransportModeEnum.RAIL, morning.plusHours(9).plusMinutes(10),
+                        morning.plusHours(11), 530, new BigDecimal("400"))), 60));
+        RoutePlan truckOnly = router.findEarliestArrivalRoute(query("北京", "长沙"), morning);
+        assertFalse(truckOnly.getModeList().contains(TransportModeEnum.RAIL));
+        assertEquals(router.findBestRoute(query("北京", "长沙"), OptimizeTargetEnum.TIME).getTotalTime(),
+                truckOnly.getTotalTime());
+
+        TransportRuleConfig railConfig = new TransportRuleConfig();
+        railConfig.updateModeTransition(TransportModeEnum.BIG_TRUCK, Set.of(TransportModeEnum.BIG_TRUCK,
+                TransportModeEnum.SMALL_TRUCK, TransportModeEnum.DRIVER, TransportModeEnum.RAIL));
+        railConfig.updateModeTransition(TransportModeEnum.RAIL, Set.of(TransportModeEnum.BIG_TRUCK));
+        router.setRuleConfig(railConfig);
+        RoutePlan combined = router.findEarliestArrivalRoute(query("北京", "长沙"), morning);
+        assertEquals(List.of(TransportModeEnum.BIG_TRUCK, TransportModeEnum.RAIL, TransportModeEnum.BIG_TRUCK),
+                combined.getModeList());
+        RouteSegment rail = combined.getSegments().get(1);
+        assertEquals("天津", rail.getFromCity());
+        assertEquals("武汉", rail.getToCity());
+        assertEquals(1350, rail.getMileage());
+        assertEquals(morning.plusHours(5), rail.getDepartureTime());
+        assertEquals(morning.plusHours(18), combined.getArrivalTime());
+        assertEquals(18, combined.getTotalTime());
+        assertEquals(0, new BigDecimal("3400").compareTo(combined.getTotalPrice()));
+
+        // 换乘时间不足：03:00到天津后赶不上05:00的列车
+        router.setTimetable(new Timetable(List.of(
+                new TimetableConnection("G1", "天津", "武汉", TransportModeEnum.RAIL, morning.plusHours(5),
+                        morning.plusHours(11), 1350, new BigDecimal("1000"))), 180));
+        assertFalse(router.findEarliestArrivalRoute(query("北京", "长沙"), morning).getModeList()
+                .contains(TransportModeEnum.RAIL));
+        assertThrows(IllegalArgumentException.class, () -> new Timetable(List.of(new TimetableConnection("X", "天津",
+                "武汉", TransportModeEnum.RAIL, morning.plusHours(5), morning, 1350, BigDecimal.ONE)), 0));
+    }
+
+    @Test
+    void reportsSearchEffortAndLatencyToMetrics() {
+        RecordingSearchMetrics metrics = new RecordingSearchMetrics();
+        router.setSearchMetrics(metrics);
+
+        // 北京→广州超过双向搜索阈值，统计为两个方向之和
+        RoutePlan timePlan = router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.TIME);
+        router.findBestRoute(query("北京", "郑州"), OptimizeTargetEnum.PRICE);
+        assertEquals(List.of(OptimizeTargetEnum.TIME, OptimizeTargetEnum.PRICE), metrics.bestRoutes);
+        assertEquals(0, metrics.bestRoutesNotFound);
+        for (SearchStatistics statistics : metrics.searches.values()) {
+            assertTrue(statistics.getExpandedStates() > 0);
+            assertTrue(statistics.getPushedStates() >= statistics.getExpandedStates());
+            assertTrue(statistics.getPeakOpenSetSize() > 0);
+            assertTrue(statistics.getHeuristicEvaluations() > 0);
+            assertEquals(0, statistics.getStaleSkipped());
+        }
+        assertEquals(2, metrics.searches.size());
+
+        List<RoutePlan> plans = router.planRoute(query("北京", "广州"));
+        assertEquals(plans.size(), metrics.planCount);
+        SearchStatistics paretoSearches = metrics.paretoSearches;
+        assertTrue(paretoSearches.getExpandedStates() > 0);
+        assertTrue(paretoSearches.getPushedStates() >= paretoSearches.getExpandedStates() + paretoSearches.getStaleSkipped());
+
+        // 关闭指标后结果不变
+        router.setSearchMetrics(null);
+        assertEquals(timePlan.getTotalTime(), router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.TIME).getTotalTime());
+        assertEquals(2, metrics.bestRoutes.size());
+    }
+
+    @Test
+    void budgetedSearchReturnsBestSoFarWithGapAndDetectsUnreachable() {
+        RoutePlan optimal = router.findBestRoute(query("北京", "广州"), OptimizeTargetEnum.PRICE);
+        double optimalCost = optimal.getTotalPrice().doubleValue();
+
+        // 不限预算：逐轮降低膨胀系数直到证明最优，结果与 findBestRoute 相同
+        AnytimeRouteResult complete = router.findBestRouteWithinBudget(query("北京", "广州"), OptimizeTargetEnum.PRICE,
+                new SearchBudget());
+        assertEquals(SearchOutcomeEnum.OPTIMAL, complete.getOutcome());
+        assertEquals(optimal.getSegments(), complete.getPlan().getSegments());
+        assertEquals(optimalCost, complete.getPlanCost(), 1e-9);
+        assertEquals(0, complete.getOptimalityGap(), 1e-9);
+        assertEquals(1, complete.getSuboptimalityBound(), 1e-9);
+
+        // 首轮高膨胀系数很快找到一个较差的方案，预算在后续轮次中耗尽：返回该方案及可证的差距
+        AnytimeRouteResult bounded = router.findBestRouteWithinBudget(query("北京", "广州"), OptimizeTargetEnum.PRICE,
+                new SearchBudget(null, 8, 10, 1));
+        assertEquals(SearchOutcomeEnum.BOUNDED, bounded.getOutcome());
+        assertNotNull(bounded.getPlan());
+        assertEquals(8, bounded.getExpandedStates());
+        assertEquals(bounded.getPlan().getTotalPrice().doubleValue(), bounded.getPlanCost(), 1e-9);
+        assertTrue(bounded.getLowerBound() > 0 && bounded.getLowerBound() <= optimalCost);
+        assertTrue(bounded.getPlanCost() >= optimalCost);
+        assertTrue(bounded.getPlanCost() <= bounded.getSuboptimalityBound() * optimalCost + 1e-9);
+        assertEquals(bounded.getPlanCost() - bounded.getLowerBound(), bounded.getOptimalityGap(), 1e-6);
+
+        // 预算不足以找到任何方案：只返回下界
+        AnytimeRouteResult exhausted = router.findBestRouteWithinBudget(query("北京", "广州"), OptimizeTargetEnum.PRICE,
+                new SearchBudget(null, 2, 1, 1));
+        assertEquals(SearchOutcomeEnum.BUDGET_EXHAUSTED, exhausted.getOutcome());
+        assertNull(exhausted.getPlan());
+        assertTrue(exhausted.getLowerBound() <= optimalCost);
+
+        // 广州没有出边；北京→长沙至少需要4段：都在搜索开始前判定不可达
+        AnytimeRouteResult noOutEdges = router.findBestRouteWithinBudget(query("广州", "北京"), OptimizeTargetEnum.TIME,
+                new SearchBudget());
+        assertEquals(SearchOutcomeEnum.UNREACHABLE, noOutEdges.getOutcome());
+        assertEquals(0, noOutEdges.getExpandedStates());
+        router.setMaxSegments(3);
+        assertEquals(SearchOutcomeEnum.UNREACHABLE, router.findBestRouteWithinBudget(query("北京", "长沙"),
+                OptimizeTargetEnum.TIME, new SearchBudget()).getOutcome());
+        assertNull(router.findBestRoute(query("北京", "长沙"), OptimizeTargetEnum.TIME));
+        router.setMaxSegments(5);
+        assertEquals(SearchOutcomeEnum.OPTIMAL, router.findBestRouteWithinBudget(query("北京", "长沙"),
+                OptimizeTargetEnum.TIME, new SearchBudget()).getOutcome());
+    }
+
+    @Test
+    void weightedSearchStaysWithinRequestedSuboptimalityBound() {
+        // 成都→上海分三层，每层两个城市、相邻层之间各有快而贵/慢而便宜两条边：可行路径多，帕累托前沿长
+        String[][] layers = {{"成都"}, {"重庆", "西安"}, {"武汉", "郑州"}, {"合肥", "南京"}, {"上海"}};
+        double[][][] positions = {{{30.57, 104.07}}, {{29.56, 106.55}, {34.34, 108.94}}, {{30.59, 114.31}, {34.75, 113.63}},
+                {{31.82, 117.23}, {32.06, 118.80}}, {{31.23, 121.47}}};
+        for (int layer = 0; layer < layers.length; layer++) {
+            for (int i = 0; i < layers[layer].length; i++) {
+                addCity(layers[layer][i], positions[layer][i][0], positions[layer][i][1]);
+            }
+        }
+        for (int layer = 0; layer + 1 < layers.length; layer++) {
+            for (int i = 0; i < layers[layer].length; i++) {
+                for (int j = 0; j < layers[layer + 1].length; j++) {
+                    String from = layers[layer][i];
+                    String to = layers[layer + 1][j];
+                    int mileage = 300 + 100 * ((layer + 2 * i + 3 * j) % 4);
+                    addEdge(from, to, TransportModeEnum.BIG_TRUCK, mileage, mileage / 50, String.valueOf(mileage * 5));
+                    addEdge(from, to, TransportModeEnum.BIG_TRUCK, mileage, mileage / 25, String.valueOf(mileage * 3));
+                }
+            }
+        }
+        router = new TransportGraphRouter(transportGraph, cityBaseDataMap, new DefaultHeuristicCalculator(cityBaseDataMap));
+        router.setMaxDriverDistance(1500);
+        // 与加权搜索同为单向A*，便于比较扩展状态数
+        router.setBidirectionalThresholdKm(Integer.MAX_VALUE);
+        RecordingSearchMetrics metrics = new RecordingSearchMetrics();
+        router.setSearchMetrics(metrics);
+        double[] epsilons = {0, 0.05, 5};
+        for (String from : cityBaseDataMap.keySet()) {
+            for (String to : cityBaseDataMap.keySet()) {
+                RouteResult exactResult = router.planRouteResult(query(from, to));
+                for (int i = 0; i < epsilons.length; i++) {
+                    RouteQuery query = query(from, to);
+                    query.setSuboptimality(epsilons[i]);
+                    RouteResult result = router.planRouteResult(query);
+                    assertEquals(exactResult.getParetoPlans().isEmpty(), result.getParetoPlans().isEmpty());
+                    if (exactResult.getParetoPlans().isEmpty()) {
+                        continue;
+                    }
+                    assertEquals(1 + epsilons[i], result.getTimeOptimalPlan().getSuboptimalityBound(), 1e-9);
+                    assertTrue(result.getTimeOptimalPlan().getTotalTime()
+                            <= (1 + epsilons[i]) * exactResult.getTimeOptimalPlan().getTotalTime());
+                    assertTrue(result.getPriceOptimalPlan().getTotalPrice().doubleValue()
+                            <= (1 + epsilons[i]) * exactResult.getPriceOptimalPlan().getTotalPrice().doubleValue());
+                }
+                for (OptimizeTargetEnum target : OptimizeTargetEnum.values()) {
+                    RoutePlan exact = router.findBestRoute(query(from, to), target);
+                    for (int i = 0; i < epsilons.length; i++) {
+                        RouteQuery query = query(from, to);
+                        query.setSuboptimality(epsilons[i]);
+                        RoutePlan plan = router.findBestRoute(query, target);
+                        if (exact == null) {
+                            assertNull(plan);
+                            continue;
+                        }
+                        assertEquals(1 + epsilons[i], plan.getSuboptimalityBound(), 1e-9);
+                        if (target == OptimizeTargetEnum.TIME) {
+                            assertTrue(plan.getTotalTime() <= (1 + epsilons[i]) * exact.getTotalTime());
+                        } else {
+                            assertTrue(plan.getTotalPrice().doubleValue() <= (1 + epsilons[i]) * exact.getTotalPrice().doubleValue());
+                        }
+                    }
+                }
+            }
+        }
+
+        // 双目标与单目标搜索都因 ε 严格少入堆状态
+        long[][] pushedByEpsilon = new long[2][epsilons.length];
+        for (int i = 0; i < epsilons.length; i++) {
+            RouteQuery query = query("成都", "上海");
+            query.setSuboptimality(epsilons[i]);
+            metrics.reset();
+            List<RoutePlan> plans = router.planRoute(query);
+            pushedByEpsilon[0][i] = metrics.pushedStates();
+            metrics.reset();
+            router.findBestRoute(query, OptimizeTargetEnum.PRICE);
+            pushedByEpsilon[1][i] = metrics.pushedStates();
+            // 批量入口对允许次优的查询得到相同的结果
+            RouteQuery other = query("成都", "南京");
+            other.setSuboptimality(epsilons[i]);
+            List<List<RoutePlan>> batch = router.planRoutes(List.of(query, other));
+            assertEquals(plans.stream().map(RoutePlan::getTotalTime).toList(),
+                    batch.get(0).stream().map(RoutePlan::getTotalTime).toList());
+        }
+        assertTrue(pushedByEpsilon[0][2] < pushedByEpsilon[0][0]);
+        assertTrue(pushedByEpsilon[1][2] < pushedByEpsilon[1][0]);
+
+        RouteQuery invalid = query("北京", "广州");
+        invalid.setSuboptimality(-0.1);
+        assertThrows(IllegalArgumentException.class, () -> router.findBestRoute(invalid, OptimizeTargetEnum.TIME));
+        assertThrows(IllegalArgumentException.class, () -> router.planRoute(invalid));
+        assertThrows(IllegalArgumentException.class, () -> router.planRoutes(List.of(query("北京", "广州"), invalid)));
+    }
+
+    @Test
+    void searchContextSupportsDecreaseKeyReopeningAndGenerationWraparound() {
+        AStarSearchContext context = AStarSearchContext.acquire(8, 4);
+        try {
+            context.open(1, 10, 10, -1, -1);
+            context.open(2, 8, 8, -1, -1);
+            // decrease-key：状态1找到更优路径后在 open set 中前移，先于状态2出堆
+            context.open(1, 3, 3, 2, 7);
+            assertEquals(2, context.openSetSize());
+            assertEquals(1, context.pollOpenState());
+            assertEquals(3, context.getGScore(1));
+            assertEquals(7, context.getParentEdge(1));
+            context.close(1);
+            assertTrue(context.isClosed(1));
+            // 已关闭的状态找到更优路径后重新打开
+            context.open(1, 2, 2, -1, 5);
+            assertFalse(context.isClosed(1));
+            assertEquals(1, context.pollOpenState());
+            assertEquals(2, context.getGScore(1));
+            assertEquals(2, context.pollOpenState());
+            assertFalse(context.hasOpenStates());
+            SearchStatistics statistics = new SearchStatistics();
+            context.addStatisticsTo(statistics);
+            assertEquals(3, statistics.getPushedStates());
+            assertEquals(1, statistics.getUpdatedStates());
+            assertEquals(3, statistics.getExpandedStates());
+
+            // 代数戳回绕：Integer.MAX_VALUE - 1 轮之后代数回到当前值，之前写入的状态/城市数据不能被误认为有效
+            context.markCityVisited(3);
+            context.putHeuristic(3, 1.5);
+            for (int i = 0; i < Integer.MAX_VALUE - 1; i++) {
+                context.restart();
+            }
+            assertFalse(context.isVisited(1));
+            assertEquals(Long.MAX_VALUE, context.getGScore(2));
+            assertFalse(context.isCityVisited(3));
+            assertFalse(context.hasHeuristic(3));
+        } finally {
+            context.release();
+        }
+        // 归还的工作区被下一次查询复用
+        AStarSearchContext reused = AStarSearchContext.acquire(4, 4);
+        assertSame(context, reused);
+        reused.release();
+    }
+
+    @Test
+    void returnsEmptyPlansForUnknownCity() {
+        assertTrue(router.planRoute(query("北京", "拉萨")).isEmpty());
+    }
+
+    /**
+     * 记录路由器上报的搜索指标：单目标搜索按优化目标累加，双目标搜索（target 为null）单独累加
+     */
+    private static final class RecordingSearchMetrics implements SearchMetrics {
+        private final Map<OptimizeTargetEnum, SearchStatistics> searches = new HashMap<>();
+        private SearchStatistics paretoSearches = new SearchStatistics();
+        private final List<OptimizeTargetEnum> bestRoutes = new ArrayList<>();
+        private int bestRoutesNotFound;
+        private int planCount;
+
+        @Override
+        public void recordSearch(OptimizeTargetEnum target, SearchStatistics statistics) {
+            if (target == null) {
+                paretoSearches.add(statistics);
+            } else {
+                searches.computeIfAbsent(target, k -> new SearchStatistics()).add(statistics);
+            }
+        }
+
+        @Override
+        public void recordBestRoute(OptimizeTargetEnum target, long elapsedNanos, boolean found) {
+            assertTrue(elapsedNanos >= 0);
+            bestRoutes.add(target);
+            if (!found) {
+                bestRoutesNotFound++;
+            }
+        }
+
+        @Override
+        public void recordHierarchyFallback(OptimizeTargetEnum target) {
+        }
+
+        @Override
+        public void recordPlanRoute(long elapsedNanos, int planCount) {
+            assertTrue(elapsedNanos >= 0);
+            this.planCount += planCount;
+        }
+
+        /**
+         * 自上次 reset 以来所有搜索的入堆状态数
+         */
+        long pushedStates() {
+            long pushed = paretoSearches.getPushedStates();
+            for (SearchStatistics statistics : searches.values()) {
+                pushed += statistics.getPushedStates();
+            }
+            return pushed;
+        }
+
+        void reset() {
+            searches.clear();
+            paretoSearches = new SearchStatistics();
+            bestRoutes.clear();
+            bestRoutesNotFound = 0;
+            planCount = 0;
+        }
+    }
+
+    private RouteQuery query(String from, String to) {
+        RouteQuery query = new RouteQuery();
+        query.setFromCity(from);
+        query.setToCity(to);
+        query.setNeedSameCityPick(true);
+        query.setNeedSameCityDeliver(true);
+        return query;
+    }
+
+    private List<String> inEdges(CompactTransportGraph graph, int city) {
+        List<String> edges = new ArrayList<>();
+        for (int i = graph.inEdgeStart(city); i < graph.inEdgeEnd(city); i++) {
+            edges.add(describeEdge(graph, graph.inEdge(i)));
+        }
+        return edges;
+    }
+
+    /**
+     * 按出发城市、出边顺序扫描得到的入边（与整体构建反向索引的顺序相同）
+     */
+    private List<String> expectedInEdges(CompactTransportGraph graph, int city) {
+        List<String> edges = new ArrayList<>();
+        for (int from = 0; from < graph.getCityCount(); from++) {
+            for (int edge = graph.edgeStart(from); edge < graph.edgeEnd(from); edge++) {
+                if (graph.edgeTarget(edge) == city) {
+                    edges.add(describeEdge(graph, edge));
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * 干线邻接表中城市各槽位的出边或入边（排序后比较，不同构建顺序下同一组内的边顺序可能不同）
+     */
+    private List<String> trunkGroups(TrunkAdjacency adjacency, String city, boolean out) {
+        CompactTransportGraph graph = adjacency.getGraph();
+        int cityId = graph.getCityId(city);
+        List<String> groups = new ArrayList<>();
+        for (int slot = 0; slot < Long.bitCount(adjacency.allSlots()); slot++) {
+            long slotMask = 1L << slot;
+            int end = out ? adjacency.outEnd(cityId, slotMask) : adjacency.inEnd(cityId, slotMask);
+            for (int i = out ? adjacency.outStart(cityId, slotMask) : adjacency.inStart(cityId, slotMask); i < end; i++) {
+                groups.add(slot + " " + describeEdge(graph, out ? adjacency.outEdge(i) : adjacency.inEdge(i)));
+            }
+        }
+        Collections.sort(groups);
+        return groups;
+    }
+
+    private List<String> lane(String from, String to) {
+        CompactTransportGraph graph = router.getGraph();
+        int fromCityId = graph.getCityId(from);
+        int toCityId = graph.getCityId(to);
+        List<String> edges = new ArrayList<>();
+        for (int edge = graph.edgeStart(fromCityId); edge < graph.edgeEnd(fromCityId); edge++) {
+            if (graph.edgeTarget(edge) == toCityId) {
+                edges.add(graph.edgeMode(edge) + " " + graph.edgeMileage(edge) + "km " + graph.edgeTimeHours(edge) + "h "
+                        + graph.edgePriceDecimal(edge));
+            }
+        }
+        return edges;
+    }
+
+    private String describeEdge(CompactTransportGraph graph, int edge) {
+        return graph.getCityName(graph.edgeSource(edge)) + "→" + graph.getCityName(graph.edgeTarget(edge)) + " "
+                + graph.edgeMode(edge) + " " + graph.edgeTimeHours(edge) + "h " + graph.edgePriceFen(edge);
+    }
+
+    private void addCity(String city, double lat, double lng) {
+        cityBaseDataMap.put(city, new CityBaseData(city, city, lat, lng, lat, lng, 0));
+    }
+
+    private void addEdge(String from, String to, TransportModeEnum mode, int mileage, int time, String price) {
+        TransportEdge edge = edge(from, to, mode, mileage, time, price);
+        transportGraph.computeIfAbsent(new CityPair(from, to), k -> new ArrayList<>()).add(edge);
+    }
+
+    private TransportEdge edge(String from, String to, TransportModeEnum mode, int mileage, int time, String price) {
+        TransportEdge edge = new TransportEdge();
+        edge.setFromCity(from);
+        edge.setToCity(to);
+        edge.setMode(mode);
+        edge.setMileage(mileage);
+        edge.setTimeHours(time);
+        edge.setPrice(new BigDecimal(price));
+        edge.setPriceWeight(edge.getPrice().doubleValue());
+        edge.setTimeWeight(time);
+        return edge;
+    }
+}